@@ -61,6 +61,7 @@ public class AnnotationBin implements Serializable {
             return -a.getSecond().compareTo( b.getSecond() );
         }
     }
+    private static final Comparator< Pair<String, Long> > CERTIFICATE_ORDER = new CertificateComparator();
     private Map<String, List<Pair<String, Long>>> _bin;
 
 
@@ -125,16 +126,52 @@ public class AnnotationBin implements Serializable {
         if ( _bin.containsKey( group ) ) {
             entries = _bin.get( group );
             if ( !entries.contains( certificate ) ) {
-                entries.add( certificate );
+                // entries are kept sorted, so just insert in place
+                ListIterator< Pair<String, Long> > i = entries.listIterator();
+                while ( i.hasNext() ) {
+                    if ( CERTIFICATE_ORDER.compare( certificate, i.next() ) < 0 ) {
+                        i.previous();
+                        break;
+                    }
+                }
+                i.add( certificate );
             }
         } else {
-            entries = new LinkedList<>();
+            entries = new ArrayList<>();
             entries.add( certificate );
             _bin.put( group, entries );
         }
+    }
+
 
-        // sort certificates after insertion... maybe instead use a SortedSet?
-        Collections.sort( entries, new CertificateComparator() );
+    /**
+     * Add many annotations to this bin at once.  Certificates are appended to
+     * their groups, and each affected group is sorted only once.
+     */
+    public void addData( Collection< AnnotationData<?> > data ) {
+
+        Map< String, Set< Pair<String, Long> > > seenByGroup = new HashMap<>();
+        for ( AnnotationData<?> d : data ) {
+            String group = d.getGroup();
+            List< Pair<String, Long> > entries = _bin.get( group );
+            if ( null == entries ) {
+                entries = new ArrayList<>();
+                _bin.put( group, entries );
+            }
+            Set< Pair<String, Long> > seen = seenByGroup.get( group );
+            if ( null == seen ) {
+                seen = new HashSet<>( entries );
+                seenByGroup.put( group, seen );
+            }
+            Pair<String, Long> certificate = d.getCertificate();
+            if ( seen.add( certificate ) ) {
+                entries.add( certificate );
+            }
+        }
+
+        for ( String group : seenByGroup.keySet() ) {
+            Collections.sort( _bin.get( group ), CERTIFICATE_ORDER );
+        }
     }
 
 
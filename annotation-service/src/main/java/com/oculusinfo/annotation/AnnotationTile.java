@@ -30,6 +30,7 @@ import com.oculusinfo.binning.impl.DenseTileData;
 import com.oculusinfo.factory.util.Pair;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -113,6 +114,19 @@ public class AnnotationTile extends DenseTileData< AnnotationBin > {
     }
 
 
+    public void addDataToBin( BinIndex binIndex, Collection< AnnotationData<?> > data ) {
+
+        AnnotationBin bin = getBin( binIndex.getX(), binIndex.getY() );
+
+        if ( bin == null ) {
+            bin = new AnnotationBin();
+            setBin( binIndex.getX(), binIndex.getY(), bin );
+        }
+
+        bin.addData( data );
+    }
+
+
     public void removeDataFromBin( BinIndex binIndex, AnnotationData<?> data ) {
 
         AnnotationBin bin = getBin( binIndex.getX(), binIndex.getY() );
@@ -0,0 +1,501 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.annotation.filter.expression;
+
+import com.oculusinfo.annotation.AnnotationData;
+import com.oculusinfo.factory.util.Pair;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+
+/**
+ * A compiled annotation filter expression.
+ *
+ * Expressions are written in a small, typed language that reads like the
+ * javascript previously used for scripted filters; for example:
+ *
+ * <pre>
+ * annotation.group == 'Urgent' &amp;&amp; annotation.level &gt;= 4
+ * group in ('High', 'Urgent') and not (data.author == 'bot')
+ * annotation.data.priority between 2 and 5 || x[0] &lt; -90.5
+ * </pre>
+ *
+ * Supported are:
+ * <ul>
+ * <li>number, string ('...' or "..."), boolean and null literals</li>
+ * <li>the fields of an annotation - level, x, y, x0, x1, y0, y1, group, uuid,
+ * timestamp, range.min, range.max, certificate.uuid, certificate.timestamp -
+ * optionally prefixed with "annotation."</li>
+ * <li>arbitrary paths into the annotation's data (data.a.b or data['a'])</li>
+ * <li>comparisons (==, !=, ===, !==, &lt;, &lt;=, &gt;, &gt;=), set
+ * membership (in (...)), and inclusive ranges (between ... and ...)</li>
+ * <li>boolean logic (&amp;&amp;, ||, !, and, or, not) and parentheses; as in
+ * javascript, ! binds more tightly than comparisons, while not applies to
+ * the whole comparison following it</li>
+ * </ul>
+ *
+ * Values follow javascript's rules: == and != convert between numbers,
+ * strings and booleans before comparing, while === and !== don't; ordering
+ * compares strings as strings and converts anything else to a number; null
+ * and undefined (a missing data value) are loosely equal to each other and
+ * nothing else; &amp;&amp; and || produce one of their operands.  The
+ * evaluator does not convert objects and arrays from annotation data to
+ * strings, as javascript would when comparing them with a string or number;
+ * nor does it read properties of anything but objects and arrays.  Where an
+ * annotation would need either, evaluation throws an
+ * {@link UnsupportedValueException}.
+ *
+ * Comparisons whose types can be seen to differ up front (such as a number
+ * field with a string) are rejected when the expression is compiled.
+ *
+ * Expressions that only use the javascript syntax above, and only the
+ * fields as they appear in the JSON form of an annotation (annotation.level,
+ * annotation.group, annotation.range.min and .max, annotation.certificate.uuid
+ * and annotation.data), mean the same thing as javascript evaluated against
+ * that JSON form; see {@link #isJavascript()}.
+ *
+ * Expressions are parsed and type-checked once, into a tree of nodes that
+ * are evaluated directly against {@link AnnotationData}.  Compiled
+ * expressions are immutable, thread-safe, and cached by source text.
+ */
+public class FilterExpression {
+	private static final int MAX_CACHED = 1024;
+	private static final Map<String, FilterExpression> CACHE = new ConcurrentHashMap<>();
+
+	/**
+	 * Compile an expression, or fetch it from the cache if it has been
+	 * compiled before.
+	 *
+	 * @throws IllegalArgumentException if the expression is malformed or
+	 *             compares incompatible types
+	 */
+	public static FilterExpression compile (String source) {
+		FilterExpression expression = CACHE.get(source);
+		if (null == expression) {
+			FilterExpressionParser parser = new FilterExpressionParser(source);
+			Node root = parser.parse();
+			expression = new FilterExpression(source, root, parser.isJavascript());
+			if (CACHE.size() >= MAX_CACHED) CACHE.clear();
+			CACHE.put(source, expression);
+		}
+		return expression;
+	}
+
+
+
+	private final String  _source;
+	private final Node    _root;
+	private final boolean _javascript;
+
+	private FilterExpression (String source, Node root, boolean javascript) {
+		_source = source;
+		_root = root;
+		_javascript = javascript;
+	}
+
+	public String getSource () {
+		return _source;
+	}
+
+	/**
+	 * Whether this expression is also javascript that, evaluated with
+	 * <code>annotation</code> set to the JSON form of an annotation, produces
+	 * the same value as {@link #evaluate(AnnotationData)}.  Expressions using
+	 * the extensions to javascript (and, or, not, in, between, unprefixed or
+	 * derived fields such as x0 or timestamp) are not.
+	 */
+	public boolean isJavascript () {
+		return _javascript;
+	}
+
+	/**
+	 * Determine if an annotation passes this filter - that is, if the
+	 * expression evaluates to a javascript truthy value.
+	 *
+	 * @throws UnsupportedValueException if the annotation holds data that the
+	 *             expression can't evaluate as javascript would
+	 */
+	public boolean matches (AnnotationData<?> annotation) {
+		return isTrue(_root.evaluate(annotation));
+	}
+
+	/**
+	 * Evaluate this expression against an annotation.
+	 *
+	 * @return A Double, String, Boolean, null, {@link #UNDEFINED}, or an
+	 *         object or array from the annotation's data
+	 * @throws UnsupportedValueException if the annotation holds data that the
+	 *             expression can't evaluate as javascript would
+	 */
+	public Object evaluate (AnnotationData<?> annotation) {
+		return _root.evaluate(annotation);
+	}
+
+	@Override
+	public String toString () {
+		return _source;
+	}
+
+
+
+	/**
+	 * The value of missing fields and data, as distinct from null
+	 */
+	public static final Object UNDEFINED = new Object() {
+		@Override
+		public String toString () {
+			return "undefined";
+		}
+	};
+
+	/**
+	 * Thrown when an annotation would need javascript behaviour the evaluator
+	 * doesn't reproduce: converting an object or array to a string or number,
+	 * or reading a property of something other than an object or array.
+	 */
+	public static class UnsupportedValueException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		UnsupportedValueException (String message) {
+			super(message);
+		}
+	}
+
+
+
+	/*
+	 * Expression tree
+	 */
+	enum Type {NUMBER, STRING, BOOLEAN, ANY}
+
+	interface Node {
+		Type getType ();
+		/* Evaluates to a Double, String, Boolean, null, UNDEFINED, or an object or array from the data */
+		Object evaluate (AnnotationData<?> annotation);
+	}
+
+	// Javascript truthiness
+	static boolean isTrue (Object value) {
+		if (null == value || UNDEFINED == value) return false;
+		if (value instanceof Boolean) return (Boolean) value;
+		if (value instanceof Double) {
+			double d = (Double) value;
+			return 0.0 != d && !Double.isNaN(d);
+		}
+		if (value instanceof String) return !((String) value).isEmpty();
+		return true;
+	}
+
+	private static boolean isNullish (Object value) {
+		return null == value || UNDEFINED == value;
+	}
+
+	private static boolean isPrimitive (Object value) {
+		return isNullish(value) || value instanceof Double || value instanceof String || value instanceof Boolean;
+	}
+
+	// Javascript's strict equality (===)
+	static boolean isStrictlyEqual (Object a, Object b) {
+		if (a instanceof Double && b instanceof Double)
+			return ((Double) a).doubleValue() == ((Double) b).doubleValue();
+		if (a instanceof String || a instanceof Boolean)
+			return a.equals(b);
+		// null, undefined, objects and arrays are only equal to themselves
+		return a == b;
+	}
+
+	// Javascript's loose equality (==)
+	static boolean isLooselyEqual (Object a, Object b) {
+		if (isNullish(a) || isNullish(b)) return isNullish(a) && isNullish(b);
+		if (a instanceof Boolean) return isLooselyEqual(toNumber(a), b);
+		if (b instanceof Boolean) return isLooselyEqual(a, toNumber(b));
+		if (a instanceof String && b instanceof Double) return isStrictlyEqual(toNumber(a), b);
+		if (a instanceof Double && b instanceof String) return isStrictlyEqual(a, toNumber(b));
+		if (isPrimitive(a) != isPrimitive(b))
+			throw new UnsupportedValueException("Can't compare an object with "+(a instanceof String || b instanceof String ? "a string" : "a number"));
+		return isStrictlyEqual(a, b);
+	}
+
+	// Javascript's ordering (<, >, etc.): negative, zero or positive as for
+	// compareTo, or null if the values are unordered (so all comparisons fail)
+	static Integer compare (Object a, Object b) {
+		if (!isPrimitive(a) || !isPrimitive(b))
+			throw new UnsupportedValueException("Can't order an object");
+		if (a instanceof String && b instanceof String)
+			return ((String) a).compareTo((String) b);
+		double x = toNumber(a);
+		double y = toNumber(b);
+		if (Double.isNaN(x) || Double.isNaN(y)) return null;
+		return (x < y) ? -1 : ((x > y) ? 1 : 0);
+	}
+
+	private static final Pattern DECIMAL     = Pattern.compile("[+-]?(Infinity|(\\d+(\\.\\d*)?|\\.\\d+)([eE][+-]?\\d+)?)");
+	private static final Pattern HEXADECIMAL = Pattern.compile("0[xX][0-9a-fA-F]+");
+
+	// Javascript's conversion of a primitive value to a number
+	static double toNumber (Object value) {
+		if (null == value) return 0.0;
+		if (UNDEFINED == value) return Double.NaN;
+		if (value instanceof Double) return (Double) value;
+		if (value instanceof Boolean) return ((Boolean) value) ? 1.0 : 0.0;
+
+		String text = trim((String) value);
+		if (text.isEmpty()) return 0.0;
+		if (HEXADECIMAL.matcher(text).matches()) return new BigInteger(text.substring(2), 16).doubleValue();
+		if (!DECIMAL.matcher(text).matches()) return Double.NaN;
+		if (text.endsWith("Infinity")) return text.startsWith("-") ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+		return Double.parseDouble(text);
+	}
+
+	// Javascript trims its own, wider, notion of whitespace from numbers
+	private static String trim (String text) {
+		int start = 0;
+		int end = text.length();
+		while (start < end && isJavascriptSpace(text.charAt(start))) ++start;
+		while (end > start && isJavascriptSpace(text.charAt(end-1))) --end;
+		return text.substring(start, end);
+	}
+
+	private static boolean isJavascriptSpace (char c) {
+		return Character.isWhitespace(c) || Character.isSpaceChar(c) || '\uFEFF' == c;
+	}
+
+	// Convert values found in annotation data to expression values
+	static Object normalize (Object value) {
+		if (null == value) return UNDEFINED;
+		if (JSONObject.NULL.equals(value)) return null;
+		if (value instanceof Double || value instanceof String || value instanceof Boolean) return value;
+		if (value instanceof Number) return ((Number) value).doubleValue();
+		if (value instanceof Character) return value.toString();
+		return value;
+	}
+
+	static class Literal implements Node {
+		private final Object _value;
+		private final Type   _type;
+		Literal (Object value, Type type) {
+			_value = value;
+			_type = type;
+		}
+		@Override public Type getType () {return _type;}
+		@Override public Object evaluate (AnnotationData<?> annotation) {return _value;}
+	}
+
+	/* The built-in fields of an annotation */
+	enum Field implements Node {
+		LEVEL(Type.NUMBER) {
+			@Override public Object evaluate (AnnotationData<?> a) {return normalize(a.getLevel());}
+		},
+		X0(Type.NUMBER) {
+			@Override public Object evaluate (AnnotationData<?> a) {return a.getX0();}
+		},
+		X1(Type.NUMBER) {
+			@Override public Object evaluate (AnnotationData<?> a) {return a.getX1();}
+		},
+		Y0(Type.NUMBER) {
+			@Override public Object evaluate (AnnotationData<?> a) {return a.getY0();}
+		},
+		Y1(Type.NUMBER) {
+			@Override public Object evaluate (AnnotationData<?> a) {return a.getY1();}
+		},
+		GROUP(Type.STRING) {
+			@Override public Object evaluate (AnnotationData<?> a) {return normalize(a.getGroup());}
+		},
+		UUID(Type.STRING) {
+			@Override public Object evaluate (AnnotationData<?> a) {
+				return (null == a.getUUID()) ? UNDEFINED : a.getUUID().toString();
+			}
+		},
+		TIMESTAMP(Type.NUMBER) {
+			@Override public Object evaluate (AnnotationData<?> a) {return normalize(a.getTimestamp());}
+		},
+		RANGE_MIN(Type.NUMBER) {
+			@Override public Object evaluate (AnnotationData<?> a) {
+				Pair<Integer, Integer> range = a.getRange();
+				return (null == range) ? UNDEFINED : normalize(range.getFirst());
+			}
+		},
+		RANGE_MAX(Type.NUMBER) {
+			@Override public Object evaluate (AnnotationData<?> a) {
+				Pair<Integer, Integer> range = a.getRange();
+				return (null == range) ? UNDEFINED : normalize(range.getSecond());
+			}
+		};
+
+		private final Type _type;
+		private Field (Type type) {
+			_type = type;
+		}
+		@Override public Type getType () {return _type;}
+	}
+
+	/* A path into the (schemaless) data of an annotation */
+	static class DataPath implements Node {
+		private final String[] _path;
+		DataPath (List<String> path) {
+			_path = path.toArray(new String[path.size()]);
+		}
+		@Override public Type getType () {return Type.ANY;}
+		@Override public Object evaluate (AnnotationData<?> annotation) {
+			Object value = annotation.getData();
+			for (String key: _path) {
+				// Missing values come back as java nulls, and so undefined
+				if (value instanceof JSONObject) {
+					value = ((JSONObject) value).opt(key);
+				} else if (value instanceof JSONArray) {
+					value = ((JSONArray) value).opt(index(key));
+				} else if (value instanceof Map) {
+					value = ((Map<?, ?>) value).get(key);
+				} else if (value instanceof List) {
+					int i = index(key);
+					List<?> list = (List<?>) value;
+					value = (i >= 0 && i < list.size()) ? list.get(i) : null;
+				} else {
+					// Javascript fails on properties of null and undefined, and
+					// strings and numbers have properties of their own
+					throw new UnsupportedValueException("Can't read property '"+key+"' of "+normalize(value));
+				}
+			}
+			return normalize(value);
+		}
+		private static int index (String key) {
+			try {
+				return Integer.parseInt(key);
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+	}
+
+	static class Not implements Node {
+		private final Node _operand;
+		Not (Node operand) {
+			_operand = operand;
+		}
+		@Override public Type getType () {return Type.BOOLEAN;}
+		@Override public Object evaluate (AnnotationData<?> annotation) {
+			return !isTrue(_operand.evaluate(annotation));
+		}
+	}
+
+	// As in javascript, && and || evaluate to one of their operands
+	static class And implements Node {
+		private final Node _left, _right;
+		And (Node left, Node right) {
+			_left = left;
+			_right = right;
+		}
+		@Override public Type getType () {return Type.ANY;}
+		@Override public Object evaluate (AnnotationData<?> annotation) {
+			Object left = _left.evaluate(annotation);
+			return isTrue(left) ? _right.evaluate(annotation) : left;
+		}
+	}
+
+	static class Or implements Node {
+		private final Node _left, _right;
+		Or (Node left, Node right) {
+			_left = left;
+			_right = right;
+		}
+		@Override public Type getType () {return Type.ANY;}
+		@Override public Object evaluate (AnnotationData<?> annotation) {
+			Object left = _left.evaluate(annotation);
+			return isTrue(left) ? left : _right.evaluate(annotation);
+		}
+	}
+
+	enum Operator {EQ, NE, STRICT_EQ, STRICT_NE, LT, LE, GT, GE}
+
+	static class Comparison implements Node {
+		private final Operator _operator;
+		private final Node     _left, _right;
+		Comparison (Operator operator, Node left, Node right) {
+			_operator = operator;
+			_left = left;
+			_right = right;
+		}
+		@Override public Type getType () {return Type.BOOLEAN;}
+		@Override public Object evaluate (AnnotationData<?> annotation) {
+			Object a = _left.evaluate(annotation);
+			Object b = _right.evaluate(annotation);
+			switch (_operator) {
+			case EQ: return isLooselyEqual(a, b);
+			case NE: return !isLooselyEqual(a, b);
+			case STRICT_EQ: return isStrictlyEqual(a, b);
+			case STRICT_NE: return !isStrictlyEqual(a, b);
+			default:
+				Integer c = compare(a, b);
+				if (null == c) return false;
+				switch (_operator) {
+				case LT: return c < 0;
+				case LE: return c <= 0;
+				case GT: return c > 0;
+				default: return c >= 0;
+				}
+			}
+		}
+	}
+
+	static class In implements Node {
+		private final Node     _value;
+		private final Object[] _set;
+		In (Node value, List<Object> set) {
+			_value = value;
+			_set = set.toArray();
+		}
+		@Override public Type getType () {return Type.BOOLEAN;}
+		@Override public Object evaluate (AnnotationData<?> annotation) {
+			Object value = _value.evaluate(annotation);
+			for (Object member: _set) {
+				if (isLooselyEqual(value, member)) return true;
+			}
+			return false;
+		}
+	}
+
+	static class Between implements Node {
+		private final Node _value, _min, _max;
+		Between (Node value, Node min, Node max) {
+			_value = value;
+			_min = min;
+			_max = max;
+		}
+		@Override public Type getType () {return Type.BOOLEAN;}
+		@Override public Object evaluate (AnnotationData<?> annotation) {
+			Object value = _value.evaluate(annotation);
+			Integer low = compare(value, _min.evaluate(annotation));
+			if (null == low || low < 0) return false;
+			Integer high = compare(value, _max.evaluate(annotation));
+			return null != high && high <= 0;
+		}
+	}
+}
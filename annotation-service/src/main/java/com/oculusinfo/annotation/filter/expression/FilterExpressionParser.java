@@ -0,0 +1,433 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.annotation.filter.expression;
+
+import com.oculusinfo.annotation.filter.expression.FilterExpression.And;
+import com.oculusinfo.annotation.filter.expression.FilterExpression.Between;
+import com.oculusinfo.annotation.filter.expression.FilterExpression.Comparison;
+import com.oculusinfo.annotation.filter.expression.FilterExpression.DataPath;
+import com.oculusinfo.annotation.filter.expression.FilterExpression.Field;
+import com.oculusinfo.annotation.filter.expression.FilterExpression.In;
+import com.oculusinfo.annotation.filter.expression.FilterExpression.Literal;
+import com.oculusinfo.annotation.filter.expression.FilterExpression.Node;
+import com.oculusinfo.annotation.filter.expression.FilterExpression.Not;
+import com.oculusinfo.annotation.filter.expression.FilterExpression.Operator;
+import com.oculusinfo.annotation.filter.expression.FilterExpression.Or;
+import com.oculusinfo.annotation.filter.expression.FilterExpression.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/*
+ * A recursive descent parser for filter expressions.  The grammar is:
+ *
+ *   or         := and (('||' | 'or') and)*
+ *   and        := unary (('&&' | 'and') unary)*
+ *   unary      := 'not' unary | comparison
+ *   comparison := operand [ op operand | 'in' '(' value (',' value)* ')' | 'between' operand 'and' operand ]
+ *   operand    := '!' operand | value
+ *   value      := literal | '-' number | path | '(' or ')'
+ *
+ * While parsing, we note whether the expression strays from the javascript
+ * subset that means the same thing when evaluated against the JSON form of
+ * an annotation.
+ *   path       := identifier ('.' identifier | '[' (number | string) ']')*
+ */
+class FilterExpressionParser {
+	private enum TokenType {NUMBER, STRING, IDENTIFIER, SYMBOL, END}
+
+	private static class Token {
+		final TokenType type;
+		final String    text;
+		final int       position;
+		Token (TokenType type, String text, int position) {
+			this.type = type;
+			this.text = text;
+			this.position = position;
+		}
+		boolean is (String symbol) {
+			return (TokenType.SYMBOL == type || TokenType.IDENTIFIER == type) && text.equals(symbol);
+		}
+	}
+
+	private static final String[] SYMBOLS = {
+		"===", "!==", "==", "!=", "<=", ">=", "&&", "||", "<", ">", "!", "(", ")", "[", "]", ",", ".", "-"
+	};
+
+	private final String      _source;
+	private final List<Token> _tokens;
+	private int               _next;
+	private boolean           _javascript;
+
+	FilterExpressionParser (String source) {
+		if (null == source) throw new IllegalArgumentException("No filter expression given");
+		_source = source;
+		_javascript = true;
+		_tokens = tokenize(source);
+		_next = 0;
+	}
+
+	/*
+	 * Whether the expression parsed so far is also javascript with the same
+	 * meaning, when evaluated against the JSON form of an annotation
+	 */
+	boolean isJavascript () {
+		return _javascript;
+	}
+
+	Node parse () {
+		Node root = parseOr();
+		// allow a trailing semicolon, as scripts often had one
+		if (peek().is(";")) advance();
+		if (TokenType.END != peek().type) throw error("Unexpected '"+peek().text+"'");
+		return root;
+	}
+
+
+
+	/*
+	 * Tokenizing
+	 */
+	private List<Token> tokenize (String source) {
+		List<Token> tokens = new ArrayList<>();
+		int i = 0;
+		int n = source.length();
+		while (i < n) {
+			char c = source.charAt(i);
+			if (Character.isWhitespace(c)) {
+				++i;
+			} else if (Character.isDigit(c) || ('.' == c && i+1 < n && Character.isDigit(source.charAt(i+1)))) {
+				int start = i;
+				while (i < n && (Character.isDigit(source.charAt(i)) || '.' == source.charAt(i))) ++i;
+				if (i < n && ('e' == source.charAt(i) || 'E' == source.charAt(i))) {
+					++i;
+					if (i < n && ('+' == source.charAt(i) || '-' == source.charAt(i))) ++i;
+					while (i < n && Character.isDigit(source.charAt(i))) ++i;
+				}
+				tokens.add(new Token(TokenType.NUMBER, source.substring(start, i), start));
+			} else if ('\'' == c || '"' == c) {
+				int start = i;
+				StringBuilder text = new StringBuilder();
+				++i;
+				while (i < n && c != source.charAt(i)) {
+					char d = source.charAt(i++);
+					if ('\\' == d && i < n) {
+						d = source.charAt(i++);
+						if ('n' == d) d = '\n';
+						else if ('t' == d) d = '\t';
+						// javascript has other escapes, which we take literally
+						else if ('\\' != d && '\'' != d && '"' != d) _javascript = false;
+					}
+					text.append(d);
+				}
+				if (i >= n) throw new IllegalArgumentException("Unterminated string at position "+start+" in filter expression "+source);
+				++i;
+				tokens.add(new Token(TokenType.STRING, text.toString(), start));
+			} else if (Character.isJavaIdentifierStart(c)) {
+				int start = i;
+				while (i < n && Character.isJavaIdentifierPart(source.charAt(i))) ++i;
+				tokens.add(new Token(TokenType.IDENTIFIER, source.substring(start, i), start));
+			} else if (';' == c) {
+				tokens.add(new Token(TokenType.SYMBOL, ";", i));
+				++i;
+			} else {
+				String symbol = null;
+				for (String s: SYMBOLS) {
+					if (source.startsWith(s, i)) {
+						symbol = s;
+						break;
+					}
+				}
+				if (null == symbol) throw new IllegalArgumentException("Unexpected character '"+c+"' at position "+i+" in filter expression "+source);
+				tokens.add(new Token(TokenType.SYMBOL, symbol, i));
+				i += symbol.length();
+			}
+		}
+		tokens.add(new Token(TokenType.END, "end of expression", n));
+		return tokens;
+	}
+
+	private Token peek () {
+		return _tokens.get(_next);
+	}
+
+	private Token advance () {
+		Token token = _tokens.get(_next);
+		if (TokenType.END != token.type) ++_next;
+		return token;
+	}
+
+	private boolean accept (String symbol) {
+		if (peek().is(symbol)) {
+			advance();
+			return true;
+		}
+		return false;
+	}
+
+	private void expect (String symbol) {
+		if (!accept(symbol)) throw error("Expected '"+symbol+"' but found '"+peek().text+"'");
+	}
+
+	private IllegalArgumentException error (String message) {
+		return new IllegalArgumentException(message+" at position "+peek().position+" in filter expression "+_source);
+	}
+
+
+
+	/*
+	 * Parsing
+	 */
+	// Accept a keyword that javascript doesn't have
+	private boolean acceptExtension (String keyword) {
+		if (accept(keyword)) {
+			_javascript = false;
+			return true;
+		}
+		return false;
+	}
+
+	private Node parseOr () {
+		Node left = parseAnd();
+		while (accept("||") || acceptExtension("or")) {
+			left = new Or(left, parseAnd());
+		}
+		return left;
+	}
+
+	private Node parseAnd () {
+		Node left = parseUnary();
+		while (accept("&&") || acceptExtension("and")) {
+			left = new And(left, parseUnary());
+		}
+		return left;
+	}
+
+	private Node parseUnary () {
+		if (acceptExtension("not")) {
+			return new Not(parseUnary());
+		}
+		return parseComparison();
+	}
+
+	// As in javascript, ! applies to the value right after it, not to a
+	// comparison
+	private Node parseOperand () {
+		if (accept("!")) {
+			return new Not(parseOperand());
+		}
+		return parseValue();
+	}
+
+	private Node parseComparison () {
+		Node left = parseOperand();
+
+		Operator operator = null;
+		if (accept("==")) operator = Operator.EQ;
+		else if (accept("!=")) operator = Operator.NE;
+		else if (accept("===")) operator = Operator.STRICT_EQ;
+		else if (accept("!==")) operator = Operator.STRICT_NE;
+		else if (accept("<=")) operator = Operator.LE;
+		else if (accept(">=")) operator = Operator.GE;
+		else if (accept("<")) operator = Operator.LT;
+		else if (accept(">")) operator = Operator.GT;
+
+		if (null != operator) {
+			Node right = parseOperand();
+			checkTypes(left, right, Operator.LT == operator || Operator.LE == operator ||
+			                        Operator.GT == operator || Operator.GE == operator);
+			return new Comparison(operator, left, right);
+		} else if (acceptExtension("in")) {
+			expect("(");
+			List<Object> members = new ArrayList<>();
+			do {
+				Node member = parseValue();
+				if (!(member instanceof Literal))
+					throw error("Set members must be literals");
+				checkTypes(left, member, false);
+				members.add(member.evaluate(null));
+			} while (accept(","));
+			expect(")");
+			return new In(left, members);
+		} else if (acceptExtension("between")) {
+			Node min = parseOperand();
+			expect("and");
+			Node max = parseOperand();
+			checkTypes(left, min, true);
+			checkTypes(left, max, true);
+			return new Between(left, min, max);
+		}
+		return left;
+	}
+
+	private void checkTypes (Node a, Node b, boolean ordered) {
+		Type ta = a.getType();
+		Type tb = b.getType();
+		if (ordered && (Type.BOOLEAN == ta || Type.BOOLEAN == tb))
+			throw error("Booleans cannot be ordered");
+		if (Type.ANY == ta || Type.ANY == tb || ta == tb) return;
+		// null literals have type ANY, so anything left is a genuine mismatch
+		throw error("Cannot compare "+ta.toString().toLowerCase()+" with "+tb.toString().toLowerCase());
+	}
+
+	private Node parseValue () {
+		Token token = advance();
+		switch (token.type) {
+		case NUMBER:
+			return new Literal(parseNumber(token), Type.NUMBER);
+		case STRING:
+			return new Literal(token.text, Type.STRING);
+		case IDENTIFIER:
+			if ("true".equals(token.text)) return new Literal(Boolean.TRUE, Type.BOOLEAN);
+			if ("false".equals(token.text)) return new Literal(Boolean.FALSE, Type.BOOLEAN);
+			if ("null".equals(token.text)) return new Literal(null, Type.ANY);
+			if ("undefined".equals(token.text)) return new Literal(FilterExpression.UNDEFINED, Type.ANY);
+			return parsePath(token);
+		case SYMBOL:
+			if ("(".equals(token.text)) {
+				Node inner = parseOr();
+				expect(")");
+				return inner;
+			}
+			if ("-".equals(token.text) && TokenType.NUMBER == peek().type) {
+				return new Literal(-parseNumber(advance()), Type.NUMBER);
+			}
+			break;
+		default:
+			break;
+		}
+		--_next;
+		throw error("Unexpected '"+token.text+"'");
+	}
+
+	private double parseNumber (Token token) {
+		try {
+			return Double.parseDouble(token.text);
+		} catch (NumberFormatException e) {
+			throw error("Bad number '"+token.text+"'");
+		}
+	}
+
+	private Node parsePath (Token first) {
+		List<String> path = new ArrayList<>();
+		path.add(first.text);
+		while (true) {
+			if (accept(".")) {
+				Token name = advance();
+				if (TokenType.IDENTIFIER != name.type) throw error("Expected a field name after '.'");
+				path.add(name.text);
+			} else if (accept("[")) {
+				Token key = advance();
+				if (TokenType.NUMBER == key.type) {
+					path.add(Integer.toString((int) parseNumber(key)));
+				} else if (TokenType.STRING == key.type) {
+					path.add(key.text);
+				} else {
+					throw error("Expected a number or string index");
+				}
+				expect("]");
+			} else {
+				break;
+			}
+		}
+		return resolvePath(path);
+	}
+
+	// Resolve a path to a built-in field or a data path
+	private Node resolvePath (List<String> path) {
+		if ("annotation".equals(path.get(0))) {
+			path = path.subList(1, path.size());
+			if (path.isEmpty()) throw error("An annotation can't be compared directly; use one of its fields");
+		} else {
+			_javascript = false;
+		}
+		String head = path.get(0);
+		int length = path.size();
+		String next = (length > 1) ? path.get(1) : null;
+
+		// Only these fields are the same as in the JSON form of an annotation
+		// - level, group, range.min, range.max, certificate.uuid and data
+		Node field = null;
+		int used = 1;
+		if ("data".equals(head)) {
+			return new DataPath(path.subList(1, length));
+		} else if ("level".equals(head)) {
+			field = Field.LEVEL;
+		} else if ("group".equals(head)) {
+			field = Field.GROUP;
+		} else if ("uuid".equals(head)) {
+			field = Field.UUID;
+		} else if ("timestamp".equals(head)) {
+			field = Field.TIMESTAMP;
+		} else if ("x0".equals(head)) {
+			field = Field.X0;
+		} else if ("x1".equals(head)) {
+			field = Field.X1;
+		} else if ("y0".equals(head)) {
+			field = Field.Y0;
+		} else if ("y1".equals(head)) {
+			field = Field.Y1;
+		} else if ("x".equals(head) || "y".equals(head)) {
+			// x[0] and x[1] are the ends of a range, as in the JSON form
+			boolean isX = "x".equals(head);
+			if ("1".equals(next)) {
+				field = isX ? Field.X1 : Field.Y1;
+				used = 2;
+			} else {
+				field = isX ? Field.X0 : Field.Y0;
+				if ("0".equals(next)) used = 2;
+			}
+		} else if ("range".equals(head)) {
+			if ("min".equals(next)) field = Field.RANGE_MIN;
+			else if ("max".equals(next)) field = Field.RANGE_MAX;
+			used = 2;
+		} else if ("certificate".equals(head)) {
+			if ("uuid".equals(next)) field = Field.UUID;
+			else if ("timestamp".equals(next)) field = Field.TIMESTAMP;
+			used = 2;
+		}
+
+		if (null == field || used != length) {
+			throw error("Unknown annotation field '"+join(path)+"'");
+		}
+		if (Field.LEVEL != field && Field.GROUP != field && Field.RANGE_MIN != field && Field.RANGE_MAX != field &&
+		    !(Field.UUID == field && "certificate".equals(head))) {
+			// The JSON form has x and y as a number or array, and the
+			// certificate timestamp as a string; the rest aren't there at all
+			_javascript = false;
+		}
+		return field;
+	}
+
+	private static String join (List<String> path) {
+		StringBuilder result = new StringBuilder();
+		for (String part: path) {
+			if (result.length() > 0) result.append('.');
+			result.append(part);
+		}
+		return result.toString();
+	}
+}
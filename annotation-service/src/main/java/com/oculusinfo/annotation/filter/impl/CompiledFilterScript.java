@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.annotation.filter.impl;
+
+import com.oculusinfo.annotation.AnnotationData;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * A filter script run as javascript, with <code>annotation</code> set to the
+ * JSON form of each annotation in turn; annotations pass if it evaluates to
+ * true.
+ *
+ * Scripts are compiled once, and cached by source text, so all filters using
+ * the same script share one engine.  Script engines aren't generally
+ * thread-safe, so evaluation against that engine is serialized.
+ */
+class CompiledFilterScript {
+	private static final int MAX_CACHED = 256;
+	private static final Map<String, CompiledFilterScript> CACHE = new ConcurrentHashMap<>();
+
+	/**
+	 * Compile a script, or fetch it from the cache if it has been compiled
+	 * before.
+	 *
+	 * @throws ScriptException if there is no javascript engine, or the script
+	 *             doesn't compile
+	 */
+	static CompiledFilterScript compile (String script) throws ScriptException {
+		CompiledFilterScript compiled = CACHE.get(script);
+		if (null == compiled) {
+			compiled = new CompiledFilterScript(script);
+			if (CACHE.size() >= MAX_CACHED) CACHE.clear();
+			CACHE.put(script, compiled);
+		}
+		return compiled;
+	}
+
+
+
+	private final ScriptEngine   _engine;
+	private final String         _source;
+	// Null if the engine can't compile scripts
+	private final CompiledScript _compiled;
+
+	private CompiledFilterScript (String script) throws ScriptException {
+		_engine = new ScriptEngineManager().getEngineByName("javascript");
+		if (null == _engine) throw new ScriptException("No javascript engine available");
+		_source = "var annotation = JSON.parse(annotationJSON); "+script;
+		_compiled = (_engine instanceof Compilable) ? ((Compilable) _engine).compile(_source) : null;
+	}
+
+	synchronized boolean matches (AnnotationData<?> annotation) throws ScriptException {
+		_engine.put("annotationJSON", annotation.toJSON().toString());
+		Object result = (null == _compiled) ? _engine.eval(_source) : _compiled.eval();
+		return Boolean.TRUE.equals(result);
+	}
+}
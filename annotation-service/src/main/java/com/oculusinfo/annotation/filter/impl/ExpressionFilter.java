@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.annotation.filter.impl;
+
+import com.oculusinfo.annotation.AnnotationData;
+import com.oculusinfo.annotation.filter.expression.FilterExpression;
+import com.oculusinfo.annotation.filter.expression.FilterExpression.UnsupportedValueException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A filter that passes only those annotations matching a compiled
+ * {@link FilterExpression}.  Annotations the expression can't evaluate (see
+ * {@link FilterExpression.UnsupportedValueException}) don't match.
+ */
+public class ExpressionFilter extends EmptyFilter {
+
+	private FilterExpression _expression;
+
+	public ExpressionFilter( String expression ) {
+		_expression = FilterExpression.compile( expression );
+	}
+
+	public ExpressionFilter( FilterExpression expression ) {
+		_expression = expression;
+	}
+
+	public FilterExpression getExpression() {
+		return _expression;
+	}
+
+	@Override
+	public List<AnnotationData<?>> filterAnnotations(
+			List<AnnotationData<?>> annotations, List<FilteredBinResults> binResults ) {
+
+		List<AnnotationData<?>> filtered = new ArrayList<>( annotations.size() );
+		for ( AnnotationData<?> annotation : annotations ) {
+			try {
+				if ( _expression.matches( annotation ) ) {
+					filtered.add( annotation );
+				}
+			} catch ( UnsupportedValueException e ) {
+				// can't be evaluated, so doesn't match
+			}
+		}
+		return filtered;
+	}
+}
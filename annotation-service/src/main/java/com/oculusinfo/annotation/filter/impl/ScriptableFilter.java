@@ -24,85 +24,108 @@
 package com.oculusinfo.annotation.filter.impl;
 
 import com.oculusinfo.annotation.AnnotationData;
-
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
-import java.util.LinkedList;
+import com.oculusinfo.annotation.filter.expression.FilterExpression;
+import com.oculusinfo.annotation.filter.expression.FilterExpression.UnsupportedValueException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.script.ScriptException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-
-
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * A filter that passes annotations for which a javascript script evaluates
+ * to true, with <code>annotation</code> set to the JSON form of each
+ * annotation.
+ *
+ * Scripts that are also {@link FilterExpression}s with the same meaning (see
+ * {@link FilterExpression#isJavascript()}) are evaluated directly against
+ * each annotation, which is several orders of magnitude faster than running
+ * javascript.  Anything else - including scripts using the filter expression
+ * extensions, which javascript wouldn't understand - is run as javascript,
+ * compiled once per script; a warning is logged the first time each such
+ * script is seen.  Annotations whose data a compiled script can't evaluate as
+ * javascript would (such as comparing an object from the data with a string)
+ * are also checked by running the javascript.
+ */
 public class ScriptableFilter extends EmptyFilter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScriptableFilter.class);
+
+    private static final int MAX_WARNED = 256;
+    // Scripts we've already warned about falling back to javascript
+    private static final Set<String> WARNED = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
 
     private String _script;
+    private FilterExpression _expression;
+    private CompiledFilterScript _javascript;
 
     public ScriptableFilter( String script ) {
-        _script = script;
+        this( script, true );
     }
 
-    public List<AnnotationData<?>> filterAnnotations( List<AnnotationData<?>> annotations ) {
-
-        List<AnnotationData<?>> filtered = new LinkedList<>();
-        ScriptEngine engine = new ScriptEngineManager().getEngineByName("javascript");
-
-        try
-        {
-            /*
-            int size = annotations.size();
-            List<String> annotationStrings = new ArrayList<>( size );
-            int totalLength = 0;
-            for ( int i=0; i<size; i++ ) {
-                String annoStr = annotations.get(i).toJSON().toString();
-                if ( i != size-1 ) {
-                    annoStr += ",";
+    /**
+     * @param script The filter script
+     * @param compile If false, always evaluate the script as javascript
+     */
+    public ScriptableFilter( String script, boolean compile ) {
+        _script = script;
+        if ( compile ) {
+            String reason = null;
+            try {
+                FilterExpression expression = FilterExpression.compile( script );
+                if ( expression.isJavascript() ) {
+                    _expression = expression;
+                } else {
+                    reason = "it uses filter expression features that aren't javascript";
                 }
-                annotationStrings.add( annoStr );
-                totalLength += annoStr.length();
-            };
-
-            String scriptPrefix = "(function() { var annotations = [";
-
-            String scriptPostfix = "];"
-                                +"var len = annotations.length, "
-                                +"results = java.lang.reflect.Array.newInstance(java.lang.Boolean, len),"
-                                +"result, i, annotation;"
-                                +"for(i=0; i<len; i++) {"
-                                    +"annotation = annotations[i];"
-                                    +"result = " + _script + ";"
-                                    +"results[i] = result;"
-                                +"}"
-                                +"return results; })();";
-
-            StringBuilder script = new StringBuilder( scriptPrefix.length()
-                                                            + totalLength
-                                                            + scriptPostfix.length() );
-            // create script
-            script.append( scriptPrefix );
-            for ( String annoStr : annotationStrings ) {
-                script.append( annoStr );
+            } catch ( IllegalArgumentException e ) {
+                reason = e.getMessage();
             }
-            script.append( scriptPostfix );
+            if ( null != reason && WARNED.add( script ) ) {
+                if ( WARNED.size() > MAX_WARNED ) WARNED.clear();
+                LOGGER.warn( "Filter script can't be compiled, falling back to javascript: {}", reason );
+            }
+        }
+    }
 
-            //String func = "var annotation = "+ annotation.toJSON().toString() +"; "+ _script;
-            Boolean[] results = (Boolean[])engine.eval( script.toString() );
+    public boolean isCompiled() {
+        return null != _expression;
+    }
 
-            for ( int i=0; i<results.length; i++ ) {
-                if (results[i]) {
-                    filtered.add( annotations.get(i) );
-                }
-            }
-            */
+    private CompiledFilterScript getJavascript() throws ScriptException {
+        if ( null == _javascript ) {
+            _javascript = CompiledFilterScript.compile( _script );
+        }
+        return _javascript;
+    }
 
-            for ( AnnotationData<?> annotation : annotations ) {
+    @Override
+    public List<AnnotationData<?>> filterAnnotations( List<AnnotationData<?>> annotations,
+                                                      List<FilteredBinResults> binResults ) {
 
-                String func = "var annotation = "+ annotation.toJSON().toString() +"; "+ _script;
-                Boolean result = (Boolean)engine.eval( func );
-                if (result) {
+        List<AnnotationData<?>> filtered = new ArrayList<>( annotations.size() );
+        try {
+            for ( AnnotationData<?> annotation : annotations ) {
+                boolean passes;
+                if ( null == _expression ) {
+                    passes = getJavascript().matches( annotation );
+                } else {
+                    try {
+                        passes = Boolean.TRUE.equals( _expression.evaluate( annotation ) );
+                    } catch ( UnsupportedValueException e ) {
+                        passes = getJavascript().matches( annotation );
+                    }
+                }
+                if ( passes ) {
                     filtered.add( annotation );
                 }
             }
-
-        } catch (Exception e) {
-            e.printStackTrace();
+        } catch ( ScriptException e ) {
+            LOGGER.error( "Error evaluating filter script", e );
         }
         return filtered;
     }
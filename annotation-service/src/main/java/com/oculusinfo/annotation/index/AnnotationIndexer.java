@@ -26,9 +26,13 @@ package com.oculusinfo.annotation.index;
 import com.oculusinfo.annotation.AnnotationData;
 import com.oculusinfo.binning.BinIndex;
 import com.oculusinfo.binning.TileAndBinIndices;
+import com.oculusinfo.binning.TileIndex;
 import com.oculusinfo.binning.TilePyramid;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public abstract class AnnotationIndexer {
 
@@ -40,5 +44,33 @@ public abstract class AnnotationIndexer {
     public abstract List<TileAndBinIndices> getIndices( AnnotationData<?> data, TilePyramid pyramid );
     public abstract List<TileAndBinIndices> getIndicesByLevel( AnnotationData<?> data, int level, TilePyramid pyramid );
 
+    /**
+     * Index a whole batch of annotations at once, grouping them by the tile
+     * and bin into which each falls, on every level.
+     *
+     * @return A map from each affected tile to the annotations in each of its
+     *         affected bins, in the order tiles were first encountered.
+     */
+    public Map<TileIndex, Map<BinIndex, List<AnnotationData<?>>>> getIndicesByTile( Iterable<AnnotationData<?>> data,
+                                                                                  TilePyramid pyramid ) {
+        Map<TileIndex, Map<BinIndex, List<AnnotationData<?>>>> byTile = new LinkedHashMap<>();
+        for ( AnnotationData<?> annotation : data ) {
+            for ( TileAndBinIndices index : getIndices( annotation, pyramid ) ) {
+                Map<BinIndex, List<AnnotationData<?>>> byBin = byTile.get( index.getTile() );
+                if ( null == byBin ) {
+                    byBin = new LinkedHashMap<>();
+                    byTile.put( index.getTile(), byBin );
+                }
+                List<AnnotationData<?>> binData = byBin.get( index.getBin() );
+                if ( null == binData ) {
+                    binData = new ArrayList<>();
+                    byBin.put( index.getBin(), binData );
+                }
+                binData.add( annotation );
+            }
+        }
+        return byTile;
+    }
+
     
 }
@@ -26,6 +26,7 @@ package com.oculusinfo.annotation.init;
 
 import com.oculusinfo.annotation.filter.AnnotationFilter;
 import com.oculusinfo.annotation.filter.impl.EmptyFilterFactory;
+import com.oculusinfo.annotation.filter.impl.ExpressionFilterFactory;
 import com.oculusinfo.annotation.filter.impl.NMostRecentByGroupFactory;
 import com.oculusinfo.annotation.filter.impl.ScriptableFilterFactory;
 import com.oculusinfo.factory.ConfigurableFactory;
@@ -69,6 +70,12 @@ public enum DefaultAnnotationFilterFactoryProvider implements FactoryProvider<An
 				List<String> path) {
 			return new ScriptableFilterFactory(parent, path);
 		}
+	}), EXPRESSION(new Constructor() {
+		@Override
+		public ConfigurableFactory<AnnotationFilter> create (ConfigurableFactory<?> parent,
+				List<String> path) {
+			return new ExpressionFilterFactory(parent, path);
+		}
 	});
 
 	// -------------------------------------
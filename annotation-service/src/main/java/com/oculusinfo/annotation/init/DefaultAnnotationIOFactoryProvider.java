@@ -27,6 +27,7 @@ package com.oculusinfo.annotation.init;
 import com.oculusinfo.annotation.io.AnnotationIO;
 import com.oculusinfo.annotation.io.impl.FileSystemAnnotationIOFactory;
 import com.oculusinfo.annotation.io.impl.HBaseAnnotationIOFactory;
+import com.oculusinfo.annotation.io.impl.LogStructuredAnnotationIOFactory;
 import com.oculusinfo.factory.ConfigurableFactory;
 import com.oculusinfo.factory.providers.FactoryProvider;
 
@@ -55,6 +56,12 @@ public enum DefaultAnnotationIOFactoryProvider implements FactoryProvider<Annota
             public ConfigurableFactory<AnnotationIO> create(ConfigurableFactory<?> parent, List<String> path) {
                 return new FileSystemAnnotationIOFactory(parent, path);
             }
+    }),
+    LOG(new Constructor() {
+            @Override
+            public ConfigurableFactory<AnnotationIO> create(ConfigurableFactory<?> parent, List<String> path) {
+                return new LogStructuredAnnotationIOFactory(parent, path);
+            }
     });
 
 
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc. 
+ * http://www.oculusinfo.com/
+ * 
+ * Released under the MIT License.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.annotation.io;
+
+import com.oculusinfo.annotation.AnnotationData;
+import com.oculusinfo.annotation.AnnotationTile;
+import com.oculusinfo.annotation.impl.JSONAnnotation;
+import com.oculusinfo.annotation.index.AnnotationIndexer;
+import com.oculusinfo.annotation.index.impl.AnnotationIndexerImpl;
+import com.oculusinfo.annotation.io.impl.FileSystemAnnotationIO;
+import com.oculusinfo.annotation.io.impl.FileSystemAnnotationSource;
+import com.oculusinfo.annotation.io.impl.HBaseAnnotationIO;
+import com.oculusinfo.annotation.io.serialization.AnnotationSerializer;
+import com.oculusinfo.annotation.io.serialization.JSONAnnotationDataSerializer;
+import com.oculusinfo.binning.BinIndex;
+import com.oculusinfo.binning.TileIndex;
+import com.oculusinfo.binning.TilePyramid;
+import com.oculusinfo.binning.impl.AOITilePyramid;
+import com.oculusinfo.binning.impl.WebMercatorTilePyramid;
+import com.oculusinfo.binning.io.PyramidIO;
+import com.oculusinfo.binning.io.impl.FileBasedPyramidIO;
+import com.oculusinfo.binning.io.impl.FileSystemPyramidSource;
+import com.oculusinfo.binning.io.impl.HBasePyramidIO;
+import com.oculusinfo.binning.io.serialization.TileSerializer;
+import com.oculusinfo.binning.io.serialization.impl.StringLongPairArrayMapJsonSerializer;
+import com.oculusinfo.factory.util.Pair;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Loads large numbers of annotations at once, bypassing the one-at-a-time
+ * write path of the annotation service.
+ *
+ * Each batch of annotations is indexed as a whole and grouped by tile; every
+ * affected tile is then read once, has all its new annotations merged into
+ * its bins (with a single sort per bin), and is written back once, and all
+ * the annotation records are written in a single call to the AnnotationIO.
+ *
+ * This works with any PyramidIO and AnnotationIO - in particular, with both
+ * the file system and HBase implementations.  It does no locking of its own;
+ * it should not be run against a layer that is simultaneously being edited
+ * through the annotation service, except through
+ * {@link com.oculusinfo.annotation.rest.AnnotationService#writeAll}.
+ *
+ * Command line arguments, when run stand-alone, are as follows:
+ *
+ * -input -- File of annotations to load, one JSON annotation per line [required].
+ *
+ * -id -- Data id (table name or directory) of the annotation layer [required].
+ *
+ * -root -- Root path for file system storage.  Used if -zk isn't given.  Default = ./
+ *
+ * -extension -- File extension for file system storage.  Default = json
+ *
+ * -zk -- Zookeeper Quorum, for HBase storage.
+ *
+ * -zkport -- Zookeeper Port.  Default = 2181
+ *
+ * -hbase -- HBase master, for HBase storage.
+ *
+ * -bounds -- minX,minY,maxX,maxY of an area-of-interest pyramid.  Default is a web mercator pyramid.
+ *
+ * -batch -- Number of annotations to load at once.  Default = 10000
+ */
+public class AnnotationBulkLoader {
+
+	public static final int DEFAULT_BATCH_SIZE = 10000;
+
+	private PyramidIO _tileIO;
+	private TileSerializer<Map<String, List<Pair<String, Long>>>> _tileSerializer;
+	private AnnotationIO _dataIO;
+	private AnnotationSerializer _dataSerializer;
+	private AnnotationIndexer _indexer;
+	private TilePyramid _pyramid;
+
+	public AnnotationBulkLoader( PyramidIO tileIO,
+	                             TileSerializer<Map<String, List<Pair<String, Long>>>> tileSerializer,
+	                             AnnotationIO dataIO,
+	                             AnnotationSerializer dataSerializer,
+	                             AnnotationIndexer indexer,
+	                             TilePyramid pyramid ) {
+		_tileIO = tileIO;
+		_tileSerializer = tileSerializer;
+		_dataIO = dataIO;
+		_dataSerializer = dataSerializer;
+		_indexer = indexer;
+		_pyramid = pyramid;
+	}
+
+
+	/**
+	 * Write a single batch of annotations.
+	 *
+	 * @param id The data id of the annotation layer
+	 * @param annotations The annotations to write
+	 * @return The certificates of the written annotations, in order
+	 */
+	public List<Pair<String, Long>> write( String id, List<AnnotationData<?>> annotations ) throws IOException {
+
+		List<Pair<String, Long>> certificates = new ArrayList<>( annotations.size() );
+		if ( annotations.isEmpty() ) {
+			return certificates;
+		}
+
+		// group the batch by tile and bin
+		Map<TileIndex, Map<BinIndex, List<AnnotationData<?>>>> byTile = _indexer.getIndicesByTile( annotations, _pyramid );
+
+		// read all the existing tiles at once
+		Map<TileIndex, AnnotationTile> tiles = new HashMap<>();
+		List<TileIndex> indices = new ArrayList<>( byTile.keySet() );
+		for ( AnnotationTile tile : AnnotationTile.convertFromRaw( _tileIO.readTiles( id, _tileSerializer, indices ) ) ) {
+			tiles.put( tile.getDefinition(), tile );
+		}
+
+		// merge each bin's new annotations in at once
+		List<AnnotationTile> tilesToWrite = new ArrayList<>( byTile.size() );
+		for ( Map.Entry<TileIndex, Map<BinIndex, List<AnnotationData<?>>>> entry : byTile.entrySet() ) {
+			AnnotationTile tile = tiles.get( entry.getKey() );
+			if ( null == tile ) {
+				tile = new AnnotationTile( entry.getKey() );
+			}
+			for ( Map.Entry<BinIndex, List<AnnotationData<?>>> bin : entry.getValue().entrySet() ) {
+				tile.addDataToBin( bin.getKey(), bin.getValue() );
+			}
+			tilesToWrite.add( tile );
+		}
+
+		// write every tile, and every annotation, once
+		_tileIO.writeTiles( id, _tileSerializer, AnnotationTile.convertToRaw( tilesToWrite ) );
+		_dataIO.writeData( id, _dataSerializer, annotations );
+
+		for ( AnnotationData<?> annotation : annotations ) {
+			certificates.add( annotation.getCertificate() );
+		}
+		return certificates;
+	}
+
+
+	/**
+	 * Write any number of annotations, in batches.
+	 *
+	 * @param id The data id of the annotation layer
+	 * @param annotations The annotations to write
+	 * @param batchSize The number of annotations to write at once
+	 * @return The total number of annotations written
+	 */
+	public long write( String id, Iterable<AnnotationData<?>> annotations, int batchSize ) throws IOException {
+		_tileIO.initializeForWrite( id );
+		_dataIO.initializeForWrite( id );
+
+		long count = 0;
+		List<AnnotationData<?>> batch = new ArrayList<>( batchSize );
+		for ( AnnotationData<?> annotation : annotations ) {
+			batch.add( annotation );
+			if ( batch.size() >= batchSize ) {
+				count += write( id, batch ).size();
+				batch.clear();
+			}
+		}
+		count += write( id, batch ).size();
+		return count;
+	}
+
+
+	/*
+	 * Read a file of annotations, one JSON object per line, lazily
+	 */
+	private static Iterable<AnnotationData<?>> readAnnotations( final BufferedReader reader ) {
+		return new Iterable<AnnotationData<?>>() {
+			@Override
+			public Iterator<AnnotationData<?>> iterator() {
+				return new Iterator<AnnotationData<?>>() {
+					private String _next = advance();
+
+					private String advance() {
+						try {
+							String line;
+							do {
+								line = reader.readLine();
+							} while ( null != line && line.trim().isEmpty() );
+							return line;
+						} catch ( IOException e ) {
+							throw new IllegalArgumentException( "Error reading annotations", e );
+						}
+					}
+
+					@Override
+					public boolean hasNext() {
+						return null != _next;
+					}
+
+					@Override
+					public AnnotationData<?> next() {
+						try {
+							AnnotationData<?> annotation = JSONAnnotation.fromJSON( new JSONObject( _next ) );
+							_next = advance();
+							return annotation;
+						} catch ( JSONException e ) {
+							throw new IllegalArgumentException( "Bad annotation: " + _next, e );
+						}
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+
+
+	public static void main( String[] args ) {
+		try {
+			// parse "-name value" pairs
+			Map<String, String> argMap = new HashMap<>();
+			for ( int i = 0; i < args.length; ++i ) {
+				if ( args[i].startsWith( "-" ) && i + 1 < args.length ) {
+					argMap.put( args[i].substring( 1 ), args[++i] );
+				}
+			}
+			if ( !argMap.containsKey( "input" ) ) {
+				throw new IllegalArgumentException( "-input command line parameter not found!" );
+			}
+			if ( !argMap.containsKey( "id" ) ) {
+				throw new IllegalArgumentException( "-id command line parameter not found!" );
+			}
+			String id = argMap.get( "id" );
+			int batchSize = argMap.containsKey( "batch" ) ? Integer.parseInt( argMap.get( "batch" ) ) : DEFAULT_BATCH_SIZE;
+
+			TilePyramid pyramid;
+			if ( argMap.containsKey( "bounds" ) ) {
+				String[] bounds = argMap.get( "bounds" ).split( "," );
+				pyramid = new AOITilePyramid( Double.parseDouble( bounds[0] ), Double.parseDouble( bounds[1] ),
+				                              Double.parseDouble( bounds[2] ), Double.parseDouble( bounds[3] ) );
+			} else {
+				pyramid = new WebMercatorTilePyramid();
+			}
+
+			PyramidIO tileIO;
+			AnnotationIO dataIO;
+			if ( argMap.containsKey( "zk" ) ) {
+				String zkPort = argMap.containsKey( "zkport" ) ? argMap.get( "zkport" ) : "2181";
+				tileIO = new HBasePyramidIO( argMap.get( "zk" ), zkPort, argMap.get( "hbase" ) );
+				dataIO = new HBaseAnnotationIO( argMap.get( "zk" ), zkPort, argMap.get( "hbase" ) );
+			} else {
+				String root = argMap.containsKey( "root" ) ? argMap.get( "root" ) : "./";
+				String extension = argMap.containsKey( "extension" ) ? argMap.get( "extension" ) : "json";
+				tileIO = new FileBasedPyramidIO( new FileSystemPyramidSource( root, extension ) );
+				dataIO = new FileSystemAnnotationIO( new FileSystemAnnotationSource( root, extension ) );
+			}
+
+			AnnotationBulkLoader loader = new AnnotationBulkLoader( tileIO, new StringLongPairArrayMapJsonSerializer(),
+			                                                        dataIO, new JSONAnnotationDataSerializer(),
+			                                                        new AnnotationIndexerImpl(), pyramid );
+
+			long start = System.currentTimeMillis();
+			BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( argMap.get( "input" ) ), "UTF-8" ) );
+			long count;
+			try {
+				count = loader.write( id, readAnnotations( reader ), batchSize );
+			} finally {
+				reader.close();
+			}
+			System.out.println( "Loaded " + count + " annotations into " + id + " in "
+			                    + ( System.currentTimeMillis() - start ) / 1000.0 + " seconds" );
+
+		} catch ( Exception e ) {
+			e.printStackTrace();
+
+			System.out.println( "" );
+			System.out.println( "---- See comments in AnnotationBulkLoader.java for usage syntax" );
+		}
+	}
+}
@@ -0,0 +1,548 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.annotation.io.impl;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.oculusinfo.factory.util.Pair;
+
+
+/**
+ * An append-only, single-file key/value log with an in-memory index.
+ *
+ * Each record is laid out as
+ * <pre>
+ *   int    length of everything below
+ *   byte   operation (put or delete)
+ *   short  key length
+ *   byte[] key (UTF-8)
+ *   byte[] value (puts only)
+ *   int    CRC32 of operation, key and value
+ * </pre>
+ *
+ * Puts and deletes only ever append; the index maps each live key to the
+ * position of its latest record, and is rebuilt by scanning the file on
+ * open, truncating any torn record left at the end by a crash.  Once
+ * superseded records make up enough of the file, live records are copied to
+ * a new file in the background, which then atomically replaces the old one.
+ *
+ * All methods are thread-safe.  Reads proceed concurrently with each other
+ * and with the bulk of a compaction; writes are serialized.
+ */
+class AnnotationLog {
+	private static final Logger LOGGER = LoggerFactory.getLogger(AnnotationLog.class);
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final byte OP_PUT    = 1;
+	private static final byte OP_DELETE = 2;
+	// length, operation, key length and checksum
+	private static final int  OVERHEAD  = 4 + 1 + 2 + 4;
+
+
+
+	private static class Entry {
+		final long offset;
+		final int  length;
+		Entry (long offset, int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	private static final Comparator<Entry> BY_OFFSET = new Comparator<Entry>() {
+		@Override
+		public int compare (Entry a, Entry b) {
+			return Long.compare(a.offset, b.offset);
+		}
+	};
+
+
+
+	private final File            _file;
+	private final boolean         _syncOnWrite;
+	private final double          _compactionRatio;
+	private final long            _compactionMinimum;
+	private final Executor        _compactor;
+	private final ReadWriteLock   _lock;
+	private final AtomicBoolean   _compacting;
+	private FileChannel           _channel;
+	private Map<String, Entry>    _index;
+	private long                  _end;
+	private long                  _garbage;
+	private volatile boolean      _dirty;
+	private boolean               _closed;
+
+	/**
+	 * Open (or create) a log
+	 *
+	 * @param file The log file
+	 * @param syncOnWrite If true, every batch of writes is forced to disk
+	 *            before returning; if false, callers should call
+	 *            {@link #sync()} periodically
+	 * @param compactionRatio The fraction of the file that must be garbage
+	 *            before it is compacted
+	 * @param compactionMinimum The minimum file size, in bytes, before the
+	 *            file is ever compacted
+	 * @param compactor The executor on which to run compactions; if null,
+	 *            the log is only compacted on demand.
+	 */
+	AnnotationLog (File file, boolean syncOnWrite, double compactionRatio,
+	               long compactionMinimum, Executor compactor) throws IOException {
+		_file = file;
+		_syncOnWrite = syncOnWrite;
+		_compactionRatio = compactionRatio;
+		_compactionMinimum = compactionMinimum;
+		_compactor = compactor;
+		_lock = new ReentrantReadWriteLock();
+		_compacting = new AtomicBoolean(false);
+		_dirty = false;
+
+		_channel = open(file);
+		load();
+	}
+
+	private static FileChannel open (File file) throws IOException {
+		return FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+		                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	// Scan the whole file, building the index
+	private void load () throws IOException {
+		_index = new HashMap<>();
+		_garbage = 0;
+
+		long size = _channel.size();
+		long offset = 0;
+		_channel.position(0);
+		// Not closed, as that would close the channel
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(_channel), 1 << 16));
+		CRC32 crc = new CRC32();
+		try {
+			while (offset + 4 <= size) {
+				int length = in.readInt();
+				if (length < OVERHEAD - 4 || offset + 4 + length > size) break;
+
+				byte[] body = new byte[length];
+				in.readFully(body);
+				int checked = length - 4;
+				crc.reset();
+				crc.update(body, 0, checked);
+				if ((int) crc.getValue() != ByteBuffer.wrap(body).getInt(checked)) break;
+
+				int keyLength = ((body[1] & 0xff) << 8) | (body[2] & 0xff);
+				String key = new String(body, 3, keyLength, UTF8);
+				int recordLength = length + 4;
+
+				Entry previous;
+				if (OP_PUT == body[0]) {
+					previous = _index.put(key, new Entry(offset, recordLength));
+				} else {
+					previous = _index.remove(key);
+					_garbage += recordLength;
+				}
+				if (null != previous) _garbage += previous.length;
+				offset += recordLength;
+			}
+		} catch (EOFException e) {
+			// Torn record; handled below
+		}
+
+		if (offset < size) {
+			LOGGER.warn("Truncating {} bytes of incomplete records from the end of {}", size - offset, _file);
+			_channel.truncate(offset);
+		}
+		_end = offset;
+	}
+
+	private static byte[] encode (byte operation, String key, byte[] value, CRC32 crc) {
+		byte[] keyBytes = key.getBytes(UTF8);
+		if (keyBytes.length > 0xffff)
+			throw new IllegalArgumentException("Key too long: "+key);
+		int valueLength = (null == value) ? 0 : value.length;
+		int length = OVERHEAD + keyBytes.length + valueLength;
+
+		ByteBuffer record = ByteBuffer.allocate(length);
+		record.putInt(length - 4);
+		record.put(operation);
+		record.putShort((short) keyBytes.length);
+		record.put(keyBytes);
+		if (null != value) record.put(value);
+		crc.reset();
+		crc.update(record.array(), 4, length - 8);
+		record.putInt((int) crc.getValue());
+		return record.array();
+	}
+
+	private void ensureOpen () throws IOException {
+		if (null == _channel) throw new IOException("Annotation log "+_file+" is closed");
+	}
+
+	private void writeFully (FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	private void append (List<String> keys, List<byte[]> records) throws IOException {
+		int total = 0;
+		for (byte[] record: records) total += record.length;
+		ByteBuffer batch = ByteBuffer.allocate(total);
+		for (byte[] record: records) batch.put(record);
+		batch.flip();
+
+		// Records past the old end only become visible once the index is
+		// updated, so a failed write is simply overwritten by the next one.
+		writeFully(_channel, batch, _end);
+		long offset = _end;
+		for (int i=0; i<records.size(); ++i) {
+			int length = records.get(i).length;
+			Entry previous;
+			if (OP_PUT == records.get(i)[4]) {
+				previous = _index.put(keys.get(i), new Entry(offset, length));
+			} else {
+				previous = _index.remove(keys.get(i));
+				_garbage += length;
+			}
+			if (null != previous) _garbage += previous.length;
+			offset += length;
+		}
+		_end = offset;
+
+		if (_syncOnWrite) {
+			_channel.force(false);
+		} else {
+			_dirty = true;
+		}
+		scheduleCompaction();
+	}
+
+	/**
+	 * Write a batch of values, replacing any existing values with the same
+	 * keys.
+	 */
+	void put (List<Pair<String, byte[]>> values) throws IOException {
+		if (values.isEmpty()) return;
+		List<String> keys = new ArrayList<>(values.size());
+		List<byte[]> records = new ArrayList<>(values.size());
+		CRC32 crc = new CRC32();
+		for (Pair<String, byte[]> value: values) {
+			keys.add(value.getFirst());
+			records.add(encode(OP_PUT, value.getFirst(), value.getSecond(), crc));
+		}
+
+		_lock.writeLock().lock();
+		try {
+			ensureOpen();
+			append(keys, records);
+		} finally {
+			_lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove a batch of keys.  Keys not in the log are ignored.
+	 */
+	void delete (Iterable<String> keys) throws IOException {
+		CRC32 crc = new CRC32();
+		_lock.writeLock().lock();
+		try {
+			ensureOpen();
+			Set<String> seen = new HashSet<>();
+			List<String> deleted = new ArrayList<>();
+			List<byte[]> records = new ArrayList<>();
+			for (String key: keys) {
+				if (_index.containsKey(key) && seen.add(key)) {
+					deleted.add(key);
+					records.add(encode(OP_DELETE, key, null, crc));
+				}
+			}
+			if (!records.isEmpty()) append(deleted, records);
+		} finally {
+			_lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Read the values for a batch of keys.  Records are read in file order,
+	 * but returned in the order of the keys given, with nulls for missing
+	 * keys.
+	 */
+	List<byte[]> get (List<String> keys) throws IOException {
+		byte[][] values = new byte[keys.size()][];
+		CRC32 crc = new CRC32();
+
+		_lock.readLock().lock();
+		try {
+			ensureOpen();
+			final Entry[] entries = new Entry[keys.size()];
+			List<Integer> order = new ArrayList<>(keys.size());
+			for (int i=0; i<entries.length; ++i) {
+				entries[i] = _index.get(keys.get(i));
+				if (null != entries[i]) order.add(i);
+			}
+			Collections.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare (Integer a, Integer b) {
+					return BY_OFFSET.compare(entries[a], entries[b]);
+				}
+			});
+
+			for (int i: order) {
+				Entry entry = entries[i];
+				ByteBuffer record = ByteBuffer.allocate(entry.length);
+				long position = entry.offset;
+				while (record.hasRemaining()) {
+					int read = _channel.read(record, position);
+					if (read < 0) throw new IOException("Unexpected end of "+_file);
+					position += read;
+				}
+				byte[] bytes = record.array();
+				crc.reset();
+				crc.update(bytes, 4, entry.length - 8);
+				if ((int) crc.getValue() != record.getInt(entry.length - 4))
+					throw new IOException("Corrupt record for "+keys.get(i)+" in "+_file);
+				int keyLength = ((bytes[5] & 0xff) << 8) | (bytes[6] & 0xff);
+				int start = 7 + keyLength;
+				values[i] = Arrays.copyOfRange(bytes, start, entry.length - 4);
+			}
+		} finally {
+			_lock.readLock().unlock();
+		}
+		return Arrays.asList(values);
+	}
+
+	/**
+	 * Force any unsynced writes to disk.
+	 */
+	void sync () throws IOException {
+		if (!_dirty) return;
+		_lock.readLock().lock();
+		try {
+			if (null != _channel && _dirty) {
+				_dirty = false;
+				_channel.force(false);
+			}
+		} finally {
+			_lock.readLock().unlock();
+		}
+	}
+
+	int count () {
+		_lock.readLock().lock();
+		try {
+			return _index.size();
+		} finally {
+			_lock.readLock().unlock();
+		}
+	}
+
+	long size () {
+		_lock.readLock().lock();
+		try {
+			return _end;
+		} finally {
+			_lock.readLock().unlock();
+		}
+	}
+
+	long garbage () {
+		_lock.readLock().lock();
+		try {
+			return _garbage;
+		} finally {
+			_lock.readLock().unlock();
+		}
+	}
+
+	// Called with the write lock held
+	private void scheduleCompaction () {
+		if (null == _compactor || _end < _compactionMinimum || _garbage <= _compactionRatio * _end)
+			return;
+		if (_compacting.compareAndSet(false, true)) {
+			_compactor.execute(new Runnable() {
+				@Override
+				public void run () {
+					try {
+						compact();
+					} catch (IOException e) {
+						LOGGER.warn("Error compacting annotation log "+_file, e);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Rewrite the log with only its live records.
+	 *
+	 * Live records are copied while holding only the read lock, so reads
+	 * continue during the copy (writes wait).  The write lock is taken only
+	 * to copy anything written between the two, and swap the files.
+	 */
+	synchronized void compact () throws IOException {
+		File compacted = new File(_file.getPath()+".compact");
+		FileChannel out = null;
+		boolean swapped = false;
+		try {
+			out = FileChannel.open(compacted.toPath(), StandardOpenOption.CREATE,
+			                       StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+			Map<String, Entry> copied = new HashMap<>();
+			long snapshotEnd;
+			long outEnd = 0;
+			_lock.readLock().lock();
+			try {
+				ensureOpen();
+				snapshotEnd = _end;
+				List<Map.Entry<String, Entry>> live = new ArrayList<>(_index.entrySet());
+				Collections.sort(live, new Comparator<Map.Entry<String, Entry>>() {
+					@Override
+					public int compare (Map.Entry<String, Entry> a, Map.Entry<String, Entry> b) {
+						return BY_OFFSET.compare(a.getValue(), b.getValue());
+					}
+				});
+				for (Map.Entry<String, Entry> entry: live) {
+					Entry old = entry.getValue();
+					transfer(_channel, old, out);
+					copied.put(entry.getKey(), new Entry(outEnd, old.length));
+					outEnd += old.length;
+				}
+			} finally {
+				_lock.readLock().unlock();
+			}
+
+			_lock.writeLock().lock();
+			try {
+				ensureOpen();
+				// Anything below the snapshot end is unchanged since the copy;
+				// anything above it was written since, and must be copied now.
+				Map<String, Entry> index = new HashMap<>(_index.size());
+				List<Map.Entry<String, Entry>> recent = new ArrayList<>();
+				for (Map.Entry<String, Entry> entry: _index.entrySet()) {
+					if (entry.getValue().offset < snapshotEnd) {
+						index.put(entry.getKey(), copied.get(entry.getKey()));
+					} else {
+						recent.add(entry);
+					}
+				}
+				for (Map.Entry<String, Entry> entry: recent) {
+					Entry old = entry.getValue();
+					transfer(_channel, old, out);
+					index.put(entry.getKey(), new Entry(outEnd, old.length));
+					outEnd += old.length;
+				}
+				out.force(false);
+				out.close();
+				out = null;
+
+				long before = _end;
+				_channel.close();
+				_channel = null;
+				Files.move(compacted.toPath(), _file.toPath(),
+				           StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				swapped = true;
+				_channel = open(_file);
+				_index = index;
+				_end = outEnd;
+				_garbage = 0;
+				_dirty = false;
+				LOGGER.info("Compacted {} from {} to {} bytes", new Object[] {_file, before, outEnd});
+			} finally {
+				// Only reopen if the swap itself failed - not if the log was
+				// closed while the live records were being copied
+				if (null == _channel && !_closed) {
+					// Whichever file is now in place is consistent; reload from it
+					_channel = open(_file);
+					load();
+				}
+				_lock.writeLock().unlock();
+			}
+		} finally {
+			if (null != out) out.close();
+			if (!swapped) compacted.delete();
+			_compacting.set(false);
+		}
+	}
+
+	private static void transfer (FileChannel from, Entry entry, FileChannel to) throws IOException {
+		long done = 0;
+		while (done < entry.length) {
+			long count = from.transferTo(entry.offset + done, entry.length - done, to);
+			if (count <= 0) throw new IOException("Unexpected end of log copying record at "+entry.offset);
+			done += count;
+		}
+	}
+
+	void close () throws IOException {
+		_lock.writeLock().lock();
+		try {
+			_closed = true;
+			if (null != _channel) {
+				if (_dirty) _channel.force(false);
+				_channel.close();
+				_channel = null;
+			}
+		} finally {
+			_lock.writeLock().unlock();
+		}
+	}
+
+	boolean isOpen () {
+		_lock.readLock().lock();
+		try {
+			return null != _channel;
+		} finally {
+			_lock.readLock().unlock();
+		}
+	}
+}
@@ -66,10 +66,15 @@ public class FileSystemAnnotationSource implements AnnotationSource {
 	@Override
 	public void writeData (String basePath, AnnotationSerializer serializer,
 	                            Iterable<AnnotationData<?>> data) throws IOException {
+		File checkedParent = null;
 		for (AnnotationData<?> d: data) {
 			File annotationFile = getAnnotationFile( basePath, d.getCertificate() );
 			File parent = annotationFile.getParentFile();
-			if (!parent.exists()) parent.mkdirs();
+			// All annotations share a directory, so only check it once per batch
+			if (!parent.equals(checkedParent)) {
+				if (!parent.exists()) parent.mkdirs();
+				checkedParent = parent;
+			}
 
 			FileOutputStream fileStream = new FileOutputStream(annotationFile);
 			serializer.serialize(d, fileStream);
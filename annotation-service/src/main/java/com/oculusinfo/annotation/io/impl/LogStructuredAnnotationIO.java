@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.annotation.io.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.oculusinfo.annotation.AnnotationData;
+import com.oculusinfo.annotation.io.AnnotationIO;
+import com.oculusinfo.annotation.io.serialization.AnnotationSerializer;
+import com.oculusinfo.annotation.io.serialization.BinaryAnnotationDataSerializer;
+import com.oculusinfo.factory.util.Pair;
+
+
+/**
+ * An annotation store that keeps all the annotations of a layer in a single
+ * append-only log file (root/id/data.log), instead of one file per
+ * annotation, as {@link FileSystemAnnotationIO} does.
+ *
+ * Annotations are stored in a compact binary form
+ * ({@link BinaryAnnotationDataSerializer}) regardless of the serializer
+ * passed in, which is only used to describe the data to the caller.  Each log
+ * keeps an in-memory index from annotation UUID to record, so reads are a
+ * single positional read per annotation, and is compacted in the background
+ * once enough of it has been superseded or removed.
+ *
+ * Logs are shared by every instance pointing at the same directory, so the
+ * settings of the first instance to open a log are the ones that apply to it.
+ */
+public class LogStructuredAnnotationIO implements AnnotationIO {
+	private static final Logger LOGGER = LoggerFactory.getLogger(LogStructuredAnnotationIO.class);
+	public static final String LOG_FILENAME = "data.log";
+
+	private static final Map<String, AnnotationLog> LOGS = new ConcurrentHashMap<>();
+	private static final ScheduledExecutorService BACKGROUND = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread (Runnable runnable) {
+			Thread thread = new Thread(runnable, "annotation-log-maintenance");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final String                     _rootPath;
+	private final long                       _syncInterval;
+	private final double                     _compactionRatio;
+	private final long                       _compactionMinimum;
+	private final Map<String, AnnotationLog> _openLogs;
+	private final AnnotationSerializer       _recordSerializer;
+	private ScheduledFuture<?>               _syncTask;
+
+	public LogStructuredAnnotationIO (String rootPath) {
+		this(rootPath, 0, 0.5, 1 << 20);
+	}
+
+	/**
+	 * @param rootPath The directory under which to keep logs
+	 * @param syncInterval How often, in milliseconds, to force writes to
+	 *            disk. If 0, each batch of writes is forced to disk before
+	 *            returning; if negative, writes are never explicitly forced.
+	 * @param compactionRatio The fraction of a log that must be obsolete
+	 *            before it is compacted
+	 * @param compactionMinimum The minimum size, in bytes, of a log before it
+	 *            is compacted
+	 */
+	public LogStructuredAnnotationIO (String rootPath, long syncInterval,
+	                                  double compactionRatio, long compactionMinimum) {
+		//if there's no root path, then it should be based on a relative path
+		if (rootPath == null || rootPath.trim().length() == 0) {
+			rootPath = "./";
+		}
+		_rootPath = rootPath.trim();
+		_syncInterval = syncInterval;
+		_compactionRatio = compactionRatio;
+		_compactionMinimum = compactionMinimum;
+		_openLogs = new ConcurrentHashMap<>();
+		_recordSerializer = new BinaryAnnotationDataSerializer();
+
+		if (syncInterval > 0) {
+			_syncTask = BACKGROUND.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run () {
+					sync();
+				}
+			}, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private AnnotationLog getLog (String id) throws IOException {
+		AnnotationLog log = _openLogs.get(id);
+		if (null != log && log.isOpen()) return log;
+
+		File directory = new File(_rootPath, id);
+		String key = directory.getCanonicalPath();
+		synchronized (LOGS) {
+			log = LOGS.get(key);
+			if (null == log || !log.isOpen()) {
+				if (!directory.exists() && !directory.mkdirs() && !directory.isDirectory())
+					throw new IOException("Couldn't create annotation directory "+directory);
+				log = new AnnotationLog(new File(directory, LOG_FILENAME), 0 == _syncInterval,
+				                        _compactionRatio, _compactionMinimum, BACKGROUND);
+				LOGS.put(key, log);
+			}
+		}
+		_openLogs.put(id, log);
+		return log;
+	}
+
+	@Override
+	public void initializeForWrite (String basePath) throws IOException {
+		getLog(basePath);
+	}
+
+	@Override
+	public void writeData (String basePath, AnnotationSerializer serializer,
+	                       Iterable<AnnotationData<?>> data) throws IOException {
+		List<Pair<String, byte[]>> records = new ArrayList<>();
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		for (AnnotationData<?> d: data) {
+			buffer.reset();
+			_recordSerializer.serialize(d, buffer);
+			records.add(new Pair<>(d.getCertificate().getFirst(), buffer.toByteArray()));
+		}
+		getLog(basePath).put(records);
+	}
+
+	@Override
+	public void initializeForRead (String basePath) {
+		try {
+			getLog(basePath);
+		} catch (IOException e) {
+			LOGGER.warn("Error opening annotation log for "+basePath, e);
+		}
+	}
+
+	@Override
+	public List<AnnotationData<?>> readData (String basePath,
+	                                         AnnotationSerializer serializer,
+	                                         Iterable<Pair<String, Long>> certificates) throws IOException {
+		List<String> keys = new ArrayList<>();
+		for (Pair<String, Long> certificate: certificates) {
+			if (null != certificate) keys.add(certificate.getFirst());
+		}
+
+		List<AnnotationData<?>> results = new ArrayList<>(keys.size());
+		if (keys.isEmpty()) return results;
+		for (byte[] record: getLog(basePath).get(keys)) {
+			if (null != record) {
+				results.add(_recordSerializer.deserialize(new ByteArrayInputStream(record)));
+			}
+		}
+		return results;
+	}
+
+	@Override
+	public void removeData (String basePath, Iterable<Pair<String, Long>> certificates) throws IOException {
+		List<String> keys = new ArrayList<>();
+		for (Pair<String, Long> certificate: certificates) {
+			if (null != certificate) keys.add(certificate.getFirst());
+		}
+		getLog(basePath).delete(keys);
+	}
+
+	/**
+	 * Compact the log for the given id now, rather than waiting for it to
+	 * accumulate enough garbage.
+	 */
+	public void compact (String basePath) throws IOException {
+		getLog(basePath).compact();
+	}
+
+	/**
+	 * Force all writes made through this instance to disk.
+	 */
+	public void sync () {
+		for (Map.Entry<String, AnnotationLog> entry: _openLogs.entrySet()) {
+			try {
+				entry.getValue().sync();
+			} catch (IOException e) {
+				LOGGER.warn("Error syncing annotation log for "+entry.getKey(), e);
+			}
+		}
+	}
+
+	/**
+	 * Sync and close all logs opened through this instance.
+	 */
+	public void close () throws IOException {
+		if (null != _syncTask) _syncTask.cancel(false);
+		for (AnnotationLog log: _openLogs.values()) {
+			log.close();
+		}
+		_openLogs.clear();
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.annotation.io.impl;
+
+import com.oculusinfo.annotation.io.AnnotationIO;
+import com.oculusinfo.factory.ConfigurableFactory;
+import com.oculusinfo.factory.SharedInstanceFactory;
+import com.oculusinfo.factory.properties.DoubleProperty;
+import com.oculusinfo.factory.properties.IntegerProperty;
+import com.oculusinfo.factory.properties.StringProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+
+public class LogStructuredAnnotationIOFactory extends SharedInstanceFactory<AnnotationIO> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(LogStructuredAnnotationIOFactory.class);
+	public static final String NAME = "log";
+
+	public static StringProperty ROOT_PATH = new StringProperty("root.path",
+		   "Indicates the root path of the annotation logs - a directory.  There is no default for this property.",
+		   null);
+	public static IntegerProperty SYNC_INTERVAL = new IntegerProperty("sync.interval",
+		   "How often, in milliseconds, to force annotation writes to disk.  If 0, every write is forced to disk before returning; if negative, this is left to the operating system.",
+		   0);
+	public static DoubleProperty COMPACTION_RATIO = new DoubleProperty("compaction.ratio",
+		   "The fraction of an annotation log that must be obsolete (overwritten or removed) before it is compacted.",
+		   0.5);
+
+	public LogStructuredAnnotationIOFactory(ConfigurableFactory<?> parent, List<String> path) {
+		super(NAME, AnnotationIO.class, parent, path);
+
+		addProperty(ROOT_PATH);
+		addProperty(SYNC_INTERVAL);
+		addProperty(COMPACTION_RATIO);
+	}
+
+	@Override
+	protected AnnotationIO createInstance () {
+		try {
+			String rootpath = getPropertyValue(ROOT_PATH).trim();
+			if (rootpath.startsWith( "file://" )) {
+				rootpath = rootpath.substring(7);
+			}
+			int syncInterval = getPropertyValue(SYNC_INTERVAL);
+			double compactionRatio = getPropertyValue(COMPACTION_RATIO);
+			return new LogStructuredAnnotationIO(rootpath, syncInterval, compactionRatio, 1 << 20);
+		}
+		catch (Exception e) {
+			LOGGER.error("Error trying to create LogStructuredAnnotationIO", e);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.annotation.io.serialization;
+
+import com.oculusinfo.annotation.AnnotationData;
+import com.oculusinfo.annotation.impl.JSONAnnotation;
+import com.oculusinfo.factory.util.Pair;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.UUID;
+
+
+/**
+ * A compact binary encoding of JSON annotations.
+ *
+ * Coordinates, level, range and certificate are written as fixed-width
+ * binary values behind a single byte of presence flags; only the free-form
+ * data object is kept as (UTF-8) JSON text.
+ */
+public class BinaryAnnotationDataSerializer implements AnnotationSerializer {
+
+	private static final long serialVersionUID = -3052219367093640287L;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int VERSION = 1;
+
+	private static final int HAS_X0    = 0x01;
+	private static final int HAS_X1    = 0x02;
+	private static final int HAS_Y0    = 0x04;
+	private static final int HAS_Y1    = 0x08;
+	private static final int HAS_LEVEL = 0x10;
+	private static final int HAS_RANGE = 0x20;
+	private static final int HAS_GROUP = 0x40;
+	private static final int HAS_DATA  = 0x80;
+
+	@Override
+	public void serialize (AnnotationData<?> annotation, OutputStream output) throws IOException {
+		DataOutputStream out = new DataOutputStream(output);
+
+		Double x0 = annotation.getX0();
+		Double x1 = annotation.getX1();
+		Double y0 = annotation.getY0();
+		Double y1 = annotation.getY1();
+		Integer level = annotation.getLevel();
+		Pair<Integer, Integer> range = annotation.getRange();
+		String group = annotation.getGroup();
+		Object data = annotation.getData();
+
+		int flags = 0;
+		if (null != x0) flags |= HAS_X0;
+		if (null != x1) flags |= HAS_X1;
+		if (null != y0) flags |= HAS_Y0;
+		if (null != y1) flags |= HAS_Y1;
+		if (null != level) flags |= HAS_LEVEL;
+		if (null != range) flags |= HAS_RANGE;
+		if (null != group) flags |= HAS_GROUP;
+		if (null != data) flags |= HAS_DATA;
+
+		out.writeByte(VERSION);
+		out.writeByte(flags);
+		if (null != x0) out.writeDouble(x0);
+		if (null != x1) out.writeDouble(x1);
+		if (null != y0) out.writeDouble(y0);
+		if (null != y1) out.writeDouble(y1);
+		if (null != level) out.writeInt(level);
+		if (null != range) {
+			out.writeInt(range.getFirst());
+			out.writeInt(range.getSecond());
+		}
+		if (null != group) out.writeUTF(group);
+
+		UUID uuid = annotation.getUUID();
+		out.writeLong(uuid.getMostSignificantBits());
+		out.writeLong(uuid.getLeastSignificantBits());
+		out.writeLong(annotation.getTimestamp());
+
+		if (null != data) {
+			byte[] text = data.toString().getBytes(UTF8);
+			out.writeInt(text.length);
+			out.write(text);
+		}
+		out.flush();
+	}
+
+	@Override
+	public AnnotationData<?> deserialize (InputStream rawData) throws IOException {
+		DataInputStream in = new DataInputStream(rawData);
+
+		int version = in.readUnsignedByte();
+		if (VERSION != version)
+			throw new IOException("Unknown binary annotation version "+version);
+		int flags = in.readUnsignedByte();
+
+		Double x0 = (0 != (flags & HAS_X0)) ? in.readDouble() : null;
+		Double x1 = (0 != (flags & HAS_X1)) ? in.readDouble() : null;
+		Double y0 = (0 != (flags & HAS_Y0)) ? in.readDouble() : null;
+		Double y1 = (0 != (flags & HAS_Y1)) ? in.readDouble() : null;
+		Integer level = (0 != (flags & HAS_LEVEL)) ? in.readInt() : null;
+		Pair<Integer, Integer> range = null;
+		if (0 != (flags & HAS_RANGE)) {
+			int min = in.readInt();
+			int max = in.readInt();
+			range = new Pair<>(min, max);
+		}
+		String group = (0 != (flags & HAS_GROUP)) ? in.readUTF() : null;
+		UUID uuid = new UUID(in.readLong(), in.readLong());
+		Long timestamp = in.readLong();
+
+		JSONObject data = null;
+		if (0 != (flags & HAS_DATA)) {
+			byte[] text = new byte[in.readInt()];
+			in.readFully(text);
+			try {
+				data = new JSONObject(new String(text, UTF8));
+			} catch (JSONException e) {
+				throw new IOException("Bad annotation data", e);
+			}
+		}
+		return new JSONAnnotation(x0, x1, y0, y1, level, range, group, uuid, timestamp, data);
+	}
+}
@@ -45,6 +45,18 @@ public interface AnnotationService {
      */
 	public abstract Pair<String,Long> write( String layer, AnnotationData<?> annotation ) throws IllegalArgumentException;
 
+    /**
+     * Write many annotations to the storage service at once. Each affected tile, and
+     * each annotation, is written only once, so this is far faster than writing the
+     * annotations one at a time.
+     *
+     * @param layer The layer identification string.
+     * @param annotations The annotation data objects to be written.
+     *
+     * @throws IllegalArgumentException
+     */
+	public abstract List<Pair<String,Long>> writeAll( String layer, List<AnnotationData<?>> annotations ) throws IllegalArgumentException;
+
     /**
      * Modify an annotation in the storage service
      *
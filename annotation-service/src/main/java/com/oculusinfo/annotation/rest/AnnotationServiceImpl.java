@@ -31,8 +31,11 @@ import com.oculusinfo.annotation.AnnotationTile;
 import com.oculusinfo.annotation.filter.AnnotationFilter;
 import com.oculusinfo.annotation.filter.impl.FilteredBinResults;
 import com.oculusinfo.annotation.index.AnnotationIndexer;
+import com.oculusinfo.annotation.io.AnnotationBulkLoader;
 import com.oculusinfo.annotation.io.AnnotationIO;
 import com.oculusinfo.annotation.io.serialization.AnnotationSerializer;
+import com.oculusinfo.annotation.util.StripedLocks;
+import com.oculusinfo.annotation.util.StripedLocks.LockSet;
 import com.oculusinfo.binning.BinIndex;
 import com.oculusinfo.binning.TileAndBinIndices;
 import com.oculusinfo.binning.TileIndex;
@@ -43,6 +46,7 @@ import com.oculusinfo.binning.io.serialization.SerializationTypeChecker;
 import com.oculusinfo.binning.util.JsonUtilities;
 import com.oculusinfo.factory.util.Pair;
 import com.oculusinfo.binning.util.TypeDescriptor;
+import com.oculusinfo.factory.ConfigurationException;
 import com.oculusinfo.factory.properties.JSONArrayProperty;
 import com.oculusinfo.factory.providers.FactoryProvider;
 import com.oculusinfo.tile.rendering.LayerConfiguration;
@@ -52,10 +56,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-
-
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Annotation reads and writes are locked per layer and tile, rather than
+ * globally, so that operations on different regions of a layer, or on
+ * different layers, can proceed in parallel.
+ *
+ * Every operation that changes an annotation first locks that annotation's
+ * UUID, then locks all the tiles it touches, on every level, at once.  Reads
+ * of a tile are optimistic: the tile is read unlocked, and only re-read under
+ * a lock if a write to it intervened.
+ */
 @Singleton
 public class AnnotationServiceImpl implements AnnotationService {
 	private static final Logger LOGGER = LoggerFactory.getLogger(AnnotationServiceImpl.class);
@@ -88,7 +101,13 @@ public class AnnotationServiceImpl implements AnnotationService {
     private FactoryProvider<AnnotationFilter> _annotationFilterFactoryProvider;
     private Map<String, Boolean> _initializedLayersById;
 	
-	protected final ReadWriteLock _lock = new ReentrantReadWriteLock();
+	private static final int TILE_LOCK_STRIPES = 256;
+	private static final int DATA_LOCK_STRIPES = 64;
+
+	// Locks on (layer, tile) and (layer, annotation UUID); to avoid deadlock,
+	// annotation locks are always taken before tile locks.
+	private final StripedLocks<Pair<String, TileIndex>> _tileLocks = new StripedLocks<>(TILE_LOCK_STRIPES);
+	private final StripedLocks<Pair<String, String>>    _dataLocks = new StripedLocks<>(DATA_LOCK_STRIPES);
 
     @Inject
 	public AnnotationServiceImpl( LayerService service,
@@ -102,7 +121,7 @@ public class AnnotationServiceImpl implements AnnotationService {
         _indexer = indexer;
         _annotationIOFactoryProvider = annotationIOFactoryProvider;
         _annotationFilterFactoryProvider = annotationFilterFactoryProvider;
-        _initializedLayersById = new HashMap<>();
+        _initializedLayersById = new ConcurrentHashMap<>();
 	}
 
     /**
@@ -141,8 +160,8 @@ public class AnnotationServiceImpl implements AnnotationService {
 
 	public Pair<String,Long> write( String layer,
 	                                AnnotationData<?> annotation ) throws IllegalArgumentException {
-		
-		_lock.writeLock().lock();
+
+		LockSet dataLock = lockData( layer, annotation.getCertificate() );
 		try {
 
 			LayerConfiguration config = getLayerConfiguration( layer, null );
@@ -153,43 +172,86 @@ public class AnnotationServiceImpl implements AnnotationService {
              * not exist. So in this case, for the first write, make the table if it does no exist
              * in a thread-safe manner.
              */
-            if ( !_initializedLayersById.containsKey( layer  ) ) {
-                String dataId = config.getPropertyValue( LayerConfiguration.DATA_ID );
-                AnnotationIO aio = config.produce( AnnotationIO.class );
-                aio.initializeForRead( dataId );
-                PyramidIO pio = config.produce( PyramidIO.class );
-                pio.initializeForRead( dataId, 0, 0, null );
-                _initializedLayersById.put( layer, true );
-            }
+            initializeLayer( layer, config );
+
+			// get list of the indices for all levels, and lock them all at once
+			List< TileAndBinIndices > indices = _indexer.getIndices( annotation, pyramid );
+			LockSet tileLocks = lockTiles( layer, convert( indices ) );
+			try {
+				/*
+				 * check if UUID results in IO collision, if so prevent io corruption
+				 * by throwing an exception, this is so statistically unlikely that
+				 * any further action is unnecessary
+				 */
+				if ( checkForCollision( layer, annotation ) ) {
+					throw new IllegalArgumentException("Unable to generate UUID without collision, WRITE operation aborted");
+				}
 
-			/*
-			 * check if UUID results in IO collision, if so prevent io corruption
-			 * by throwing an exception, this is so statistically unlikely that
-			 * any further action is unnecessary
-			 */
-			if ( checkForCollision( layer, annotation ) ) {
-				throw new IllegalArgumentException("Unable to generate UUID without collision, WRITE operation aborted");
-			}
+				updateTiles( layer, null, null, annotation, indices, pyramid );
 
-			addDataToTiles( layer, annotation, pyramid );
+				// return generated certificate
+				return annotation.getCertificate();
+			} finally {
+				tileLocks.unlock();
+			}
 
-			// return generated certificate
-			return annotation.getCertificate();
-    		
 		} catch ( Exception e ) {
 			e.printStackTrace();
 			throw new IllegalArgumentException( e.getMessage() );
 		} finally {
-			_lock.writeLock().unlock();
+			dataLock.unlock();
 		}
 
 	}
 
 
+	public List<Pair<String,Long>> writeAll( String layer,
+	                                         List<AnnotationData<?>> annotations ) throws IllegalArgumentException {
+
+		List< Pair<String, Long> > certificates = new ArrayList<>( annotations.size() );
+		for ( AnnotationData<?> annotation : annotations ) {
+			certificates.add( annotation.getCertificate() );
+		}
+
+		LockSet dataLocks = lockData( layer, certificates );
+		try {
+
+			LayerConfiguration config = getLayerConfiguration( layer, null );
+			TilePyramid pyramid = config.produce( TilePyramid.class );
+			initializeLayer( layer, config );
+
+			// lock every affected tile, on all levels, at once
+			Set<TileIndex> tiles = _indexer.getIndicesByTile( annotations, pyramid ).keySet();
+			LockSet tileLocks = lockTiles( layer, tiles );
+			try {
+				if ( readDataFromIO( layer, certificates ).size() > 0 ) {
+					throw new IllegalArgumentException("Unable to generate UUID without collision, WRITE operation aborted");
+				}
+
+				String dataId = config.getPropertyValue( LayerConfiguration.DATA_ID );
+				AnnotationBulkLoader loader = new AnnotationBulkLoader( config.produce( PyramidIO.class ),
+				                                                        getTileSerializer( config ),
+				                                                        config.produce( AnnotationIO.class ),
+				                                                        _dataSerializer,
+				                                                        _indexer,
+				                                                        pyramid );
+				return loader.write( dataId, annotations );
+			} finally {
+				tileLocks.unlock();
+			}
+
+		} catch ( Exception e ) {
+			throw new IllegalArgumentException( e.getMessage() );
+		} finally {
+			dataLocks.unlock();
+		}
+	}
+
+
 	public Pair<String,Long> modify( String layer,
 	                                 AnnotationData<?> annotation ) throws IllegalArgumentException {
 
-		_lock.writeLock().lock();
+		LockSet dataLock = lockData( layer, annotation.getCertificate() );
 		try {
 
 			/*
@@ -211,19 +273,29 @@ public class AnnotationServiceImpl implements AnnotationService {
 			 * tile so that we can filter from tiles without relying on reading the
 			 * individual annotations themselves
 			 */
-			// remove old annotation from tiles
-			removeDataFromTiles( layer, annotation.getCertificate(), pyramid );
-			// update certificate
-			annotation.updateCertificate();
-			// add new annotation to tiles
-			addDataToTiles( layer, annotation, pyramid );
-			// return updated certificate
-			return annotation.getCertificate();
+			AnnotationData<?> oldData = readDataFromIO( layer, Arrays.asList( annotation.getCertificate() ) ).get(0);
+			List< TileAndBinIndices > oldIndices = _indexer.getIndices( oldData, pyramid );
+			List< TileAndBinIndices > newIndices = _indexer.getIndices( annotation, pyramid );
+
+			// lock old and new tiles together, so they are acquired in a consistent order
+			Set<TileIndex> allTiles = new LinkedHashSet<>( convert( oldIndices ) );
+			allTiles.addAll( convert( newIndices ) );
+			LockSet tileLocks = lockTiles( layer, allTiles );
+			try {
+				// update certificate
+				annotation.updateCertificate();
+				// remove old annotation from tiles and add new one, in a single pass
+				updateTiles( layer, oldData, oldIndices, annotation, newIndices, pyramid );
+				// return updated certificate
+				return annotation.getCertificate();
+			} finally {
+				tileLocks.unlock();
+			}
 
 		} catch ( Exception e ) {
 			throw new IllegalArgumentException( e.getMessage() );
 		} finally {
-			_lock.writeLock().unlock();
+			dataLock.unlock();
 		}
 
 	}
@@ -231,26 +303,46 @@ public class AnnotationServiceImpl implements AnnotationService {
 
 	public List<List<AnnotationData<?>>> read( String layer, TileIndex index, JSONObject query ) {
 
-		_lock.readLock().lock();
 		try {
 
 			LayerConfiguration config = getLayerConfiguration( layer, query );
 			TilePyramid pyramid = config.produce( TilePyramid.class );
 			AnnotationFilter filter = config.produce( AnnotationFilter.class );
 
-			return getDataFromTiles( layer, index, filter, pyramid );
+			// try an unlocked read first; only if a write to this tile intervenes
+			// do we need to lock it and read again
+			Pair<String, TileIndex> key = new Pair<>( layer, index );
+			long stamp = _tileLocks.tryOptimisticRead( key );
+			if ( stamp >= 0 ) {
+				try {
+					List<List<AnnotationData<?>>> result = getDataFromTiles( layer, index, filter, pyramid );
+					if ( _tileLocks.validate( key, stamp ) ) {
+						return result;
+					}
+				} catch ( Exception e ) {
+					// Probably caught a write half-way; if not, the locked read will fail too
+					if ( _tileLocks.validate( key, stamp ) ) {
+						throw e;
+					}
+				}
+			}
+
+			LockSet tileLock = _tileLocks.lockForRead( Collections.singleton( key ) );
+			try {
+				return getDataFromTiles( layer, index, filter, pyramid );
+			} finally {
+				tileLock.unlock();
+			}
     		
 		} catch ( Exception e ) {
 			throw new IllegalArgumentException( e.getMessage() );
-		} finally { 		
-			_lock.readLock().unlock();
 		}
 	}
 	
 		
 	public void remove( String layer, Pair<String, Long> certificate ) throws IllegalArgumentException {
 
-		_lock.writeLock().lock();
+		LockSet dataLock = lockData( layer, certificate );
 		try {
 
 			LayerConfiguration config = getLayerConfiguration( layer, null );
@@ -265,15 +357,23 @@ public class AnnotationServiceImpl implements AnnotationService {
 				                                   + "REMOVE operation aborted. It is recommended "
 				                                   + "upon receiving this exception to refresh all client annotations");
 			}
-			// remove the certificates from tiles
-			removeDataFromTiles( layer, certificate, pyramid );
-			// remove data from io
-			removeDataFromIO( layer, certificate );
+
+			AnnotationData<?> data = readDataFromIO( layer, Arrays.asList( certificate ) ).get(0);
+			List< TileAndBinIndices > indices = _indexer.getIndices( data, pyramid );
+			LockSet tileLocks = lockTiles( layer, convert( indices ) );
+			try {
+				// remove the certificates from tiles
+				updateTiles( layer, data, indices, null, null, pyramid );
+				// remove data from io
+				removeDataFromIO( layer, certificate );
+			} finally {
+				tileLocks.unlock();
+			}
 
 		} catch ( Exception e ) {
 			throw new IllegalArgumentException( e.getMessage() );
 		} finally {
-			_lock.writeLock().unlock();
+			dataLock.unlock();
 		}
 	}
 
@@ -284,6 +384,44 @@ public class AnnotationServiceImpl implements AnnotationService {
 	 * 
 	 */	
 
+	/*
+	 * Initialize the IO for a layer the first time it is written
+	 */
+	private void initializeLayer( String layer, LayerConfiguration config ) throws Exception {
+		if ( _initializedLayersById.containsKey( layer ) ) return;
+
+		synchronized ( _initializedLayersById ) {
+			if ( !_initializedLayersById.containsKey( layer ) ) {
+				String dataId = config.getPropertyValue( LayerConfiguration.DATA_ID );
+				AnnotationIO aio = config.produce( AnnotationIO.class );
+				aio.initializeForRead( dataId );
+				PyramidIO pio = config.produce( PyramidIO.class );
+				pio.initializeForRead( dataId, 0, 0, null );
+				_initializedLayersById.put( layer, true );
+			}
+		}
+	}
+
+	private LockSet lockData( String layer, Pair<String, Long> certificate ) {
+		return lockData( layer, Collections.singleton( certificate ) );
+	}
+
+	private LockSet lockData( String layer, Collection< Pair<String, Long> > certificates ) {
+		List< Pair<String, String> > keys = new ArrayList<>( certificates.size() );
+		for ( Pair<String, Long> certificate : certificates ) {
+			keys.add( new Pair<>( layer, certificate.getFirst() ) );
+		}
+		return _dataLocks.lockForWrite( keys );
+	}
+
+	private LockSet lockTiles( String layer, Collection<TileIndex> tiles ) {
+		List< Pair<String, TileIndex> > keys = new ArrayList<>( tiles.size() );
+		for ( TileIndex tile : tiles ) {
+			keys.add( new Pair<>( layer, tile ) );
+		}
+		return _tileLocks.lockForWrite( keys );
+	}
+
 	/*
 	 * Check data UUID in IO, if already exists, return true
 	 */
@@ -345,36 +483,20 @@ public class AnnotationServiceImpl implements AnnotationService {
 	}
 	
 	/*
-	 * Iterate through all tiles, removing data certificate from bins, any tiles with no bin entries
-	 * are added to tileToRemove, the rest are added to tilesToWrite
+	 * Iterate through the given tiles, removing data certificate from bins
 	 */
-	private void removeDataCertificateFromTiles( List< AnnotationTile > tilesToWrite,
-	                                             List< TileIndex > tilesToRemove,
-	                                             List< AnnotationTile > tiles,
+	private void removeDataCertificateFromTiles( List< AnnotationTile > tiles,
+	                                             Set< TileIndex > indices,
 	                                             AnnotationData<?> data,
 	                                             TilePyramid pyramid ) {
-		// clear supplied lists
-		tilesToWrite.clear();
-		tilesToRemove.clear();	
-
 		// for each tile, remove data from bins
 		for ( AnnotationTile tile : tiles ) {
+			if ( !indices.contains( tile.getDefinition() ) ) continue;
 			// get bin index for the annotation in this tile
 			BinIndex binIndex = _indexer.getIndicesByLevel( data, tile.getDefinition().getLevel(), pyramid ).get(0).getBin();
 			// remove data from tile
             tile.removeDataFromBin(binIndex, data);
 		}	
-		
-		// determine which tiles need to be re-written and which need to be removed
-		for ( AnnotationTile tile : tiles ) {
-			if ( tile.isEmpty() ) {
-				// if no data left, flag tile for removal
-				tilesToRemove.add( tile.getDefinition() );
-			} else {
-				// flag tile to be written
-				tilesToWrite.add( tile );
-			}
-		}
 	}
 	
 	/*
@@ -439,42 +561,60 @@ public class AnnotationServiceImpl implements AnnotationService {
 		return dataByBin;
 	}
 
-	
-	private void addDataToTiles( String layer, AnnotationData<?> data, TilePyramid pyramid ) {
-		
-		// get list of the indices for all levels
-		List< TileAndBinIndices > indices = _indexer.getIndices( data, pyramid );
-		// get all affected tiles
-		List< AnnotationTile > tiles = readTilesFromIO( layer, convert( indices ) );
-		// add new data certificate to tiles
-		addDataCertificateToTiles( tiles, indices, data );
-		// write tiles back to io
-		writeTilesToIO( layer, tiles );    		
-		// write data to io
-		writeDataToIO( layer, data );
 
-	}
-	
-	
-	private void removeDataFromTiles( String layer, Pair<String, Long> certificate, TilePyramid pyramid ) {
+	/*
+	 * Remove an old annotation from its tiles and/or add a new one to its tiles,
+	 * with a single read of all affected tiles, on all levels, and a single
+	 * write.  Either the old or the new annotation may be null.
+	 */
+	private void updateTiles( String layer,
+	                          AnnotationData<?> oldData, List< TileAndBinIndices > oldIndices,
+	                          AnnotationData<?> newData, List< TileAndBinIndices > newIndices,
+	                          TilePyramid pyramid ) {
+
+		Set<TileIndex> oldTiles = new LinkedHashSet<>();
+		Set<TileIndex> allTiles = new LinkedHashSet<>();
+		if ( null != oldData ) {
+			oldTiles.addAll( convert( oldIndices ) );
+			allTiles.addAll( oldTiles );
+		}
+		if ( null != newData ) {
+			allTiles.addAll( convert( newIndices ) );
+		}
 
-		// read the annotation data
-		List< Pair<String, Long> > certificates = new ArrayList<>();
-		certificates.add( certificate );
-		AnnotationData<?> data = readDataFromIO( layer, certificates ).get(0);
-		// get list of the indices for all levels
-		List< TileAndBinIndices > indices = _indexer.getIndices( data, pyramid );
-		// read existing tiles
-		List< AnnotationTile > tiles = readTilesFromIO( layer, convert( indices ) );
-		// maintain lists of what bins to modify and what bins to remove
-		List< AnnotationTile > tilesToWrite = new LinkedList<>();
-		List< TileIndex > tilesToRemove = new LinkedList<>();
-		// remove data from tiles and organize into lists to write and remove
-		removeDataCertificateFromTiles( tilesToWrite, tilesToRemove, tiles, data, pyramid );
-		// write modified tiles
-		writeTilesToIO( layer, tilesToWrite );		
-		// remove empty tiles and data
+		// read all affected tiles
+		List< AnnotationTile > tiles = readTilesFromIO( layer, new ArrayList<>( allTiles ) );
+		if ( null != oldData ) {
+			removeDataCertificateFromTiles( tiles, oldTiles, oldData, pyramid );
+		}
+		if ( null != newData ) {
+			addDataCertificateToTiles( tiles, newIndices, newData );
+		}
+
+		// determine which tiles need to be re-written and which need to be removed
+		List< AnnotationTile > tilesToWrite = new ArrayList<>();
+		List< TileIndex > tilesToRemove = new ArrayList<>();
+		for ( AnnotationTile tile : tiles ) {
+			if ( tile.isEmpty() ) {
+				tilesToRemove.add( tile.getDefinition() );
+			} else {
+				tilesToWrite.add( tile );
+			}
+		}
+
+		writeTilesToIO( layer, tilesToWrite );
 		removeTilesFromIO( layer, tilesToRemove );
+		if ( null != newData ) {
+			writeDataToIO( layer, newData );
+		}
+	}
+
+
+	private TileSerializer<Map<String, List<Pair<String, Long>>>> getTileSerializer( LayerConfiguration config )
+		throws ConfigurationException {
+		return SerializationTypeChecker.checkBinClass(config.produce(TileSerializer.class),
+		                                              getRuntimeBinClass(),
+		                                              getRuntimeTypeDescriptor());
 	}
 
 
@@ -486,10 +626,7 @@ public class AnnotationServiceImpl implements AnnotationService {
 			LayerConfiguration config = getLayerConfiguration( layer, null );
 			PyramidIO io = config.produce(PyramidIO.class);	
 
-			TileSerializer<Map<String, List<Pair<String, Long>>>> serializer =
-				SerializationTypeChecker.checkBinClass(config.produce(TileSerializer.class),
-				                                       getRuntimeBinClass(),
-				                                       getRuntimeTypeDescriptor());
+			TileSerializer<Map<String, List<Pair<String, Long>>>> serializer = getTileSerializer( config );
 
 			String dataId = config.getPropertyValue(LayerConfiguration.DATA_ID);
 			io.writeTiles( dataId, serializer, AnnotationTile.convertToRaw( tiles ) );
@@ -569,10 +706,7 @@ public class AnnotationServiceImpl implements AnnotationService {
 		try {
 			LayerConfiguration config = getLayerConfiguration( layer, null );
 			PyramidIO io = config.produce( PyramidIO.class );
-			TileSerializer<Map<String, List<Pair<String, Long>>>> serializer =
-				SerializationTypeChecker.checkBinClass(config.produce(TileSerializer.class),
-				                                       getRuntimeBinClass(),
-				                                       getRuntimeTypeDescriptor());
+			TileSerializer<Map<String, List<Pair<String, Long>>>> serializer = getTileSerializer( config );
 
             String dataId = config.getPropertyValue(LayerConfiguration.DATA_ID);
 
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc. http://www.oculusinfo.com/
+ * 
+ * Released under the MIT License.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.annotation.util;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ * A fixed set of read/write locks, shared out among an unbounded set of keys by
+ * hash.  Any number of keys can be locked at once; the stripes they map to are
+ * always acquired in ascending order, so two callers locking overlapping sets
+ * of keys can never deadlock.
+ *
+ * Each stripe also carries a version, which is odd while the stripe is write
+ * locked, and changes with every write.  This allows optimistic reads: take a
+ * stamp with {@link #tryOptimisticRead(Object)}, read without locking, then
+ * check with {@link #validate(Object, long)} that no write intervened.
+ */
+public class StripedLocks<K> {
+
+	/**
+	 * A set of held locks, to be released together.
+	 */
+	public interface LockSet {
+		public void unlock ();
+	}
+
+	private final ReentrantReadWriteLock[] _locks;
+	private final AtomicLongArray          _versions;
+	private final int                      _mask;
+
+	/**
+	 * @param stripes The minimum number of stripes to use; this is rounded up
+	 *            to a power of two.
+	 */
+	public StripedLocks (int stripes) {
+		int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+		_locks = new ReentrantReadWriteLock[size];
+		for (int i = 0; i < size; ++i) {
+			_locks[i] = new ReentrantReadWriteLock();
+		}
+		_versions = new AtomicLongArray(size);
+		_mask = size - 1;
+	}
+
+	private int getStripe (K key) {
+		// Spread the hash, so keys with similar hash codes land on different stripes
+		int h = key.hashCode();
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return h & _mask;
+	}
+
+	// The distinct stripes for a set of keys, in ascending order
+	private int[] getStripes (Collection<? extends K> keys) {
+		boolean[] used = new boolean[_locks.length];
+		int count = 0;
+		for (K key: keys) {
+			int stripe = getStripe(key);
+			if (!used[stripe]) {
+				used[stripe] = true;
+				++count;
+			}
+		}
+		int[] stripes = new int[count];
+		int n = 0;
+		for (int i = 0; i < used.length; ++i) {
+			if (used[i]) stripes[n++] = i;
+		}
+		return stripes;
+	}
+
+	/**
+	 * Acquire read locks on all the given keys.
+	 */
+	public LockSet lockForRead (Collection<? extends K> keys) {
+		final int[] stripes = getStripes(keys);
+		for (int stripe: stripes) {
+			_locks[stripe].readLock().lock();
+		}
+		return new LockSet() {
+			@Override
+			public void unlock () {
+				for (int i = stripes.length - 1; i >= 0; --i) {
+					_locks[stripes[i]].readLock().unlock();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Acquire write locks on all the given keys.
+	 */
+	public LockSet lockForWrite (Collection<? extends K> keys) {
+		final int[] stripes = getStripes(keys);
+		for (int stripe: stripes) {
+			Lock lock = _locks[stripe].writeLock();
+			lock.lock();
+			_versions.incrementAndGet(stripe);
+		}
+		return new LockSet() {
+			@Override
+			public void unlock () {
+				for (int i = stripes.length - 1; i >= 0; --i) {
+					_versions.incrementAndGet(stripes[i]);
+					_locks[stripes[i]].writeLock().unlock();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Get a stamp with which to validate an unlocked read of the given key.
+	 * 
+	 * @return The stamp, or -1 if the key is currently being written, in which
+	 *         case an optimistic read is pointless.
+	 */
+	public long tryOptimisticRead (K key) {
+		long version = _versions.get(getStripe(key));
+		return (0 == (version & 1L)) ? version : -1L;
+	}
+
+	/**
+	 * Determine if the given key has been written since the stamp was taken.
+	 * 
+	 * @return True if no write has started since the stamp was taken, so that
+	 *         anything read under it is consistent.
+	 */
+	public boolean validate (K key, long stamp) {
+		return stamp >= 0 && _versions.get(getStripe(key)) == stamp;
+	}
+}
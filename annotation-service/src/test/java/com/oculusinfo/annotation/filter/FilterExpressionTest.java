@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc. http://www.oculusinfo.com/
+ * 
+ * Released under the MIT License.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.annotation.filter;
+
+import com.oculusinfo.annotation.AnnotationData;
+import com.oculusinfo.annotation.filter.expression.FilterExpression;
+import com.oculusinfo.annotation.filter.impl.ExpressionFilter;
+import com.oculusinfo.annotation.filter.impl.ScriptableFilter;
+import com.oculusinfo.annotation.impl.JSONAnnotation;
+import com.oculusinfo.annotation.util.AnnotationGenerator;
+import com.oculusinfo.factory.util.Pair;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+
+public class FilterExpressionTest {
+
+    private static double [] BOUNDS = { 180, 85.05, -180, -85.05};
+    private static String [] GROUPS = {"Urgent", "High", "Medium", "Low"};
+
+    private AnnotationData<?> annotation( double x, double y, int level, String group, int priority, String author ) throws Exception {
+        JSONObject data = new JSONObject();
+        data.put( "priority", priority );
+        data.put( "author", author );
+        JSONObject tags = new JSONObject();
+        tags.put( "reviewed", priority > 2 );
+        data.put( "tags", tags );
+        return new JSONAnnotation( x, null, y, null, level, new Pair<>( 0, 10 ), group,
+                                   UUID.randomUUID(), 1000L * level, data );
+    }
+
+    private List<UUID> uuids( List<AnnotationData<?>> annotations ) {
+        List<UUID> uuids = new ArrayList<>();
+        for ( AnnotationData<?> annotation : annotations ) {
+            uuids.add( annotation.getUUID() );
+        }
+        return uuids;
+    }
+
+    private boolean matches( String expression, AnnotationData<?> annotation ) {
+        return FilterExpression.compile( expression ).matches( annotation );
+    }
+
+    @Test
+    public void testFields () throws Exception {
+        AnnotationData<?> a = annotation( -12.5, 40.0, 4, "Urgent", 3, "alice" );
+
+        Assert.assertTrue( matches( "annotation.group == 'Urgent'", a ) );
+        Assert.assertTrue( matches( "group === \"Urgent\"", a ) );
+        Assert.assertFalse( matches( "annotation.group != 'Urgent'", a ) );
+        Assert.assertTrue( matches( "annotation.level >= 4 && level < 5", a ) );
+        Assert.assertTrue( matches( "x < -12 and y > 39.5", a ) );
+        Assert.assertTrue( matches( "annotation.x[0] == -12.5", a ) );
+        Assert.assertTrue( matches( "x0 == -1.25e1", a ) );
+        Assert.assertTrue( matches( "range.min == 0 && annotation.range.max == 10", a ) );
+        Assert.assertTrue( matches( "certificate.timestamp == 4000", a ) );
+        Assert.assertTrue( matches( "annotation.certificate.uuid == '"+a.getUUID()+"'", a ) );
+    }
+
+    @Test
+    public void testData () throws Exception {
+        AnnotationData<?> a = annotation( 0, 0, 2, "Low", 3, "alice" );
+
+        Assert.assertTrue( matches( "annotation.data.priority == 3", a ) );
+        Assert.assertTrue( matches( "data['author'] == 'alice'", a ) );
+        Assert.assertTrue( matches( "data.tags.reviewed", a ) );
+        Assert.assertTrue( matches( "data.tags.reviewed == true", a ) );
+        Assert.assertFalse( matches( "data.missing == 'alice'", a ) );
+        Assert.assertTrue( matches( "data.missing == null", a ) );
+        // data is untyped, so mismatches simply fail to match
+        Assert.assertFalse( matches( "data.author > 3", a ) );
+    }
+
+    @Test
+    public void testOperators () throws Exception {
+        AnnotationData<?> a = annotation( 0, 0, 2, "High", 4, "bob" );
+
+        Assert.assertTrue( matches( "group in ('High', 'Urgent')", a ) );
+        Assert.assertFalse( matches( "group in ('Low')", a ) );
+        Assert.assertTrue( matches( "data.priority between 2 and 5 and level == 2", a ) );
+        Assert.assertFalse( matches( "data.priority between 5 and 6", a ) );
+        Assert.assertTrue( matches( "!(group == 'Low') || level > 10", a ) );
+        Assert.assertTrue( matches( "not group == 'Low'", a ) );
+        Assert.assertTrue( matches( "(level == 1 || level == 2) && data.author == 'bob';", a ) );
+        Assert.assertFalse( matches( "level == 1 || level == 3 && true", a ) );
+    }
+
+    @Test
+    public void testCoercion () throws Exception {
+        AnnotationData<?> a = annotation( 0, 0, 2, "High", 4, "bob" );
+        ((JSONObject) a.getData()).put( "count", "12" );
+        ((JSONObject) a.getData()).put( "flag", true );
+        ((JSONObject) a.getData()).put( "none", JSONObject.NULL );
+
+        // == converts, === doesn't
+        Assert.assertTrue( matches( "annotation.data.count == 12", a ) );
+        Assert.assertFalse( matches( "annotation.data.count === 12", a ) );
+        Assert.assertTrue( matches( "annotation.data.priority == '4.0'", a ) );
+        Assert.assertTrue( matches( "annotation.data.flag == 1", a ) );
+        Assert.assertFalse( matches( "annotation.data.flag == 'true'", a ) );
+        // null and undefined are only loosely equal
+        Assert.assertTrue( matches( "annotation.data.none == undefined", a ) );
+        Assert.assertFalse( matches( "annotation.data.none === undefined", a ) );
+        Assert.assertTrue( matches( "annotation.data.missing === undefined", a ) );
+        Assert.assertFalse( matches( "annotation.data.none == 0", a ) );
+        // Strings order as strings, unless compared with a number
+        Assert.assertTrue( matches( "annotation.data.count < '9'", a ) );
+        Assert.assertFalse( matches( "annotation.data.count < 9", a ) );
+        Assert.assertTrue( matches( "annotation.data.none < 1", a ) );
+        Assert.assertFalse( matches( "annotation.data.missing < 1 || annotation.data.missing >= 1", a ) );
+        Assert.assertFalse( matches( "annotation.data.author > 3", a ) );
+        // ! binds to its operand, not the comparison
+        Assert.assertTrue( matches( "!annotation.data.missing == true", a ) );
+        // && and || produce operands
+        Assert.assertEquals( "bob", FilterExpression.compile( "annotation.level > 1 && annotation.data.author" ).evaluate( a ) );
+        Assert.assertEquals( 4.0, FilterExpression.compile( "annotation.data.missing || annotation.data.priority" ).evaluate( a ) );
+
+        // Objects can't be converted
+        try {
+            matches( "annotation.data.tags == 'x'", a );
+            Assert.fail( "Expected comparing an object with a string to be unsupported" );
+        } catch ( FilterExpression.UnsupportedValueException e ) {
+            // expected
+        }
+        Assert.assertTrue( matches( "annotation.data.tags === annotation.data.tags", a ) );
+        Assert.assertTrue( new ExpressionFilter( "annotation.data.tags == 'x'" )
+                           .filterAnnotations( Arrays.<AnnotationData<?>>asList( a ), null ).isEmpty() );
+    }
+
+    @Test
+    public void testJavascriptSubset () {
+        Assert.assertTrue( FilterExpression.compile( "annotation.group == 'Urgent' && !annotation.data.x" ).isJavascript() );
+        Assert.assertTrue( FilterExpression.compile( "annotation.certificate.uuid !== 'a' || annotation.range.min < 2" ).isJavascript() );
+        Assert.assertFalse( FilterExpression.compile( "group == 'Urgent'" ).isJavascript() );
+        Assert.assertFalse( FilterExpression.compile( "annotation.level == 1 or annotation.level == 2" ).isJavascript() );
+        Assert.assertFalse( FilterExpression.compile( "annotation.group in ('High')" ).isJavascript() );
+        Assert.assertFalse( FilterExpression.compile( "annotation.x[0] < 1" ).isJavascript() );
+        Assert.assertFalse( FilterExpression.compile( "annotation.certificate.timestamp == 4000" ).isJavascript() );
+        Assert.assertFalse( FilterExpression.compile( "annotation.group == '\\u0041'" ).isJavascript() );
+    }
+
+    @Test
+    public void testErrors () {
+        String[] bad = {
+            "group == 3",
+            "level == 'four'",
+            "level > true",
+            "group in (1, 2)",
+            "level ==",
+            "(level == 1",
+            "level == 1 )",
+            "annotation.colour == 'red'",
+            "annotation",
+            "group == 'unterminated",
+            "level # 3"
+        };
+        for ( String expression : bad ) {
+            try {
+                FilterExpression.compile( expression );
+                Assert.fail( "Expected "+expression+" to be rejected" );
+            } catch ( IllegalArgumentException e ) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testCaching () {
+        String source = "level == 3 && group == 'High'";
+        Assert.assertSame( FilterExpression.compile( source ), FilterExpression.compile( source ) );
+    }
+
+    @Test
+    public void testMatchesJavascript () throws Exception {
+        AnnotationGenerator generator = new AnnotationGenerator( BOUNDS, GROUPS );
+        List<AnnotationData<?>> annotations = generator.generateJSONAnnotations( 200 );
+
+        for ( String script : Arrays.asList( "annotation.group == 'Urgent' || annotation.group === 'Low'",
+                                             "annotation.level >= 8 && annotation.group != 'High'",
+                                             "annotation.range.max > 5 && !(annotation.group == 'Medium')" ) ) {
+            ScriptableFilter compiled = new ScriptableFilter( script );
+            ScriptableFilter javascript = new ScriptableFilter( script, false );
+            Assert.assertTrue( compiled.isCompiled() );
+            Assert.assertFalse( javascript.isCompiled() );
+
+            List<UUID> expected = uuids( javascript.filterAnnotations( annotations, null ) );
+            Assert.assertFalse( expected.isEmpty() );
+            Assert.assertEquals( expected, uuids( compiled.filterAnnotations( annotations, null ) ) );
+            Assert.assertEquals( expected, uuids( new ExpressionFilter( script ).filterAnnotations( annotations, null ) ) );
+        }
+    }
+
+    @Test
+    public void testMatchesJavascriptCoercion () throws Exception {
+        Object[] values = { 3, 3.5, "3", "", " 0x10 ", "abc", true, false, JSONObject.NULL, null,
+                            new JSONObject( "{\"a\": 1}" ), new JSONArray( "[3]" ) };
+        List<AnnotationData<?>> annotations = new ArrayList<>();
+        for ( Object value : values ) {
+            AnnotationData<?> a = annotation( 0, 0, 2, "High", 4, "bob" );
+            if ( null != value ) ((JSONObject) a.getData()).put( "v", value );
+            annotations.add( a );
+        }
+
+        for ( String script : Arrays.asList( "annotation.data.v == 3",
+                                             "annotation.data.v != '3'",
+                                             "annotation.data.v === '3'",
+                                             "annotation.data.v == 16",
+                                             "annotation.data.v < 3.5",
+                                             "annotation.data.v >= 'a'",
+                                             "annotation.data.v == null",
+                                             "annotation.data.v === null",
+                                             "annotation.data.v == false",
+                                             "annotation.data.v == '[object Object]'",
+                                             "!annotation.data.v",
+                                             "annotation.data.v && annotation.level == 2",
+                                             "annotation.level == 2 && annotation.data.v",
+                                             "annotation.data.v || annotation.level == 3" ) ) {
+            ScriptableFilter compiled = new ScriptableFilter( script );
+            Assert.assertTrue( script, compiled.isCompiled() );
+            List<UUID> expected = uuids( new ScriptableFilter( script, false ).filterAnnotations( annotations, null ) );
+            Assert.assertEquals( script, expected, uuids( compiled.filterAnnotations( annotations, null ) ) );
+        }
+    }
+
+    @Test
+    public void testExtensionsRunAsJavascript () throws Exception {
+        AnnotationData<?> a = annotation( 0, 0, 2, "High", 4, "bob" );
+        // Not javascript, so falls back - where it fails, as the javascript
+        // engine doesn't understand it either
+        ScriptableFilter filter = new ScriptableFilter( "group == 'High'" );
+        Assert.assertFalse( filter.isCompiled() );
+        Assert.assertTrue( filter.filterAnnotations( Arrays.<AnnotationData<?>>asList( a ), null ).isEmpty() );
+    }
+
+    @Ignore( "benchmark" )
+    @Test
+    public void benchmark () {
+        AnnotationGenerator generator = new AnnotationGenerator( BOUNDS, GROUPS );
+        List<AnnotationData<?>> annotations = generator.generateJSONAnnotations( 2000 );
+        String script = "annotation.group == 'Urgent' && annotation.level >= 4 || annotation.group == 'High'";
+
+        ScriptableFilter javascript = new ScriptableFilter( script, false );
+        ExpressionFilter compiled = new ExpressionFilter( script );
+
+        // warm up
+        javascript.filterAnnotations( annotations.subList( 0, 200 ), null );
+        for ( int i=0; i<100; i++ ) {
+            compiled.filterAnnotations( annotations, null );
+        }
+
+        long start = System.nanoTime();
+        List<AnnotationData<?>> expected = javascript.filterAnnotations( annotations, null );
+        long jsTime = System.nanoTime() - start;
+
+        int runs = 1000;
+        List<AnnotationData<?>> actual = new ArrayList<>();
+        start = System.nanoTime();
+        for ( int i=0; i<runs; i++ ) {
+            actual = compiled.filterAnnotations( annotations, null );
+        }
+        long compiledTime = (System.nanoTime() - start) / runs;
+
+        Assert.assertEquals( uuids( expected ), uuids( actual ) );
+        Assert.assertTrue( compiledTime < jsTime );
+    }
+}
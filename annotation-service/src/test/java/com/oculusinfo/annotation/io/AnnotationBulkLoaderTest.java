@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc. http://www.oculusinfo.com/
+ * 
+ * Released under the MIT License.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.annotation.io;
+
+import com.oculusinfo.annotation.AnnotationData;
+import com.oculusinfo.annotation.AnnotationTile;
+import com.oculusinfo.annotation.index.AnnotationIndexer;
+import com.oculusinfo.annotation.index.impl.AnnotationIndexerImpl;
+import com.oculusinfo.annotation.io.impl.FileSystemAnnotationIO;
+import com.oculusinfo.annotation.io.impl.FileSystemAnnotationSource;
+import com.oculusinfo.annotation.io.serialization.AnnotationSerializer;
+import com.oculusinfo.annotation.io.serialization.JSONAnnotationDataSerializer;
+import com.oculusinfo.annotation.util.AnnotationGenerator;
+import com.oculusinfo.annotation.util.AnnotationUtil;
+import com.oculusinfo.binning.TileIndex;
+import com.oculusinfo.binning.TilePyramid;
+import com.oculusinfo.binning.impl.WebMercatorTilePyramid;
+import com.oculusinfo.binning.io.PyramidIO;
+import com.oculusinfo.binning.io.impl.FileBasedPyramidIO;
+import com.oculusinfo.binning.io.impl.FileSystemPyramidSource;
+import com.oculusinfo.binning.io.serialization.TileSerializer;
+import com.oculusinfo.binning.io.serialization.impl.StringLongPairArrayMapJsonSerializer;
+import com.oculusinfo.factory.util.Pair;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+public class AnnotationBulkLoaderTest {
+
+	private static final String ROOT_PATH = "./build/tmp/";
+	private static final String BASE_PATH = "annotation-bulk-unit-test";
+	private static final String EXT = "json";
+    private static double [] BOUNDS = { 180, 85.05, -180, -85.05};
+    private static String [] GROUPS = {"Urgent", "High", "Medium", "Low"};
+    private static final int NUM_ENTRIES = 200;
+
+	private AnnotationIO _dataIO;
+	private PyramidIO _tileIO;
+	private TileSerializer<Map<String, List<Pair<String, Long>>>> _tileSerializer;
+	private AnnotationSerializer _dataSerializer;
+	private TilePyramid _pyramid;
+	private AnnotationIndexer _indexer;
+
+	@Before
+	public void setup () {
+		_dataIO = new FileSystemAnnotationIO( new FileSystemAnnotationSource( ROOT_PATH, EXT ) );
+		_tileIO = new FileBasedPyramidIO( new FileSystemPyramidSource( ROOT_PATH, EXT ) );
+		_pyramid = new WebMercatorTilePyramid();
+		_indexer = new AnnotationIndexerImpl();
+		_tileSerializer = new StringLongPairArrayMapJsonSerializer();
+		_dataSerializer = new JSONAnnotationDataSerializer();
+	}
+
+	@After
+	public void teardown () throws Exception {
+		FileUtils.deleteDirectory( new File( ROOT_PATH + BASE_PATH ) );
+	}
+
+	@Test
+	public void testBulkLoad () throws Exception {
+
+        AnnotationGenerator generator = new AnnotationGenerator( BOUNDS, GROUPS );
+		List<AnnotationData<?>> annotations = generator.generateJSONAnnotations( NUM_ENTRIES );
+
+		// load in several batches, so later batches have to merge into existing tiles
+		AnnotationBulkLoader loader = new AnnotationBulkLoader( _tileIO, _tileSerializer, _dataIO, _dataSerializer,
+		                                                        _indexer, _pyramid );
+		Assert.assertEquals( NUM_ENTRIES, loader.write( BASE_PATH, annotations, 64 ) );
+
+		// the result should be exactly what adding annotations one at a time gives
+		List<AnnotationTile> expected = generator.generateTiles( annotations, _indexer, _pyramid );
+		List<TileIndex> tileIndices = AnnotationUtil.tilesToIndices( expected );
+		List<Pair<String, Long>> dataIndices = AnnotationUtil.dataToIndices( annotations );
+
+		List<AnnotationTile> tiles = AnnotationTile.convertFromRaw( _tileIO.readTiles( BASE_PATH, _tileSerializer, tileIndices ) );
+		List<AnnotationData<?>> data = _dataIO.readData( BASE_PATH, _dataSerializer, dataIndices );
+
+		Assert.assertEquals( expected.size(), tiles.size() );
+		Assert.assertTrue( AnnotationUtil.compareTiles( tiles, expected ) );
+		Assert.assertEquals( NUM_ENTRIES, data.size() );
+		Assert.assertTrue( AnnotationUtil.compareData( data, annotations ) );
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc. http://www.oculusinfo.com/
+ * 
+ * Released under the MIT License.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.annotation.io.impl;
+
+import com.oculusinfo.annotation.AnnotationData;
+import com.oculusinfo.annotation.io.serialization.AnnotationSerializer;
+import com.oculusinfo.annotation.io.serialization.JSONAnnotationDataSerializer;
+import com.oculusinfo.annotation.util.AnnotationGenerator;
+import com.oculusinfo.annotation.util.AnnotationUtil;
+import com.oculusinfo.factory.util.Pair;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class LogStructuredAnnotationIOTest {
+
+	private static final String BASE_PATH = "annotation-unit-test";
+	private static double [] BOUNDS = { 180, 85.05, -180, -85.05};
+	private static String [] GROUPS = {"Urgent", "High", "Medium", "Low"};
+	private static final int NUM_ENTRIES = 50;
+
+	private File _root;
+	private LogStructuredAnnotationIO _dataIO;
+	private AnnotationSerializer _dataSerializer;
+	private AnnotationGenerator _generator;
+
+	@Before
+	public void setup () throws IOException {
+		_root = Files.createTempDirectory( "annotation-log" ).toFile();
+		_dataIO = new LogStructuredAnnotationIO( _root.getPath() );
+		_dataSerializer = new JSONAnnotationDataSerializer();
+		_generator = new AnnotationGenerator( BOUNDS, GROUPS );
+	}
+
+	@After
+	public void teardown () throws IOException {
+		_dataIO.close();
+		delete( _root );
+	}
+
+	private void delete ( File file ) {
+		File[] children = file.listFiles();
+		if ( null != children ) {
+			for ( File child : children ) {
+				delete( child );
+			}
+		}
+		file.delete();
+	}
+
+	private File getLogFile () {
+		return new File( new File( _root, BASE_PATH ), LogStructuredAnnotationIO.LOG_FILENAME );
+	}
+
+	@Test
+	public void testReadWriteRemove () throws Exception {
+		List<AnnotationData<?>> annotations = _generator.generateJSONAnnotations( NUM_ENTRIES );
+		List<Pair<String, Long>> dataIndices = AnnotationUtil.dataToIndices( annotations );
+
+		_dataIO.initializeForWrite( BASE_PATH );
+		_dataIO.writeData( BASE_PATH, _dataSerializer, annotations );
+
+		List<AnnotationData<?>> allData = _dataIO.readData( BASE_PATH, _dataSerializer, dataIndices );
+		Assert.assertEquals( NUM_ENTRIES, allData.size() );
+		Assert.assertTrue( AnnotationUtil.compareData( allData, annotations ) );
+
+		// reads come back in the order asked for
+		for ( int i=0; i<NUM_ENTRIES; i++ ) {
+			Assert.assertEquals( annotations.get( i ).getUUID(), allData.get( i ).getUUID() );
+		}
+
+		_dataIO.removeData( BASE_PATH, dataIndices.subList( 0, 10 ) );
+		allData = _dataIO.readData( BASE_PATH, _dataSerializer, dataIndices );
+		Assert.assertEquals( NUM_ENTRIES - 10, allData.size() );
+		Assert.assertTrue( AnnotationUtil.compareData( allData, annotations.subList( 10, NUM_ENTRIES ) ) );
+
+		_dataIO.removeData( BASE_PATH, dataIndices );
+		allData = _dataIO.readData( BASE_PATH, _dataSerializer, dataIndices );
+		Assert.assertEquals( 0, allData.size() );
+	}
+
+	@Test
+	public void testRecovery () throws Exception {
+		List<AnnotationData<?>> annotations = _generator.generateJSONAnnotations( NUM_ENTRIES );
+		List<Pair<String, Long>> dataIndices = AnnotationUtil.dataToIndices( annotations );
+
+		_dataIO.writeData( BASE_PATH, _dataSerializer, annotations );
+		_dataIO.removeData( BASE_PATH, dataIndices.subList( 0, 5 ) );
+		_dataIO.close();
+
+		// simulate a write torn by a crash
+		long goodLength = getLogFile().length();
+		FileOutputStream out = new FileOutputStream( getLogFile(), true );
+		out.write( new byte[] {0, 0, 1, 0, 1, 0, 36, 'a', 'b'} );
+		out.close();
+
+		_dataIO = new LogStructuredAnnotationIO( _root.getPath() );
+		List<AnnotationData<?>> allData = _dataIO.readData( BASE_PATH, _dataSerializer, dataIndices );
+		Assert.assertEquals( NUM_ENTRIES - 5, allData.size() );
+		Assert.assertTrue( AnnotationUtil.compareData( allData, annotations.subList( 5, NUM_ENTRIES ) ) );
+		Assert.assertEquals( goodLength, getLogFile().length() );
+	}
+
+	@Test
+	public void testCompaction () throws Exception {
+		List<AnnotationData<?>> annotations = _generator.generateJSONAnnotations( NUM_ENTRIES );
+		List<Pair<String, Long>> dataIndices = AnnotationUtil.dataToIndices( annotations );
+
+		for ( int i=0; i<5; i++ ) {
+			_dataIO.writeData( BASE_PATH, _dataSerializer, annotations );
+		}
+		_dataIO.removeData( BASE_PATH, dataIndices.subList( 0, 10 ) );
+		long before = getLogFile().length();
+
+		_dataIO.compact( BASE_PATH );
+
+		long after = getLogFile().length();
+		Assert.assertTrue( after < before / 4 );
+		List<AnnotationData<?>> allData = _dataIO.readData( BASE_PATH, _dataSerializer, dataIndices );
+		Assert.assertEquals( NUM_ENTRIES - 10, allData.size() );
+		Assert.assertTrue( AnnotationUtil.compareData( allData, annotations.subList( 10, NUM_ENTRIES ) ) );
+
+		// and the compacted file must reload correctly
+		_dataIO.close();
+		_dataIO = new LogStructuredAnnotationIO( _root.getPath() );
+		allData = _dataIO.readData( BASE_PATH, _dataSerializer, dataIndices );
+		Assert.assertEquals( NUM_ENTRIES - 10, allData.size() );
+		Assert.assertEquals( after, getLogFile().length() );
+	}
+
+	@Test
+	public void testConcurrentWritesWithBackgroundCompaction () throws Exception {
+		_dataIO.close();
+		_dataIO = new LogStructuredAnnotationIO( _root.getPath(), 50, 0.3, 4096 );
+
+		final List<AnnotationData<?>> annotations = _generator.generateJSONAnnotations( NUM_ENTRIES );
+		final List<Pair<String, Long>> dataIndices = AnnotationUtil.dataToIndices( annotations );
+
+		ExecutorService pool = Executors.newFixedThreadPool( 4 );
+		List<Future<?>> results = new ArrayList<>();
+		for ( int t=0; t<4; t++ ) {
+			final int offset = t;
+			results.add( pool.submit( new java.util.concurrent.Callable<Void>() {
+				@Override
+				public Void call () throws Exception {
+					for ( int i=0; i<100; i++ ) {
+						AnnotationData<?> annotation = annotations.get( (i * 4 + offset) % NUM_ENTRIES );
+						List<AnnotationData<?>> batch = new ArrayList<>();
+						batch.add( annotation );
+						_dataIO.writeData( BASE_PATH, _dataSerializer, batch );
+						List<AnnotationData<?>> read = _dataIO.readData( BASE_PATH, _dataSerializer, dataIndices.subList( 0, 20 ) );
+						Assert.assertTrue( read.size() <= 20 );
+					}
+					return null;
+				}
+			} ) );
+		}
+		for ( Future<?> result : results ) {
+			result.get();
+		}
+		pool.shutdown();
+
+		List<AnnotationData<?>> allData = _dataIO.readData( BASE_PATH, _dataSerializer, dataIndices );
+		Assert.assertEquals( NUM_ENTRIES, allData.size() );
+		Assert.assertTrue( AnnotationUtil.compareData( allData, annotations ) );
+
+		// 400 writes of 50 annotations should have been compacted along the way
+		_dataIO.compact( BASE_PATH );
+		Assert.assertTrue( AnnotationUtil.compareData( _dataIO.readData( BASE_PATH, _dataSerializer, dataIndices ), annotations ) );
+	}
+}
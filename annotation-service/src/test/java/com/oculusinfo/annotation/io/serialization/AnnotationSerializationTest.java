@@ -104,6 +104,31 @@ public class AnnotationSerializationTest {
 	}
 	
 	
+	@Test
+	public void annotationDataBinarySerializationTest () throws Exception {
+
+        AnnotationGenerator generator = new AnnotationGenerator( BOUNDS, GROUPS );
+		AnnotationSerializer serializer = new BinaryAnnotationDataSerializer();
+
+		for ( AnnotationData<?> annotation : generator.generateJSONAnnotations( NUM_ENTRIES ) ) {
+
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			serializer.serialize( annotation, baos );
+			baos.close();
+
+			ByteArrayOutputStream json = new ByteArrayOutputStream();
+			_dataSerializer.serialize( annotation, json );
+			json.close();
+			Assert.assertTrue( baos.size() < json.size() );
+
+			AnnotationData<?> anno = serializer.deserialize( new ByteArrayInputStream( baos.toByteArray() ) );
+			Assert.assertTrue( AnnotationUtil.compareData( annotation, anno ) );
+			Assert.assertEquals( annotation.getTimestamp(), anno.getTimestamp() );
+			Assert.assertEquals( annotation.getRange().getSecond(), anno.getRange().getSecond() );
+		}
+	}
+
+
 	@Test
 	public void annotationTileJSONSerializationTest () throws Exception {
 
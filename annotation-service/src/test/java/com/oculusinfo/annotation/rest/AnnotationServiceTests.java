@@ -42,6 +42,7 @@ import com.oculusinfo.binning.io.serialization.TileSerializer;
 import com.oculusinfo.binning.io.DefaultPyramidIOFactoryProvider;
 import com.oculusinfo.binning.io.serialization.DefaultTileSerializerFactoryProvider;
 import com.oculusinfo.factory.providers.FactoryProvider;
+import com.oculusinfo.factory.util.Pair;
 import com.oculusinfo.tile.init.providers.*;
 import com.oculusinfo.tile.rendering.LayerConfiguration;
 import com.oculusinfo.tile.rest.layer.LayerService;
@@ -416,6 +417,22 @@ public class AnnotationServiceTests {
 		}
 	}
 
+	@Test
+	public void bulkWriteTest() {
+		AnnotationGenerator generator = new AnnotationGenerator( BOUNDS, _groups );
+		List<AnnotationData<?>> annotations = generator.generateJSONAnnotations( NUM_ENTRIES );
+
+		List<Pair<String, Long>> certificates = _service.writeAll( _layerId, annotations );
+		Assert.assertEquals( NUM_ENTRIES, certificates.size() );
+		Assert.assertEquals( NUM_ENTRIES, readAll().size() );
+
+		// bulk written annotations should be indistinguishable from any others
+		for ( Pair<String, Long> certificate : certificates ) {
+			_service.remove( _layerId, certificate );
+		}
+		Assert.assertEquals( 0, readAll().size() );
+	}
+
     private List<AnnotationData<?>> readTile( TileIndex tile ) {
         List<AnnotationData<?>> annotations = new ArrayList<>();
         List<List<AnnotationData<?>>> data = _service.read( _layerId, tile, null );
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc. http://www.oculusinfo.com/
+ * 
+ * Released under the MIT License.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.annotation.util;
+
+import com.oculusinfo.annotation.util.StripedLocks.LockSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StripedLocksTest {
+
+	@Test
+	public void testOptimisticRead () {
+		StripedLocks<String> locks = new StripedLocks<>( 16 );
+
+		long stamp = locks.tryOptimisticRead( "a" );
+		Assert.assertTrue( stamp >= 0 );
+		Assert.assertTrue( locks.validate( "a", stamp ) );
+
+		LockSet writeLock = locks.lockForWrite( Collections.singleton( "a" ) );
+		// no optimistic reads while a write is in progress
+		Assert.assertEquals( -1L, locks.tryOptimisticRead( "a" ) );
+		Assert.assertFalse( locks.validate( "a", stamp ) );
+		writeLock.unlock();
+
+		// nor is a stamp valid across a completed write
+		Assert.assertFalse( locks.validate( "a", stamp ) );
+		Assert.assertTrue( locks.validate( "a", locks.tryOptimisticRead( "a" ) ) );
+	}
+
+	@Test
+	public void testOverlappingWriters () throws InterruptedException {
+		// Many threads locking overlapping key sets, in different orders,
+		// should neither deadlock nor overlap
+		final StripedLocks<Integer> locks = new StripedLocks<>( 8 );
+		final List<Integer> forward = Arrays.asList( 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 );
+		final List<Integer> backward = new ArrayList<>( forward );
+		Collections.reverse( backward );
+		final AtomicInteger inside = new AtomicInteger( 0 );
+		final AtomicInteger collisions = new AtomicInteger( 0 );
+
+		List<Thread> threads = new ArrayList<>();
+		for ( int t = 0; t < 8; ++t ) {
+			final List<Integer> keys = ( 0 == t % 2 ) ? forward : backward;
+			Thread thread = new Thread( new Runnable() {
+				@Override
+				public void run() {
+					for ( int i = 0; i < 1000; ++i ) {
+						LockSet lock = locks.lockForWrite( keys );
+						try {
+							if ( inside.incrementAndGet() > 1 ) collisions.incrementAndGet();
+							inside.decrementAndGet();
+						} finally {
+							lock.unlock();
+						}
+					}
+				}
+			} );
+			thread.start();
+			threads.add( thread );
+		}
+		for ( Thread thread : threads ) {
+			thread.join( 30000 );
+			Assert.assertFalse( thread.isAlive() );
+		}
+		Assert.assertEquals( 0, collisions.get() );
+	}
+}
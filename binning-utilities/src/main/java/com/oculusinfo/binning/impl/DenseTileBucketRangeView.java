@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc. http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.binning.impl;
+
+
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.oculusinfo.binning.TileData;
+import com.oculusinfo.binning.TileIndex;
+
+
+
+/**
+ * This implementation of TileData takes a TileData whose bins are lists of buckets, and presents
+ * a view of it in which only a contiguous range of buckets is visible.  Bins keep their original
+ * size; buckets outside the range read as null.
+ *
+ * Bins are not copied; each bin returned is a lightweight list view onto the corresponding bin
+ * of the base tile.  A range view of another range view reads straight from the innermost base
+ * tile, over the intersection of the two ranges.
+ *
+ * Bin writes go through to the base tile, but metadata set on the view is kept local to it,
+ * overlaying the base tile's metadata.
+ */
+public class DenseTileBucketRangeView<T> implements TileData<List<T>> {
+	private static final long serialVersionUID = -6131508962180374923L;
+
+
+
+	private TileData<List<T>>   _base;
+	private int                 _start;
+	private int                 _end;
+	private Map<String, String> _metaData;
+
+	/**
+	 * @param base The tile to view
+	 * @param start The first visible bucket
+	 * @param end The last visible bucket (inclusive)
+	 */
+	public DenseTileBucketRangeView (TileData<List<T>> base, int start, int end) {
+		if (start < 0 || start > end)
+			throw new IllegalArgumentException("Invalid bucket range ["+start+", "+end+"]");
+
+		if (base instanceof DenseTileBucketRangeView) {
+			DenseTileBucketRangeView<T> inner = (DenseTileBucketRangeView<T>) base;
+			_base = inner._base;
+			_start = Math.max(start, inner._start);
+			_end = Math.min(end, inner._end);
+			_metaData = new HashMap<>(inner._metaData);
+		} else {
+			_base = base;
+			_start = start;
+			_end = end;
+			_metaData = new HashMap<>();
+		}
+	}
+
+
+
+	@Override
+	public TileIndex getDefinition () {
+		return _base.getDefinition();
+	}
+
+	@Override
+	public void setBin (int x, int y, List<T> value) {
+		List<T> newValue = new ArrayList<>(_base.getBin(x, y));
+		for (int i = _start; i <= _end && i < newValue.size() && i < value.size(); ++i) {
+			newValue.set(i, value.get(i));
+		}
+		_base.setBin(x, y, newValue);
+	}
+
+	@Override
+	public List<T> getBin (int x, int y) {
+		List<T> bin = _base.getBin(x, y);
+		if (null == bin) return null;
+		return new RangeList<>(bin, _start, _end);
+	}
+
+	@Override
+	public Collection<String> getMetaDataProperties () {
+		Collection<String> baseProperties = _base.getMetaDataProperties();
+		if (_metaData.isEmpty()) return baseProperties;
+
+		Set<String> properties = new LinkedHashSet<>();
+		if (null != baseProperties) properties.addAll(baseProperties);
+		properties.addAll(_metaData.keySet());
+		return properties;
+	}
+
+	@Override
+	public String getMetaData (String property) {
+		if (_metaData.containsKey(property)) return _metaData.get(property);
+		return _base.getMetaData(property);
+	}
+
+	@Override
+	public void setMetaData (String property, Object value) {
+		_metaData.put(property, null == value ? null : value.toString());
+	}
+
+
+
+	private static class RangeList<T> extends AbstractList<T> {
+		private List<T> _bin;
+		private int     _start;
+		private int     _end;
+
+		RangeList (List<T> bin, int start, int end) {
+			_bin = bin;
+			_start = start;
+			_end = end;
+		}
+
+		@Override
+		public T get (int index) {
+			T value = _bin.get(index);
+			if (index < _start || index > _end) return null;
+			return value;
+		}
+
+		@Override
+		public int size () {
+			return _bin.size();
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc. http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.binning.impl;
+
+
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.oculusinfo.binning.TileData;
+import com.oculusinfo.binning.TileIndex;
+
+
+
+/**
+ * This implementation of TileData takes a TileData whose bins are lists of buckets, and presents
+ * a view to several slices of it - the same buckets, in the given order, in each bin.  Slices
+ * past the end of a given bin are skipped for that bin.
+ *
+ * Bins are not copied; each bin returned is a lightweight list view onto the corresponding bin
+ * of the base tile.  Bin writes go through to the base tile, but metadata set on the view is
+ * kept local to it, overlaying the base tile's metadata.
+ */
+public class DenseTileMultiSliceView<T> implements TileData<List<T>> {
+	private static final long serialVersionUID = 2553618458396180547L;
+
+
+
+	private TileData<List<T>>   _base;
+	private int[]               _slices;
+	private int                 _maxSlice;
+	private Map<String, String> _metaData;
+
+	public DenseTileMultiSliceView (TileData<List<T>> base, List<Integer> slices) {
+		_base = base;
+		_metaData = new HashMap<>();
+		_slices = new int[slices.size()];
+		_maxSlice = -1;
+		for (int i = 0; i < _slices.length; ++i) {
+			_slices[i] = slices.get(i);
+			if (_slices[i] < 0)
+				throw new IllegalArgumentException("Negative slice "+_slices[i]+" in multi-slice view");
+			_maxSlice = Math.max(_maxSlice, _slices[i]);
+		}
+	}
+
+
+
+	@Override
+	public TileIndex getDefinition () {
+		return _base.getDefinition();
+	}
+
+	@Override
+	public void setBin (int x, int y, List<T> value) {
+		List<T> originalValue = _base.getBin(x, y);
+		List<T> newValue = new ArrayList<>(originalValue);
+		int[] slices = slicesFor(originalValue.size());
+		for (int i = 0; i < slices.length && i < value.size(); ++i) {
+			newValue.set(slices[i], value.get(i));
+		}
+		_base.setBin(x, y, newValue);
+	}
+
+	@Override
+	public List<T> getBin (int x, int y) {
+		List<T> bin = _base.getBin(x, y);
+		if (null == bin) return null;
+		return new SliceList<>(bin, slicesFor(bin.size()));
+	}
+
+	// Get the slices that actually exist in a bin of the given size
+	private int[] slicesFor (int binSize) {
+		if (_maxSlice < binSize) return _slices;
+
+		int n = 0;
+		int[] valid = new int[_slices.length];
+		for (int slice: _slices) {
+			if (slice < binSize)
+				valid[n++] = slice;
+		}
+		return Arrays.copyOf(valid, n);
+	}
+
+	@Override
+	public Collection<String> getMetaDataProperties () {
+		Collection<String> baseProperties = _base.getMetaDataProperties();
+		if (_metaData.isEmpty()) return baseProperties;
+
+		Set<String> properties = new LinkedHashSet<>();
+		if (null != baseProperties) properties.addAll(baseProperties);
+		properties.addAll(_metaData.keySet());
+		return properties;
+	}
+
+	@Override
+	public String getMetaData (String property) {
+		if (_metaData.containsKey(property)) return _metaData.get(property);
+		return _base.getMetaData(property);
+	}
+
+	@Override
+	public void setMetaData (String property, Object value) {
+		_metaData.put(property, null == value ? null : value.toString());
+	}
+
+
+
+	private static class SliceList<T> extends AbstractList<T> {
+		private List<T> _bin;
+		private int[]   _slices;
+
+		SliceList (List<T> bin, int[] slices) {
+			_bin = bin;
+			_slices = slices;
+		}
+
+		@Override
+		public T get (int index) {
+			return _bin.get(_slices[index]);
+		}
+
+		@Override
+		public int size () {
+			return _slices.length;
+		}
+	}
+}
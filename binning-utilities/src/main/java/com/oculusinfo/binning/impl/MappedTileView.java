@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc. http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.binning.impl;
+
+
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.oculusinfo.binning.TileData;
+import com.oculusinfo.binning.TileIndex;
+
+
+
+/**
+ * This implementation of TileData presents a read-only view of another tile with a function
+ * applied to each bin as it is read.  Nothing is computed until a bin is requested.
+ *
+ * Metadata is read from the base tile, but metadata set on the view is kept in the view, so
+ * the base tile - which may well be shared, or cached - is never modified.
+ *
+ * Views created through {@link #map(TileData, BinMapper)} fuse: mapping a mapped view composes
+ * the two functions over the original tile rather than stacking views.
+ */
+public class MappedTileView<S, T> implements TileData<T> {
+	private static final long serialVersionUID = 7745136271082690178L;
+
+
+
+	/**
+	 * A function from the contents of one bin to the contents of the corresponding bin in the
+	 * view.
+	 */
+	public interface BinMapper<S, T> extends Serializable {
+		public T map (S value);
+	}
+
+	/**
+	 * Get a mapper that leaves bins unchanged, for views that only need to change metadata.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> BinMapper<T, T> identity () {
+		return (BinMapper<T, T>) IDENTITY;
+	}
+
+	private static final BinMapper<Object, Object> IDENTITY = new BinMapper<Object, Object>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Object map (Object value) {
+			return value;
+		}
+	};
+
+	/**
+	 * Create a view of the given tile with the given function applied to each bin.  If the
+	 * given tile is itself a mapped view, the result is a single view over its base tile.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <S, T> TileData<T> map (TileData<S> base, BinMapper<? super S, ? extends T> mapper) {
+		if (base instanceof MappedTileView) {
+			return compose((MappedTileView<?, S>) base, mapper);
+		}
+		return new MappedTileView<S, T>(base, mapper);
+	}
+
+	private static <R, S, T> MappedTileView<R, T> compose (MappedTileView<R, S> inner,
+	                                                      BinMapper<? super S, ? extends T> outer) {
+		BinMapper<? super R, ? extends T> mapper;
+		if (IDENTITY == outer) mapper = (BinMapper<? super R, ? extends T>) inner._mapper;
+		else if (IDENTITY == inner._mapper) mapper = (BinMapper<? super R, ? extends T>) outer;
+		else mapper = new ComposedMapper<R, S, T>(inner._mapper, outer);
+
+		MappedTileView<R, T> result = new MappedTileView<R, T>(inner._base, mapper);
+		result._metaData.putAll(inner._metaData);
+		return result;
+	}
+
+
+
+	private TileData<S>                        _base;
+	private BinMapper<? super S, ? extends T> _mapper;
+	private Map<String, String>                _metaData;
+
+	public MappedTileView (TileData<S> base, BinMapper<? super S, ? extends T> mapper) {
+		_base = base;
+		_mapper = mapper;
+		_metaData = new HashMap<>();
+	}
+
+
+
+	@Override
+	public TileIndex getDefinition () {
+		return _base.getDefinition();
+	}
+
+	@Override
+	public void setBin (int x, int y, T value) {
+		throw new UnsupportedOperationException("Mapped tile views are read-only");
+	}
+
+	@Override
+	public T getBin (int x, int y) {
+		return _mapper.map(_base.getBin(x, y));
+	}
+
+	@Override
+	public Collection<String> getMetaDataProperties () {
+		Collection<String> baseProperties = _base.getMetaDataProperties();
+		if (_metaData.isEmpty()) return baseProperties;
+
+		Set<String> properties = new LinkedHashSet<>();
+		if (null != baseProperties) properties.addAll(baseProperties);
+		properties.addAll(_metaData.keySet());
+		return properties;
+	}
+
+	@Override
+	public String getMetaData (String property) {
+		if (_metaData.containsKey(property)) return _metaData.get(property);
+		return _base.getMetaData(property);
+	}
+
+	@Override
+	public void setMetaData (String property, Object value) {
+		_metaData.put(property, null == value ? null : value.toString());
+	}
+
+
+
+	private static class ComposedMapper<R, S, T> implements BinMapper<R, T> {
+		private static final long serialVersionUID = -2203476425466281397L;
+
+		private BinMapper<? super R, ? extends S> _first;
+		private BinMapper<? super S, ? extends T> _second;
+
+		ComposedMapper (BinMapper<? super R, ? extends S> first, BinMapper<? super S, ? extends T> second) {
+			_first = first;
+			_second = second;
+		}
+
+		@Override
+		public T map (R value) {
+			return _second.map(_first.map(value));
+		}
+	}
+}
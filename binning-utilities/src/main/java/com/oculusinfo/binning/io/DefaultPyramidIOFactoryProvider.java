@@ -31,6 +31,7 @@ import com.oculusinfo.binning.io.impl.DummyPyramidIOFactory;
 import com.oculusinfo.binning.io.impl.HBasePyramidIOFactory;
 import com.oculusinfo.binning.io.impl.JDBCPyramidIOFactory;
 import com.oculusinfo.binning.io.impl.SQLitePyramidIOFactory;
+import com.oculusinfo.binning.io.impl.SequenceFilePyramidIOFactory;
 import com.oculusinfo.binning.io.impl.FileBasedPyramidIOFactory;
 import com.oculusinfo.factory.ConfigurableFactory;
 import com.oculusinfo.factory.providers.FactoryProvider;
@@ -76,6 +77,12 @@ public enum DefaultPyramidIOFactoryProvider implements FactoryProvider<PyramidIO
                 return new SQLitePyramidIOFactory(parent, path);
             }
         }),
+    SEQUENCEFILE(new Constructor() {
+            @Override
+            public ConfigurableFactory<PyramidIO> create(ConfigurableFactory<?> parent, java.util.List<String> path) {
+                return new SequenceFilePyramidIOFactory(parent, path);
+            }
+        }),
     DUMMY(new Constructor() {
             @Override
             public ConfigurableFactory<PyramidIO> create(ConfigurableFactory<?> parent, java.util.List<String> path) {
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc. http://www.oculusinfo.com/
+ * 
+ * Released under the MIT License.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.binning.io;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.oculusinfo.binning.TileIndex;
+
+/**
+ * A TileEnumerator is a PyramidIO (or pyramid source) that can efficiently list
+ * the tiles it actually contains, rather than having to probe for every
+ * possible tile.
+ */
+public interface TileEnumerator {
+	/**
+	 * List all the tiles that exist in one level of a pyramid
+	 * 
+	 * @param pyramidId The ID of the pyramid to be read; the meaning of this ID
+	 *            is dependent on the I/O type
+	 * @param level The level whose tiles are to be listed
+	 * @return The indices of all tiles present at the given level, in a
+	 *         deterministic order. If this instance turns out to be unable to
+	 *         list its tiles, null is returned, and callers should fall back
+	 *         to probing.
+	 */
+	public List<TileIndex> listTiles (String pyramidId, int level) throws IOException;
+}
@@ -32,6 +32,7 @@ import java.util.Properties;
 import com.oculusinfo.binning.TileData;
 import com.oculusinfo.binning.TileIndex;
 import com.oculusinfo.binning.io.PyramidIO;
+import com.oculusinfo.binning.io.TileEnumerator;
 import com.oculusinfo.binning.io.serialization.TileSerializer;
 
 
@@ -41,7 +42,7 @@ import com.oculusinfo.binning.io.serialization.TileSerializer;
  *  on the particular type of file system tile used.
  *  
  */
-public class FileBasedPyramidIO implements PyramidIO {
+public class FileBasedPyramidIO implements PyramidIO, TileEnumerator {
 	
 	private PyramidSource _source;
 	
@@ -98,4 +99,18 @@ public class FileBasedPyramidIO implements PyramidIO {
 	public void removeTiles (String id, Iterable<TileIndex> tiles ) throws IOException {
 		_source.removeTiles(id, tiles);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Only sources which can themselves list tiles support this; for others,
+	 * null is returned.
+	 */
+	@Override
+	public List<TileIndex> listTiles (String basePath, int level) throws IOException {
+		if (_source instanceof TileEnumerator) {
+			return ((TileEnumerator) _source).listTiles(basePath, level);
+		}
+		return null;
+	}
 }
@@ -31,6 +31,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
@@ -38,14 +42,20 @@ import java.util.Properties;
 import com.oculusinfo.binning.TileData;
 import com.oculusinfo.binning.TileIndex;
 import com.oculusinfo.binning.io.PyramidIO;
+import com.oculusinfo.binning.io.TileEnumerator;
 import com.oculusinfo.binning.io.serialization.TileSerializer;
 
 
 /**
  * Extends the PyramidSource abstract class for file system (directory) based tiles.
- *  
+ *
+ * Tiles are written to a hidden temporary file beside their final location,
+ * and then atomically moved into place, replacing any earlier version of the
+ * tile; readers therefore see either the old tile or the new one, never a
+ * partially written one.  The file system must support atomic moves within
+ * a directory.
  */
-public class FileSystemPyramidSource implements PyramidSource {
+public class FileSystemPyramidSource implements PyramidSource, TileEnumerator {
 	
 	private String _rootPath;
 	private String _extension;
@@ -77,9 +87,22 @@ public class FileSystemPyramidSource implements PyramidSource {
 			File parent = tileFile.getParentFile();
 			if (!parent.exists()) parent.mkdirs();
 
-			FileOutputStream fileStream = new FileOutputStream(tileFile);
-			serializer.serialize(tile, fileStream);
-			fileStream.close();
+			// Write to a temporary file and move it into place, so concurrent
+			// readers never see a partially written tile.  Temporary file
+			// prefixes must be at least three characters long.
+			File tempFile = File.createTempFile("." + tileFile.getName() + "-", ".tmp", parent);
+			try {
+				FileOutputStream fileStream = new FileOutputStream(tempFile);
+				try {
+					serializer.serialize(tile, fileStream);
+				} finally {
+					fileStream.close();
+				}
+				Files.move(tempFile.toPath(), tileFile.toPath(),
+				           StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				tempFile.delete();
+			}
 		}
 	}
 
@@ -158,6 +181,39 @@ public class FileSystemPyramidSource implements PyramidSource {
 		}
 	}
 	
+	@Override
+	public List<TileIndex> listTiles (String basePath, int level) throws IOException {
+		List<TileIndex> tiles = new ArrayList<>();
+		String suffix = "." + _extension;
+		File[] xDirs = getLevelDir(basePath, new TileIndex(level, 0, 0)).listFiles();
+		if (null == xDirs) return tiles;
+
+		for (File xDir: xDirs) {
+			Integer x = parseIndex(xDir.getName(), "");
+			if (null == x || !xDir.isDirectory()) continue;
+
+			String[] yFiles = xDir.list();
+			if (null == yFiles) continue;
+			for (String yFile: yFiles) {
+				Integer y = parseIndex(yFile, suffix);
+				if (null != y) tiles.add(new TileIndex(level, x, y));
+			}
+		}
+		Collections.sort(tiles);
+		return tiles;
+	}
+
+	// Parse a tile coordinate out of a file name, or return null if the name
+	// isn't a coordinate followed by the given suffix
+	private static Integer parseIndex (String name, String suffix) {
+		if (!name.endsWith(suffix)) return null;
+		try {
+			return Integer.parseInt(name.substring(0, name.length()-suffix.length()));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
 	@Override	
 	public void initializeForRead(String pyramidId, int width, int height, Properties dataDescription) {
 		// Not Implemented
@@ -42,17 +42,21 @@ import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.HColumnDescriptor;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
 import com.oculusinfo.binning.TileData;
 import com.oculusinfo.binning.TileIndex;
 import com.oculusinfo.binning.io.PyramidIO;
+import com.oculusinfo.binning.io.TileEnumerator;
 import com.oculusinfo.binning.io.serialization.TileSerializer;
 
 //import org.apache.hadoop.hbase.TableName;
 
-public class HBasePyramidIO implements PyramidIO {
+public class HBasePyramidIO implements PyramidIO, TileEnumerator {
 	private static final String META_DATA_INDEX      = "metadata";
 
 	public static class HBaseColumn {
@@ -354,6 +358,39 @@ public class HBasePyramidIO implements PyramidIO {
 		return new String(rawData.get(0).get(METADATA_COLUMN));
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Row IDs all start with the zero-padded level and a comma, so this is a
+	 * key-only scan of that prefix.
+	 */
+	@Override
+	public List<TileIndex> listTiles (String tableName, int level) throws IOException {
+		String prefix = String.format("%02d", level);
+		// ',' is immediately followed by '-', so this covers exactly the level
+		Scan scan = new Scan((prefix+",").getBytes(), (prefix+"-").getBytes());
+		scan.addColumn(TILE_COLUMN.family, TILE_COLUMN.qualifier);
+		scan.setFilter(new FilterList(new FirstKeyOnlyFilter(), new KeyOnlyFilter()));
+		scan.setCaching(1000);
+		scan.setCacheBlocks(false);
+
+		List<TileIndex> tiles = new ArrayList<>();
+		HTableInterface table = getTable(tableName);
+		try {
+			ResultScanner scanner = table.getScanner(scan);
+			try {
+				for (Result result: scanner) {
+					tiles.add(tileIndexFromRowId(new String(result.getRow())));
+				}
+			} finally {
+				scanner.close();
+			}
+		} finally {
+			table.close();
+		}
+		return tiles;
+	}
+
 	@Override
 	public void removeTiles (String tableName, Iterable<TileIndex> tiles) throws IOException {
     	
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.binning.io.impl;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A small, bounded pool of JDBC connections.
+ *
+ * Each pooled connection keeps its own cache of prepared statements, keyed by
+ * SQL text, so that statements used over and over again (tile reads, tile
+ * writes, metadata lookups) are only ever prepared once per connection.
+ *
+ * Connections are opened lazily, up to the pool size; once that many are in
+ * use, callers block until one is released.
+ */
+public class JDBCConnectionPool {
+	private static final Logger LOGGER = LoggerFactory.getLogger(JDBCConnectionPool.class);
+
+
+
+	/**
+	 * A connection borrowed from the pool, along with its prepared statement
+	 * cache. Instances are only valid between {@link JDBCConnectionPool#borrow()}
+	 * and {@link JDBCConnectionPool#release(PooledConnection)}, and must not be
+	 * shared between threads.
+	 */
+	public static class PooledConnection {
+		private Connection                     _connection;
+		private Map<String, PreparedStatement> _statements;
+
+		PooledConnection (Connection connection) {
+			_connection = connection;
+			_statements = new HashMap<>();
+		}
+
+		public Connection getConnection () {
+			return _connection;
+		}
+
+		/**
+		 * Get a prepared statement for the given SQL, preparing it only if this
+		 * connection has never seen it before.
+		 */
+		public PreparedStatement prepare (String sql) throws SQLException {
+			PreparedStatement statement = _statements.get(sql);
+			if (null == statement) {
+				statement = _connection.prepareStatement(sql);
+				_statements.put(sql, statement);
+			}
+			return statement;
+		}
+
+		/**
+		 * Drop all cached statements; used when the schema under them may have
+		 * changed.
+		 */
+		void clearStatements () {
+			for (PreparedStatement statement: _statements.values()) {
+				try {
+					statement.close();
+				} catch (SQLException e) {
+					LOGGER.warn("Error closing prepared statement", e);
+				}
+			}
+			_statements.clear();
+		}
+
+		void close () {
+			clearStatements();
+			try {
+				_connection.close();
+			} catch (SQLException e) {
+				LOGGER.warn("Error closing pooled connection", e);
+			}
+		}
+	}
+
+
+
+	private String                           _dbUrl;
+	private Properties                       _connectionProperties;
+	private int                              _size;
+	private BlockingQueue<PooledConnection>  _idle;
+	private List<PooledConnection>           _all;
+	private boolean                          _closed;
+
+	/**
+	 * Create a connection pool
+	 *
+	 * @param driverClassName The class name of the JDBC driver to use
+	 * @param dbUrl The JDBC URL of the database
+	 * @param connectionProperties Properties to pass to the driver when
+	 *            creating each connection; may be null
+	 * @param size The maximum number of simultaneous connections
+	 */
+	public JDBCConnectionPool (String driverClassName, String dbUrl,
+	                           Properties connectionProperties, int size)
+		throws ClassNotFoundException {
+		Class.forName(driverClassName);
+		if (size < 1)
+			throw new IllegalArgumentException("Connection pool size must be positive");
+
+		_dbUrl = dbUrl;
+		_connectionProperties = (null == connectionProperties ? new Properties() : connectionProperties);
+		_size = size;
+		_idle = new ArrayBlockingQueue<>(size);
+		_all = new ArrayList<>(size);
+		_closed = false;
+	}
+
+	public int getSize () {
+		return _size;
+	}
+
+	/**
+	 * Get a connection from the pool, opening a new one if the pool isn't yet
+	 * full, or waiting for one to be released if it is.
+	 */
+	public PooledConnection borrow () throws SQLException {
+		PooledConnection connection = _idle.poll();
+		if (null != connection) return connection;
+
+		synchronized (this) {
+			if (_closed)
+				throw new SQLException("Connection pool for "+_dbUrl+" has been shut down");
+			if (_all.size() < _size) {
+				connection = new PooledConnection(DriverManager.getConnection(_dbUrl, _connectionProperties));
+				_all.add(connection);
+				return connection;
+			}
+		}
+
+		try {
+			return _idle.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted waiting for a connection to "+_dbUrl, e);
+		}
+	}
+
+	/**
+	 * Return a connection to the pool.
+	 */
+	public void release (PooledConnection connection) {
+		if (null == connection) return;
+		synchronized (this) {
+			if (_closed) {
+				connection.close();
+				return;
+			}
+		}
+		_idle.offer(connection);
+	}
+
+	/**
+	 * Close all idle connections, and mark the pool so that busy connections
+	 * are closed as they are released.
+	 */
+	public void shutdown () {
+		synchronized (this) {
+			_closed = true;
+		}
+		List<PooledConnection> idle = new ArrayList<>();
+		_idle.drainTo(idle);
+		for (PooledConnection connection: idle) {
+			connection.close();
+		}
+	}
+}
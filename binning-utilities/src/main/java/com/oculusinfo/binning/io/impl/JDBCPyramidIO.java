@@ -28,30 +28,51 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.oculusinfo.binning.TileData;
 import com.oculusinfo.binning.TileIndex;
 import com.oculusinfo.binning.io.PyramidIO;
+import com.oculusinfo.binning.io.TileEnumerator;
+import com.oculusinfo.binning.io.impl.JDBCConnectionPool.PooledConnection;
 import com.oculusinfo.binning.io.serialization.TileSerializer;
 
 /**
  * JDBC-based implementation of PyramidIO.
  * 
+ * All database access goes through a small pool of connections, each of which
+ * caches its prepared statements, so concurrent tile requests neither share a
+ * connection nor re-parse SQL.
+ * 
+ * Tile tables created by this class carry an extra integer tile key column
+ * (see {@link #tileKey(TileIndex)}), which is their primary key; tiles are read
+ * in chunks, by key, with a fixed-shape IN query. Tables written by older
+ * versions, without the key column, are still readable, one tile at a time.
+ * 
  * @author rcameron
  * 
  */
-public class JDBCPyramidIO implements PyramidIO {
+public class JDBCPyramidIO implements PyramidIO, TileEnumerator {
+	public static final int DEFAULT_POOL_SIZE = 4;
+
 	private static final String TABLE_METADATA = "metadata";
 	private static final int BATCH_SIZE = 10000;
+	// Number of keys requested per tile read query.  Partial chunks are padded
+	// (by repeating a key), so that every read uses the same statement.
+	private static final int READ_CHUNK_SIZE = 64;
+	private static final String COL_TILE_KEY = "tile_key";
 	private static final String COL_ZOOM_LVL = "zoom_level";
 	private static final String COL_TILE_COLUMN = "tile_column";
 	private static final String COL_TILE_ROW = "tile_row";
@@ -59,31 +80,86 @@ public class JDBCPyramidIO implements PyramidIO {
 	private static final String COL_METADATA = "metadata";
 	private static final String COL_PYRAMID_ID = "pyramid_id";
 
-	private Connection _connection;
-	
-	public JDBCPyramidIO(String driverClassName, String dbUrl) throws Exception {
-		Class.forName(driverClassName);
-		_connection = DriverManager.getConnection(dbUrl);
+	// Bit layout of the tile key: 29 bits each of x and y, and the level above
+	// them.
+	private static final int KEY_COORDINATE_BITS = 29;
+	private static final long KEY_COORDINATE_MASK = (1L << KEY_COORDINATE_BITS) - 1;
+
+
+
+	/**
+	 * Get the integer key under which a tile is stored. The key is unique per
+	 * (level, x, y), for all levels up to 29.
+	 */
+	public static long tileKey (TileIndex tile) {
+		return (((long) tile.getLevel()) << (2 * KEY_COORDINATE_BITS))
+			| ((tile.getX() & KEY_COORDINATE_MASK) << KEY_COORDINATE_BITS)
+			| (tile.getY() & KEY_COORDINATE_MASK);
+	}
+
+
+
+	private JDBCConnectionPool             _pool;
+	// For each known tile table, whether or not it has a tile key column.
+	// Tables not in this map have not been seen yet, or don't exist.
+	private ConcurrentMap<String, Boolean> _tileTableKeyed;
+	private volatile boolean               _metaDataTableExists;
+
+	public JDBCPyramidIO (String driverClassName, String dbUrl) throws Exception {
+		this(driverClassName, dbUrl, null, DEFAULT_POOL_SIZE);
+	}
+
+	/**
+	 * Create a JDBC pyramid IO
+	 * 
+	 * @param driverClassName The full class name of the JDBC driver
+	 * @param dbUrl The JDBC URL of the database
+	 * @param connectionProperties Driver properties for each connection; may
+	 *            be null
+	 * @param poolSize The maximum number of simultaneously open connections
+	 */
+	public JDBCPyramidIO (String driverClassName, String dbUrl,
+	                      Properties connectionProperties, int poolSize) throws Exception {
+		_pool = new JDBCConnectionPool(driverClassName, dbUrl, connectionProperties, poolSize);
+		_tileTableKeyed = new ConcurrentHashMap<>();
+		_metaDataTableExists = false;
 	}
 
 	public void shutdown() {
-		try {
-			_connection.close();
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+		_pool.shutdown();
+	}
+
+	/**
+	 * The SQL command used to insert a tile. Dialects that support it should
+	 * override this to replace existing tiles instead of failing on them.
+	 */
+	protected String getTileInsertCommand () {
+		return "INSERT INTO";
+	}
+
+	/**
+	 * The SQL type of the tile key column, which must hold a 64-bit integer.
+	 */
+	protected String getTileKeyColumnType () {
+		return "BIGINT";
 	}
 
 	@Override
 	public void initializeForWrite(String pyramidId) throws IOException {
 		// Create the table and columns if necessary.
+		PooledConnection connection = null;
 		Statement stmt = null;
 		try {
-			if (!tableExists(pyramidId)) {
+			connection = _pool.borrow();
+			if (!tableExists(connection, pyramidId)) {
 				StringBuilder sb = new StringBuilder();
 				sb.append("CREATE TABLE ");
 				sb.append(toTableName(pyramidId));
 				sb.append(" (");
+				sb.append(COL_TILE_KEY);
+				sb.append(" ");
+				sb.append(getTileKeyColumnType());
+				sb.append(" NOT NULL PRIMARY KEY, ");
 				sb.append(COL_ZOOM_LVL);
 				sb.append(" INTEGER NOT NULL, ");
 				sb.append(COL_TILE_COLUMN);
@@ -91,20 +167,14 @@ public class JDBCPyramidIO implements PyramidIO {
 				sb.append(COL_TILE_ROW);
 				sb.append(" INTEGER NOT NULL, ");
 				sb.append(COL_TILE_DATA);
-				sb.append(" BLOB,");
-				sb.append(" CONSTRAINT pk_TileIndex PRIMARY KEY (");
-				sb.append(COL_ZOOM_LVL);
-				sb.append(",");
-				sb.append(COL_TILE_COLUMN);
-				sb.append(",");
-				sb.append(COL_TILE_ROW);
-				sb.append("))");
+				sb.append(" BLOB)");
 				
-				stmt = _connection.createStatement();
+				stmt = connection.getConnection().createStatement();
 				stmt.executeUpdate(sb.toString());
+				_tileTableKeyed.put(pyramidId, true);
 			}
 
-			if (!tableExists(TABLE_METADATA)) {
+			if (!tableExists(connection, TABLE_METADATA)) {
 				StringBuilder sb = new StringBuilder();
 				sb.append("CREATE TABLE ");
 				sb.append(TABLE_METADATA);
@@ -112,8 +182,9 @@ public class JDBCPyramidIO implements PyramidIO {
 				sb.append(COL_PYRAMID_ID);
 				sb.append(" TEXT PRIMARY KEY, metadata TEXT)");
 				
-				if (stmt == null) stmt = _connection.createStatement();
+				if (stmt == null) stmt = connection.getConnection().createStatement();
 				stmt.executeUpdate(sb.toString());
+				_metaDataTableExists = true;
 			}
 		} catch (Exception e) {
 			throw new IOException("Error initializing for write: ", e);
@@ -125,6 +196,7 @@ public class JDBCPyramidIO implements PyramidIO {
 					e.printStackTrace();
 				}
 			}
+			_pool.release(connection);
 		}
 	}
 	
@@ -137,39 +209,88 @@ public class JDBCPyramidIO implements PyramidIO {
 	}
 
 	protected boolean tableExists(String pyramidId) throws SQLException {
-		StringBuilder sb = new StringBuilder();
-		sb.append("SELECT name FROM 'sqlite_master' WHERE type='table' AND name=");
-		sb.append(toTableName(pyramidId));
-		
-		Statement stmt = null;
-		boolean exists = false;
-		
+		PooledConnection connection = _pool.borrow();
 		try {
-			stmt = _connection.createStatement();
-			stmt.execute(sb.toString());
-			exists = stmt.getResultSet().next();
+			return tableExists(connection, pyramidId);
 		} finally {
-			if (stmt != null) {
-				stmt.close();
+			_pool.release(connection);
+		}
+	}
+
+	private boolean tableExists (PooledConnection connection, String tableName) throws SQLException {
+		DatabaseMetaData dbMetaData = connection.getConnection().getMetaData();
+		ResultSet tables = dbMetaData.getTables(null, null, tableName, null);
+		try {
+			while (tables.next()) {
+				if (tableName.equals(tables.getString("TABLE_NAME"))) return true;
+			}
+			return false;
+		} finally {
+			tables.close();
+		}
+	}
+
+	/*
+	 * Determine whether the given tile table is keyed by our integer tile key
+	 * column, or is from before that column existed. Returns null if the table
+	 * doesn't exist. The answer is cached for existing tables, so this only
+	 * touches the database the first time it sees a table.
+	 */
+	private Boolean isTileTableKeyed (PooledConnection connection, String pyramidId) throws SQLException {
+		Boolean keyed = _tileTableKeyed.get(pyramidId);
+		if (null != keyed) return keyed;
+
+		if (!tableExists(connection, pyramidId)) return null;
+
+		Statement stmt = connection.getConnection().createStatement();
+		try {
+			ResultSet resultSet = stmt.executeQuery("SELECT * FROM "+toTableName(pyramidId)+" WHERE 1 = 0");
+			ResultSetMetaData rsMetaData = resultSet.getMetaData();
+			keyed = false;
+			for (int i=1; i<=rsMetaData.getColumnCount(); ++i) {
+				if (COL_TILE_KEY.equalsIgnoreCase(rsMetaData.getColumnName(i))) {
+					keyed = true;
+					break;
+				}
 			}
+			resultSet.close();
+		} finally {
+			stmt.close();
+		}
+		_tileTableKeyed.put(pyramidId, keyed);
+		return keyed;
+	}
+
+	private boolean metaDataTableExists (PooledConnection connection) throws SQLException {
+		if (!_metaDataTableExists) {
+			_metaDataTableExists = tableExists(connection, TABLE_METADATA);
 		}
-		
-		return exists;
+		return _metaDataTableExists;
 	}
 
 	@Override
 	public <T> void writeTiles(String pyramidId,
 	                           TileSerializer<T> serializer, Iterable<TileData<T>> data)
 		throws IOException {
+		PooledConnection connection = null;
 		PreparedStatement ps = null;
+		boolean inTransaction = false;
 
 		try {
-			_connection.setAutoCommit(false);
+			connection = _pool.borrow();
+			Boolean keyed = isTileTableKeyed(connection, pyramidId);
+			if (null == keyed)
+				throw new IOException("Attempt to write tiles to uninitialized pyramid "+pyramidId);
 
 			StringBuilder sb = new StringBuilder();
-			sb.append("INSERT INTO ");
+			sb.append(getTileInsertCommand());
+			sb.append(" ");
 			sb.append(toTableName(pyramidId));
 			sb.append(" (");
+			if (keyed) {
+				sb.append(COL_TILE_KEY);
+				sb.append(",");
+			}
 			sb.append(COL_ZOOM_LVL);
 			sb.append(",");
 			sb.append(COL_TILE_COLUMN);
@@ -178,20 +299,26 @@ public class JDBCPyramidIO implements PyramidIO {
 			sb.append(",");
 			sb.append(COL_TILE_DATA);
 			sb.append(") ");
-			sb.append("VALUES (?,?,?,?)");
-			ps = _connection.prepareStatement(sb.toString());
+			sb.append(keyed ? "VALUES (?,?,?,?,?)" : "VALUES (?,?,?,?)");
+			ps = connection.prepare(sb.toString());
+
+			connection.getConnection().setAutoCommit(false);
+			inTransaction = true;
 
 			int count = 0;
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
 			for (TileData<T> tile : data) {
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				baos.reset();
 				serializer.serialize(tile, baos);
 
 				TileIndex index = tile.getDefinition();
 
-				ps.setInt(1, index.getLevel());
-				ps.setInt(2, index.getX());
-				ps.setInt(3, index.getY());
-				ps.setBytes(4, baos.toByteArray());
+				int column = 1;
+				if (keyed) ps.setLong(column++, tileKey(index));
+				ps.setInt(column++, index.getLevel());
+				ps.setInt(column++, index.getX());
+				ps.setInt(column++, index.getY());
+				ps.setBytes(column++, baos.toByteArray());
 
 				ps.addBatch();
 
@@ -202,17 +329,26 @@ public class JDBCPyramidIO implements PyramidIO {
 			}
 
 			ps.executeBatch();
-			_connection.commit();
+			connection.getConnection().commit();
+			inTransaction = false;
+		} catch (IOException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new IOException("Error writing tiles.", e);
 		} finally {
-			try {
-				if (ps != null) {
-					ps.close();
+			if (null != connection) {
+				try {
+					if (inTransaction) {
+						// The statement is cached with the connection; don't leave rows from
+						// this failed write queued up for the next one
+						connection.getConnection().rollback();
+						if (null != ps) ps.clearBatch();
+					}
+					connection.getConnection().setAutoCommit(true);
+				} catch (SQLException e) {
+					e.printStackTrace();
 				}
-				_connection.setAutoCommit(true);
-			} catch (SQLException e) {
-				e.printStackTrace();
+				_pool.release(connection);
 			}
 		}
 
@@ -231,48 +367,23 @@ public class JDBCPyramidIO implements PyramidIO {
 	@Override
 	public void writeMetaData(String pyramidId, String metaData)
 		throws IOException {
-		Statement stmt = null;
+		PooledConnection connection = null;
 		try {
-			StringBuilder sb = new StringBuilder();
-			if (metaDataExistsFor(pyramidId)) {
-				sb.append("UPDATE ");
-				sb.append(TABLE_METADATA);
-				sb.append(" SET ");
-				sb.append(COL_METADATA);
-				sb.append(" = '");
-				sb.append(metaData);
-				sb.append("' WHERE ");
-				sb.append(COL_PYRAMID_ID);
-				sb.append(" = '");
-				sb.append(toTableName(pyramidId));
-				sb.append("';");
-			}
-			else {
-				sb.append("INSERT INTO ");
-				sb.append(TABLE_METADATA);
-				sb.append(" (");
-				sb.append(COL_PYRAMID_ID);
-				sb.append(", ");
-				sb.append(COL_METADATA);
-				sb.append(") VALUES('");
-				sb.append(toTableName(pyramidId));
-				sb.append("','");
-				sb.append(metaData);
-				sb.append("')");
+			connection = _pool.borrow();
+
+			PreparedStatement update = connection.prepare("UPDATE "+TABLE_METADATA+" SET "+COL_METADATA+" = ? WHERE "+COL_PYRAMID_ID+" = ?");
+			update.setString(1, metaData);
+			update.setString(2, toTableName(pyramidId));
+			if (0 == update.executeUpdate()) {
+				PreparedStatement insert = connection.prepare("INSERT INTO "+TABLE_METADATA+" ("+COL_PYRAMID_ID+", "+COL_METADATA+") VALUES (?, ?)");
+				insert.setString(1, toTableName(pyramidId));
+				insert.setString(2, metaData);
+				insert.executeUpdate();
 			}
-			
-			stmt = _connection.createStatement();
-			stmt.execute(sb.toString());
 		} catch (SQLException e) {
 			throw new IOException("Error writing metadata.", e);
 		} finally {
-			if (stmt != null) {
-				try {
-					stmt.close();
-				} catch (SQLException e) {
-					e.printStackTrace();
-				}
-			}
+			_pool.release(connection);
 		}
 	}
 
@@ -285,146 +396,218 @@ public class JDBCPyramidIO implements PyramidIO {
 	public <T> List<TileData<T>> readTiles(String pyramidId,
 	                                       TileSerializer<T> serializer, Iterable<TileIndex> tiles)
 		throws IOException {
-		PreparedStatement ps = null;
+		PooledConnection connection = null;
 		try {
-			if (!tableExists(pyramidId)) {
+			connection = _pool.borrow();
+			Boolean keyed = isTileTableKeyed(connection, pyramidId);
+			if (null == keyed) {
 				// TODO: Right thing to return when the table doesn't exist?
 				return null;
 			}
 
-			StringBuilder sb = new StringBuilder();
-			sb.append("SELECT ");
-			sb.append(COL_TILE_DATA);
-			sb.append(" FROM ");
-			sb.append(toTableName(pyramidId));
-			sb.append(" WHERE ");
-			sb.append(COL_ZOOM_LVL);
-			sb.append(" = ? AND ");
-			sb.append(COL_TILE_COLUMN);
-			sb.append(" = ? AND ");
-			sb.append(COL_TILE_ROW);
-			sb.append(" = ?");
-
-			ps = _connection.prepareStatement(sb.toString());
-
-			List<TileData<T>> results = new LinkedList<TileData<T>>();
-			for (TileIndex tile : tiles) {
-				ps.setInt(1, tile.getLevel());
-				ps.setInt(2, tile.getX());
-				ps.setInt(3, tile.getY());
-
-				ResultSet resultSet = ps.executeQuery();
-				if (!resultSet.next())
-					continue;
-
-				byte[] tileBytes = resultSet.getBytes(COL_TILE_DATA);
-
-				TileData<T> data = serializer.deserialize(tile,
-				                                          new ByteArrayInputStream(tileBytes));
-				results.add(data);
+			List<TileIndex> indices = new ArrayList<>();
+			for (TileIndex tile: tiles) indices.add(tile);
+			Map<TileIndex, byte[]> rawTiles = (keyed
+			                                   ? readKeyedTiles(connection, pyramidId, indices)
+			                                   : readUnkeyedTiles(connection, pyramidId, indices));
+
+			// Keep results in request order
+			List<TileData<T>> results = new ArrayList<>(rawTiles.size());
+			for (TileIndex tile: indices) {
+				byte[] tileBytes = rawTiles.get(tile);
+				if (null != tileBytes) {
+					results.add(serializer.deserialize(tile, new ByteArrayInputStream(tileBytes)));
+				}
 			}
 			return results;
-
 		} catch (Exception e) {
 			throw new IOException("Error reading tiles.", e);
 		} finally {
-			if (ps != null) {
-				try {
-					ps.close();
-				} catch (SQLException e) {
-					throw new IOException(e);
+			_pool.release(connection);
+		}
+	}
+
+	/*
+	 * Read the raw data of the given tiles from a keyed table, READ_CHUNK_SIZE
+	 * tiles per query.
+	 */
+	private Map<TileIndex, byte[]> readKeyedTiles (PooledConnection connection, String pyramidId,
+	                                               List<TileIndex> tiles) throws SQLException {
+		StringBuilder sb = new StringBuilder();
+		sb.append("SELECT ");
+		sb.append(COL_TILE_KEY);
+		sb.append(", ");
+		sb.append(COL_TILE_DATA);
+		sb.append(" FROM ");
+		sb.append(toTableName(pyramidId));
+		sb.append(" WHERE ");
+		sb.append(COL_TILE_KEY);
+		sb.append(" IN (?");
+		for (int i=1; i<READ_CHUNK_SIZE; ++i) sb.append(",?");
+		sb.append(")");
+		PreparedStatement ps = connection.prepare(sb.toString());
+
+		Map<Long, TileIndex> byKey = new HashMap<>();
+		Map<TileIndex, byte[]> results = new HashMap<>();
+		int n = tiles.size();
+		for (int start=0; start<n; start += READ_CHUNK_SIZE) {
+			byKey.clear();
+			long key = 0L;
+			for (int i=0; i<READ_CHUNK_SIZE; ++i) {
+				if (start+i < n) {
+					TileIndex tile = tiles.get(start+i);
+					key = tileKey(tile);
+					byKey.put(key, tile);
 				}
+				ps.setLong(i+1, key);
+			}
+
+			ResultSet resultSet = ps.executeQuery();
+			try {
+				while (resultSet.next()) {
+					TileIndex tile = byKey.get(resultSet.getLong(1));
+					if (null != tile) results.put(tile, resultSet.getBytes(2));
+				}
+			} finally {
+				resultSet.close();
 			}
 		}
+		return results;
+	}
+
+	/*
+	 * Read the raw data of the given tiles from a table without a tile key
+	 * column, one tile at a time.
+	 */
+	private Map<TileIndex, byte[]> readUnkeyedTiles (PooledConnection connection, String pyramidId,
+	                                                 List<TileIndex> tiles) throws SQLException {
+		StringBuilder sb = new StringBuilder();
+		sb.append("SELECT ");
+		sb.append(COL_TILE_DATA);
+		sb.append(" FROM ");
+		sb.append(toTableName(pyramidId));
+		sb.append(" WHERE ");
+		sb.append(COL_ZOOM_LVL);
+		sb.append(" = ? AND ");
+		sb.append(COL_TILE_COLUMN);
+		sb.append(" = ? AND ");
+		sb.append(COL_TILE_ROW);
+		sb.append(" = ?");
+		PreparedStatement ps = connection.prepare(sb.toString());
+
+		Map<TileIndex, byte[]> results = new HashMap<>();
+		for (TileIndex tile : tiles) {
+			ps.setInt(1, tile.getLevel());
+			ps.setInt(2, tile.getX());
+			ps.setInt(3, tile.getY());
+
+			ResultSet resultSet = ps.executeQuery();
+			try {
+				if (resultSet.next()) results.put(tile, resultSet.getBytes(1));
+			} finally {
+				resultSet.close();
+			}
+		}
+		return results;
 	}
 
 	@Override
 	public <T> InputStream getTileStream (String pyramidId,
 	                                      TileSerializer<T> serializer,
 	                                      TileIndex tile) throws IOException {
-		PreparedStatement ps = null;
+		PooledConnection connection = null;
 		try {
-			if (!tableExists(pyramidId)) {
+			connection = _pool.borrow();
+			Boolean keyed = isTileTableKeyed(connection, pyramidId);
+			if (null == keyed) {
 				// TODO: Right thing to return when the table doesn't exist?
 				return null;
 			}
 
-			StringBuilder sb = new StringBuilder();
-			sb.append("SELECT ");
-			sb.append(COL_TILE_DATA);
-			sb.append(" FROM ");
-			sb.append(toTableName(pyramidId));
-			sb.append(" WHERE ");
-			sb.append(COL_ZOOM_LVL);
-			sb.append(" = ? AND ");
-			sb.append(COL_TILE_COLUMN);
-			sb.append(" = ? AND ");
-			sb.append(COL_TILE_ROW);
-			sb.append(" = ?");
-
-			ps = _connection.prepareStatement(sb.toString());
-			ps.setInt(1, tile.getLevel());
-			ps.setInt(2, tile.getX());
-			ps.setInt(3, tile.getY());
-
-			ResultSet resultSet = ps.executeQuery();
-			if (resultSet.next()) {
-				byte[] tileBytes = resultSet.getBytes(COL_TILE_DATA);
+			List<TileIndex> indices = new ArrayList<>(1);
+			indices.add(tile);
+			Map<TileIndex, byte[]> rawTiles = (keyed
+			                                   ? readKeyedTiles(connection, pyramidId, indices)
+			                                   : readUnkeyedTiles(connection, pyramidId, indices));
+			byte[] tileBytes = rawTiles.get(tile);
+			if (null != tileBytes) {
 				return new ByteArrayInputStream(tileBytes);
 			}
 		} catch (Exception e) {
 			throw new IOException("Error reading tiles.", e);
 		} finally {
-			if (ps != null) {
-				try {
-					ps.close();
-				} catch (SQLException e) {
-					throw new IOException(e);
-				}
-			}
+			_pool.release(connection);
 		}
 		return null;
 	}
 
 	@Override
 	public String readMetaData(String pyramidId) throws IOException {
-		Statement stmt = null;
+		PooledConnection connection = null;
 		try {
-			if (!tableExists(TABLE_METADATA)) {
+			connection = _pool.borrow();
+			if (!metaDataTableExists(connection)) {
 				return null;
 			}
 
+			PreparedStatement ps = connection.prepare("SELECT "+COL_METADATA+" FROM "+TABLE_METADATA+" WHERE "+COL_PYRAMID_ID+" = ?");
+			ps.setString(1, toTableName(pyramidId));
+			ResultSet resultSet = ps.executeQuery();
+			try {
+				if (!resultSet.next())
+					return null;
+
+				return resultSet.getString(COL_METADATA);
+			} finally {
+				resultSet.close();
+			}
+		} catch (SQLException e) {
+			throw new IOException("Error reading tiles.", e);
+		} finally {
+			_pool.release(connection);
+		}
+	}
+	
+	@Override
+	public List<TileIndex> listTiles (String pyramidId, int level) throws IOException {
+		PooledConnection connection = null;
+		try {
+			connection = _pool.borrow();
+			List<TileIndex> tiles = new ArrayList<>();
+			if (null == isTileTableKeyed(connection, pyramidId)) return tiles;
+
 			StringBuilder sb = new StringBuilder();
 			sb.append("SELECT ");
-			sb.append(COL_METADATA);
+			sb.append(COL_TILE_COLUMN);
+			sb.append(", ");
+			sb.append(COL_TILE_ROW);
 			sb.append(" FROM ");
-			sb.append(TABLE_METADATA);
-			sb.append(" WHERE ");
-			sb.append(COL_PYRAMID_ID);
-			sb.append(" = '");
 			sb.append(toTableName(pyramidId));
-			sb.append("'");
-			
-			stmt = _connection.createStatement();
-			ResultSet resultSet = stmt.executeQuery(sb
-			                                        .toString());
-			if (!resultSet.next())
-				return null;
+			sb.append(" WHERE ");
+			sb.append(COL_ZOOM_LVL);
+			sb.append(" = ? ORDER BY ");
+			sb.append(COL_TILE_COLUMN);
+			sb.append(", ");
+			sb.append(COL_TILE_ROW);
+			PreparedStatement ps = connection.prepare(sb.toString());
+			ps.setInt(1, level);
 
-			return resultSet.getString(TABLE_METADATA);
-		} catch (SQLException e) {
-			throw new IOException("Error reading tiles.", e);
-		} finally {
-			if (stmt != null) {
-				try {
-					stmt.close();
-				} catch (SQLException e) {
-					e.printStackTrace();
+			ResultSet resultSet = ps.executeQuery();
+			try {
+				while (resultSet.next()) {
+					tiles.add(new TileIndex(level, resultSet.getInt(1), resultSet.getInt(2)));
 				}
+			} finally {
+				resultSet.close();
 			}
+			return tiles;
+		} catch (SQLException e) {
+			throw new IOException("Error listing tiles.", e);
+		} finally {
+			_pool.release(connection);
 		}
 	}
-	
+
 	@Override
 	public void removeTiles (String id, Iterable<TileIndex> tiles ) throws IOException {
 		throw new IOException("removeTiles not currently supported for JDBCPyramidIO");
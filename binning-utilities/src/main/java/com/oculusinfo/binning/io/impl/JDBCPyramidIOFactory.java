@@ -26,6 +26,8 @@ package com.oculusinfo.binning.io.impl;
 
 import com.oculusinfo.binning.io.PyramidIO;
 import com.oculusinfo.factory.ConfigurableFactory;
+import com.oculusinfo.factory.SharedInstanceFactory;
+import com.oculusinfo.factory.properties.IntegerProperty;
 import com.oculusinfo.factory.properties.StringProperty;
 
 import org.slf4j.Logger;
@@ -34,7 +36,7 @@ import org.slf4j.LoggerFactory;
 import java.util.List;
 
 
-public class JDBCPyramidIOFactory extends ConfigurableFactory<PyramidIO> {
+public class JDBCPyramidIOFactory extends SharedInstanceFactory<PyramidIO> {
 	private static final Logger LOGGER = LoggerFactory.getLogger(JDBCPyramidIOFactory.class);
 
 
@@ -45,20 +47,25 @@ public class JDBCPyramidIOFactory extends ConfigurableFactory<PyramidIO> {
 	public static StringProperty JDBC_DRIVER            = new StringProperty("jdbc.driver",
 		   "The full class name of the JDBC driver to use.  There is no default for this property.",
 		   null);
+	public static IntegerProperty POOL_SIZE             = new IntegerProperty("connections",
+		   "The maximum number of simultaneous connections to the database.",
+		   JDBCPyramidIO.DEFAULT_POOL_SIZE);
 	
 	public JDBCPyramidIOFactory (ConfigurableFactory<?> parent, List<String> path) {
 		super("jdbc", PyramidIO.class, parent, path);
 		
 		addProperty(ROOT_PATH);
 		addProperty(JDBC_DRIVER);
+		addProperty(POOL_SIZE);
 	}
 
 	@Override
-	protected PyramidIO create() {
+	protected PyramidIO createInstance () {
 		try {
 			String driver = getPropertyValue(JDBC_DRIVER);
 			String rootPath = getPropertyValue(ROOT_PATH);
-			return new JDBCPyramidIO(driver, rootPath);
+			int poolSize = getPropertyValue(POOL_SIZE);
+			return new JDBCPyramidIO(driver, rootPath, null, poolSize);
 		}
 		catch (Exception e) {
 			LOGGER.error("Error trying to create JDBCPyramidIO", e);
@@ -24,15 +24,86 @@
  */
 package com.oculusinfo.binning.io.impl;
 
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.sqlite.SQLiteConfig;
+
 /**
  * A SQLite-based JDBC PyramidIO.
  * 
+ * Writable instances switch the database to write-ahead logging, so that
+ * readers are never blocked by a writer; read-only instances, intended for
+ * serving tiles, open their connections read-only, and can be shared freely
+ * between request threads.
+ * 
  * @author rcameron
  *
  */
 public class SQLitePyramidIO extends JDBCPyramidIO {
+	private static final String IN_MEMORY_DB = ":memory:";
 
 	public SQLitePyramidIO(String dbPath) throws Exception {
-		super("org.sqlite.JDBC", "jdbc:sqlite:" + dbPath);
+		this(dbPath, false, DEFAULT_POOL_SIZE);
+	}
+
+	/**
+	 * Create a SQLite pyramid IO
+	 * 
+	 * @param dbPath The path of the database file
+	 * @param readOnly If true, all connections are opened read-only; the
+	 *            database must already exist
+	 * @param poolSize The maximum number of simultaneously open connections.
+	 *            In-memory databases are private to a connection, so always
+	 *            use exactly one.
+	 */
+	public SQLitePyramidIO(String dbPath, boolean readOnly, int poolSize) throws Exception {
+		super("org.sqlite.JDBC", "jdbc:sqlite:" + dbPath,
+		      getConnectionProperties(readOnly),
+		      IN_MEMORY_DB.equals(dbPath) ? 1 : poolSize);
+		if (!readOnly && !IN_MEMORY_DB.equals(dbPath)) {
+			enableWriteAheadLog("jdbc:sqlite:" + dbPath);
+		}
+	}
+
+	// WAL mode is persistent in the database file, so setting it once, from
+	// any writable connection, benefits all later readers too.
+	private static void enableWriteAheadLog (String dbUrl) throws SQLException {
+		Connection connection = DriverManager.getConnection(dbUrl);
+		try {
+			Statement stmt = connection.createStatement();
+			try {
+				stmt.execute("PRAGMA journal_mode=WAL");
+			} finally {
+				stmt.close();
+			}
+		} finally {
+			connection.close();
+		}
+	}
+
+	private static Properties getConnectionProperties (boolean readOnly) {
+		SQLiteConfig config = new SQLiteConfig();
+		if (readOnly) {
+			config.setReadOnly(true);
+		} else {
+			config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+		}
+		return config.toProperties();
+	}
+
+	@Override
+	protected String getTileInsertCommand () {
+		return "INSERT OR REPLACE INTO";
+	}
+
+	@Override
+	protected String getTileKeyColumnType () {
+		// An INTEGER PRIMARY KEY column becomes an alias for the rowid, the
+		// fastest possible lookup in SQLite.
+		return "INTEGER";
 	}
 }
@@ -26,6 +26,9 @@ package com.oculusinfo.binning.io.impl;
 
 import com.oculusinfo.binning.io.PyramidIO;
 import com.oculusinfo.factory.ConfigurableFactory;
+import com.oculusinfo.factory.SharedInstanceFactory;
+import com.oculusinfo.factory.properties.BooleanProperty;
+import com.oculusinfo.factory.properties.IntegerProperty;
 import com.oculusinfo.factory.properties.StringProperty;
 
 import org.slf4j.Logger;
@@ -34,7 +37,7 @@ import org.slf4j.LoggerFactory;
 import java.util.List;
 
 
-public class SQLitePyramidIOFactory extends ConfigurableFactory<PyramidIO> {
+public class SQLitePyramidIOFactory extends SharedInstanceFactory<PyramidIO> {
 	private static final Logger LOGGER = LoggerFactory.getLogger(SQLitePyramidIOFactory.class);
 
 
@@ -42,18 +45,28 @@ public class SQLitePyramidIOFactory extends ConfigurableFactory<PyramidIO> {
 	public static StringProperty ROOT_PATH              = new StringProperty("root.path",
 		   "Indicates the root path of the tile pyramid - the database path.  There is no default for this property.",
 		   null);
+	public static IntegerProperty POOL_SIZE             = new IntegerProperty("connections",
+		   "The maximum number of simultaneous connections to the database.",
+		   JDBCPyramidIO.DEFAULT_POOL_SIZE);
+	public static BooleanProperty READ_ONLY             = new BooleanProperty("read.only",
+		   "If true, the database is opened read-only, which is appropriate when serving pregenerated tiles.  The database must already exist.",
+		   false);
 	
 	public SQLitePyramidIOFactory (ConfigurableFactory<?> parent, List<String> path) {
 		super("sqlite", PyramidIO.class, parent, path);
 		
 		addProperty(ROOT_PATH);
+		addProperty(POOL_SIZE);
+		addProperty(READ_ONLY);
 	}
 
 	@Override
-	protected PyramidIO create() {
+	protected PyramidIO createInstance () {
 		try {
 			String rootPath = getPropertyValue(ROOT_PATH);
-			return new SQLitePyramidIO(rootPath);
+			boolean readOnly = getPropertyValue(READ_ONLY);
+			int poolSize = getPropertyValue(POOL_SIZE);
+			return new SQLitePyramidIO(rootPath, readOnly, poolSize);
 		}
 		catch (Exception e) {
 			LOGGER.error("Error trying to create SQLitePyramidIO", e);
@@ -0,0 +1,509 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.binning.io.impl;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.oculusinfo.binning.TileData;
+import com.oculusinfo.binning.TileIndex;
+import com.oculusinfo.binning.io.PyramidIO;
+import com.oculusinfo.binning.io.TileEnumerator;
+import com.oculusinfo.binning.io.serialization.TileSerializer;
+
+
+
+/**
+ * A PyramidIO that reads and writes tile pyramids stored as Hadoop MapFiles,
+ * on any file system Hadoop understands (local or HDFS).
+ *
+ * A pyramid is a directory containing a metadata file, and numbered block
+ * subdirectories; each write adds a new block, and tiles in later blocks
+ * override the same tiles in earlier ones. Each block contains one or more
+ * MapFiles (as written by Spark or Hadoop, one per partition), keyed by
+ * {@link #getTileKey(TileIndex)}, whose values are the serialized tiles.
+ *
+ * Only the sparse MapFile indices are held in memory; reading a tile is a
+ * binary search of the index followed by a single seek and read.
+ */
+public class SequenceFilePyramidIO implements PyramidIO, TileEnumerator {
+	private static final Logger LOGGER = LoggerFactory.getLogger(SequenceFilePyramidIO.class);
+
+	public static final String METADATA_FILENAME = "metadata";
+	public static final String DEFAULT_PART_NAME = "part-00000";
+
+	// Tile key layout: the level in the top bits, above 58 bits of
+	// interleaved (Morton-ordered) x and y coordinates.
+	private static final int  LEVEL_SHIFT = 58;
+	private static final long COORDINATE_MASK = (1L << 29) - 1;
+
+
+
+	/**
+	 * Get the key under which a tile is stored. Keys sort first by level, then
+	 * in Morton (Z) order within a level, so tiles near each other in space
+	 * tend to be near each other on disk. Valid for all levels up to 29.
+	 */
+	public static long getTileKey (TileIndex tile) {
+		return (((long) tile.getLevel()) << LEVEL_SHIFT)
+			| (spreadBits(tile.getY()) << 1)
+			| spreadBits(tile.getX());
+	}
+
+	/**
+	 * Get the tile index corresponding to a tile key. Bin counts are left as
+	 * the TileIndex defaults.
+	 */
+	public static TileIndex getTileIndex (long key) {
+		int level = (int) (key >>> LEVEL_SHIFT);
+		int x = (int) compactBits(key);
+		int y = (int) compactBits(key >>> 1);
+		return new TileIndex(level, x, y);
+	}
+
+	/**
+	 * Get the level of the tile with the given key, without decoding the rest
+	 * of it.
+	 */
+	public static int getTileLevel (long key) {
+		return (int) (key >>> LEVEL_SHIFT);
+	}
+
+	// Spread the low 29 bits of a value out to every other bit
+	private static long spreadBits (long value) {
+		long v = value & COORDINATE_MASK;
+		v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+		v = (v | (v << 8))  & 0x00FF00FF00FF00FFL;
+		v = (v | (v << 4))  & 0x0F0F0F0F0F0F0F0FL;
+		v = (v | (v << 2))  & 0x3333333333333333L;
+		v = (v | (v << 1))  & 0x5555555555555555L;
+		return v;
+	}
+
+	// The inverse of spreadBits - collect every other bit
+	private static long compactBits (long value) {
+		long v = value & 0x0155555555555555L;
+		v = (v | (v >>> 1))  & 0x3333333333333333L;
+		v = (v | (v >>> 2))  & 0x0F0F0F0F0F0F0F0FL;
+		v = (v | (v >>> 4))  & 0x00FF00FF00FF00FFL;
+		v = (v | (v >>> 8))  & 0x0000FFFF0000FFFFL;
+		v = (v | (v >>> 16)) & 0x00000000FFFFFFFFL;
+		return v;
+	}
+
+	/**
+	 * Get the block number of a block directory, or -1 if the path isn't a
+	 * block directory.
+	 */
+	public static int getBlockNumber (Path block) {
+		try {
+			return Integer.parseInt(block.getName());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * List the numbered block directories of a pyramid, most recent first.
+	 */
+	public static List<Path> getBlocks (FileSystem fs, Path pyramidPath) throws IOException {
+		List<Path> blocks = new ArrayList<>();
+		if (!fs.exists(pyramidPath)) return blocks;
+
+		for (FileStatus status: fs.listStatus(pyramidPath)) {
+			if (status.isDirectory() && getBlockNumber(status.getPath()) >= 0) {
+				blocks.add(status.getPath());
+			}
+		}
+		Collections.sort(blocks, new Comparator<Path>() {
+			@Override
+			public int compare (Path a, Path b) {
+				return getBlockNumber(b) - getBlockNumber(a);
+			}
+		});
+		return blocks;
+	}
+
+	/**
+	 * Determine if a path is a MapFile - a directory containing both data and
+	 * index files.
+	 */
+	public static boolean isMapFile (FileSystem fs, Path path) throws IOException {
+		return fs.isDirectory(path)
+			&& fs.exists(new Path(path, MapFile.DATA_FILE_NAME))
+			&& fs.exists(new Path(path, MapFile.INDEX_FILE_NAME));
+	}
+
+
+
+	/*
+	 * An open MapFile within a block, with its key range
+	 */
+	private static class MapFilePart {
+		long           _firstKey;
+		long           _lastKey;
+		MapFile.Reader _reader;
+
+		MapFilePart (Path path, Configuration config) throws IOException {
+			_reader = new MapFile.Reader(path, config);
+
+			LongWritable key = new LongWritable();
+			BytesWritable value = new BytesWritable();
+			if (_reader.next(key, value)) {
+				_firstKey = key.get();
+				_reader.finalKey(key);
+				_lastKey = key.get();
+			} else {
+				_firstKey = Long.MAX_VALUE;
+				_lastKey = Long.MIN_VALUE;
+			}
+			_reader.reset();
+		}
+
+		boolean mightContain (long key) {
+			return _firstKey <= key && key <= _lastKey;
+		}
+
+		// MapFile readers aren't thread-safe, so reads are serialized per part
+		synchronized byte[] read (LongWritable key, BytesWritable value) throws IOException {
+			if (null == _reader.get(key, value)) return null;
+			return Arrays.copyOf(value.getBytes(), value.getLength());
+		}
+
+		// Collect all keys in [from, to)
+		synchronized void listKeys (long from, long to, Set<Long> keys) throws IOException {
+			if (_lastKey < from || to <= _firstKey) return;
+
+			BytesWritable value = new BytesWritable();
+			// Finds the first key at or after from, leaving the reader just past it
+			LongWritable first = (LongWritable) _reader.getClosest(new LongWritable(from), value);
+			if (null == first) return;
+			LongWritable key = new LongWritable(first.get());
+			do {
+				if (to <= key.get()) break;
+				keys.add(key.get());
+			} while (_reader.next(key, value));
+		}
+
+		synchronized void close () {
+			try {
+				_reader.close();
+			} catch (IOException e) {
+				LOGGER.warn("Error closing MapFile reader", e);
+			}
+		}
+	}
+
+	/*
+	 * All the open MapFiles in a pyramid, most recent block first
+	 */
+	private static class PyramidReader {
+		List<MapFilePart> _parts;
+
+		PyramidReader (FileSystem fs, Path pyramidPath, Configuration config) throws IOException {
+			_parts = new ArrayList<>();
+			for (Path block: getBlocks(fs, pyramidPath)) {
+				for (FileStatus status: fs.listStatus(block)) {
+					Path path = status.getPath();
+					if (isMapFile(fs, path)) {
+						_parts.add(new MapFilePart(path, config));
+					} else if (status.isFile() && !path.getName().startsWith("_") && !path.getName().startsWith(".")) {
+						LOGGER.warn("Ignoring {}; only MapFile pyramid blocks can be read directly", path);
+					}
+				}
+			}
+		}
+
+		byte[] read (long tileKey) throws IOException {
+			LongWritable key = new LongWritable(tileKey);
+			BytesWritable value = new BytesWritable();
+			for (MapFilePart part: _parts) {
+				if (part.mightContain(tileKey)) {
+					byte[] data = part.read(key, value);
+					if (null != data) return data;
+				}
+			}
+			return null;
+		}
+
+		List<TileIndex> listTiles (int level) throws IOException {
+			Set<Long> keys = new TreeSet<>();
+			long from = ((long) level) << LEVEL_SHIFT;
+			long to = ((long) level+1) << LEVEL_SHIFT;
+			for (MapFilePart part: _parts) {
+				part.listKeys(from, to, keys);
+			}
+			List<TileIndex> tiles = new ArrayList<>(keys.size());
+			for (long key: keys) tiles.add(getTileIndex(key));
+			return tiles;
+		}
+
+		void close () {
+			for (MapFilePart part: _parts) part.close();
+		}
+	}
+
+
+
+	private String                                _rootLocation;
+	private Configuration                         _config;
+	private FileSystem                            _fs;
+	private ConcurrentMap<String, PyramidReader>  _readers;
+
+	/**
+	 * Create a pyramid IO for pyramids under the given root location
+	 *
+	 * @param rootLocation The file system URI under which pyramids are found
+	 *            (typically "hdfs://hostname:port" or "file:///some/path")
+	 */
+	public SequenceFilePyramidIO (String rootLocation) throws IOException {
+		_rootLocation = rootLocation;
+		_config = new Configuration();
+		_fs = getPyramidPath("").getFileSystem(_config);
+		_readers = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Get the location of a pyramid
+	 */
+	public Path getPyramidPath (String pyramidId) {
+		if (_rootLocation.endsWith("/")) return new Path(_rootLocation+pyramidId);
+		else return new Path(_rootLocation+"/"+pyramidId);
+	}
+
+	private PyramidReader getReader (String pyramidId) throws IOException {
+		PyramidReader reader = _readers.get(pyramidId);
+		if (null == reader) {
+			synchronized (_readers) {
+				reader = _readers.get(pyramidId);
+				if (null == reader) {
+					reader = new PyramidReader(_fs, getPyramidPath(pyramidId), _config);
+					_readers.put(pyramidId, reader);
+				}
+			}
+		}
+		return reader;
+	}
+
+	/**
+	 * Forget any open readers for the given pyramid, so that the next read
+	 * sees its current contents.
+	 */
+	public void refresh (String pyramidId) {
+		PyramidReader reader;
+		synchronized (_readers) {
+			reader = _readers.remove(pyramidId);
+		}
+		if (null != reader) reader.close();
+	}
+
+	/**
+	 * Close all open readers.
+	 */
+	public void close () {
+		synchronized (_readers) {
+			for (PyramidReader reader: _readers.values()) reader.close();
+			_readers.clear();
+		}
+	}
+
+
+
+	@Override
+	public void initializeForWrite (String pyramidId) throws IOException {
+		Path pyramidPath = getPyramidPath(pyramidId);
+		if (!_fs.exists(pyramidPath)) {
+			_fs.mkdirs(pyramidPath);
+		} else if (!_fs.isDirectory(pyramidPath)) {
+			throw new IOException("Pyramid location "+pyramidPath+" is not a directory");
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Each call writes a new block, so tiles should be written in as few,
+	 * large calls as possible.
+	 */
+	@Override
+	public <T> void writeTiles (String pyramidId, TileSerializer<T> serializer,
+	                            Iterable<TileData<T>> data) throws IOException {
+		// MapFiles must be written in key order
+		TreeMap<Long, TileData<T>> sortedTiles = new TreeMap<>();
+		for (TileData<T> tile: data) {
+			sortedTiles.put(getTileKey(tile.getDefinition()), tile);
+		}
+		if (sortedTiles.isEmpty()) return;
+
+		Path pyramidPath = getPyramidPath(pyramidId);
+		int nextBlock = 0;
+		for (Path block: getBlocks(_fs, pyramidPath)) {
+			nextBlock = Math.max(nextBlock, getBlockNumber(block)+1);
+		}
+		Path partPath = new Path(new Path(pyramidPath, Integer.toString(nextBlock)), DEFAULT_PART_NAME);
+
+		MapFile.Writer writer = new MapFile.Writer(_config, partPath,
+		                                           MapFile.Writer.keyClass(LongWritable.class),
+		                                           MapFile.Writer.valueClass(BytesWritable.class));
+		try {
+			LongWritable key = new LongWritable();
+			BytesWritable value = new BytesWritable();
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			for (Map.Entry<Long, TileData<T>> entry: sortedTiles.entrySet()) {
+				baos.reset();
+				serializer.serialize(entry.getValue(), baos);
+				byte[] bytes = baos.toByteArray();
+
+				key.set(entry.getKey());
+				value.set(bytes, 0, bytes.length);
+				writer.append(key, value);
+			}
+		} finally {
+			writer.close();
+		}
+
+		refresh(pyramidId);
+	}
+
+	@Override
+	public void writeMetaData (String pyramidId, String metaData) throws IOException {
+		Path metaDataPath = new Path(getPyramidPath(pyramidId), METADATA_FILENAME);
+		Writer writer = new OutputStreamWriter(_fs.create(metaDataPath, true), "UTF-8");
+		try {
+			writer.write(metaData);
+		} finally {
+			writer.close();
+		}
+	}
+
+	@Override
+	public void initializeForRead (String pyramidId, int width, int height, Properties dataDescription) {
+		// Noop
+	}
+
+	@Override
+	public <T> List<TileData<T>> readTiles (String pyramidId, TileSerializer<T> serializer,
+	                                        Iterable<TileIndex> tiles) throws IOException {
+		PyramidReader reader = getReader(pyramidId);
+
+		// Read in key order, so that reads within each MapFile move forward
+		List<TileIndex> requested = new ArrayList<>();
+		final Map<TileIndex, Long> keys = new HashMap<>();
+		for (TileIndex tile: tiles) {
+			requested.add(tile);
+			keys.put(tile, getTileKey(tile));
+		}
+		List<TileIndex> sorted = new ArrayList<>(keys.keySet());
+		Collections.sort(sorted, new Comparator<TileIndex>() {
+			@Override
+			public int compare (TileIndex a, TileIndex b) {
+				return keys.get(a).compareTo(keys.get(b));
+			}
+		});
+
+		Map<TileIndex, byte[]> rawTiles = new HashMap<>();
+		for (TileIndex tile: sorted) {
+			byte[] data = reader.read(keys.get(tile));
+			if (null != data) rawTiles.put(tile, data);
+		}
+
+		// Return results in request order
+		List<TileData<T>> results = new ArrayList<>(rawTiles.size());
+		for (TileIndex tile: requested) {
+			byte[] data = rawTiles.get(tile);
+			if (null != data) {
+				results.add(serializer.deserialize(tile, new ByteArrayInputStream(data)));
+			}
+		}
+		return results;
+	}
+
+	@Override
+	public <T> InputStream getTileStream (String pyramidId, TileSerializer<T> serializer,
+	                                      TileIndex tile) throws IOException {
+		byte[] data = getReader(pyramidId).read(getTileKey(tile));
+		if (null == data) return null;
+		return new ByteArrayInputStream(data);
+	}
+
+	@Override
+	public String readMetaData (String pyramidId) throws IOException {
+		Path metaDataPath = new Path(getPyramidPath(pyramidId), METADATA_FILENAME);
+		if (!_fs.exists(metaDataPath) || !_fs.isFile(metaDataPath)) return null;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(_fs.open(metaDataPath), "UTF-8"));
+		try {
+			StringBuilder metaData = new StringBuilder();
+			String line = reader.readLine();
+			while (null != line) {
+				if (metaData.length() > 0) metaData.append("\n");
+				metaData.append(line);
+				line = reader.readLine();
+			}
+			return metaData.toString();
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Override
+	public List<TileIndex> listTiles (String pyramidId, int level) throws IOException {
+		return getReader(pyramidId).listTiles(level);
+	}
+
+	@Override
+	public void removeTiles (String id, Iterable<TileIndex> tiles) throws IOException {
+		throw new IOException("removeTiles not currently supported for SequenceFilePyramidIO");
+	}
+}
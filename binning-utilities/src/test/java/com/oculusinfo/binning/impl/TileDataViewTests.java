@@ -35,6 +35,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.List;
 
 
 public class TileDataViewTests {
@@ -91,4 +92,120 @@ public class TileDataViewTests {
 		SubTileDataView<Integer> underTest = SubTileDataView.fromSourceAbsolute(source16, new TileIndex(1, 1, 1));
 		underTest.getBin(1,2);
 	}
+
+	private static TileData<List<Integer>> listSource () {
+		TileData<List<Integer>> source = new DenseTileData<>(new TileIndex(0, 0, 0, 2, 1));
+		source.setBin(0, 0, Arrays.asList(0, 1, 2, 3));
+		source.setBin(1, 0, Arrays.asList(10, 11));
+		source.setMetaData("name", "source");
+		return source;
+	}
+
+	@Test
+	public void testMultiSliceView () {
+		TileData<List<Integer>> source = listSource();
+		TileData<List<Integer>> underTest = new DenseTileMultiSliceView<>(source, Arrays.asList(3, 0, 1));
+
+		Assert.assertEquals(Arrays.asList(3, 0, 1), underTest.getBin(0, 0));
+		// Slices past the end of a bin are skipped
+		Assert.assertEquals(Arrays.asList(10, 11), underTest.getBin(1, 0));
+		Assert.assertEquals("source", underTest.getMetaData("name"));
+
+		underTest.setBin(0, 0, Arrays.asList(30, 0, 10));
+		Assert.assertEquals(Arrays.asList(0, 10, 2, 30), source.getBin(0, 0));
+	}
+
+	@Test
+	public void testBucketRangeView () {
+		TileData<List<Integer>> source = listSource();
+		TileData<List<Integer>> underTest = new DenseTileBucketRangeView<>(source, 1, 2);
+
+		Assert.assertEquals(Arrays.asList(null, 1, 2, null), underTest.getBin(0, 0));
+		Assert.assertEquals(Arrays.asList(null, 11), underTest.getBin(1, 0));
+
+		// Nested ranges intersect
+		TileData<List<Integer>> nested = new DenseTileBucketRangeView<>(underTest, 2, 3);
+		Assert.assertEquals(Arrays.asList(null, null, 2, null), nested.getBin(0, 0));
+	}
+
+	@Test
+	public void testMultiSliceViewMetaDataIsLocal () {
+		TileData<List<Integer>> source = listSource();
+		TileData<List<Integer>> underTest = new DenseTileMultiSliceView<>(source, Arrays.asList(1));
+
+		underTest.setMetaData("name", "view");
+		underTest.setMetaData("extra", 1);
+		Assert.assertEquals("view", underTest.getMetaData("name"));
+		Assert.assertEquals("1", underTest.getMetaData("extra"));
+		Assert.assertTrue(underTest.getMetaDataProperties().contains("extra"));
+		Assert.assertEquals("source", source.getMetaData("name"));
+		Assert.assertNull(source.getMetaData("extra"));
+	}
+
+	@Test
+	public void testBucketRangeViewMetaDataIsLocal () {
+		TileData<List<Integer>> source = listSource();
+		TileData<List<Integer>> underTest = new DenseTileBucketRangeView<>(source, 1, 2);
+
+		underTest.setMetaData("name", "view");
+		underTest.setMetaData("extra", 1);
+		Assert.assertEquals("view", underTest.getMetaData("name"));
+		Assert.assertEquals("1", underTest.getMetaData("extra"));
+		Assert.assertTrue(underTest.getMetaDataProperties().contains("extra"));
+		Assert.assertEquals("source", source.getMetaData("name"));
+		Assert.assertNull(source.getMetaData("extra"));
+
+		// Nested views keep metadata set on the views they replace, without sharing it
+		TileData<List<Integer>> nested = new DenseTileBucketRangeView<>(underTest, 2, 3);
+		Assert.assertEquals("view", nested.getMetaData("name"));
+		nested.setMetaData("name", "nested");
+		Assert.assertEquals("view", underTest.getMetaData("name"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadBucketRange () {
+		new DenseTileBucketRangeView<>(listSource(), 2, 1);
+	}
+
+	@Test
+	public void testMappedViewFusion () {
+		TileData<List<Integer>> source = listSource();
+		TileData<Integer> sizes = MappedTileView.map(source, new MappedTileView.BinMapper<List<Integer>, Integer>() {
+			private static final long serialVersionUID = 1L;
+			@Override
+			public Integer map (List<Integer> value) {
+				return value.size();
+			}
+		});
+		TileData<Integer> doubled = MappedTileView.map(sizes, new MappedTileView.BinMapper<Integer, Integer>() {
+			private static final long serialVersionUID = 1L;
+			@Override
+			public Integer map (Integer value) {
+				return value * 2;
+			}
+		});
+
+		Assert.assertEquals(8, (int) doubled.getBin(0, 0));
+		Assert.assertEquals(4, (int) doubled.getBin(1, 0));
+		Assert.assertEquals(source.getDefinition(), doubled.getDefinition());
+	}
+
+	@Test
+	public void testMappedViewMetaDataIsLocal () {
+		TileData<List<Integer>> source = listSource();
+		TileData<List<Integer>> underTest = MappedTileView.map(source, MappedTileView.<List<Integer>>identity());
+
+		underTest.setMetaData("name", "view");
+		underTest.setMetaData("extra", 1);
+		Assert.assertEquals("view", underTest.getMetaData("name"));
+		Assert.assertEquals("1", underTest.getMetaData("extra"));
+		Assert.assertTrue(underTest.getMetaDataProperties().contains("extra"));
+		Assert.assertEquals("source", source.getMetaData("name"));
+		Assert.assertNull(source.getMetaData("extra"));
+
+		// Fused views keep metadata set on the views they replace
+		TileData<List<Integer>> fused = MappedTileView.map(underTest, MappedTileView.<List<Integer>>identity());
+		Assert.assertEquals("view", fused.getMetaData("name"));
+		Assert.assertSame(source.getBin(0, 0), fused.getBin(0, 0));
+	}
 }
@@ -89,6 +89,31 @@ public class FileSystemPyramidSourceTest {
 		}
 	}
 
+	@Test
+	public void writeShortTileNameTest () throws IOException {
+		// Tile files named "2." are shorter than temporary file prefixes may be
+		FileBasedPyramidIO io = new FileBasedPyramidIO(new FileSystemPyramidSource(SOURCE_DIR, ""));
+		TileSerializer<Integer> serializer = new PrimitiveAvroSerializer<>(Integer.class, CodecFactory.nullCodec());
+
+		TileData<Integer> tile = new DenseTileData<>(new TileIndex(LEVEL, X_INDEX, Y_INDEX, 1, 1));
+		tile.setBin(0, 0, 7);
+		ArrayList<TileData<Integer>> writeTiles = new ArrayList<>();
+		writeTiles.add(tile);
+		io.initializeForWrite(SOURCE_LAYER);
+		io.writeTiles(SOURCE_LAYER, serializer, writeTiles);
+		// Rewriting replaces the tile
+		tile.setBin(0, 0, 8);
+		io.writeTiles(SOURCE_LAYER, serializer, writeTiles);
+
+		List<TileData<Integer>> readTiles = readAvroTiles(io, serializer, SOURCE_LAYER);
+		Assert.assertEquals(1, readTiles.size());
+		Assert.assertEquals(8, readTiles.get(0).getBin(0, 0).intValue());
+
+		// ... leaving no temporary files behind
+		File xDir = new File(SOURCE_DIR + SOURCE_LAYER + "/" + PyramidIO.TILES_FOLDERNAME + "/" + LEVEL + "/" + X_INDEX);
+		Assert.assertArrayEquals(new String[] {Y_INDEX + "."}, xDir.list());
+	}
+
 	@After
 	public void removeWrittenFile() {
 		try {
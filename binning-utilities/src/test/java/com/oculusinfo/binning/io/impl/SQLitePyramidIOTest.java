@@ -27,14 +27,20 @@ package com.oculusinfo.binning.io.impl;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
-import org.junit.Ignore;
 import org.junit.Test;
 
 import com.oculusinfo.binning.TileData;
@@ -45,21 +51,22 @@ import com.oculusinfo.factory.util.Pair;
 
 /**
  * test SQLite implementation
- * This will only work on a machine with SQLite already installed; since we 
- * don't want to mandate SQLite installation just to build properly, the 
- * default state of these tests is to ignore them.
+ * The SQLite JDBC driver bundles its own native SQLite library, so these
+ * tests need nothing installed; each runs against a fresh temporary database
+ * file.
  */
-@Ignore
 public class SQLitePyramidIOTest {
 
 	private static final String PYRAMID_ID = "testPyramid";
 	JDBCPyramidIO sqlitePyramidIO = null;
+	private File dbFile;
 
 
 	@Before
 	public void setUp() throws Exception {
 		try {
-			sqlitePyramidIO = new SQLitePyramidIO("test.db");
+			dbFile = File.createTempFile("sqlite-pyramid-test", ".db");
+			sqlitePyramidIO = new SQLitePyramidIO(dbFile.getAbsolutePath());
 		} catch (Exception e) {
 			fail(e.getMessage());
 		}
@@ -69,7 +76,9 @@ public class SQLitePyramidIOTest {
 	public void tearDown() throws Exception {
 		try {
 			sqlitePyramidIO.shutdown();
-			File dbFile = new File("test.db");
+			// Write-ahead logging leaves journal files beside the database
+			new File(dbFile.getPath()+"-wal").delete();
+			new File(dbFile.getPath()+"-shm").delete();
 			if (!dbFile.delete()) fail("Failed to delete test database.");
 		} catch (Exception e) {
 			fail(e.getMessage());
@@ -129,6 +138,141 @@ public class SQLitePyramidIOTest {
 		}
 	}
 
+	private TileData<List<Pair<String, Integer>>> createTile (TileIndex index) {
+		TileData<List<Pair<String, Integer>>> tile = new DenseTileData<List<Pair<String, Integer>>>(index);
+		List<Pair<String, Integer>> binVals = new ArrayList<Pair<String,Integer>>();
+		binVals.add(new Pair<String, Integer>(index.toString(), index.getLevel()));
+		tile.setBin(0, 0, binVals);
+		return tile;
+	}
+
+	@Test
+	public void testTileKeys () {
+		Set<Long> keys = new HashSet<>();
+		for (int level=0; level<4; ++level) {
+			int n = 1 << level;
+			for (int x=0; x<n; ++x) {
+				for (int y=0; y<n; ++y) {
+					Assert.assertTrue(keys.add(JDBCPyramidIO.tileKey(new TileIndex(level, x, y))));
+				}
+			}
+		}
+		int max = (1 << 29) - 1;
+		Assert.assertTrue(JDBCPyramidIO.tileKey(new TileIndex(29, max, max)) > 0L);
+		Assert.assertFalse(JDBCPyramidIO.tileKey(new TileIndex(29, max, 0)) ==
+		                   JDBCPyramidIO.tileKey(new TileIndex(29, 0, max)));
+	}
+
+	@Test
+	public void testManyTiles () throws Exception {
+		sqlitePyramidIO.initializeForWrite(PYRAMID_ID);
+		StringIntPairArrayJsonSerializer serializer = new StringIntPairArrayJsonSerializer();
+
+		// Write every other tile of level 4, so reads span several chunks and
+		// include missing tiles
+		List<TileData<List<Pair<String, Integer>>>> written = new ArrayList<>();
+		List<TileIndex> requested = new ArrayList<>();
+		for (int x=0; x<16; ++x) {
+			for (int y=0; y<16; ++y) {
+				TileIndex index = new TileIndex(4, x, y, 1, 1);
+				requested.add(index);
+				if (0 == (x+y)%2) written.add(createTile(index));
+			}
+		}
+		sqlitePyramidIO.writeTiles(PYRAMID_ID, serializer, written);
+		// Rewriting a tile should replace it
+		sqlitePyramidIO.writeTiles(PYRAMID_ID, serializer, written.subList(0, 3));
+
+		Collections.reverse(requested);
+		List<TileData<List<Pair<String, Integer>>>> read =
+			sqlitePyramidIO.readTiles(PYRAMID_ID, serializer, requested);
+		Assert.assertEquals(written.size(), read.size());
+
+		// Results come back in request order
+		Collections.reverse(written);
+		for (int i=0; i<written.size(); ++i) {
+			Assert.assertEquals(written.get(i).getDefinition(), read.get(i).getDefinition());
+			Assert.assertEquals(written.get(i).getBin(0, 0), read.get(i).getBin(0, 0));
+		}
+
+		Assert.assertNull(sqlitePyramidIO.getTileStream(PYRAMID_ID, serializer, new TileIndex(4, 0, 1, 1, 1)));
+		Assert.assertNotNull(sqlitePyramidIO.getTileStream(PYRAMID_ID, serializer, new TileIndex(4, 1, 1, 1, 1)));
+
+		// A read-only view of the same database should see the same tiles
+		SQLitePyramidIO readOnlyIO = new SQLitePyramidIO(dbFile.getAbsolutePath(), true, 2);
+		try {
+			Assert.assertEquals(written.size(), readOnlyIO.readTiles(PYRAMID_ID, serializer, requested).size());
+		} finally {
+			readOnlyIO.shutdown();
+		}
+	}
+
+	@Test
+	public void testFailedWriteDiscarded () throws Exception {
+		sqlitePyramidIO.initializeForWrite(PYRAMID_ID);
+		final TileIndex bad = new TileIndex(3, 2, 2, 1, 1);
+		StringIntPairArrayJsonSerializer failing = new StringIntPairArrayJsonSerializer() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void serialize (TileData<List<Pair<String, Integer>>> tile, OutputStream stream) throws IOException {
+				if (bad.equals(tile.getDefinition())) throw new IOException("Test failure");
+				super.serialize(tile, stream);
+			}
+		};
+
+		// Queue up a tile, then fail partway through the write
+		TileIndex queued = new TileIndex(3, 1, 1, 1, 1);
+		try {
+			List<TileData<List<Pair<String, Integer>>>> tiles = new ArrayList<>();
+			tiles.add(createTile(queued));
+			tiles.add(createTile(bad));
+			sqlitePyramidIO.writeTiles(PYRAMID_ID, failing, tiles);
+			fail("Write should have failed");
+		} catch (IOException e) {
+			// expected
+		}
+
+		// The next write on the pooled connection must not carry the failed
+		// write's queued tile along with it
+		StringIntPairArrayJsonSerializer serializer = new StringIntPairArrayJsonSerializer();
+		TileIndex good = new TileIndex(3, 0, 0, 1, 1);
+		sqlitePyramidIO.writeTiles(PYRAMID_ID, serializer, Collections.singletonList(createTile(good)));
+
+		List<TileIndex> requested = new ArrayList<>();
+		requested.add(queued);
+		requested.add(good);
+		List<TileData<List<Pair<String, Integer>>>> read =
+			sqlitePyramidIO.readTiles(PYRAMID_ID, serializer, requested);
+		Assert.assertEquals(1, read.size());
+		Assert.assertEquals(good, read.get(0).getDefinition());
+	}
+
+	@Test
+	public void testUnkeyedTable () throws Exception {
+		// Tables written before the tile key column existed must still be readable
+		Class.forName("org.sqlite.JDBC");
+		Connection connection = DriverManager.getConnection("jdbc:sqlite:"+dbFile.getAbsolutePath());
+		Statement stmt = connection.createStatement();
+		stmt.executeUpdate("CREATE TABLE \"legacy\" (zoom_level INTEGER NOT NULL, tile_column INTEGER NOT NULL, "
+		                   +"tile_row INTEGER NOT NULL, tile_data BLOB, "
+		                   +"CONSTRAINT pk_TileIndex PRIMARY KEY (zoom_level,tile_column,tile_row))");
+		stmt.close();
+		connection.close();
+
+		StringIntPairArrayJsonSerializer serializer = new StringIntPairArrayJsonSerializer();
+		TileIndex index = new TileIndex(2, 1, 3, 1, 1);
+		sqlitePyramidIO.writeTiles("legacy", serializer, Collections.singletonList(createTile(index)));
+
+		List<TileIndex> requested = new ArrayList<>();
+		requested.add(new TileIndex(2, 0, 0, 1, 1));
+		requested.add(index);
+		List<TileData<List<Pair<String, Integer>>>> read =
+			sqlitePyramidIO.readTiles("legacy", serializer, requested);
+		Assert.assertEquals(1, read.size());
+		Assert.assertEquals(index, read.get(0).getDefinition());
+	}
+
 	@Test
 	public void testMetadata() {
 		try {
@@ -138,6 +282,12 @@ public class SQLitePyramidIOTest {
 			sqlitePyramidIO.writeMetaData(PYRAMID_ID, metadata);
 
 			Assert.assertTrue(sqlitePyramidIO.readMetaData(PYRAMID_ID).equals(metadata));
+
+			// Quotes in metadata must survive the round trip, and rewriting
+			// must replace the old value
+			metadata = "{\"name\": \"Some 'quoted' metadata.\"}";
+			sqlitePyramidIO.writeMetaData(PYRAMID_ID, metadata);
+			Assert.assertEquals(metadata, sqlitePyramidIO.readMetaData(PYRAMID_ID));
 		} catch (Exception e) {
 			fail(e.getMessage());
 		}
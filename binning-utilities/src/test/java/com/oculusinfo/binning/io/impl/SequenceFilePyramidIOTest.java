@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.binning.io.impl;
+
+import com.oculusinfo.binning.TileData;
+import com.oculusinfo.binning.TileIndex;
+import com.oculusinfo.binning.impl.DenseTileData;
+import com.oculusinfo.binning.io.serialization.TileSerializer;
+import com.oculusinfo.binning.io.serialization.impl.PrimitiveAvroSerializer;
+
+import org.apache.avro.file.CodecFactory;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+public class SequenceFilePyramidIOTest {
+	private static String ROOT_DIR = "./src/test/sequence_file_pyramid";
+	private static String PYRAMID_ID = "test";
+
+	private SequenceFilePyramidIO _io;
+	private TileSerializer<Integer> _serializer;
+
+	@Before
+	public void setup () throws Exception {
+		_io = new SequenceFilePyramidIO("file://"+new File(ROOT_DIR).getAbsolutePath());
+		_serializer = new PrimitiveAvroSerializer<>(Integer.class, CodecFactory.nullCodec());
+	}
+
+	@After
+	public void teardown () {
+		_io.close();
+		try {
+			FileUtils.deleteDirectory(new File(ROOT_DIR));
+		} catch (Exception e) {
+			// swallow exception
+		}
+	}
+
+	private TileData<Integer> createTile (int level, int x, int y, int value) {
+		TileData<Integer> tile = new DenseTileData<>(new TileIndex(level, x, y, 4, 4));
+		for (int bx=0; bx<4; ++bx) {
+			for (int by=0; by<4; ++by) {
+				tile.setBin(bx, by, value+bx+4*by);
+			}
+		}
+		return tile;
+	}
+
+	@Test
+	public void testTileKeys () {
+		Set<Long> keys = new HashSet<>();
+		for (int level=0; level<5; ++level) {
+			for (int x=0; x < (1 << level); ++x) {
+				for (int y=0; y < (1 << level); ++y) {
+					TileIndex index = new TileIndex(level, x, y);
+					long key = SequenceFilePyramidIO.getTileKey(index);
+					Assert.assertTrue(keys.add(key));
+					Assert.assertEquals(index, SequenceFilePyramidIO.getTileIndex(key));
+					Assert.assertEquals(level, SequenceFilePyramidIO.getTileLevel(key));
+				}
+			}
+		}
+
+		int max = (1 << 29) - 1;
+		TileIndex deep = new TileIndex(29, max, max-1);
+		long deepKey = SequenceFilePyramidIO.getTileKey(deep);
+		Assert.assertTrue(deepKey > 0L);
+		Assert.assertEquals(deep, SequenceFilePyramidIO.getTileIndex(deepKey));
+
+		// Keys sort by level first
+		Assert.assertTrue(SequenceFilePyramidIO.getTileKey(new TileIndex(3, 7, 7)) <
+		                  SequenceFilePyramidIO.getTileKey(new TileIndex(4, 0, 0)));
+	}
+
+	@Test
+	public void testRoundTrip () throws Exception {
+		_io.initializeForWrite(PYRAMID_ID);
+
+		List<TileData<Integer>> tiles = new ArrayList<>();
+		for (int x=0; x<8; ++x) {
+			for (int y=0; y<8; y+=2) {
+				tiles.add(createTile(3, x, y, x*100+y));
+			}
+		}
+		_io.writeTiles(PYRAMID_ID, _serializer, tiles);
+		_io.writeMetaData(PYRAMID_ID, "{\"name\": \"test\"}");
+
+		// Request out of key order, including missing tiles
+		List<TileIndex> requested = Arrays.asList(new TileIndex(3, 7, 6, 4, 4),
+		                                          new TileIndex(3, 0, 1, 4, 4),
+		                                          new TileIndex(3, 0, 0, 4, 4),
+		                                          new TileIndex(2, 0, 0, 4, 4),
+		                                          new TileIndex(3, 3, 4, 4, 4));
+		List<TileData<Integer>> read = _io.readTiles(PYRAMID_ID, _serializer, requested);
+		Assert.assertEquals(3, read.size());
+		Assert.assertEquals(requested.get(0), read.get(0).getDefinition());
+		Assert.assertEquals(requested.get(2), read.get(1).getDefinition());
+		Assert.assertEquals(requested.get(4), read.get(2).getDefinition());
+		Assert.assertEquals(706, read.get(0).getBin(0, 0).intValue());
+		Assert.assertEquals(304+3+4*2, read.get(2).getBin(3, 2).intValue());
+
+		Assert.assertNull(_io.getTileStream(PYRAMID_ID, _serializer, new TileIndex(3, 1, 1)));
+		Assert.assertNotNull(_io.getTileStream(PYRAMID_ID, _serializer, new TileIndex(3, 1, 2)));
+		Assert.assertEquals("{\"name\": \"test\"}", _io.readMetaData(PYRAMID_ID));
+	}
+
+	@Test
+	public void testLaterBlocksOverride () throws Exception {
+		_io.initializeForWrite(PYRAMID_ID);
+		_io.writeTiles(PYRAMID_ID, _serializer, Arrays.asList(createTile(1, 0, 0, 0), createTile(1, 1, 1, 0)));
+		_io.writeTiles(PYRAMID_ID, _serializer, Arrays.asList(createTile(1, 1, 1, 1000)));
+
+		List<TileData<Integer>> read = _io.readTiles(PYRAMID_ID, _serializer,
+		                                             Arrays.asList(new TileIndex(1, 0, 0, 4, 4),
+		                                                           new TileIndex(1, 1, 1, 4, 4)));
+		Assert.assertEquals(2, read.size());
+		Assert.assertEquals(0, read.get(0).getBin(0, 0).intValue());
+		Assert.assertEquals(1000, read.get(1).getBin(0, 0).intValue());
+
+		// A fresh reader, with nothing cached, should see the same thing
+		SequenceFilePyramidIO io = new SequenceFilePyramidIO("file://"+new File(ROOT_DIR).getAbsolutePath()+"/");
+		try {
+			read = io.readTiles(PYRAMID_ID, _serializer, Arrays.asList(new TileIndex(1, 1, 1, 4, 4)));
+			Assert.assertEquals(1000, read.get(0).getBin(0, 0).intValue());
+		} finally {
+			io.close();
+		}
+	}
+
+	@Test
+	public void testListTiles () throws Exception {
+		_io.initializeForWrite(PYRAMID_ID);
+		_io.writeTiles(PYRAMID_ID, _serializer, Arrays.asList(createTile(2, 3, 1, 0), createTile(2, 0, 2, 0),
+		                                                      createTile(1, 1, 0, 0), createTile(3, 0, 0, 0)));
+		_io.writeTiles(PYRAMID_ID, _serializer, Arrays.asList(createTile(2, 3, 1, 1), createTile(2, 1, 1, 1)));
+
+		List<TileIndex> level2 = _io.listTiles(PYRAMID_ID, 2);
+		Assert.assertEquals(3, level2.size());
+		Assert.assertTrue(level2.contains(new TileIndex(2, 3, 1)));
+		Assert.assertTrue(level2.contains(new TileIndex(2, 0, 2)));
+		Assert.assertTrue(level2.contains(new TileIndex(2, 1, 1)));
+
+		Assert.assertEquals(Arrays.asList(new TileIndex(1, 1, 0)), _io.listTiles(PYRAMID_ID, 1));
+		Assert.assertTrue(_io.listTiles(PYRAMID_ID, 4).isEmpty());
+	}
+}
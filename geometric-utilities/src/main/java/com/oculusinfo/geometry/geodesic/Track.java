@@ -30,11 +30,13 @@ import java.util.*;
 
 abstract public class Track {
     private PositionCalculationParameters _parameters;
-    private List<Position>                _points;
-    private List<Double>                  _parameterization;
+    private Position[]                    _points;
+    private double[]                      _parameterization;
     private double                        _length;
     private Track                         _reverse;
     private Map<String, Double>           _statistics;
+    // Bounding radius of the track about its start point; calculated lazily
+    private double                        _radius;
 
     protected Track (PositionCalculationParameters parameters, Position... points) {
         this(parameters, Arrays.asList(points));
@@ -43,9 +45,10 @@ abstract public class Track {
     protected Track (PositionCalculationParameters parameters,
                      List<Position> points) {
         _parameters = parameters;
-        _points = new ArrayList<Position>(points);
+        _points = points.toArray(new Position[points.size()]);
         _reverse = null;
         _statistics = null;
+        _radius = -1.0;
 
         calculateLengthParameterization();
 
@@ -55,11 +58,18 @@ abstract public class Track {
     protected Track (PositionCalculationParameters parameters,
                      List<Position> points,
                      List<Double> parameterization) {
+        this(parameters, points, toArray(parameterization));
+    }
+
+    protected Track (PositionCalculationParameters parameters,
+                     List<Position> points,
+                     double[] parameterization) {
         _parameters = parameters;
-        _points = new ArrayList<Position>(points);
-        _parameterization = new ArrayList<Double>(parameterization);
+        _points = points.toArray(new Position[points.size()]);
+        _parameterization = Arrays.copyOf(parameterization, parameterization.length);
         _reverse = null;
         _statistics = null;
+        _radius = -1.0;
 
         calculateLength();
 
@@ -68,17 +78,17 @@ abstract public class Track {
 
     protected Track (Track oldTrack, PositionCalculationParameters newParameters) {
         _parameters = newParameters;
-        _points = new ArrayList<Position>();
-        _parameterization = new ArrayList<Double>();
+        _points = new Position[oldTrack._points.length];
+        _parameterization = Arrays.copyOf(oldTrack._parameterization, oldTrack._parameterization.length);
         _reverse = null;
         _statistics = null;
+        _radius = -1.0;
 
-        for (int i=0; i<oldTrack._points.size(); ++i) {
-            Position p = new Position(oldTrack._points.get(i),
+        for (int i=0; i<oldTrack._points.length; ++i) {
+            Position p = new Position(oldTrack._points[i],
                                       !_parameters.getCalculationType().equals(PositionCalculationType.Cartesian3D));
             p.setPrecision(_parameters.getPrecision());
-            _points.add(p);
-            _parameterization.add(oldTrack._parameterization.get(i));
+            _points[i] = p;
         }
 
         calculateLength();
@@ -86,14 +96,22 @@ abstract public class Track {
         reduce();
     }
 
+    private static double[] toArray (List<Double> values) {
+        double[] result = new double[values.size()];
+        for (int i=0; i<result.length; ++i)
+            result[i] = values.get(i);
+        return result;
+    }
+
     public Track reverse () {
         if (null == _reverse) {
-            List<Position> reversePoints = new ArrayList<Position>(_points);
-            Collections.reverse(reversePoints);
-            List<Double> reverseParameterization = new ArrayList<Double>(_parameterization);
-            Collections.reverse(reverseParameterization);
-            for (int i=0; i<reverseParameterization.size(); ++i)
-                reverseParameterization.set(i, 1.0-reverseParameterization.get(i));
+            int N = _points.length;
+            List<Position> reversePoints = new ArrayList<Position>(N);
+            double[] reverseParameterization = new double[N];
+            for (int i=0; i<N; ++i) {
+                reversePoints.add(_points[N-1-i]);
+                reverseParameterization[i] = 1.0-_parameterization[N-1-i];
+            }
             _reverse = createTrack(reversePoints, reverseParameterization);
             _reverse._reverse = this;
         }
@@ -105,14 +123,18 @@ abstract public class Track {
     }
 
     public List<Position> getPoints () {
-        return _points;
+        return Collections.unmodifiableList(Arrays.asList(_points));
     }
 
     public double getLength () {
         return _length;
     }
 
-    protected List<Double> getParameterization () {
+    /**
+     * Get the length parameterization of each point of this track. The
+     * returned array is internal to the track, and should not be modified.
+     */
+    protected double[] getParameterization () {
         return _parameterization;
     }
 
@@ -122,30 +144,29 @@ abstract public class Track {
      * ever used to actually change the underlying geometry, it would have to
      * take a new length too.
      */
-    protected void updatePoints (List<Position> points, List<Double> parameterization) {
-        _points = points;
+    protected void updatePoints (List<Position> points, double[] parameterization) {
+        _points = points.toArray(new Position[points.size()]);
         _parameterization = parameterization;
+        _radius = -1.0;
     }
 
     /*
      * Universal precalculation step - figure out the length parameterization of the trajectory
      */
     private void calculateLengthParameterization () {
-        _parameterization = new ArrayList<Double>(_points.size());
+        _parameterization = new double[_points.length];
 
         calculateLength();
         double cumulativeLength = 0.0;
 
-        Position lastPoint = null;
-        for (Position point: _points) {
+        for (int i=0; i<_points.length; ++i) {
             if (0 == _length) {
-                _parameterization.add(0.0);
+                _parameterization[i] = 0.0;
             } else {
-                if (null != lastPoint) {
-                    cumulativeLength += getSegmentDistance(lastPoint, point);
+                if (i > 0) {
+                    cumulativeLength += getSegmentDistance(_points[i-1], _points[i]);
                 }
-                _parameterization.add(cumulativeLength/_length);
-                lastPoint = point;
+                _parameterization[i] = cumulativeLength/_length;
             }
         }
     }
@@ -163,7 +184,7 @@ abstract public class Track {
     /** Create a track of the current type from the listed points */
     abstract protected Track createTrack (List<Position> points);
     /** Create a track of the current type from the listed points, whose parameterization is already calculated. */
-    abstract protected Track createTrack (List<Position> path, List<Double> parameterization);
+    abstract protected Track createTrack (List<Position> path, double[] parameterization);
 
     /*
      * Get the relative importance of point b relative to points a and c.
@@ -187,12 +208,11 @@ abstract public class Track {
 
     private boolean closerToReverse (Track them) {
         // First try matching endpoints
-        Position ourStart = _points.get(0);
-        Position ourEnd = _points.get(_points.size()-1);
+        Position ourStart = _points[0];
+        Position ourEnd = _points[_points.length-1];
 
-        List<Position> theirPoints = them.getPoints();
-        Position theirStart = theirPoints.get(0);
-        Position theirEnd = theirPoints.get(theirPoints.size()-1);
+        Position theirStart = them._points[0];
+        Position theirEnd = them._points[them._points.length-1];
 
         double dss = getSegmentDistance(ourStart, theirStart);
         double dse = getSegmentDistance(ourStart, theirEnd);
@@ -214,35 +234,92 @@ abstract public class Track {
         }
     }
 
+    /*
+     * Walk the joined parameterization of both tracks once. Since the joined
+     * parameterization is in order, the segment containing each successive
+     * parameter on either track can only move forward, so each track keeps a
+     * cursor into its own points rather than searching from the start each
+     * time, making this linear in the combined number of points.
+     */
     private double getDistanceWithDirection (Track them) {
-        List<Double> ourParameterization = getParameterization();
-        List<Double> theirParameterization = them.getParameterization();
-        List<Double> joinedParameterization = ListUtilities.joinLists(ourParameterization,
-                                                                      theirParameterization,
-                                                                      _parameters.getPrecision());
-
-        Position pALast = null;
-        Position pBLast = null;
+        double[] joinedParameterization = ListUtilities.joinArrays(_parameterization,
+                                                                   them._parameterization,
+                                                                   _parameters.getPrecision());
+
         double dLast = 0;
+        double distanceLast = 0;
         double totalDistance = 0.0;
-        for (double d : joinedParameterization) {
-            Position pA = getLengthParamterizedPoint(d);
-            Position pB = them.getLengthParamterizedPoint(d);
-            if (null != pALast) {
-                double startDistance = getSegmentDistance(pALast, pBLast);
-                double endDistance = getSegmentDistance(pA, pB);
-                totalDistance += (startDistance + endDistance) / 2
+        int segmentA = 0;
+        int segmentB = 0;
+        for (int i=0; i<joinedParameterization.length; ++i) {
+            double d = joinedParameterization[i];
+            segmentA = findSegment(d, segmentA);
+            segmentB = them.findSegment(d, segmentB);
+            Position pA = getLengthParamterizedPoint(d, segmentA);
+            Position pB = them.getLengthParamterizedPoint(d, segmentB);
+            double distance = getSegmentDistance(pA, pB);
+            if (i > 0) {
+                totalDistance += (distanceLast + distance) / 2
                                  * (d - dLast);
             }
 
             dLast = d;
-            pALast = pA;
-            pBLast = pB;
+            distanceLast = distance;
         }
 
         return totalDistance / ((_length + them._length) / 2.0);
     }
 
+    /**
+     * Get the radius of a circle, about the start of this track, that is
+     * guaranteed to contain every point on the track - including points
+     * interpolated between the track's vertices - as measured by this track's
+     * own distance metric.
+     */
+    public double getBoundingRadius () {
+        if (_radius < 0) {
+            // A point a fraction t along the segment from a to b is at most
+            // da + t*L and db + (1-t)*L from the start, where L is the
+            // segment length; the largest the lesser of these can be is
+            // (da + db + L)/2
+            Position start = _points[0];
+            double radius = 0.0;
+            double lastDistance = 0.0;
+            for (int i=1; i<_points.length; ++i) {
+                double distance = getSegmentDistance(start, _points[i]);
+                double segment = getSegmentDistance(_points[i-1], _points[i]);
+                radius = Math.max(radius, (lastDistance + distance + segment) / 2.0);
+                lastDistance = distance;
+            }
+            _radius = radius;
+        }
+        return _radius;
+    }
+
+    /**
+     * Get a lower bound on the distance between this track and another, as
+     * would be returned by {@link #getDistance(Track)}, without comparing the
+     * tracks point by point.
+     *
+     * Every point of each track lies within its bounding circle (see
+     * {@link #getBoundingRadius()}), so no two corresponding points can be
+     * closer than the gap between those circles; the track distance is the
+     * average point separation, normalized by the mean length of the two
+     * tracks.
+     */
+    public double getDistanceLowerBound (Track them) {
+        double meanLength = (_length + them._length) / 2.0;
+        if (!(meanLength > 0.0)) return 0.0;
+
+        double gap = getSegmentDistance(_points[0], them._points[0])
+                     - getBoundingRadius() - them.getBoundingRadius();
+        if (gap <= 0.0) return 0.0;
+
+        // The joined parameterization only spans [0, 1] to within our
+        // precision, so allow for a little less than the full range
+        return gap * Math.max(0.0, 1.0 - 2.0 * _parameters.getPrecision()) / meanLength;
+    }
+
 
 
     public Track weightedAverage (Track them, double ourWeight, double theirWeight) {
@@ -259,17 +336,19 @@ abstract public class Track {
         double theirRelWeight = theirWeight/(ourWeight+theirWeight);
 
         // Get all parameterization points
-        List<Double> ourParameterization = getParameterization();
-        List<Double> theirParameterization = them.getParameterization();
-        List<Double> joinedParameterization = ListUtilities.joinLists(ourParameterization,
-                                                                      theirParameterization,
-                                                                      _parameters.getPrecision());
+        double[] joinedParameterization = ListUtilities.joinArrays(_parameterization,
+                                                                   them._parameterization,
+                                                                   _parameters.getPrecision());
 
         // Average the tracks along each parameterization point
-        List<Position> meanPath = new ArrayList<Position>();
+        List<Position> meanPath = new ArrayList<Position>(joinedParameterization.length);
+        int segmentUs = 0;
+        int segmentThem = 0;
         for (double d: joinedParameterization) {
-            Position pUs = getLengthParamterizedPoint(d);
-            Position pThem = them.getLengthParamterizedPoint(d);
+            segmentUs = findSegment(d, segmentUs);
+            segmentThem = them.findSegment(d, segmentThem);
+            Position pUs = getLengthParamterizedPoint(d, segmentUs);
+            Position pThem = them.getLengthParamterizedPoint(d, segmentThem);
             Position weightedMean = interpolate(pUs, pThem, theirRelWeight);
             meanPath.add(weightedMean);
         }
@@ -287,9 +366,9 @@ abstract public class Track {
         result.append("<");
         result.append(getParameters().getCalculationType());
         result.append(">[");
-        for (int i=0; i<_points.size(); ++ i) {
+        for (int i=0; i<_points.length; ++ i) {
             if (0 < i) result.append(", ");
-            result.append(_points.get(i));
+            result.append(_points[i]);
         }
         result.append("]");
         return result.toString();
@@ -311,44 +390,48 @@ abstract public class Track {
      * Remove points that don't add anything significant to this path.
      * Insignificance is defined by _parameter.getAllowedError(), and the
      * definition of {@link #getRelativeError}.
+     *
+     * Each point is compared against the last point kept and the next point,
+     * so surviving points can be compacted into place in a single pass.
      */
     private void reduce () {
         double minImportance = Math.sqrt(1.0/_parameters.getAllowedError());
+        int N = _points.length;
+        if (N < 2) return;
+
         // Remove points that don't contribute much
-        int i=0;
-        while (i<_points.size()-2) {
-            Position a = _points.get(i);
-            Position b = _points.get(i+1);
-            Position c = _points.get(i+2);
+        int kept = 1;
+        for (int i=1; i<N-1; ++i) {
+            Position a = _points[kept-1];
+            Position b = _points[i];
+            Position c = _points[i+1];
             boolean remove = (a.equals(b) || c.equals(b));
             if (!remove) {
                 double relativeError = getRelativeError(a, b, c);
-                double relativeImportance = getRelativeImportance(a, b, c);
                 remove = (relativeError < _parameters.getAllowedError());
-                if (remove && minImportance < relativeImportance)
+                if (remove && minImportance < getRelativeImportance(a, b, c))
                     remove = false;
-                if (remove) {
-                    getRelativeError(a, b, c);
-                    getRelativeImportance(a, b, c);
-                }
             }
-            if (remove) {
-                _points.remove(i+1);
-                _parameterization.remove(i+1);
-            } else {
-                ++i;
+            if (!remove) {
+                _points[kept] = b;
+                _parameterization[kept] = _parameterization[i];
+                ++kept;
             }
         }
+        _points[kept] = _points[N-1];
+        _parameterization[kept] = _parameterization[N-1];
+        ++kept;
 
         // finally, check for duplication in the last two points
-        int n = _points.size();
-        if (n>1) {
-            Position a = _points.get(n-2);
-            Position b = _points.get(n-1);
-            if (a.equals(b)) {
-                _points.remove(n-2);
-                _parameterization.remove(n-2);
-            }
+        if (kept>1 && _points[kept-2].equals(_points[kept-1])) {
+            _points[kept-2] = _points[kept-1];
+            _parameterization[kept-2] = _parameterization[kept-1];
+            --kept;
+        }
+
+        if (kept < N) {
+            _points = Arrays.copyOf(_points, kept);
+            _parameterization = Arrays.copyOf(_parameterization, kept);
         }
     }
 
@@ -358,39 +441,50 @@ abstract public class Track {
     // setting, that should be trusted
     private void calculateLength () {
         _length = 0.0;
-        if (null == _points || _points.size() < 2)
+        if (null == _points || _points.length < 2)
             return;
 
-        Position lastPoint = null;
-        for (Position point : _points) {
-            if (null != lastPoint)
-                _length += getSegmentDistance(point, lastPoint);
-            lastPoint = point;
-        }
+        for (int i=1; i<_points.length; ++i)
+            _length += getSegmentDistance(_points[i], _points[i-1]);
+    }
+
+    /*
+     * Find the index of the point starting the segment containing the given
+     * parameter value, searching forward from the given index.
+     */
+    private int findSegment (double parameter, int from) {
+        int N = _parameterization.length;
+        int n = from;
+        while (n < N - 1 && _parameterization[n + 1] <= parameter)
+            ++n;
+        return n;
     }
 
     protected Position getLengthParamterizedPoint (double parameter) {
         if (parameter < 0.0 || 1.0 < parameter)
             throw new IllegalArgumentException("Length paramterization parameter must be between 0 and 1");
 
+        return getLengthParamterizedPoint(parameter, findSegment(parameter, 0));
+    }
+
+    /*
+     * Get the point at the given parameter value, knowing which segment it
+     * lies in. Points coinciding with a vertex are returned as is, so only
+     * points between vertices require a new position.
+     */
+    private Position getLengthParamterizedPoint (double parameter, int n) {
         // Only one point; return it.
-        int N = _parameterization.size();
+        int N = _parameterization.length;
         if (0 == N) return null;
-        if (1 == N) return _points.get(0);
-
-        int n;
-        for (n = 0; n < N - 1; ++n) {
-            if (_parameterization.get(n + 1) > parameter)
-                break;
-        }
+        if (1 == N) return _points[0];
 
-        double startD = _parameterization.get(n);
-        Position start = _points.get(n);
-        if (Math.abs(parameter - startD) < _parameters.getPrecision())
+        double startD = _parameterization[n];
+        Position start = _points[n];
+        if (Math.abs(parameter - startD) < _parameters.getPrecision() || n == N - 1)
             return start;
 
-        double endD = _parameterization.get(n + 1);
-        Position end = _points.get(n+1);
+        double endD = _parameterization[n + 1];
+        Position end = _points[n+1];
         if (Math.abs(parameter-endD) < _parameters.getPrecision())
             return end;
 
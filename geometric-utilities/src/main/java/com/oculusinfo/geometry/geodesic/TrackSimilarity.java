@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc. 
+ * http://www.oculusinfo.com/
+ * 
+ * Released under the MIT License.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.geometry.geodesic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Batch similarity queries over a collection of tracks.
+ *
+ * Comparing two tracks is linear in their number of points, but comparing
+ * every pair of N tracks is still quadratic in N. To avoid as many full
+ * comparisons as possible, candidates are first checked against a cheap lower
+ * bound on their distance, based on the tracks' bounding circles and lengths
+ * (see {@link Track#getDistanceLowerBound(Track)}), and are only compared
+ * fully if that bound doesn't already rule them out.
+ *
+ * For all-pairs queries, the tracks are also sorted by the distance of their
+ * start from a single pivot point; by the triangle inequality, two tracks
+ * whose pivot distances differ by more than the largest gap that could still
+ * match need not be looked at at all.
+ *
+ * All tracks must share the same distance metric - i.e., be of the same track
+ * type, with the same calculation parameters.
+ */
+public class TrackSimilarity {
+    /**
+     * A pair of tracks, and the distance between them. Tracks are identified
+     * by their index in the collection passed to the {@link TrackSimilarity}.
+     */
+    public static class Match {
+        private int    _first;
+        private int    _second;
+        private double _distance;
+
+        Match (int first, int second, double distance) {
+            _first = first;
+            _second = second;
+            _distance = distance;
+        }
+
+        public int getFirst () {
+            return _first;
+        }
+
+        public int getSecond () {
+            return _second;
+        }
+
+        public double getDistance () {
+            return _distance;
+        }
+
+        @Override
+        public String toString () {
+            return "Match["+_first+", "+_second+": "+_distance+"]";
+        }
+    }
+
+    private static final Comparator<Match> BY_DISTANCE = new Comparator<Match>() {
+        @Override
+        public int compare (Match a, Match b) {
+            return Double.compare(a.getDistance(), b.getDistance());
+        }
+    };
+
+
+
+    private List<? extends Track> _tracks;
+    // Track indices, sorted by the distance of the start of each track from
+    // the start of the first track
+    private int[]                 _pivotOrder;
+    private double[]              _pivotDistances;
+    private double                _maxLength;
+    private double                _maxRadius;
+
+    public TrackSimilarity (List<? extends Track> tracks) {
+        _tracks = tracks;
+
+        int N = tracks.size();
+        _pivotDistances = new double[N];
+        _maxLength = 0.0;
+        _maxRadius = 0.0;
+        if (N > 0) {
+            Track pivot = tracks.get(0);
+            Position pivotPoint = pivot.getPoints().get(0);
+            for (int i=0; i<N; ++i) {
+                Track track = tracks.get(i);
+                _pivotDistances[i] = pivot.getSegmentDistance(pivotPoint, track.getPoints().get(0));
+                _maxLength = Math.max(_maxLength, track.getLength());
+                _maxRadius = Math.max(_maxRadius, track.getBoundingRadius());
+            }
+        }
+
+        Integer[] order = new Integer[N];
+        for (int i=0; i<N; ++i) order[i] = i;
+        final double[] pivotDistances = _pivotDistances;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare (Integer a, Integer b) {
+                return Double.compare(pivotDistances[a], pivotDistances[b]);
+            }
+        });
+        _pivotOrder = new int[N];
+        for (int i=0; i<N; ++i) _pivotOrder[i] = order[i];
+    }
+
+    /**
+     * Find all pairs of distinct tracks within the given distance of each
+     * other.
+     *
+     * @param maxDistance The maximum track distance, as per
+     *            {@link Track#getDistance(Track)}, of pairs to return
+     * @return All matching pairs, with the lesser index first, in no
+     *         particular order
+     */
+    public List<Match> getPairsWithin (double maxDistance) {
+        List<Match> matches = new ArrayList<>();
+        int N = _tracks.size();
+        if (N < 2) return matches;
+
+        double slack = 1.0 - 2.0 * _tracks.get(0).getParameters().getPrecision();
+        for (int i=0; i<N; ++i) {
+            int a = _pivotOrder[i];
+            Track trackA = _tracks.get(a);
+            // The largest pivot distance difference any partner of A could
+            // have while still being within range
+            double reach = (slack > 0.0
+                            ? trackA.getBoundingRadius() + _maxRadius
+                              + maxDistance * (trackA.getLength() + _maxLength) / 2.0 / slack
+                            : Double.POSITIVE_INFINITY);
+            for (int j=i+1; j<N; ++j) {
+                int b = _pivotOrder[j];
+                if (_pivotDistances[b] - _pivotDistances[a] > reach) break;
+
+                int first = Math.min(a, b);
+                int second = Math.max(a, b);
+                Track trackFirst = _tracks.get(first);
+                Track trackSecond = _tracks.get(second);
+                if (trackFirst.getDistanceLowerBound(trackSecond) > maxDistance) continue;
+
+                double distance = trackFirst.getDistance(trackSecond);
+                if (distance <= maxDistance)
+                    matches.add(new Match(first, second, distance));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Find the k tracks nearest to the given track.
+     *
+     * @param query The track whose neighbors are desired. This need not be
+     *            one of our tracks; if it is, it is not included in the
+     *            results.
+     * @param k The number of neighbors to find
+     * @return The nearest k tracks, nearest first. The first index of each
+     *         match is -1, unless the query is one of our tracks, in which
+     *         case it is the index of the query.
+     */
+    public List<Match> getNearest (Track query, int k) {
+        int N = _tracks.size();
+        int queryIndex = -1;
+        for (int i=0; i<N && -1 == queryIndex; ++i)
+            if (query == _tracks.get(i)) queryIndex = i;
+
+        // Check candidates in order of their lower bounds, so we can stop as
+        // soon as no remaining candidate could beat the ones we have.
+        final double[] bounds = new double[N];
+        Integer[] order = new Integer[N];
+        for (int i=0; i<N; ++i) {
+            bounds[i] = query.getDistanceLowerBound(_tracks.get(i));
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare (Integer a, Integer b) {
+                return Double.compare(bounds[a], bounds[b]);
+            }
+        });
+
+        PriorityQueue<Match> nearest = new PriorityQueue<>(Math.max(1, k), Collections.reverseOrder(BY_DISTANCE));
+        for (int i=0; i<N && k > 0; ++i) {
+            int candidate = order[i];
+            if (candidate == queryIndex) continue;
+            if (nearest.size() == k && bounds[candidate] > nearest.peek().getDistance()) break;
+
+            double distance = query.getDistance(_tracks.get(candidate));
+            if (nearest.size() < k) {
+                nearest.add(new Match(queryIndex, candidate, distance));
+            } else if (distance < nearest.peek().getDistance()) {
+                nearest.poll();
+                nearest.add(new Match(queryIndex, candidate, distance));
+            }
+        }
+
+        List<Match> result = new ArrayList<>(nearest);
+        Collections.sort(result, BY_DISTANCE);
+        return result;
+    }
+}
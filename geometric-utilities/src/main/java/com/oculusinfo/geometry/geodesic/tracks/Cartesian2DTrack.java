@@ -49,6 +49,12 @@ public class Cartesian2DTrack extends Track {
         super(parameters, points, parameterization);
     }
 
+    public Cartesian2DTrack (PositionCalculationParameters parameters,
+                             List<Position> points,
+                             double[] parameterization) {
+        super(parameters, points, parameterization);
+    }
+
     public Cartesian2DTrack (Track oldTrack) {
         super(oldTrack,
               new PositionCalculationParameters(PositionCalculationType.Cartesian2D,
@@ -104,7 +110,7 @@ public class Cartesian2DTrack extends Track {
 
     @Override
     protected Track createTrack (List<Position> points,
-                                 List<Double> parameterization) {
+                                 double[] parameterization) {
         return new Cartesian2DTrack(getParameters(), points,
                                     parameterization);
     }
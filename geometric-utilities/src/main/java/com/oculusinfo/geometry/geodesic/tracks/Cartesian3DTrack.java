@@ -31,6 +31,7 @@ import com.oculusinfo.geometry.geodesic.Track;
 import com.oculusinfo.math.linearalgebra.Vector;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Cartesian3DTrack extends Track {
@@ -57,6 +58,13 @@ public class Cartesian3DTrack extends Track {
         fillInNeededPoints();
     }
 
+    public Cartesian3DTrack (PositionCalculationParameters parameters,
+                             List<Position> points,
+                             double[] parameterization) {
+        super(parameters, points, parameterization);
+        fillInNeededPoints();
+    }
+
     public Cartesian3DTrack (Track oldTrack) {
         super(oldTrack,
               new PositionCalculationParameters(PositionCalculationType.Cartesian3D,
@@ -76,7 +84,8 @@ public class Cartesian3DTrack extends Track {
 
     private void fillInNeededPoints () {
         List<Position> filledPoints = new ArrayList<Position>();
-        List<Double> filledParameterization = new ArrayList<Double>();
+        int filledCount = 0;
+        double[] filledParameterization = new double[getParameterization().length];
 
         // Calculate the maximum chord length we're allowed with a given error
         // For a chord of angular length theta, the distance from the sphere
@@ -112,10 +121,10 @@ public class Cartesian3DTrack extends Track {
         Position lastPos = null;
         double lastT = 0.0;
         List<Position> points = getPoints();
-        List<Double> parameterization = getParameterization();
+        double[] parameterization = getParameterization();
         for (int p=0; p < points.size(); ++p) {
             Position pos = points.get(p);
-            double t = parameterization.get(p);
+            double t = parameterization[p];
 
             if (null != lastPos) {
                 double angularDistance = pos.getAngularDistance(lastPos);
@@ -125,22 +134,28 @@ public class Cartesian3DTrack extends Track {
                     // error. Just space them evenly.
                     double timeDistance = t-lastT;
                     double azimuth = lastPos.getAzimuth(pos);
+                    if (filledParameterization.length < filledCount + minIncrements)
+                        filledParameterization = Arrays.copyOf(filledParameterization,
+                                                               Math.max(filledCount + minIncrements,
+                                                                        2 * filledParameterization.length));
                     for (int i=1; i<minIncrements; ++i) {
                         double incrementDistance = i*angularDistance/minIncrements;
                         Position incrementPosition = lastPos.offset(azimuth, incrementDistance);
                         filledPoints.add(incrementPosition);
-                        filledParameterization.add(lastT+i*timeDistance/minIncrements);
+                        filledParameterization[filledCount++] = lastT+i*timeDistance/minIncrements;
                     }
                 }
             }
             filledPoints.add(pos);
-            filledParameterization.add(t);
+            if (filledParameterization.length <= filledCount)
+                filledParameterization = Arrays.copyOf(filledParameterization, filledCount + 1);
+            filledParameterization[filledCount++] = t;
 
             lastPos = pos;
             lastT = t;
         }
 
-        updatePoints(filledPoints, filledParameterization);
+        updatePoints(filledPoints, Arrays.copyOf(filledParameterization, filledCount));
     }
 
 
@@ -184,7 +199,7 @@ public class Cartesian3DTrack extends Track {
 
     @Override
     protected Track createTrack (List<Position> path,
-                                 List<Double> parameterization) {
+                                 double[] parameterization) {
         return new Cartesian3DTrack(getParameters(), path, parameterization);
     }
 }
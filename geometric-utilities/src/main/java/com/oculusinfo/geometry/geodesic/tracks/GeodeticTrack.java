@@ -49,6 +49,12 @@ public class GeodeticTrack extends Track {
         super(parameters, points, parameterization);
     }
 
+    public GeodeticTrack (PositionCalculationParameters parameters,
+                          List<Position> points,
+                          double[] parameterization) {
+        super(parameters, points, parameterization);
+    }
+
     public GeodeticTrack (Track oldTrack) {
         super(oldTrack,
               new PositionCalculationParameters(PositionCalculationType.Geodetic,
@@ -116,7 +122,7 @@ public class GeodeticTrack extends Track {
 
     @Override
     protected Track createTrack (List<Position> points,
-                                 List<Double> parameterization) {
+                                 double[] parameterization) {
         return new GeodeticTrack(getParameters(), points,
                                  parameterization);
     }
@@ -50,6 +50,12 @@ public class SphericalTrack extends Track {
         super(parameters, points, parameterization);
     }
 
+    public SphericalTrack (PositionCalculationParameters parameters,
+                           List<Position> points,
+                           double[] parameterization) {
+        super(parameters, points, parameterization);
+    }
+
     public SphericalTrack (Track oldTrack) {
         super(oldTrack,
               new PositionCalculationParameters(PositionCalculationType.Spherical,
@@ -87,7 +93,7 @@ public class SphericalTrack extends Track {
 
     @Override
     protected Track createTrack (List<Position> points,
-                                 List<Double> parameterization) {
+                                 double[] parameterization) {
         return new SphericalTrack(getParameters(), points, parameterization);
     }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc. 
+ * http://www.oculusinfo.com/
+ * 
+ * Released under the MIT License.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.geometry.geodesic;
+
+import com.oculusinfo.geometry.geodesic.tracks.Cartesian2DTrack;
+import com.oculusinfo.geometry.geodesic.tracks.GeodeticTrack;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class TrackSimilarityTests {
+    private static final double EPSILON = 1E-12;
+    private static final PositionCalculationParameters CARTESIAN_PARAMETERS =
+            new PositionCalculationParameters(PositionCalculationType.Cartesian2D, 0.0001, 1E-12, false);
+    private static final PositionCalculationParameters GEODETIC_PARAMETERS =
+            new PositionCalculationParameters(PositionCalculationType.Geodetic, 0.0001, 1E-12, false);
+
+    private List<Track> randomTracks (Random random, int count, boolean geodetic) {
+        List<Track> tracks = new ArrayList<>();
+        for (int i=0; i<count; ++i) {
+            double x = random.nextDouble()*100-50;
+            double y = random.nextDouble()*60-30;
+            int points = 2+random.nextInt(8);
+            List<Position> path = new ArrayList<>();
+            for (int p=0; p<points; ++p) {
+                path.add(new Position(x, y));
+                x += random.nextDouble()*4-1;
+                y += random.nextDouble()*4-2;
+            }
+            if (geodetic) tracks.add(new GeodeticTrack(GEODETIC_PARAMETERS, path));
+            else tracks.add(new Cartesian2DTrack(CARTESIAN_PARAMETERS, path));
+        }
+        return tracks;
+    }
+
+    @Test
+    public void testLowerBound () {
+        Random random = new Random(1023);
+        for (boolean geodetic: new boolean[] {false, true}) {
+            List<Track> tracks = randomTracks(random, 40, geodetic);
+            for (Track a: tracks) {
+                for (Track b: tracks) {
+                    Assert.assertTrue(a.getDistanceLowerBound(b) <= a.getDistance(b) + EPSILON);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLowerBoundPrunes () {
+        Track a = new Cartesian2DTrack(CARTESIAN_PARAMETERS, new Position(0, 0), new Position(1, 0));
+        Track b = new Cartesian2DTrack(CARTESIAN_PARAMETERS, new Position(0, 10), new Position(1, 10));
+        Assert.assertEquals(1.0, a.getBoundingRadius(), EPSILON);
+        Assert.assertEquals(10.0, a.getDistance(b), EPSILON);
+        Assert.assertEquals(8.0, a.getDistanceLowerBound(b), 1E-9);
+    }
+
+    @Test
+    public void testPairsWithin () {
+        Random random = new Random(2047);
+        List<Track> tracks = randomTracks(random, 200, false);
+        TrackSimilarity similarity = new TrackSimilarity(tracks);
+
+        double maxDistance = 2.0;
+        Set<String> expected = new HashSet<>();
+        for (int i=0; i<tracks.size(); ++i)
+            for (int j=i+1; j<tracks.size(); ++j)
+                if (tracks.get(i).getDistance(tracks.get(j)) <= maxDistance)
+                    expected.add(i+":"+j);
+
+        Set<String> actual = new HashSet<>();
+        for (TrackSimilarity.Match match: similarity.getPairsWithin(maxDistance)) {
+            Assert.assertTrue(match.getFirst() < match.getSecond());
+            Assert.assertTrue(match.getDistance() <= maxDistance);
+            actual.add(match.getFirst()+":"+match.getSecond());
+        }
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testNearest () {
+        Random random = new Random(4095);
+        List<Track> tracks = randomTracks(random, 200, true);
+        TrackSimilarity similarity = new TrackSimilarity(tracks);
+
+        for (int q=0; q<5; ++q) {
+            Track query = tracks.get(q);
+            List<TrackSimilarity.Match> nearest = similarity.getNearest(query, 4);
+            Assert.assertEquals(4, nearest.size());
+
+            List<Double> distances = new ArrayList<>();
+            for (int i=0; i<tracks.size(); ++i)
+                if (i != q) distances.add(query.getDistance(tracks.get(i)));
+            java.util.Collections.sort(distances);
+
+            for (int i=0; i<4; ++i) {
+                Assert.assertEquals(q, nearest.get(i).getFirst());
+                Assert.assertFalse(q == nearest.get(i).getSecond());
+                Assert.assertEquals(distances.get(i), nearest.get(i).getDistance(), EPSILON);
+            }
+        }
+    }
+}
@@ -25,6 +25,7 @@
 package com.oculusinfo.math.linearalgebra;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -81,6 +82,49 @@ public class ListUtilities {
         return C;
     }
 
+    /**
+     * Join together 2 ordered arrays of doubles into a single, ordered array
+     * without duplicates. This is identical to {@link #joinLists}, but works
+     * on primitive arrays.
+     *
+     * @param A The first array
+     * @param B The second array
+     * @param epsilon The difference within which two doubles are considered
+     *            equal
+     * @return The conjoined array
+     */
+    public static double[] joinArrays (double[] A, double[] B, double epsilon) {
+        double[] C = new double[A.length + B.length];
+        int nC = 0;
+        int nA = 0;
+        int NA = A.length;
+        double a = A[nA];
+
+        int nB = 0;
+        int NB = B.length;
+        double b = B[nB];
+
+        while (nA < NA || nB < NB) {
+            if (equal(a, b, epsilon)) {
+                C[nC++] = (a + b) / 2;
+                while (nA < NA && equal(a, A[nA], epsilon)) ++nA;
+                a = (nA < NA ? A[nA] : Double.MAX_VALUE);
+                while (nB < NB && equal(b, B[nB], epsilon)) ++nB;
+                b = (nB < NB ? B[nB] : Double.MAX_VALUE);
+            } else if (a < b) {
+                C[nC++] = a;
+                ++nA;
+                a = (nA < NA ? A[nA] : Double.MAX_VALUE);
+            } else {
+                C[nC++] = b;
+                ++nB;
+                b = (nB < NB ? B[nB] : Double.MAX_VALUE);
+            }
+        }
+
+        return Arrays.copyOf(C, nC);
+    }
+
     /**
      * Join together N ordered lists of doubles into a single, ordered list
      * without duplicates
@@ -0,0 +1,455 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.math.statistics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+
+
+/**
+ * A mergeable histogram of values with logarithmically sized buckets, from
+ * which quantiles can be read to within a fixed relative accuracy.
+ * 
+ * Each bucket covers values within a constant factor of each other, so any
+ * quantile read back is within the given relative accuracy of the true value.
+ * Positive and negative values are kept in separate sets of buckets, and
+ * values too close to zero to index are simply counted as zero.
+ * 
+ * Memory is bounded: each set of buckets only grows as far as the range of
+ * values seen requires, up to a maximum number of buckets. Past that, the
+ * buckets nearest zero are collapsed together, so only the accuracy of the
+ * smallest magnitudes suffers.
+ */
+public class LogHistogram implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+	public static final int    DEFAULT_MAX_BUCKETS       = 2048;
+
+	// Values smaller in magnitude than this are counted as zero
+	private static final double MIN_INDEXABLE = Double.MIN_NORMAL;
+	private static final int    INITIAL_BUCKETS = 16;
+
+
+
+	/*
+	 * A contiguous range of bucket counts, by bucket index.
+	 */
+	private static class Buckets implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private int    _maxBuckets;
+		private long[] _counts;
+		// The bucket index of _counts[0]
+		private int    _offset;
+		// The range of indices that may be non-empty
+		private int    _minIndex;
+		private int    _maxIndex;
+
+		Buckets (int maxBuckets) {
+			_maxBuckets = maxBuckets;
+			_counts = null;
+		}
+
+		Buckets (Buckets base) {
+			_maxBuckets = base._maxBuckets;
+			_counts = (null == base._counts ? null : Arrays.copyOf(base._counts, base._counts.length));
+			_offset = base._offset;
+			_minIndex = base._minIndex;
+			_maxIndex = base._maxIndex;
+		}
+
+		boolean isEmpty () {
+			return null == _counts;
+		}
+
+		void add (int index, long count) {
+			if (0 == count) return;
+			if (null == _counts) {
+				_counts = new long[Math.min(INITIAL_BUCKETS, _maxBuckets)];
+				_offset = index;
+				_minIndex = index;
+				_maxIndex = index;
+			} else if (index > _maxIndex) {
+				if ((long) index - _minIndex + 1 > _maxBuckets)
+					collapseBelow(index - _maxBuckets + 1);
+				_maxIndex = index;
+			} else if (index < _minIndex) {
+				// Too far below everything else to keep; lump it in with
+				// the lowest bucket we can keep
+				index = (int) Math.max(index, (long) _maxIndex - _maxBuckets + 1);
+				_minIndex = Math.min(_minIndex, index);
+			}
+			ensureCapacity();
+			_counts[index - _offset] += count;
+		}
+
+		// Fold all counts below the given index into it
+		private void collapseBelow (int newMinIndex) {
+			long collapsed = 0;
+			int top = Math.min(_maxIndex, newMinIndex - 1);
+			for (int index = _minIndex; index <= top; ++index) {
+				collapsed += _counts[index - _offset];
+				_counts[index - _offset] = 0;
+			}
+			_minIndex = newMinIndex;
+			_maxIndex = Math.max(_maxIndex, newMinIndex);
+			ensureCapacity();
+			_counts[newMinIndex - _offset] += collapsed;
+		}
+
+		// Make sure _counts covers [_minIndex, _maxIndex]
+		private void ensureCapacity () {
+			if (_minIndex >= _offset && _maxIndex < _offset + _counts.length) return;
+
+			int needed = _maxIndex - _minIndex + 1;
+			int length = Math.min(_maxBuckets, Math.max(needed, 2 * _counts.length));
+			// Leave any slack on the side toward which we're growing
+			int offset = (_minIndex < _offset ? _maxIndex - length + 1 : _minIndex);
+			long[] counts = new long[length];
+			int start = Math.max(_offset, offset);
+			int end = Math.min(_offset + _counts.length, offset + length);
+			if (start < end)
+				System.arraycopy(_counts, start - _offset, counts, start - offset, end - start);
+			_counts = counts;
+			_offset = offset;
+		}
+
+		long get (int index) {
+			if (null == _counts || index < _offset || index >= _offset + _counts.length) return 0;
+			return _counts[index - _offset];
+		}
+
+		void addAll (Buckets that) {
+			if (that.isEmpty()) return;
+			// Go from the top down, so any collapsing happens only once
+			for (int index = that._maxIndex; index >= that._minIndex; --index) {
+				add(index, that.get(index));
+			}
+		}
+
+		void write (DataOutput output) throws IOException {
+			if (null == _counts) {
+				output.writeBoolean(false);
+				return;
+			}
+			output.writeBoolean(true);
+			output.writeInt(_minIndex);
+			output.writeInt(_maxIndex - _minIndex + 1);
+			for (int index = _minIndex; index <= _maxIndex; ++index) {
+				writeVarLong(output, get(index));
+			}
+		}
+
+		void read (DataInput input) throws IOException {
+			if (!input.readBoolean()) return;
+			int minIndex = input.readInt();
+			int n = input.readInt();
+			long[] counts = new long[n];
+			for (int i = 0; i < n; ++i) counts[i] = readVarLong(input);
+			// Add from the top down, so any collapsing happens only once
+			for (int i = n - 1; i >= 0; --i) add(minIndex + i, counts[i]);
+		}
+	}
+
+
+
+	private double  _relativeAccuracy;
+	private int     _maxBuckets;
+	private double  _logGamma;
+	private Buckets _positive;
+	private Buckets _negative;
+	private long    _zeroCount;
+	private long    _count;
+	private double  _min;
+	private double  _max;
+
+
+
+	public LogHistogram () {
+		this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MAX_BUCKETS);
+	}
+
+	/**
+	 * @param relativeAccuracy The relative accuracy with which quantiles are
+	 *            to be reported
+	 * @param maxBuckets The maximum number of buckets to keep for each of
+	 *            positive and negative values
+	 */
+	public LogHistogram (double relativeAccuracy, int maxBuckets) {
+		if (relativeAccuracy <= 0.0 || relativeAccuracy >= 1.0)
+			throw new IllegalArgumentException("Relative accuracy must be between 0 and 1, not "+relativeAccuracy);
+		if (maxBuckets < 1)
+			throw new IllegalArgumentException("Histograms need at least one bucket");
+		_relativeAccuracy = relativeAccuracy;
+		_maxBuckets = maxBuckets;
+		_logGamma = Math.log((1.0 + relativeAccuracy) / (1.0 - relativeAccuracy));
+		_positive = new Buckets(maxBuckets);
+		_negative = new Buckets(maxBuckets);
+		_zeroCount = 0;
+		_count = 0;
+		_min = Double.NaN;
+		_max = Double.NaN;
+	}
+
+	/**
+	 * Create a copy of a histogram
+	 */
+	public LogHistogram (LogHistogram base) {
+		_relativeAccuracy = base._relativeAccuracy;
+		_maxBuckets = base._maxBuckets;
+		_logGamma = base._logGamma;
+		_positive = new Buckets(base._positive);
+		_negative = new Buckets(base._negative);
+		_zeroCount = base._zeroCount;
+		_count = base._count;
+		_min = base._min;
+		_max = base._max;
+	}
+
+	/**
+	 * Create a histogram of the union of two histograms. Neither input is
+	 * changed.
+	 */
+	public static LogHistogram merge (LogHistogram a, LogHistogram b) {
+		LogHistogram result = new LogHistogram(a);
+		result.add(b);
+		return result;
+	}
+
+	public double getRelativeAccuracy () {
+		return _relativeAccuracy;
+	}
+
+	/**
+	 * Add a value to this histogram
+	 */
+	public void add (double value) {
+		if (Double.isNaN(value)) return;
+		if (value >= MIN_INDEXABLE) {
+			_positive.add(index(value), 1);
+		} else if (value <= -MIN_INDEXABLE) {
+			_negative.add(index(-value), 1);
+		} else {
+			++_zeroCount;
+		}
+		++_count;
+		if (Double.isNaN(_min) || value < _min) _min = value;
+		if (Double.isNaN(_max) || value > _max) _max = value;
+	}
+
+	/**
+	 * Add all the values in another histogram to this one. The other histogram
+	 * is unchanged.
+	 * 
+	 * @throws IllegalArgumentException if the two histograms don't have the
+	 *             same bucket sizes
+	 */
+	public void add (LogHistogram that) {
+		if (that._relativeAccuracy != _relativeAccuracy)
+			throw new IllegalArgumentException("Can't merge histograms of different accuracies");
+		if (0 == that._count) return;
+		if (this == that) that = new LogHistogram(that);
+
+		_positive.addAll(that._positive);
+		_negative.addAll(that._negative);
+		_zeroCount += that._zeroCount;
+		_count += that._count;
+		if (Double.isNaN(_min) || that._min < _min) _min = that._min;
+		if (Double.isNaN(_max) || that._max > _max) _max = that._max;
+	}
+
+	public long count () {
+		return _count;
+	}
+
+	public double min () {
+		return _min;
+	}
+
+	public double max () {
+		return _max;
+	}
+
+	/**
+	 * Estimate a quantile of the values in this histogram.
+	 * 
+	 * @param q The quantile desired, between 0 and 1 (0.5 is the median)
+	 * @return An estimate of the value below which the given fraction of the
+	 *         values fall, or NaN if the histogram is empty
+	 */
+	public double quantile (double q) {
+		if (q < 0.0 || q > 1.0)
+			throw new IllegalArgumentException("Quantile must be between 0 and 1, not "+q);
+		if (0 == _count) return Double.NaN;
+
+		long rank = (long) (q * (_count - 1));
+		long seen = 0;
+		// Negative values, most negative first
+		if (!_negative.isEmpty()) {
+			for (int index = _negative._maxIndex; index >= _negative._minIndex; --index) {
+				seen += _negative.get(index);
+				if (seen > rank) return clamp(-value(index));
+			}
+		}
+		seen += _zeroCount;
+		if (seen > rank) return clamp(0.0);
+		if (!_positive.isEmpty()) {
+			for (int index = _positive._minIndex; index <= _positive._maxIndex; ++index) {
+				seen += _positive.get(index);
+				if (seen > rank) return clamp(value(index));
+			}
+		}
+		return _max;
+	}
+
+	/**
+	 * Get the boundaries and counts of the non-empty buckets of this histogram
+	 * 
+	 * @return An array of {lower bound, upper bound, count} triples, in
+	 *         increasing order; zero counts have bounds of 0.
+	 */
+	public double[][] getBuckets () {
+		int n = (_zeroCount > 0 ? 1 : 0);
+		if (!_positive.isEmpty()) n += _positive._maxIndex - _positive._minIndex + 1;
+		if (!_negative.isEmpty()) n += _negative._maxIndex - _negative._minIndex + 1;
+
+		double[][] buckets = new double[n][];
+		int i = 0;
+		if (!_negative.isEmpty()) {
+			for (int index = _negative._maxIndex; index >= _negative._minIndex; --index) {
+				long count = _negative.get(index);
+				if (count > 0)
+					buckets[i++] = new double[] {-lowerBound(index + 1), -lowerBound(index), count};
+			}
+		}
+		if (_zeroCount > 0)
+			buckets[i++] = new double[] {0.0, 0.0, _zeroCount};
+		if (!_positive.isEmpty()) {
+			for (int index = _positive._minIndex; index <= _positive._maxIndex; ++index) {
+				long count = _positive.get(index);
+				if (count > 0)
+					buckets[i++] = new double[] {lowerBound(index), lowerBound(index + 1), count};
+			}
+		}
+		return Arrays.copyOf(buckets, i);
+	}
+
+
+
+	// Bucket i holds values in (gamma^(i-1), gamma^i]
+	private int index (double magnitude) {
+		return (int) Math.ceil(Math.log(magnitude) / _logGamma);
+	}
+
+	private double lowerBound (int index) {
+		return Math.exp((index - 1) * _logGamma);
+	}
+
+	// The representative value of a bucket, within the relative accuracy of
+	// anything in it
+	private double value (int index) {
+		return 2.0 * Math.exp(index * _logGamma) / (1.0 + Math.exp(_logGamma));
+	}
+
+	private double clamp (double value) {
+		return Math.max(_min, Math.min(_max, value));
+	}
+
+
+
+	/**
+	 * Write this histogram in a compact binary form, suitable for storing in
+	 * tiles or sending between machines.
+	 */
+	public byte[] toBytes () {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		try {
+			output.writeDouble(_relativeAccuracy);
+			output.writeInt(_maxBuckets);
+			output.writeDouble(_min);
+			output.writeDouble(_max);
+			writeVarLong(output, _zeroCount);
+			_positive.write(output);
+			_negative.write(output);
+			output.flush();
+		} catch (IOException e) {
+			// Can't happen writing to memory
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Read a histogram written by {@link #toBytes()}
+	 */
+	public static LogHistogram fromBytes (byte[] data) throws IOException {
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+		LogHistogram histogram = new LogHistogram(input.readDouble(), input.readInt());
+		histogram._min = input.readDouble();
+		histogram._max = input.readDouble();
+		histogram._zeroCount = readVarLong(input);
+		histogram._positive.read(input);
+		histogram._negative.read(input);
+
+		histogram._count = histogram._zeroCount;
+		for (Buckets buckets: new Buckets[] {histogram._positive, histogram._negative}) {
+			if (buckets.isEmpty()) continue;
+			for (int index = buckets._minIndex; index <= buckets._maxIndex; ++index) {
+				histogram._count += buckets.get(index);
+			}
+		}
+		return histogram;
+	}
+
+	private static void writeVarLong (DataOutput output, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			output.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		output.writeByte((int) value);
+	}
+
+	private static long readVarLong (DataInput input) throws IOException {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = input.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+}
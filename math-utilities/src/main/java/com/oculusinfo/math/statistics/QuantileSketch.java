@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.math.statistics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+
+
+/**
+ * A mergeable, bounded-size summary of a distribution of values, from which
+ * approximate quantiles can be read.
+ * 
+ * This is a merging t-digest: values are clustered into weighted centroids,
+ * with small centroids near the tails of the distribution and large ones near
+ * the middle, so that extreme quantiles stay accurate. The number of centroids
+ * is bounded by roughly the compression factor, no matter how many values are
+ * added, and two sketches may be merged in time proportional to their sizes.
+ * 
+ * Incoming values are buffered, and only merged into the centroids when the
+ * buffer fills or the sketch is read.
+ */
+public class QuantileSketch implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public static final double DEFAULT_COMPRESSION = 100.0;
+
+	// Sketches often only ever hold a few values (say, one per bin when
+	// binning), so the buffer starts small
+	private static final int INITIAL_BUFFER = 8;
+
+
+
+	private double   _compression;
+	// Centroids, sorted by mean
+	private double[] _means;
+	private double[] _weights;
+	private int      _centroids;
+	// Values not yet merged into the centroids
+	private double[] _buffer;
+	private int      _buffered;
+	private int      _bufferCapacity;
+	private double   _count;
+	private double   _min;
+	private double   _max;
+
+
+
+	public QuantileSketch () {
+		this(DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param compression How many centroids to keep, roughly; higher values
+	 *            are more accurate, but bigger and slower.
+	 */
+	public QuantileSketch (double compression) {
+		if (compression < 10.0)
+			throw new IllegalArgumentException("Quantile sketch compression must be at least 10");
+		_compression = compression;
+		_means = new double[0];
+		_weights = new double[0];
+		_centroids = 0;
+		_bufferCapacity = (int) Math.ceil(5 * compression);
+		_buffer = new double[INITIAL_BUFFER];
+		_buffered = 0;
+		_count = 0;
+		_min = Double.NaN;
+		_max = Double.NaN;
+	}
+
+	/**
+	 * Create a copy of a sketch
+	 */
+	public QuantileSketch (QuantileSketch base) {
+		base.compress();
+		_compression = base._compression;
+		_means = Arrays.copyOf(base._means, base._centroids);
+		_weights = Arrays.copyOf(base._weights, base._centroids);
+		_centroids = base._centroids;
+		_bufferCapacity = base._bufferCapacity;
+		_buffer = new double[INITIAL_BUFFER];
+		_buffered = 0;
+		_count = base._count;
+		_min = base._min;
+		_max = base._max;
+	}
+
+	/**
+	 * Create a sketch of the union of two sketches. Neither input is changed.
+	 */
+	public static QuantileSketch merge (QuantileSketch a, QuantileSketch b) {
+		QuantileSketch result = new QuantileSketch(a);
+		result.add(b);
+		return result;
+	}
+
+	public double getCompression () {
+		return _compression;
+	}
+
+	/**
+	 * Add a value to the distribution summarized by this sketch.
+	 */
+	public void add (double value) {
+		if (Double.isNaN(value)) return;
+		if (_buffered == _buffer.length) {
+			if (_buffer.length < _bufferCapacity)
+				_buffer = Arrays.copyOf(_buffer, Math.min(_bufferCapacity, 2 * _buffer.length));
+			else
+				compress();
+		}
+		_buffer[_buffered] = value;
+		++_buffered;
+		++_count;
+		if (Double.isNaN(_min) || value < _min) _min = value;
+		if (Double.isNaN(_max) || value > _max) _max = value;
+	}
+
+	/**
+	 * Add all the values summarized by another sketch to this one. The other
+	 * sketch is unchanged.
+	 */
+	public void add (QuantileSketch that) {
+		if (this == that) that = new QuantileSketch(that);
+		that.compress();
+		if (0 == that._centroids) return;
+		compress();
+
+		_count += that._count;
+		if (Double.isNaN(_min) || that._min < _min) _min = that._min;
+		if (Double.isNaN(_max) || that._max > _max) _max = that._max;
+		mergeRuns(_means, _weights, _centroids, that._means, that._weights, that._centroids);
+	}
+
+	/**
+	 * @return The number of values summarized by this sketch
+	 */
+	public long count () {
+		return (long) _count;
+	}
+
+	public double min () {
+		return _min;
+	}
+
+	public double max () {
+		return _max;
+	}
+
+	/**
+	 * Estimate a quantile of the summarized distribution.
+	 * 
+	 * @param q The quantile desired, between 0 and 1 (0.5 is the median)
+	 * @return An estimate of the value below which the given fraction of the
+	 *         summarized values fall, or NaN if the sketch is empty
+	 */
+	public double quantile (double q) {
+		if (q < 0.0 || q > 1.0)
+			throw new IllegalArgumentException("Quantile must be between 0 and 1, not "+q);
+		compress();
+		if (0 == _centroids) return Double.NaN;
+		if (1 == _centroids) return _means[0];
+
+		// Each centroid is taken to be centered on its mean; interpolate
+		// between neighbouring centroids, and between the extreme centroids
+		// and the known minimum and maximum.
+		double index = q * _count;
+		double firstHalf = _weights[0] / 2.0;
+		if (index <= firstHalf)
+			return _min + (index / firstHalf) * (_means[0] - _min);
+
+		double center = firstHalf;
+		for (int i = 0; i < _centroids - 1; ++i) {
+			double step = (_weights[i] + _weights[i + 1]) / 2.0;
+			if (index <= center + step) {
+				double fraction = (index - center) / step;
+				return _means[i] + fraction * (_means[i + 1] - _means[i]);
+			}
+			center += step;
+		}
+
+		double lastHalf = _weights[_centroids - 1] / 2.0;
+		double fraction = Math.min(1.0, (index - center) / lastHalf);
+		return _means[_centroids - 1] + fraction * (_max - _means[_centroids - 1]);
+	}
+
+	/**
+	 * @return The number of centroids currently used to summarize the
+	 *         distribution
+	 */
+	public int size () {
+		compress();
+		return _centroids;
+	}
+
+
+
+	// Merge any buffered values into the centroids
+	private void compress () {
+		if (0 == _buffered) return;
+		Arrays.sort(_buffer, 0, _buffered);
+		int buffered = _buffered;
+		_buffered = 0;
+		mergeRuns(_means, _weights, _centroids, _buffer, null, buffered);
+	}
+
+	// Rebuild the centroids from two sorted runs of centroids (a null set of
+	// weights meaning unit weights), merging neighbours as long as the
+	// resulting centroid stays within the size allowed at its quantile.
+	private void mergeRuns (double[] means1, double[] weights1, int n1,
+	                        double[] means2, double[] weights2, int n2) {
+		double[] means = new double[n1 + n2];
+		double[] weights = new double[n1 + n2];
+		int n = 0;
+
+		double total = _count;
+		double weightSoFar = 0.0;
+		double limit = total * nextQuantileLimit(0.0);
+		int i = 0, j = 0;
+		while (i < n1 || j < n2) {
+			double mean, weight;
+			if (j >= n2 || (i < n1 && means1[i] <= means2[j])) {
+				mean = means1[i];
+				weight = weights1[i];
+				++i;
+			} else {
+				mean = means2[j];
+				weight = (null == weights2 ? 1.0 : weights2[j]);
+				++j;
+			}
+
+			if (n > 0 && weightSoFar + weights[n - 1] + weight <= limit) {
+				weights[n - 1] += weight;
+				means[n - 1] += (mean - means[n - 1]) * weight / weights[n - 1];
+			} else {
+				if (n > 0) {
+					weightSoFar += weights[n - 1];
+					limit = total * nextQuantileLimit(weightSoFar / total);
+				}
+				means[n] = mean;
+				weights[n] = weight;
+				++n;
+			}
+		}
+
+		_means = means;
+		_weights = weights;
+		_centroids = n;
+	}
+
+	// The scale function k(q) = compression/(2 pi) asin(2q-1) limits each
+	// centroid to one unit of k; this finds the quantile one unit past q.
+	private double nextQuantileLimit (double q) {
+		double k = _compression / (2.0 * Math.PI) * Math.asin(2.0 * Math.min(1.0, q) - 1.0) + 1.0;
+		double angle = k * 2.0 * Math.PI / _compression;
+		if (angle >= Math.PI / 2.0) return 1.0;
+		return (Math.sin(angle) + 1.0) / 2.0;
+	}
+
+
+
+	/**
+	 * Write this sketch in a compact binary form, suitable for storing in
+	 * tiles or sending between machines.
+	 */
+	public byte[] toBytes () {
+		compress();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + 16 * _centroids);
+		DataOutputStream output = new DataOutputStream(bytes);
+		try {
+			output.writeDouble(_compression);
+			output.writeDouble(_min);
+			output.writeDouble(_max);
+			output.writeInt(_centroids);
+			for (int i = 0; i < _centroids; ++i) {
+				output.writeDouble(_means[i]);
+				output.writeDouble(_weights[i]);
+			}
+			output.flush();
+		} catch (IOException e) {
+			// Can't happen writing to memory
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Read a sketch written by {@link #toBytes()}
+	 */
+	public static QuantileSketch fromBytes (byte[] data) throws IOException {
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+		QuantileSketch sketch = new QuantileSketch(input.readDouble());
+		sketch._min = input.readDouble();
+		sketch._max = input.readDouble();
+		int n = input.readInt();
+		sketch._means = new double[n];
+		sketch._weights = new double[n];
+		for (int i = 0; i < n; ++i) {
+			sketch._means[i] = input.readDouble();
+			sketch._weights[i] = input.readDouble();
+			sketch._count += sketch._weights[i];
+		}
+		sketch._centroids = n;
+		return sketch;
+	}
+}
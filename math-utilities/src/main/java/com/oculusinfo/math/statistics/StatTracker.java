@@ -24,24 +24,44 @@
  */
 package com.oculusinfo.math.statistics;
 
+import java.io.Serializable;
+
 
 
 /**
  * This class encapsulates the one-pass tracking of mean, standard deviation,
  * min, and max of a series of values.
  * 
+ * Optionally, it can also keep a {@link QuantileSketch} of the values, so as
+ * to estimate medians and other quantiles in bounded memory.
+ * 
+ * Trackers of separate series may be merged, so the statistics of a large
+ * series can be gathered in pieces.
+ * 
  * @author nkronenfeld
  */
-public class StatTracker {
-	private int    _n;
-	private double _sumX;
-	private double _sumXSquared;
-	private double _min;
-	private double _max;
+public class StatTracker implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private int            _n;
+	private double         _sumX;
+	private double         _sumXSquared;
+	private double         _min;
+	private double         _max;
+	private QuantileSketch _quantiles;
 
 
 
 	public StatTracker () {
+		this(false);
+	}
+
+	/**
+	 * @param trackQuantiles If true, keep a sketch of the tracked values from
+	 *            which quantiles may be estimated.
+	 */
+	public StatTracker (boolean trackQuantiles) {
+		_quantiles = (trackQuantiles ? new QuantileSketch() : null);
 		reset();
 	}
 
@@ -54,6 +74,8 @@ public class StatTracker {
 		_sumXSquared = 0;
 		_min = Double.NaN;
 		_max = Double.NaN;
+		if (null != _quantiles)
+			_quantiles = new QuantileSketch(_quantiles.getCompression());
 	}
 
 	/**
@@ -68,6 +90,28 @@ public class StatTracker {
 			_min = value;
 		if (Double.isNaN(_max) || value > _max)
 			_max = value;
+		if (null != _quantiles)
+			_quantiles.add(value);
+	}
+
+	/**
+	 * Add all the data tracked by another tracker to this one. The other
+	 * tracker is unchanged.
+	 * 
+	 * Quantiles are only kept if both trackers keep them.
+	 */
+	public void addStats (StatTracker that) {
+		_n += that._n;
+		_sumX += that._sumX;
+		_sumXSquared += that._sumXSquared;
+		if (Double.isNaN(_min) || that._min < _min)
+			_min = that._min;
+		if (Double.isNaN(_max) || that._max > _max)
+			_max = that._max;
+		if (null != _quantiles) {
+			if (null == that._quantiles) _quantiles = null;
+			else _quantiles.add(that._quantiles);
+		}
 	}
 
 	/**
@@ -113,6 +157,23 @@ public class StatTracker {
 		return _min;
 	}
 
+	/**
+	 * @return An estimate of the given quantile (between 0 and 1) of all data
+	 *         given to the tracker, or NaN if quantiles aren't being tracked.
+	 */
+	public double quantile (double q) {
+		if (null == _quantiles) return Double.NaN;
+		return _quantiles.quantile(q);
+	}
+
+	/**
+	 * @return An estimate of the median of all data given to the tracker, or
+	 *         NaN if quantiles aren't being tracked.
+	 */
+	public double median () {
+		return quantile(0.5);
+	}
+
 	/**
 	 * Normalize a value to fit in the range we've tracked
 	 * 
@@ -55,4 +55,17 @@ public class ListUtilitiesTests {
         List<Double> base = Arrays.asList(0.0, 1.0, 2.0, 3.0, 4.0);
         Assert.assertEquals(base, ListUtilities.joinLists(base, Arrays.asList(0.0, 0.0, 0.0, 0.0, 0.0), EPSILON));
     }
+
+    @Test
+    public void testJoiningArraysMatchesLists () {
+        double[] a = {0.0, 0.1, 0.35, 0.5, 0.9, 1.0};
+        double[] b = {0.0, 0.35, 0.6, 0.6, 1.0};
+        double[] joined = ListUtilities.joinArrays(a, b, EPSILON);
+
+        List<Double> expected = ListUtilities.joinLists(Arrays.asList(0.0, 0.1, 0.35, 0.5, 0.9, 1.0),
+                                                        Arrays.asList(0.0, 0.35, 0.6, 0.6, 1.0), EPSILON);
+        Assert.assertEquals(expected.size(), joined.length);
+        for (int i=0; i<joined.length; ++i)
+            Assert.assertEquals(expected.get(i), joined[i], EPSILON);
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.math.statistics;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LogHistogramTests {
+	private static final double ACCURACY = 0.01;
+
+	private static double exactQuantile (double[] sorted, double q) {
+		return sorted[(int) (q * (sorted.length - 1))];
+	}
+
+	private static void assertRelative (double expected, double actual) {
+		assertRelative(expected, actual, ACCURACY);
+	}
+
+	private static void assertRelative (double expected, double actual, double accuracy) {
+		Assert.assertEquals(expected, actual, Math.abs(expected) * accuracy * 1.0001);
+	}
+
+	@Test
+	public void testEmpty () {
+		LogHistogram histogram = new LogHistogram();
+		Assert.assertEquals(0, histogram.count());
+		Assert.assertTrue(Double.isNaN(histogram.quantile(0.5)));
+		Assert.assertEquals(0, histogram.getBuckets().length);
+	}
+
+	@Test
+	public void testRelativeAccuracy () {
+		Random random = new Random(4L);
+		double[] data = new double[20000];
+		LogHistogram histogram = new LogHistogram(ACCURACY, 2048);
+		for (int i = 0; i < data.length; ++i) {
+			// Spread over many orders of magnitude, both signs, and zero
+			data[i] = (i % 100 == 0 ? 0.0 : Math.exp(random.nextGaussian() * 5.0) * (random.nextBoolean() ? 1 : -1));
+			histogram.add(data[i]);
+		}
+		Arrays.sort(data);
+
+		Assert.assertEquals(data.length, histogram.count());
+		for (double q = 0.0; q <= 1.0; q += 0.01) {
+			assertRelative(exactQuantile(data, q), histogram.quantile(q));
+		}
+	}
+
+	@Test
+	public void testMerge () {
+		Random random = new Random(5L);
+		double[] data = new double[10000];
+		LogHistogram a = new LogHistogram();
+		LogHistogram b = new LogHistogram();
+		for (int i = 0; i < data.length; ++i) {
+			data[i] = random.nextDouble() * 1000.0;
+			(0 == i % 2 ? a : b).add(data[i]);
+		}
+		LogHistogram merged = LogHistogram.merge(a, b);
+		Arrays.sort(data);
+
+		Assert.assertEquals(data.length / 2, a.count());
+		Assert.assertEquals(data.length, merged.count());
+		for (double q = 0.0; q <= 1.0; q += 0.05) {
+			assertRelative(exactQuantile(data, q), merged.quantile(q));
+		}
+	}
+
+	@Test
+	public void testBoundedBuckets () {
+		// 100 buckets of 10% cover about 8 orders of magnitude
+		LogHistogram histogram = new LogHistogram(0.1, 100);
+		for (int i = -300; i <= 300; ++i) {
+			histogram.add(Math.pow(10.0, i));
+		}
+		Assert.assertEquals(601, histogram.count());
+		Assert.assertTrue(histogram.getBuckets().length <= 100);
+		// The high end stays accurate; the low end is collapsed
+		assertRelative(1E300, histogram.quantile(1.0), 0.1);
+		assertRelative(1E295, histogram.quantile(595.0 / 600.0), 0.1);
+		Assert.assertTrue(histogram.quantile(0.0) > 1E280);
+	}
+
+	@Test
+	public void testBuckets () {
+		LogHistogram histogram = new LogHistogram(ACCURACY, 2048);
+		histogram.add(-5.0);
+		histogram.add(0.0);
+		histogram.add(5.0);
+		histogram.add(5.01);
+
+		double[][] buckets = histogram.getBuckets();
+		Assert.assertEquals(3, buckets.length);
+		Assert.assertTrue(buckets[0][0] < -5.0 && buckets[0][1] >= -5.0);
+		Assert.assertEquals(1.0, buckets[0][2], 0.0);
+		Assert.assertEquals(0.0, buckets[1][0], 0.0);
+		Assert.assertEquals(1.0, buckets[1][2], 0.0);
+		Assert.assertTrue(buckets[2][0] < 5.0 && buckets[2][1] >= 5.01);
+		Assert.assertEquals(2.0, buckets[2][2], 0.0);
+	}
+
+	@Test
+	public void testSerialization () throws Exception {
+		Random random = new Random(6L);
+		LogHistogram histogram = new LogHistogram(0.02, 500);
+		for (int i = 0; i < 5000; ++i) histogram.add(random.nextGaussian() * 100.0);
+
+		LogHistogram copy = LogHistogram.fromBytes(histogram.toBytes());
+		Assert.assertEquals(histogram.count(), copy.count());
+		for (double q = 0.0; q <= 1.0; q += 0.05) {
+			Assert.assertEquals(histogram.quantile(q), copy.quantile(q), 0.0);
+		}
+	}
+}
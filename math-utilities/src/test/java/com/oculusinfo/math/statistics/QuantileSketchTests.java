@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.math.statistics;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QuantileSketchTests {
+	// Exact quantile of sorted data, by the same convention as the sketch
+	private static double exactQuantile (double[] sorted, double q) {
+		int index = (int) Math.min(sorted.length - 1, Math.floor(q * sorted.length));
+		return sorted[index];
+	}
+
+	private static double[] randomData (int n, long seed) {
+		Random random = new Random(seed);
+		double[] data = new double[n];
+		for (int i = 0; i < n; ++i) data[i] = random.nextGaussian() * 10.0 + 100.0;
+		return data;
+	}
+
+	// The fraction of the data lying below a value
+	private static double rank (double[] sorted, double value) {
+		int index = Arrays.binarySearch(sorted, value);
+		if (index < 0) index = -index - 1;
+		return index / (double) sorted.length;
+	}
+
+	@Test
+	public void testEmpty () {
+		QuantileSketch sketch = new QuantileSketch();
+		Assert.assertEquals(0, sketch.count());
+		Assert.assertTrue(Double.isNaN(sketch.quantile(0.5)));
+	}
+
+	@Test
+	public void testSmall () {
+		QuantileSketch sketch = new QuantileSketch();
+		sketch.add(3.0);
+		Assert.assertEquals(3.0, sketch.quantile(0.5), 0.0);
+		sketch.add(1.0);
+		sketch.add(2.0);
+		Assert.assertEquals(1.0, sketch.quantile(0.0), 0.0);
+		Assert.assertEquals(2.0, sketch.quantile(0.5), 0.0);
+		Assert.assertEquals(3.0, sketch.quantile(1.0), 0.0);
+	}
+
+	@Test
+	public void testAccuracy () {
+		double[] data = randomData(100000, 1L);
+		QuantileSketch sketch = new QuantileSketch();
+		for (double value: data) sketch.add(value);
+		Arrays.sort(data);
+
+		Assert.assertEquals(data.length, sketch.count());
+		Assert.assertTrue(sketch.size() <= 2 * sketch.getCompression());
+		for (double q: new double[] {0.001, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999}) {
+			// Rank error is smallest in the tails
+			double tolerance = 0.02 * Math.sqrt(q * (1.0 - q)) + 0.0005;
+			Assert.assertEquals("Quantile "+q, q, rank(data, sketch.quantile(q)), tolerance);
+		}
+		Assert.assertEquals(data[0], sketch.quantile(0.0), 0.0);
+		Assert.assertEquals(data[data.length - 1], sketch.quantile(1.0), 0.0);
+	}
+
+	@Test
+	public void testMerge () {
+		double[] data = randomData(50000, 2L);
+		QuantileSketch[] parts = new QuantileSketch[10];
+		for (int i = 0; i < parts.length; ++i) parts[i] = new QuantileSketch();
+		for (int i = 0; i < data.length; ++i) parts[i % parts.length].add(data[i]);
+
+		QuantileSketch merged = parts[0];
+		for (int i = 1; i < parts.length; ++i) merged = QuantileSketch.merge(merged, parts[i]);
+		// Merging doesn't change the inputs
+		Assert.assertEquals(data.length / parts.length, parts[0].count());
+		Assert.assertEquals(data.length, merged.count());
+
+		Arrays.sort(data);
+		for (double q: new double[] {0.01, 0.25, 0.5, 0.75, 0.99}) {
+			Assert.assertEquals("Quantile "+q, q, rank(data, merged.quantile(q)), 0.01);
+		}
+		Assert.assertEquals(exactQuantile(data, 0.5), merged.quantile(0.5), 0.5);
+	}
+
+	@Test
+	public void testSerialization () throws Exception {
+		QuantileSketch sketch = new QuantileSketch(50);
+		for (double value: randomData(10000, 3L)) sketch.add(value);
+
+		byte[] bytes = sketch.toBytes();
+		QuantileSketch copy = QuantileSketch.fromBytes(bytes);
+		Assert.assertTrue(bytes.length < 32 + 16 * 2 * 50);
+		Assert.assertEquals(sketch.count(), copy.count());
+		Assert.assertEquals(sketch.getCompression(), copy.getCompression(), 0.0);
+		for (double q = 0.0; q <= 1.0; q += 0.05) {
+			Assert.assertEquals(sketch.quantile(q), copy.quantile(q), 1E-12);
+		}
+	}
+}
@@ -103,4 +103,39 @@ public class TestStats {
         Assert.assertEquals(0.5, s.normalizeValue(4.0), EPSILON);
         Assert.assertEquals(0.75, s.normalizeValue(5.0), EPSILON);
     }
+
+    @Test
+    public void testAddStats () {
+        StatTracker a = new StatTracker(true);
+        StatTracker b = new StatTracker(true);
+        for (int i=0; i<10; ++i) {
+            if (0 == i%2) a.addStat(i);
+            else b.addStat(i);
+        }
+        a.addStats(b);
+        Assert.assertEquals(10, a.numItems());
+        Assert.assertEquals(4.5, a.mean(), EPSILON);
+        Assert.assertEquals(0.0, a.min(), EPSILON);
+        Assert.assertEquals(9.0, a.max(), EPSILON);
+        Assert.assertEquals(8.25, a.populationVariance(), EPSILON);
+        Assert.assertEquals(4.5, a.median(), EPSILON);
+        // b is unchanged
+        Assert.assertEquals(5, b.numItems());
+        Assert.assertEquals(5.0, b.mean(), EPSILON);
+    }
+
+    @Test
+    public void testQuantilesOptional () {
+        StatTracker s = new StatTracker();
+        s.addStat(1.0);
+        Assert.assertTrue(Double.isNaN(s.median()));
+
+        s = new StatTracker(true);
+        s.addStat(1.0);
+        s.addStat(2.0);
+        s.addStat(4.0);
+        Assert.assertEquals(2.0, s.median(), EPSILON);
+        s.reset();
+        Assert.assertTrue(Double.isNaN(s.median()));
+    }
 }
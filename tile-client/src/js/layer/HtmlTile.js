@@ -27,13 +27,15 @@
  * An overridden OpenLayers.Tile object to create DOM elements based on
  * tile data. Used by HtmlTileLayers for client rendered layers. Uses
  * either Renderer objects or html functions to generate the DOM elements
- * or html strings.
+ * or html strings. Tile data is requested through the shared TileDataCache,
+ * which also applies the renderer's aggregator, if any.
  */
 ( function() {
 
     "use strict";
 
-    var LayerUtil = require('./LayerUtil');
+    var LayerUtil = require('./LayerUtil'),
+        TileDataCache = require('./TileDataCache');
 
     OpenLayers.Tile.HTML = function() {
         OpenLayers.Tile.apply( this, arguments );
@@ -44,6 +46,8 @@
     OpenLayers.Tile.HTML.prototype.draw = function() {
         var that = this,
             shouldDraw = OpenLayers.Tile.prototype.draw.apply( this, arguments ),
+            renderer,
+            request,
             dataUrl;
         if ( shouldDraw ) {
             this.positionTile();
@@ -56,12 +60,10 @@
                 this.tileIndex = LayerUtil.getTileIndex( this.layer, this.bounds );
                 this.tilekey = this.tileIndex.level + "," + this.tileIndex.xIndex + "," + this.tileIndex.yIndex;
 
-                // new url to render
-                if ( this.isLoading ) {
-                    this.dataRequest.abort();
-                    this.dataRequest = null;
-                    this.isLoading = false;
-                }
+                // new url to render, any outstanding request is left to complete,
+                // as it may be shared with other tiles, and is cached regardless
+                this.isLoading = false;
+                this.dataRequest = null;
 
                 if ( !this.url ) {
                     this.unload();
@@ -71,22 +73,25 @@
                 // hide tile contents until have data
                 this.div.style.visibility = 'hidden';
                 this.isLoading = true;
-                this.dataRequest = $.ajax({
-                    url: this.url
-                }).then(
+                renderer = this.getRenderer();
+                request = TileDataCache.get( this.url, renderer ? renderer.aggregator : null );
+                this.dataRequest = request;
+                request.then(
                     function( data ) {
-                        if ( dataUrl === this.url ) {
+                        if ( dataUrl === that.url ) {
                             that.tileData = data;
                             that.renderTile( that.div, that.tileData );
                         }
                     },
                     function( xhr ) {
-                        console.error( xhr.responseText );
+                        console.error( xhr.responseText || xhr );
                         console.error( xhr );
                     }
                 ).always( function() {
-                    that.isLoading = false;
-                    that.dataRequest = null;
+                    if ( that.dataRequest === request ) {
+                        that.isLoading = false;
+                        that.dataRequest = null;
+                    }
                 });
 
             } else {
@@ -100,6 +105,17 @@
         return shouldDraw;
     };
 
+    /**
+     * Returns the renderer for this tile, if the layer has one.
+     */
+    OpenLayers.Tile.HTML.prototype.getRenderer = function() {
+        var renderer = this.layer.renderer;
+        if ( typeof renderer === "function" ) {
+            renderer = renderer.call( this.layer, this.bounds );
+        }
+        return renderer;
+    };
+
     OpenLayers.Tile.HTML.prototype.createBackBuffer = function() {
         return null;
     };
@@ -141,7 +157,8 @@
             return;
         }
 
-        var div = this.div,
+        var that = this,
+            div = this.div,
             renderer,
             html,
             render;
@@ -161,18 +178,24 @@
             data.index = this.tileIndex;
         }
 
-        renderer = this.layer.renderer;
+        renderer = this.getRenderer();
         html = this.layer.html;
 
         if ( renderer ) {
-            // if renderer is attached, use it
-            if ( typeof renderer === "function" ) {
-                renderer = renderer.call( this.layer, this.bounds );
-            }
-            if ( renderer.aggregator ) {
-                data.tile.meta.map.bins = renderer.aggregator.aggregate( data.tile.meta.map.bins );
-            }
+            // if renderer is attached, use it, any aggregation has already been
+            // applied by the tile data cache
             render = renderer.render( data );
+            if ( render && typeof render.then === "function" ) {
+                // asynchronous renderer, append once it is done, unless the tile has
+                // moved on to other data in the meantime
+                render.then( function( result ) {
+                    if ( that.div === div && that.tileData === data ) {
+                        that.entries = result.entries;
+                        that.appendHtml( div, result.html, renderer, data );
+                    }
+                });
+                return;
+            }
             html = render.html;
             this.entries = render.entries;
         } else {
@@ -182,6 +205,11 @@
             }
         }
 
+        this.appendHtml( div, html, renderer, data );
+    };
+
+    OpenLayers.Tile.HTML.prototype.appendHtml = function( div, html, renderer, data ) {
+
         if ( html instanceof $ ) {
             // if generated a jquery object, append it
             $( div ).append( html );
@@ -0,0 +1,337 @@
+/**
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * A client side cache of decoded tile data, shared by all HtmlTile layers.
+ *
+ * Decoded tiles are held in memory, in a least recently used cache bounded by
+ * the approximate size of their data. Concurrent requests for the same tile,
+ * whether from the same layer or from several layers sharing a data source,
+ * result in a single server request. Tile JSON is parsed, and aggregated if the
+ * layer's renderer has an aggregator, in a pool of Web Workers so that it does
+ * not block the main thread.
+ *
+ * Optionally, the raw tile data can also be persisted in IndexedDB, so that it
+ * survives page reloads. Tiles are keyed by their full request url, which
+ * identifies both the layer, along with its configuration, and the tile index.
+ * The url does not identify the version of the layer's data, so each persisted
+ * tile is stored with the ETag the server sent with it, and is only used once
+ * the server confirms, with a 304 response to a conditional request, that the
+ * layer has not changed since. Tiles sent without an ETag are not persisted.
+ */
+( function() {
+
+    "use strict";
+
+    var LRUCache = require('../util/LRUCache'),
+        WorkerPool = require('../util/WorkerPool'),
+        BucketAggregator = require('./renderer/BucketAggregator'),
+        DEFAULT_MAX_BYTES = 64 * 1024 * 1024,
+        DEFAULT_MAX_PERSISTED_TILES = 2000,
+        PRUNE_INTERVAL = 100,
+        DB_NAME = 'aperture-tiles',
+        DB_VERSION = 1,
+        STORE_NAME = 'tiles',
+        DECODE_SOURCE,
+        memory = new LRUCache( DEFAULT_MAX_BYTES ),
+        maxPersistedTiles = DEFAULT_MAX_PERSISTED_TILES,
+        persist = false,
+        decodePool = null,
+        pendingDecodes = {},
+        pendingFetches = {},
+        database = null,
+        writesSincePrune = 0,
+        decodeTile,
+        getDecodePool,
+        openDatabase,
+        readPersisted,
+        writePersisted,
+        prunePersisted,
+        fetchText;
+
+    /**
+     * Private: Parse raw tile data, aggregating its bins if an aggregation is
+     * provided. Mirrors the 'handle' function of DECODE_SOURCE, which does the
+     * same from within a worker.
+     */
+    decodeTile = function( payload ) {
+        var data = JSON.parse( payload.text ),
+            aggregation = payload.aggregation;
+        if ( aggregation && data.tile && data.tile.meta && data.tile.meta.map ) {
+            data.tile.meta.map.bins = BucketAggregator.aggregateBuckets( aggregation.paths, aggregation.idPath, data.tile.meta.map.bins );
+        }
+        return data;
+    };
+
+    DECODE_SOURCE =
+        'var handle = function( payload ) {\n' +
+        '    var data = JSON.parse( payload.text ),\n' +
+        '        aggregation = payload.aggregation;\n' +
+        '    if ( aggregation && data.tile && data.tile.meta && data.tile.meta.map ) {\n' +
+        '        data.tile.meta.map.bins = aggregateBuckets( aggregation.paths, aggregation.idPath, data.tile.meta.map.bins );\n' +
+        '    }\n' +
+        '    return data;\n' +
+        '};\n';
+
+    /**
+     * Private: Returns the shared decoding worker pool, creating it if necessary.
+     */
+    getDecodePool = function() {
+        if ( !decodePool ) {
+            decodePool = new WorkerPool( BucketAggregator.getWorkerSource() + DECODE_SOURCE, decodeTile );
+        }
+        return decodePool;
+    };
+
+    /**
+     * Private: Returns a promise resolved with the IndexedDB database, or null if
+     * IndexedDB is unavailable.
+     */
+    openDatabase = function() {
+        var deferred,
+            request;
+        if ( database ) {
+            return database;
+        }
+        deferred = $.Deferred();
+        database = deferred.promise();
+        try {
+            request = window.indexedDB.open( DB_NAME, DB_VERSION );
+            request.onupgradeneeded = function( e ) {
+                var store = e.target.result.createObjectStore( STORE_NAME, { keyPath: 'url' } );
+                store.createIndex( 'time', 'time' );
+            };
+            request.onsuccess = function( e ) {
+                deferred.resolve( e.target.result );
+            };
+            request.onerror = function( e ) {
+                console.error( 'Unable to open tile database, tiles will not be persisted', e );
+                deferred.resolve( null );
+            };
+        } catch ( err ) {
+            deferred.resolve( null );
+        }
+        return database;
+    };
+
+    /**
+     * Private: Returns a promise resolved with the persisted entry for the url,
+     * holding its raw data and ETag, or null if there is none.
+     */
+    readPersisted = function( url ) {
+        return openDatabase().then( function( db ) {
+            var deferred = $.Deferred(),
+                request;
+            if ( !db ) {
+                return deferred.resolve( null ).promise();
+            }
+            try {
+                request = db.transaction( STORE_NAME, 'readonly' ).objectStore( STORE_NAME ).get( url );
+                request.onsuccess = function( e ) {
+                    deferred.resolve( e.target.result || null );
+                };
+                request.onerror = function() {
+                    deferred.resolve( null );
+                };
+            } catch ( err ) {
+                deferred.resolve( null );
+            }
+            return deferred.promise();
+        });
+    };
+
+    /**
+     * Private: Persist the raw data for the url, along with the ETag of the layer
+     * version it came from, periodically pruning the oldest entries.
+     */
+    writePersisted = function( url, text, eTag ) {
+        openDatabase().done( function( db ) {
+            if ( !db ) {
+                return;
+            }
+            try {
+                db.transaction( STORE_NAME, 'readwrite' ).objectStore( STORE_NAME ).put({
+                    url: url,
+                    text: text,
+                    eTag: eTag,
+                    time: Date.now()
+                });
+            } catch ( err ) {
+                console.error( 'Unable to persist tile', err );
+                return;
+            }
+            writesSincePrune++;
+            if ( writesSincePrune >= PRUNE_INTERVAL ) {
+                writesSincePrune = 0;
+                prunePersisted( db );
+            }
+        });
+    };
+
+    /**
+     * Private: Delete the oldest persisted entries beyond the maximum number of
+     * persisted tiles.
+     */
+    prunePersisted = function( db ) {
+        var store = db.transaction( STORE_NAME, 'readwrite' ).objectStore( STORE_NAME ),
+            count = store.count();
+        count.onsuccess = function() {
+            var excess = count.result - maxPersistedTiles,
+                cursor;
+            if ( excess <= 0 ) {
+                return;
+            }
+            cursor = store.index( 'time' ).openCursor();
+            cursor.onsuccess = function( e ) {
+                var current = e.target.result;
+                if ( current && excess > 0 ) {
+                    current.delete();
+                    excess--;
+                    current.continue();
+                }
+            };
+        };
+    };
+
+    /**
+     * Private: Returns a promise resolved with the raw data for the url. If the
+     * tile is persisted in IndexedDB, the server is asked whether the layer has
+     * changed since, and the persisted data is used only if it has not. Concurrent
+     * fetches of the same url share a single request.
+     */
+    fetchText = function( url ) {
+        var cached,
+            promise;
+        if ( pendingFetches[ url ] ) {
+            return pendingFetches[ url ];
+        }
+        cached = persist ? readPersisted( url ) : $.Deferred().resolve( null ).promise();
+        promise = cached.then( function( entry ) {
+            var headers = {};
+            if ( entry && entry.eTag ) {
+                headers[ 'If-None-Match' ] = entry.eTag;
+            } else {
+                entry = null;
+            }
+            return $.ajax({
+                url: url,
+                dataType: 'text',
+                headers: headers
+            }).then( function( response, status, xhr ) {
+                var eTag;
+                if ( entry && xhr.status === 304 ) {
+                    // the persisted tile is still current, refresh its access time
+                    writePersisted( url, entry.text, entry.eTag );
+                    return entry.text;
+                }
+                eTag = xhr.getResponseHeader( 'ETag' );
+                if ( persist && eTag ) {
+                    writePersisted( url, response, eTag );
+                }
+                return response;
+            });
+        });
+        pendingFetches[ url ] = promise;
+        promise.always( function() {
+            delete pendingFetches[ url ];
+        });
+        return promise;
+    };
+
+    module.exports = {
+
+        /**
+         * Configure the cache.
+         *
+         * @param {Object} spec - The cache specification.
+         * @param {number} [spec.maxBytes] - The approximate maximum size, in bytes, of the in memory cache.
+         * @param {boolean} [spec.persist] - Whether to persist raw tile data in IndexedDB.
+         * @param {number} [spec.maxPersistedTiles] - The maximum number of tiles to persist.
+         */
+        configure: function( spec ) {
+            if ( spec.maxBytes !== undefined ) {
+                memory.setCapacity( spec.maxBytes );
+            }
+            if ( spec.persist !== undefined ) {
+                persist = !!spec.persist && typeof window !== 'undefined' && !!window.indexedDB;
+            }
+            if ( spec.maxPersistedTiles !== undefined ) {
+                maxPersistedTiles = spec.maxPersistedTiles;
+            }
+        },
+
+        /**
+         * Get the decoded data for a tile. Decoded data is shared between all
+         * callers, and must be treated as read only.
+         *
+         * @param {string} url - The tile url.
+         * @param {BucketAggregator} [aggregator] - The aggregator to apply to the tile bins.
+         *
+         * @returns {Promise} A promise resolved with the decoded tile data.
+         */
+        get: function( url, aggregator ) {
+            var aggregation = aggregator ? aggregator.toSpec() : null,
+                key = aggregation ? url + '#' + JSON.stringify( aggregation ) : url,
+                data = memory.get( key ),
+                promise;
+            if ( data !== undefined ) {
+                return $.Deferred().resolve( data ).promise();
+            }
+            if ( pendingDecodes[ key ] ) {
+                return pendingDecodes[ key ];
+            }
+            promise = fetchText( url ).then( function( text ) {
+                return getDecodePool().run({
+                    text: text,
+                    aggregation: aggregation
+                }).then( function( decoded ) {
+                    // strings are two bytes per character in memory, which roughly
+                    // accounts for the size of the decoded object
+                    memory.set( key, decoded, 2 * text.length );
+                    return decoded;
+                });
+            });
+            pendingDecodes[ key ] = promise;
+            promise.always( function() {
+                delete pendingDecodes[ key ];
+            });
+            return promise;
+        },
+
+        /**
+         * Discard all cached tiles, in memory and persisted.
+         */
+        clear: function() {
+            memory.clear();
+            if ( persist ) {
+                openDatabase().done( function( db ) {
+                    if ( db ) {
+                        db.transaction( STORE_NAME, 'readwrite' ).objectStore( STORE_NAME ).clear();
+                    }
+                });
+            }
+        }
+    };
+}());
@@ -186,27 +186,17 @@
     }
 
     /**
-     * Instantiate a BucketAggregator object.
-     * @class BucketAggregator
-     * @classdesc
-     */
-    function BucketAggregator( spec ) {
-        this.paths = buildPaths( spec );
-        this.idPath = getIdPath( this.paths );
-    }
-
-    /**
-     * Given an array of buckets, will execute the provided aggregation
-     * specification against all relevant entries.
+     * Groups the entries of each bucket by their $id, and aggregates each group
+     * into a single entry.
      *
+     * @param {Array} paths - The array of paths.
+     * @param {Array} idPath - The path to the $id of each entry.
      * @param {Array} buckets - The array of buckets.
      *
      * @returns {Array} The aggregated buckets.
      */
-    BucketAggregator.prototype.aggregate = function( buckets ) {
-        var paths = this.paths,
-            idPath = this.idPath,
-            bucketsById = {},
+    function aggregateBuckets( paths, idPath, buckets ) {
+        var bucketsById = {},
             aggBuckets = [],
             bucket,
             value,
@@ -236,6 +226,65 @@
             }
         }
         return aggBuckets;
+    }
+
+    /**
+     * Instantiate a BucketAggregator object.
+     * @class BucketAggregator
+     * @classdesc
+     */
+    function BucketAggregator( spec ) {
+        this.paths = buildPaths( spec );
+        this.idPath = getIdPath( this.paths );
+    }
+
+    /**
+     * Given an array of buckets, will execute the provided aggregation
+     * specification against all relevant entries.
+     *
+     * @param {Array} buckets - The array of buckets.
+     *
+     * @returns {Array} The aggregated buckets.
+     */
+    BucketAggregator.prototype.aggregate = function( buckets ) {
+        return aggregateBuckets( this.paths, this.idPath, buckets );
+    };
+
+    /**
+     * Returns a plain object describing this aggregation, which can be passed
+     * to a Web Worker along with the source from getWorkerSource.
+     *
+     * @returns {Object} The aggregation paths and $id path.
+     */
+    BucketAggregator.prototype.toSpec = function() {
+        return {
+            paths: this.paths,
+            idPath: this.idPath
+        };
+    };
+
+    /**
+     * Aggregates buckets according to paths, as returned by toSpec, without
+     * requiring a BucketAggregator instance.
+     *
+     * @param {Array} paths - The array of paths.
+     * @param {Array} idPath - The path to the $id of each entry.
+     * @param {Array} buckets - The array of buckets.
+     *
+     * @returns {Array} The aggregated buckets.
+     */
+    BucketAggregator.aggregateBuckets = aggregateBuckets;
+
+    /**
+     * Returns script source that defines a global
+     * 'aggregateBuckets( paths, idPath, buckets )' function, so that buckets can
+     * be aggregated from within a Web Worker.
+     *
+     * @returns {string} The aggregation source.
+     */
+    BucketAggregator.getWorkerSource = function() {
+        return [ sum, append, max, min, applyToBuckets ].join( '\n' ) + '\n' +
+            'var aggregateBuckets = ' + aggregateBuckets.toString() + ';\n';
     };
 
     module.exports = BucketAggregator;
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2015 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * Word cloud layout. Places a list of measured words, in order, along an outward spiral,
+ * avoiding any already placed words and the borders of the tile.
+ *
+ * Already placed words are indexed in a uniform grid, so each candidate position is only
+ * tested against the few words near it rather than every word placed so far. The layout
+ * itself never touches the DOM, so it can also be run in a Web Worker.
+ */
+( function() {
+
+    "use strict";
+
+    var WorkerPool = require('../../util/WorkerPool'),
+        createLayout,
+        layout,
+        layoutPool = null,
+        layoutPayload;
+
+    /**
+     * Private: Returns the layout function. Everything the layout needs is defined within
+     * this function, so that its source can be used, as is, as the body of a Web Worker.
+     */
+    createLayout = function() {
+
+        var GRID_CELL_SIZE = 32,
+            spiralPosition,
+            intersectTest,
+            overlapTest;
+
+        /**
+         * Given an initial position, return a new position, incrementally spiralled
+         * outwards.
+         */
+        spiralPosition = function( pos ) {
+            var pi2 = 2 * Math.PI,
+                circ = pi2 * pos.radius,
+                inc = ( pos.arcLength > circ/10) ? circ/10 : pos.arcLength,
+                da = inc / pos.radius,
+                nt = (pos.t+da);
+            if (nt > pi2) {
+                nt = nt % pi2;
+                pos.radius = pos.radius + pos.radiusInc;
+            }
+            pos.t = nt;
+            pos.x = pos.radius * Math.cos(nt);
+            pos.y = pos.radius * Math.sin(nt);
+            return pos;
+        };
+
+        /**
+         *  Returns true if bounding box a intersects bounding box b
+         */
+        intersectTest = function( a, b ) {
+            return (Math.abs(a.x - b.x) * 2 < (a.width + b.width)) &&
+                   (Math.abs(a.y - b.y) * 2 < (a.height + b.height));
+        };
+
+        /**
+         *  Returns true if bounding box a is not fully contained inside bounding box b
+         */
+        overlapTest = function( a, b ) {
+            return ( a.x + a.width/2 > b.x+b.width/2 ||
+                     a.x - a.width/2 < b.x-b.width/2 ||
+                     a.y + a.height/2 > b.y+b.height/2 ||
+                     a.y - a.height/2 < b.y-b.height/2 );
+        };
+
+        /**
+         * Lay out the given words.
+         *
+         * @param {Array} words - The width and height of each word, in placement order.
+         * @param {Object} bb - The bounding box, centered on x and y, within which words must fit.
+         *
+         * @returns {Array} The x and y position of the center of each word, relative to the
+         *                  center of the bounding box, or null for words that could not be placed.
+         */
+        return function( words, bb ) {
+            var columns = Math.max( 1, Math.ceil( bb.width / GRID_CELL_SIZE ) ),
+                rows = Math.max( 1, Math.ceil( bb.height / GRID_CELL_SIZE ) ),
+                left = bb.x - bb.width/2,
+                top = bb.y - bb.height/2,
+                grid = [],
+                placed = [],
+                lastTested = [],
+                testStamp = 0,
+                lastHit = -1,
+                positions = [],
+                range = { c0: 0, c1: 0, r0: 0, r1: 0 },
+                box = { x: 0, y: 0, width: 0, height: 0 },
+                cellRange,
+                intersectWord,
+                addWord,
+                pos, i;
+
+            // Get the range of grid cells covered by a box, clamped to the grid
+            cellRange = function( box ) {
+                range.c0 = Math.min( Math.max( Math.floor( ( box.x - box.width/2 - left ) / GRID_CELL_SIZE ), 0 ), columns - 1 );
+                range.c1 = Math.min( Math.max( Math.floor( ( box.x + box.width/2 - left ) / GRID_CELL_SIZE ), 0 ), columns - 1 );
+                range.r0 = Math.min( Math.max( Math.floor( ( box.y - box.height/2 - top ) / GRID_CELL_SIZE ), 0 ), rows - 1 );
+                range.r1 = Math.min( Math.max( Math.floor( ( box.y + box.height/2 - top ) / GRID_CELL_SIZE ), 0 ), rows - 1 );
+                return range;
+            };
+
+            // Check if a word intersects another word, or is not fully contained in the
+            // bounding box. Placed words always lie within the bounding box, so only words
+            // in the grid cells the candidate covers need be tested.
+            intersectWord = function( position, box ) {
+                var cell, index, r, c, j;
+                if ( placed.length > 0 ) {
+                    // successive spiral positions tend to hit the same word, so try it first
+                    if ( lastHit >= 0 && intersectTest( box, placed[ lastHit ] ) ) {
+                        return true;
+                    }
+                    cellRange( box );
+                    testStamp++;
+                    for ( r=range.r0; r<=range.r1; r++ ) {
+                        for ( c=range.c0; c<=range.c1; c++ ) {
+                            cell = grid[ r*columns + c ];
+                            if ( cell ) {
+                                for ( j=0; j<cell.length; j++ ) {
+                                    index = cell[j];
+                                    if ( lastTested[ index ] !== testStamp ) {
+                                        lastTested[ index ] = testStamp;
+                                        if ( intersectTest( box, placed[ index ] ) ) {
+                                            lastHit = index;
+                                            return true;
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+                // make sure it doesn't intersect the border;
+                if ( overlapTest( box, bb ) ) {
+                    // if it hits a border, increment collision count
+                    // and extend arc length
+                    position.collisions++;
+                    position.arcLength = position.radius;
+                    return true;
+                }
+                return false;
+            };
+
+            addWord = function( box ) {
+                var index = placed.length,
+                    key, r, c;
+                placed.push( box );
+                cellRange( box );
+                for ( r=range.r0; r<=range.r1; r++ ) {
+                    for ( c=range.c0; c<=range.c1; c++ ) {
+                        key = r*columns + c;
+                        if ( !grid[ key ] ) {
+                            grid[ key ] = [];
+                        }
+                        grid[ key ].push( index );
+                    }
+                }
+            };
+
+            for ( i=0; i<words.length; i++ ) {
+                // starting spiral position
+                pos = {
+                    radius : 1,
+                    radiusInc : 5,
+                    arcLength : 5,
+                    x : 0,
+                    y : 0,
+                    t : 0,
+                    collisions : 0
+                };
+                positions.push( null );
+                box.width = words[i].width;
+                box.height = words[i].height;
+                while( pos.collisions < 10 ) {
+                    // increment position in a spiral
+                    pos = spiralPosition( pos );
+                    box.x = pos.x;
+                    box.y = pos.y;
+                    // test for intersection
+                    if ( !intersectWord( pos, box ) ) {
+                        addWord({
+                            x: pos.x,
+                            y: pos.y,
+                            width: box.width,
+                            height: box.height
+                        });
+                        positions[i] = {
+                            x: pos.x,
+                            y: pos.y
+                        };
+                        break;
+                    }
+                }
+            }
+            return positions;
+        };
+    };
+
+    layout = createLayout();
+
+    /**
+     * Private: Run a layout job, as passed to the layout worker.
+     */
+    layoutPayload = function( payload ) {
+        return layout( payload.words, payload.boundingBox );
+    };
+
+    module.exports = {
+
+        /**
+         * Lay out the given words synchronously.
+         *
+         * @param {Array} words - The width and height of each word, in placement order.
+         * @param {Object} boundingBox - The bounding box, centered on x and y, within which words must fit.
+         *
+         * @returns {Array} The x and y position of each word, or null for words that could not be placed.
+         */
+        layout: layout,
+
+        /**
+         * Lay out the given words in a Web Worker, if possible, or synchronously if not.
+         *
+         * @param {Array} words - The width and height of each word, in placement order.
+         * @param {Object} boundingBox - The bounding box, centered on x and y, within which words must fit.
+         *
+         * @returns {Promise} A promise resolved with the position of each word.
+         */
+        layoutAsync: function( words, boundingBox ) {
+            if ( !layoutPool ) {
+                layoutPool = new WorkerPool(
+                    'var layout = (' + createLayout.toString() + ')();\n' +
+                    'var handle = function( payload ) {\n' +
+                    '    return layout( payload.words, payload.boundingBox );\n' +
+                    '};\n',
+                    layoutPayload,
+                    1 );
+            }
+            return layoutPool.run({
+                words: words,
+                boundingBox: boundingBox
+            });
+        }
+    };
+}());
@@ -32,13 +32,17 @@
 
     var Renderer = require('./Renderer'),
         RendererUtil = require('./RendererUtil'),
+        WordCloudLayout = require('./WordCloudLayout'),
+        LRUCache = require('../../util/LRUCache'),
         MAX_WORDS_DISPLAYED = 10,
         HORIZONTAL_OFFSET = 10,
         VERTICAL_OFFSET = 24,
-        spiralPosition,
-        intersectTest,
-        overlapTest,
-        intersectWord,
+        MAX_CACHED_DIMENSIONS = 5000,
+        dimensionCache = new LRUCache( MAX_CACHED_DIMENSIONS ),
+        fontMetrics = {},
+        measureContext,
+        getFontMetrics,
+        measureLabel,
         getWordDimensions,
         createWordCloud,
         injectCss;
@@ -55,89 +59,92 @@
     };
 
     /**
-     * Given an initial position, return a new position, incrementally spiralled
-     * outwards.
+     * Returns the label metrics that don't depend on the text of the label: its font,
+     * padding, maximum width, whether it wraps, and the height of a single line. These
+     * are read from a temporary label once per font size.
      */
-    spiralPosition = function( pos ) {
-        var pi2 = 2 * Math.PI,
-            circ = pi2 * pos.radius,
-            inc = ( pos.arcLength > circ/10) ? circ/10 : pos.arcLength,
-            da = inc / pos.radius,
-            nt = (pos.t+da);
-        if (nt > pi2) {
-            nt = nt % pi2;
-            pos.radius = pos.radius + pos.radiusInc;
+    getFontMetrics = function( fontSize ) {
+        var metrics = fontMetrics[ fontSize ],
+            $temp,
+            style;
+        if ( !metrics ) {
+            $temp = $('<div class="word-cloud-label-temp" style="font-size:'+fontSize+'px;">M</div>');
+            $('body').append( $temp );
+            style = window.getComputedStyle( $temp[0] );
+            metrics = {
+                font: style.fontStyle + ' ' + style.fontWeight + ' ' + fontSize + 'px ' + style.fontFamily,
+                padding: $temp.outerWidth() - $temp.width(),
+                maxWidth: parseFloat( style.maxWidth ) || Infinity,
+                wraps: style.whiteSpace !== 'nowrap' && style.whiteSpace !== 'pre',
+                height: $temp.outerHeight()
+            };
+            $temp.remove();
+            fontMetrics[ fontSize ] = metrics;
         }
-        pos.t = nt;
-        pos.x = pos.radius * Math.cos(nt);
-        pos.y = pos.radius * Math.sin(nt);
-        return pos;
-    };
-
-    /**
-     *  Returns true if bounding box a intersects bounding box b
-     */
-    intersectTest = function( a, b ) {
-        return (Math.abs(a.x - b.x) * 2 < (a.width + b.width)) &&
-               (Math.abs(a.y - b.y) * 2 < (a.height + b.height));
+        return metrics;
     };
 
     /**
-     *  Returns true if bounding box a is not fully contained inside bounding box b
+     * Returns the pixel dimensions of the label, measured on a temporary label in the
+     * document.
      */
-    overlapTest = function( a, b ) {
-        return ( a.x + a.width/2 > b.x+b.width/2 ||
-                 a.x - a.width/2 < b.x-b.width/2 ||
-                 a.y + a.height/2 > b.y+b.height/2 ||
-                 a.y - a.height/2 < b.y-b.height/2 );
+    measureLabel = function( str, fontSize ) {
+        var $temp = $('<div class="word-cloud-label-temp" style="font-size:'+fontSize+'px;">'+str+'</div>'),
+            dimension;
+        $('body').append( $temp );
+        dimension = {
+            width: $temp.outerWidth(),
+            height: $temp.outerHeight()
+        };
+        $temp.remove();
+        return dimension;
     };
 
     /**
-     * Check if a word intersects another word, or is not fully contained in the
-     * tile bounding box
+     * Returns the pixel dimensions of the label. Text is measured on a shared offscreen
+     * canvas, and the results are cached, so that the document layout is never touched
+     * for each word. A canvas can only measure a single line, so labels wider than
+     * the maximum width are measured in the document instead if the stylesheet lets
+     * them wrap onto several lines.
      */
-    intersectWord = function( position, dimensions, cloud, bb ) {
-        var box = {
-                x: position.x,
-                y: position.y,
-                height: dimensions.height,
-                width: dimensions.width
-            },
-            i;
-        for ( i=0; i<cloud.length; i++ ) {
-            if ( intersectTest( box, cloud[i] ) ) {
-                return true;
-            }
+    getWordDimensions = function( str, fontSize ) {
+        var key = fontSize + ':' + str,
+            dimension = dimensionCache.get( key ),
+            metrics,
+            textWidth;
+        if ( dimension ) {
+            return dimension;
         }
-        // make sure it doesn't intersect the border;
-        if ( overlapTest( box, bb ) ) {
-            // if it hits a border, increment collision count
-            // and extend arc length
-            position.collisions++;
-            position.arcLength = position.radius;
-            return true;
+        if ( measureContext === undefined ) {
+            measureContext = document.createElement( 'canvas' ).getContext( '2d' ) || null;
         }
-        return false;
-    };
-
-    /**
-     * Returns the pixel dimensions of the label
-     */
-    getWordDimensions = function( str, fontSize ) {
-        var $temp,
-            dimension = {};
-        $temp = $('<div class="word-cloud-label-temp" style="font-size:'+fontSize+'px;">'+str+'</div>');
-        $('body').append( $temp );
-        dimension.width = $temp.outerWidth();
-        dimension.height = $temp.outerHeight();
-        $temp.remove();
+        if ( measureContext ) {
+            metrics = getFontMetrics( fontSize );
+            measureContext.font = metrics.font;
+            textWidth = measureContext.measureText( str ).width;
+            if ( textWidth > metrics.maxWidth && metrics.wraps ) {
+                // the label wraps, measure it directly
+                dimension = measureLabel( str, fontSize );
+            } else {
+                dimension = {
+                    width: Math.ceil( Math.min( textWidth, metrics.maxWidth ) ) + metrics.padding,
+                    height: metrics.height
+                };
+            }
+        } else {
+            // no canvas support, measure the label directly
+            dimension = measureLabel( str, fontSize );
+        }
+        dimensionCache.set( key, dimension );
         return dimension;
     };
 
     /**
-     * Returns the word cloud words containing font size and x and y coordinates
+     * Returns the word cloud words containing font size and x and y coordinates. If
+     * inWorker is true, the layout is done in a Web Worker, and a promise of the words
+     * is returned instead.
      */
-    createWordCloud = function( wordCounts, min, max ) {
+    createWordCloud = function( wordCounts, min, max, inWorker ) {
         var minFontSize = 10,
             maxFontSize = 28,
             boundingBox = {
@@ -146,15 +153,17 @@
                 x: 0,
                 y: 0
             },
-            cloud = [],
+            words = [],
+            dimensions = [],
+            assemble,
             percent,
             i, word, count, dim,
-            fontSize, pos;
+            fontSize;
         // sort words by frequency
         wordCounts.sort( function( a, b ) {
             return b.count - a.count;
         });
-        // assemble word cloud
+        // measure each word
         for ( i=0; i<wordCounts.length; i++ ) {
             word = wordCounts[i].word;
             count = wordCounts[i].count;
@@ -168,37 +177,36 @@
             percent = ((fontSize-minFontSize) / (maxFontSize-minFontSize))*100;
             // get dimensions of word
             dim = getWordDimensions( word, fontSize );
-            // starting spiral position
-            pos = {
-                radius : 1,
-                radiusInc : 5,
-                arcLength : 5,
-                x : 0,
-                y : 0,
-                t : 0,
-                collisions : 0
-            };
-
-            while( pos.collisions < 10 ) {
-                // increment position in a spiral
-                pos = spiralPosition( pos );
-                // test for intersection
-                if ( !intersectWord( pos, dim, cloud, boundingBox ) ) {
-                    cloud.push({
-                        word: word,
-                        entry: wordCounts[i].entry,
-                        fontSize: fontSize,
-                        percentLabel: Math.round( percent / 10 ) * 10,
-                        x:pos.x,
-                        y:pos.y,
-                        width: dim.width,
-                        height: dim.height
-                    });
-                    break;
+            words.push({
+                word: word,
+                entry: wordCounts[i].entry,
+                fontSize: fontSize,
+                percentLabel: Math.round( percent / 10 ) * 10,
+                width: dim.width,
+                height: dim.height
+            });
+            dimensions.push({
+                width: dim.width,
+                height: dim.height
+            });
+        }
+        // assemble word cloud from the placed words
+        assemble = function( positions ) {
+            var cloud = [],
+                j;
+            for ( j=0; j<words.length; j++ ) {
+                if ( positions[j] ) {
+                    words[j].x = positions[j].x;
+                    words[j].y = positions[j].y;
+                    cloud.push( words[j] );
                 }
             }
+            return cloud;
+        };
+        if ( inWorker ) {
+            return WordCloudLayout.layoutAsync( dimensions, boundingBox ).then( assemble );
         }
-        return cloud;
+        return assemble( WordCloudLayout.layout( dimensions, boundingBox ) );
     };
 
     /**
@@ -214,6 +222,8 @@
      *         countKey {String|Function} - The attribute for the count in the data entry.
      *         themes   {Array}  - The array of RenderThemes to be attached to this component.
      *     }
+     *     layoutInWorker {boolean} - Lay out the word cloud in a Web Worker, where available.
+     *                                Rendering is then asynchronous.
      * }
      * </pre>
      */
@@ -231,7 +241,8 @@
      *
      * @param {Object} data - The raw data for a tile to be rendered.
      *
-     * @returns {{html: string, entries: Array}} The html to render and an array of all rendered data entries.
+     * @returns {{html: string, entries: Array}|Promise} The html to render and an array of all rendered data
+     *     entries, or a promise of them if the layout is done in a worker.
      */
     WordCloudRenderer.prototype.render = function( data ) {
 
@@ -241,15 +252,12 @@
             values = RendererUtil.getAttributeValue( data, this.spec.rootKey ),
             meta = this.meta[ this.parent.map.getZoom() ],
             numEntries = Math.min( values.length, MAX_WORDS_DISPLAYED),
-            html = '',
             wordCounts = [],
-            entries = [],
             value,
-            word,
             min,
             max,
             i,
-            cloud;
+            toHtml;
 
         for ( i=0; i<numEntries; i++ ) {
             value = values[i];
@@ -270,25 +278,34 @@
             max = RendererUtil.getAttributeValue( meta.minimum, countKey );
         }
 
-        cloud = createWordCloud( wordCounts, min, max );
+        toHtml = function( cloud ) {
+            var html = '',
+                entries = [],
+                word,
+                j;
+            for ( j=0; j<cloud.length; j++ ) {
 
-        for ( i=0; i<cloud.length; i++ ) {
+                word = cloud[j];
+                entries.push( word.entry );
 
-            word = cloud[i];
-            entries.push( word.entry );
-
-            html += '<div class="word-cloud-label word-cloud-label-'+word.percentLabel+'" style="'
-                    + 'font-size:'+word.fontSize+'px;'
-                    + 'left:'+(128+word.x-(word.width/2))+'px;'
-                    + 'top:'+(128+word.y-(word.height/2))+'px;'
-                    + 'width:'+word.width+'px;'
-                    + 'height:'+word.height+'px;">'+word.word+'</div>';
-        }
+                html += '<div class="word-cloud-label word-cloud-label-'+word.percentLabel+'" style="'
+                        + 'font-size:'+word.fontSize+'px;'
+                        + 'left:'+(128+word.x-(word.width/2))+'px;'
+                        + 'top:'+(128+word.y-(word.height/2))+'px;'
+                        + 'width:'+word.width+'px;'
+                        + 'height:'+word.height+'px;">'+word.word+'</div>';
+            }
 
-        return {
-            html: html,
-            entries: entries
+            return {
+                html: html,
+                entries: entries
+            };
         };
+
+        if ( this.spec.layoutInWorker ) {
+            return createWordCloud( wordCounts, min, max, true ).then( toHtml );
+        }
+        return toHtml( createWordCloud( wordCounts, min, max, false ) );
     };
 
     module.exports = WordCloudRenderer;
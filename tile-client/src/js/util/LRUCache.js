@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * A simple least-recently-used cache, mapping string keys to values. Entries may
+ * be given a weight, such as their size in bytes, in which case the capacity
+ * bounds the total weight rather than the number of entries.
+ */
+( function() {
+
+    "use strict";
+
+    var unlink,
+        linkFirst,
+        evictToCapacity;
+
+    /**
+     * Private: Remove a node from the recency list.
+     */
+    unlink = function( cache, node ) {
+        if ( node.prev ) {
+            node.prev.next = node.next;
+        } else {
+            cache.head = node.next;
+        }
+        if ( node.next ) {
+            node.next.prev = node.prev;
+        } else {
+            cache.tail = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+    };
+
+    /**
+     * Private: Add a node to the most recently used end of the recency list.
+     */
+    linkFirst = function( cache, node ) {
+        node.next = cache.head;
+        node.prev = null;
+        if ( cache.head ) {
+            cache.head.prev = node;
+        }
+        cache.head = node;
+        if ( !cache.tail ) {
+            cache.tail = node;
+        }
+    };
+
+    /**
+     * Private: Evict least recently used entries until the cache is within its
+     * capacity.
+     */
+    evictToCapacity = function( cache ) {
+        var evicted;
+        while ( cache.weight > cache.capacity && cache.tail ) {
+            evicted = cache.tail;
+            unlink( cache, evicted );
+            delete cache.nodes[ evicted.key ];
+            cache.size--;
+            cache.weight -= evicted.weight;
+            if ( cache.onEvict ) {
+                cache.onEvict( evicted.key, evicted.value );
+            }
+        }
+    };
+
+    /**
+     * Instantiate an LRUCache object.
+     * @class LRUCache
+     * @classdesc A fixed capacity cache that evicts its least recently used entries
+     * when full.
+     *
+     * @param {number} capacity - The maximum total weight of the entries to hold.
+     *                            Entries weigh 1 unless otherwise specified.
+     * @param {Function} [onEvict] - An optional callback, called with the key and
+     *                               value of each evicted entry.
+     */
+    function LRUCache( capacity, onEvict ) {
+        this.capacity = Math.max( 1, capacity || 1 );
+        this.onEvict = onEvict || null;
+        this.clear();
+    }
+
+    /**
+     * Get the cached value for a key, marking it as most recently used.
+     * @memberof LRUCache
+     *
+     * @param {string} key - The key.
+     *
+     * @returns {*} The cached value, or undefined if there is none.
+     */
+    LRUCache.prototype.get = function( key ) {
+        var node = this.nodes[ key ];
+        if ( !node ) {
+            return undefined;
+        }
+        if ( node !== this.head ) {
+            unlink( this, node );
+            linkFirst( this, node );
+        }
+        return node.value;
+    };
+
+    /**
+     * Returns true if the cache holds a value for the key. Does not affect
+     * recency.
+     * @memberof LRUCache
+     *
+     * @param {string} key - The key.
+     *
+     * @returns {boolean} Whether the key is cached.
+     */
+    LRUCache.prototype.has = function( key ) {
+        return this.nodes[ key ] !== undefined;
+    };
+
+    /**
+     * Cache a value, evicting least recently used entries until the cache is
+     * back within its capacity. A value heavier than the whole capacity is not
+     * kept.
+     * @memberof LRUCache
+     *
+     * @param {string} key - The key.
+     * @param {*} value - The value.
+     * @param {number} [weight] - The weight of the entry. Defaults to 1.
+     */
+    LRUCache.prototype.set = function( key, value, weight ) {
+        var node = this.nodes[ key ];
+        weight = ( weight === undefined ) ? 1 : weight;
+        if ( node ) {
+            node.value = value;
+            this.weight += weight - node.weight;
+            node.weight = weight;
+            if ( node !== this.head ) {
+                unlink( this, node );
+                linkFirst( this, node );
+            }
+        } else {
+            node = {
+                key: key,
+                value: value,
+                weight: weight,
+                prev: null,
+                next: null
+            };
+            this.nodes[ key ] = node;
+            linkFirst( this, node );
+            this.size++;
+            this.weight += weight;
+        }
+        evictToCapacity( this );
+    };
+
+    /**
+     * Change the capacity of the cache, evicting entries if it is now over
+     * capacity.
+     * @memberof LRUCache
+     *
+     * @param {number} capacity - The new maximum total weight.
+     */
+    LRUCache.prototype.setCapacity = function( capacity ) {
+        this.capacity = Math.max( 1, capacity || 1 );
+        evictToCapacity( this );
+    };
+
+    /**
+     * Remove an entry from the cache.
+     * @memberof LRUCache
+     *
+     * @param {string} key - The key.
+     */
+    LRUCache.prototype.remove = function( key ) {
+        var node = this.nodes[ key ];
+        if ( node ) {
+            unlink( this, node );
+            delete this.nodes[ key ];
+            this.size--;
+            this.weight -= node.weight;
+        }
+    };
+
+    /**
+     * Remove all entries from the cache.
+     * @memberof LRUCache
+     */
+    LRUCache.prototype.clear = function() {
+        this.nodes = Object.create( null );
+        this.head = null;
+        this.tail = null;
+        this.size = 0;
+        this.weight = 0;
+    };
+
+    module.exports = LRUCache;
+}());
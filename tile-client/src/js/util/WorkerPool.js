@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+/**
+ * A small pool of Web Workers, all running the same script, which hands each
+ * job to the least busy worker. Falls back to running jobs on the main thread
+ * when workers are unavailable.
+ */
+( function() {
+
+    "use strict";
+
+    var DEFAULT_SIZE = 2,
+        MAX_SIZE = 4,
+        WORKER_WRAPPER,
+        createWorker,
+        failPool;
+
+    WORKER_WRAPPER =
+        '\nonmessage = function( e ) {\n' +
+        '    var result;\n' +
+        '    try {\n' +
+        '        result = handle( e.data.payload );\n' +
+        '    } catch ( err ) {\n' +
+        '        postMessage({ id: e.data.id, error: String( err ) });\n' +
+        '        return;\n' +
+        '    }\n' +
+        '    postMessage({ id: e.data.id, result: result });\n' +
+        '};\n';
+
+    /**
+     * Private: Create a worker from the pool's script, and hook up its message
+     * handlers.
+     */
+    createWorker = function( pool ) {
+        var entry = {
+            worker: new Worker( pool.scriptUrl ),
+            busy: 0
+        };
+        entry.worker.onmessage = function( e ) {
+            var job = pool.pending[ e.data.id ];
+            delete pool.pending[ e.data.id ];
+            entry.busy--;
+            if ( !job ) {
+                return;
+            }
+            if ( e.data.error !== undefined ) {
+                job.deferred.reject( e.data.error );
+            } else {
+                job.deferred.resolve( e.data.result );
+            }
+        };
+        entry.worker.onerror = function( e ) {
+            console.error( 'Worker failed to run, running jobs on the main thread instead', e );
+            failPool( pool );
+        };
+        return entry;
+    };
+
+    /**
+     * Private: Shut down all workers, and run any outstanding jobs on the
+     * main thread.
+     */
+    failPool = function( pool ) {
+        var pending = pool.pending,
+            id;
+        pool.failed = true;
+        pool.pending = {};
+        pool.workers.forEach( function( entry ) {
+            entry.worker.terminate();
+        });
+        pool.workers = [];
+        for ( id in pending ) {
+            if ( pending.hasOwnProperty( id ) ) {
+                pool.runOnMainThread( pending[ id ].payload, pending[ id ].deferred );
+            }
+        }
+    };
+
+    /**
+     * Instantiate a WorkerPool object.
+     * @class WorkerPool
+     * @classdesc A pool of Web Workers running a common script.
+     *
+     * @param {string} source - The worker script. It must define a global
+     *                          'handle( payload )' function, whose return value is
+     *                          posted back as the result of the job.
+     * @param {Function} handler - The main thread equivalent of 'handle', used
+     *                             when workers are unavailable.
+     * @param {number} [size] - The maximum number of workers. Defaults to the number
+     *                          of available cores, within reason.
+     */
+    function WorkerPool( source, handler, size ) {
+        this.source = source;
+        this.handler = handler;
+        this.size = size || Math.min( MAX_SIZE, navigator.hardwareConcurrency || DEFAULT_SIZE );
+        this.workers = [];
+        this.pending = {};
+        this.nextId = 0;
+        this.scriptUrl = null;
+        this.failed = typeof Worker === 'undefined' ||
+            typeof Blob === 'undefined' ||
+            typeof URL === 'undefined';
+    }
+
+    /**
+     * Run a job on the main thread, settling the given deferred with its result.
+     * @memberof WorkerPool
+     *
+     * @param {*} payload - The job payload.
+     * @param {Object} deferred - The deferred to settle.
+     */
+    WorkerPool.prototype.runOnMainThread = function( payload, deferred ) {
+        try {
+            deferred.resolve( this.handler( payload ) );
+        } catch ( err ) {
+            deferred.reject( String( err ) );
+        }
+    };
+
+    /**
+     * Run a job. Workers are created as needed, up to the pool size, after which
+     * jobs are queued on whichever worker has the fewest outstanding.
+     * @memberof WorkerPool
+     *
+     * @param {*} payload - The job payload, which must be structured cloneable.
+     *
+     * @returns {Promise} A promise resolved with the result of the job.
+     */
+    WorkerPool.prototype.run = function( payload ) {
+        var deferred = $.Deferred(),
+            entry = null,
+            id,
+            i;
+        if ( !this.failed ) {
+            try {
+                if ( !this.scriptUrl ) {
+                    this.scriptUrl = URL.createObjectURL(
+                        new Blob( [ this.source + WORKER_WRAPPER ], { type: 'application/javascript' } ) );
+                }
+                for ( i=0; i<this.workers.length; i++ ) {
+                    if ( !entry || this.workers[i].busy < entry.busy ) {
+                        entry = this.workers[i];
+                    }
+                }
+                if ( ( !entry || entry.busy > 0 ) && this.workers.length < this.size ) {
+                    entry = createWorker( this );
+                    this.workers.push( entry );
+                }
+            } catch ( err ) {
+                failPool( this );
+            }
+        }
+        if ( this.failed ) {
+            this.runOnMainThread( payload, deferred );
+            return deferred.promise();
+        }
+        id = this.nextId++;
+        this.pending[ id ] = {
+            deferred: deferred,
+            payload: payload
+        };
+        entry.busy++;
+        entry.worker.postMessage({
+            id: id,
+            payload: payload
+        });
+        return deferred.promise();
+    };
+
+    module.exports = WorkerPool;
+}());
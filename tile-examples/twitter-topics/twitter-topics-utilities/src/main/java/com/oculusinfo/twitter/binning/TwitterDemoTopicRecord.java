@@ -25,51 +25,74 @@
 package com.oculusinfo.twitter.binning;
 
 import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 
+/**
+ * Tweet counts and recent tweets for a single topic.
+ *
+ * Counts are kept in primitive arrays, and the most recent tweets in a small
+ * bounded array, sorted newest first. Records are immutable as far as the
+ * public API is concerned, except for accumulators (see {@link #asAccumulator()}),
+ * which may be merged into in place. An accumulator is always a fresh copy
+ * belonging to whoever asked for it, so no record shared with anyone else can
+ * ever be modified.
+ */
 public class TwitterDemoTopicRecord implements Serializable {
-	private static final long serialVersionUID = 1L;	//NOTE:  using default serialVersion ID
+	private static final long serialVersionUID = 2L;	//NOTE:  using default serialVersion ID
 	
 	private static final int NUM_DAYS = 31;			// days per month
 	private static final int NUM_QUARTERDAYS = 28;	// quarter days per week
 	private static final int NUM_HOURS = 24;		// hours per day	
+	private static final int MAX_RECENT_TWEETS = 10;	// number of recent tweets kept when merging
 
 	private String _topic; 							// Twitter topic in original language
 	private String _topicEnglish; 					// Twitter topic in English
 	private int _countMonthly; 						// total number of tweets per month with this topic
-	private List<Integer> _countDaily; 				// tweet count per day for the past month with this topic
-	private List<Integer> _countPer6hrs; 			// tweet count per six hours for last week with this topic
-	private List<Integer> _countPerHour; 			// tweet count per hour for last 24 hrs with this topic
-	private List<RecentTweet> _recentTweets; // 10 most recent tweets with this topic
+	private int[] _countDaily; 						// tweet count per day for the past month with this topic
+	private int[] _countPer6hrs; 					// tweet count per six hours for last week with this topic
+	private int[] _countPerHour; 					// tweet count per hour for last 24 hrs with this topic
+	private RecentTweet[] _recentTweets;			// most recent tweets with this topic, newest first
+	private int _numRecentTweets;					// number of entries of _recentTweets in use
 	private long _endTimeSecs;						// end time (in secs) for this data record (so valid time window
 													//    between endTimeSecs and endTimeSecs - 1 month
+	private transient boolean _accumulator;			// true if this record may be modified in place
 
 	public TwitterDemoTopicRecord(String topic, String topicEnglish,
 			int countMonthly, List<Integer> countDaily,
 			List<Integer> countPer6hrs, List<Integer> countPerHour,
 			List<RecentTweet> recentTweets, long endTimeSecs) {
+		this(topic, topicEnglish, countMonthly, toArray(countDaily), toArray(countPer6hrs),
+		     toArray(countPerHour), recentTweets, endTimeSecs);
+	}
+
+	public TwitterDemoTopicRecord(String topic, String topicEnglish,
+			int countMonthly, int[] countDaily,
+			int[] countPer6hrs, int[] countPerHour,
+			List<RecentTweet> recentTweets, long endTimeSecs) {
 		
 		_topic = topic;
 		_topicEnglish = topicEnglish;
 		_countMonthly = countMonthly;
-		_recentTweets = recentTweets;
 		_endTimeSecs = endTimeSecs;
+		_accumulator = false;
 				
-		if (countDaily.size() > NUM_DAYS) {
+		if (countDaily.length > NUM_DAYS) {
 			throw new IllegalArgumentException("countDaily size cannot be > " + NUM_DAYS);
 		}
-		else if (countPer6hrs.size() > NUM_QUARTERDAYS) {
+		else if (countPer6hrs.length > NUM_QUARTERDAYS) {
 			throw new IllegalArgumentException("countPer6hrs size cannot be > " + NUM_QUARTERDAYS);
 		}
-		else if (countPerHour.size() > NUM_HOURS) {
+		else if (countPerHour.length > NUM_HOURS) {
 			throw new IllegalArgumentException("countPerHour size cannot be > " + NUM_HOURS);
 		}
 				
-		initTopicArrays(countDaily, countPer6hrs, countPerHour);		
+		_countDaily = Arrays.copyOf(countDaily, NUM_DAYS);
+		_countPer6hrs = Arrays.copyOf(countPer6hrs, NUM_QUARTERDAYS);
+		_countPerHour = Arrays.copyOf(countPerHour, NUM_HOURS);
+		initRecentTweets(recentTweets);
 	}
 	
 	// Secondary constructor (for adding 1 new tweet to an empty record)
@@ -80,10 +103,12 @@ public class TwitterDemoTopicRecord implements Serializable {
 		_topicEnglish = null;
 		_countMonthly = 0;
 		_recentTweets = null;
+		_numRecentTweets = 0;
 		_endTimeSecs = 0;
 		_countDaily = null;
 		_countPer6hrs = null;
 		_countPerHour = null;
+		_accumulator = false;
 		
 		// time interval between new tweet and endTime
 		//assert(newTweet.size()==1);
@@ -100,53 +125,67 @@ public class TwitterDemoTopicRecord implements Serializable {
 			_topic = topic;
 			_topicEnglish = topicEnglish;
 			_countMonthly=1;
-			_recentTweets = newTweet;
 			_endTimeSecs = endTimeSecs;
-			initTopicArrays(null, null, null);
+			_countDaily = new int[NUM_DAYS];
+			_countPer6hrs = new int[NUM_QUARTERDAYS];
+			_countPerHour = new int[NUM_HOURS];
+			initRecentTweets(newTweet);
+			incrementCounts(secsSinceEnd);
+		}
+	}
 
-			int hours = (int)(secsSinceEnd * 2.7778e-4);	//1/3600
-			int quarterDays = (int)(secsSinceEnd * 4.6296e-5); // 1/21600 = 1/60*60*6;
-			int days = (int)(secsSinceEnd * 1.1574e-5); //1/86400 = 1/60*60*24;
+	// Copy constructor, used to create accumulators
+	private TwitterDemoTopicRecord(TwitterDemoTopicRecord base, boolean accumulator) {
+		_topic = base._topic;
+		_topicEnglish = base._topicEnglish;
+		_countMonthly = base._countMonthly;
+		_countDaily = copyOf(base._countDaily);
+		_countPer6hrs = copyOf(base._countPer6hrs);
+		_countPerHour = copyOf(base._countPerHour);
+		_recentTweets = (null == base._recentTweets ? null
+		                 : Arrays.copyOf(base._recentTweets, Math.max(MAX_RECENT_TWEETS, base._numRecentTweets)));
+		_numRecentTweets = base._numRecentTweets;
+		_endTimeSecs = base._endTimeSecs;
+		_accumulator = accumulator;
+	}
 
-			if ((hours >= 0) && (hours < NUM_HOURS)) {
-				_countPerHour.set(hours, 1);
-			}
-			if ((quarterDays >= 0) && (quarterDays < NUM_QUARTERDAYS)) {
-				_countPer6hrs.set(quarterDays, 1);
-			}
-			if ((days >= 0) && (days < NUM_DAYS)) {
-				_countDaily.set(days, 1);
-			}
+	private static int[] toArray(List<Integer> values) {
+		int[] result = new int[values.size()];
+		for (int n=0; n<result.length; n++) {
+			result[n] = values.get(n);
 		}
+		return result;
 	}
-	
-	private void initTopicArrays(List<Integer> countDaily, List<Integer> countPer6hrs, List<Integer> countPerHour) {
-	
-		_countDaily = Arrays.asList(0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
-									0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
-									0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
-		if (countDaily != null) {
-			for (int n=0; n<countDaily.size(); n++) {
-				_countDaily.set(n, countDaily.get(n));
-			}
+
+	private static int[] copyOf(int[] values) {
+		return (null == values ? null : values.clone());
+	}
+
+	private void initRecentTweets(List<RecentTweet> recentTweets) {
+		if (null == recentTweets) {
+			_recentTweets = null;
+			_numRecentTweets = 0;
+		} else {
+			_numRecentTweets = recentTweets.size();
+			_recentTweets = recentTweets.toArray(new RecentTweet[Math.max(MAX_RECENT_TWEETS, _numRecentTweets)]);
 		}
+	}
 
-		_countPer6hrs = Arrays.asList(0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
-									  0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
-								 	  0, 0, 0, 0, 0, 0, 0, 0);
-		if (countPer6hrs != null) {
-			for (int n=0; n<countPer6hrs.size(); n++) {
-				_countPer6hrs.set(n, countPer6hrs.get(n));
-			}
+	// Increment the hourly, quarter daily and daily counts for a tweet the given
+	// number of seconds before the end time.
+	private void incrementCounts(float secsSinceEnd) {
+		int hours = (int)(secsSinceEnd * 2.7778e-4);	//1/3600
+		int quarterDays = (int)(secsSinceEnd * 4.6296e-5); // 1/21600 = 1/60*60*6;
+		int days = (int)(secsSinceEnd * 1.1574e-5); //1/86400 = 1/60*60*24;
+
+		if ((hours >= 0) && (hours < NUM_HOURS)) {
+			_countPerHour[hours]++;
 		}
-		
-		_countPerHour = Arrays.asList(0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
-									  0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
-									  0, 0, 0, 0);
-		if (countPerHour != null) {
-			for (int n=0; n<countPerHour.size(); n++) {
-				_countPerHour.set(n, countPerHour.get(n));
-			}
+		if ((quarterDays >= 0) && (quarterDays < NUM_QUARTERDAYS)) {
+			_countPer6hrs[quarterDays]++;
+		}
+		if ((days >= 0) && (days < NUM_DAYS)) {
+			_countDaily[days]++;
 		}
 	}
 
@@ -163,25 +202,66 @@ public class TwitterDemoTopicRecord implements Serializable {
 	}
 
 	public List<Integer> getCountDaily() {
-		return _countDaily;
+		return asList(_countDaily);
 	}
 
 	public List<Integer> getCountPer6hrs() {
-		return _countPer6hrs;
+		return asList(_countPer6hrs);
 	}
 
 	public List<Integer> getCountPerHour() {
-		return _countPerHour;
+		return asList(_countPerHour);
 	}
 
 	public List<RecentTweet> getRecentTweets() {
-		return _recentTweets;
+		if (null == _recentTweets) return null;
+		return new RecentTweetList(_recentTweets, _numRecentTweets);
 	}
 	
 	public long getEndTime() {
 		return _endTimeSecs;
 	}
 
+	private static List<Integer> asList (int[] values) {
+		if (null == values) return null;
+		return new IntList(values);
+	}
+
+	// A read-only list view of a count array
+	private static class IntList extends AbstractList<Integer> {
+		private int[] _values;
+		IntList (int[] values) {
+			_values = values;
+		}
+		@Override
+		public Integer get (int index) {
+			return _values[index];
+		}
+		@Override
+		public int size () {
+			return _values.length;
+		}
+	}
+
+	// A read-only list view of the recent tweets
+	private static class RecentTweetList extends AbstractList<RecentTweet> {
+		private RecentTweet[] _tweets;
+		private int           _size;
+		RecentTweetList (RecentTweet[] tweets, int size) {
+			_tweets = tweets;
+			_size = size;
+		}
+		@Override
+		public RecentTweet get (int index) {
+			if (index >= _size) throw new IndexOutOfBoundsException("Index "+index+", size "+_size);
+			return _tweets[index];
+		}
+		@Override
+		public int size () {
+			return _size;
+		}
+	}
+
     private int getHash (Object obj) {
         if (null == obj) return 0;
         return obj.hashCode();
@@ -212,10 +292,10 @@ public class TwitterDemoTopicRecord implements Serializable {
 							
 		return (this.getCountMonthly() == that.getCountMonthly()
 				&& this.getEndTime() == that.getEndTime()
-				&& listsEqual(this.getCountDaily(), that.getCountDaily())
-				&& listsEqual(this.getCountPer6hrs(), that.getCountPer6hrs())
-				&& listsEqual(this.getCountPerHour(), that.getCountPerHour())
-				&& listsEqual(this.getRecentTweets(), that.getRecentTweets()));
+				&& Arrays.equals(this._countDaily, that._countDaily)
+				&& Arrays.equals(this._countPer6hrs, that._countPer6hrs)
+				&& Arrays.equals(this._countPerHour, that._countPerHour)
+				&& recentTweetsEqual(this, that));
 	}
 
 	private static boolean objectsEqual(Object a, Object b) {
@@ -224,28 +304,28 @@ public class TwitterDemoTopicRecord implements Serializable {
 		return a.equals(b);
 	}
 
-	private static <T> boolean listsEqual(List<T> a, List<T> b) {
-		if (null == a)
-			return null == b;
-		if (null == b)
+	private static boolean recentTweetsEqual(TwitterDemoTopicRecord a, TwitterDemoTopicRecord b) {
+		if (null == a._recentTweets)
+			return null == b._recentTweets;
+		if (null == b._recentTweets)
 			return false;
-		if (a.size() != b.size())
+		if (a._numRecentTweets != b._numRecentTweets)
 			return false;
-		for (int i = 0; i < a.size(); ++i) {
-			if (!objectsEqual(a.get(i), b.get(i)))
+		for (int i = 0; i < a._numRecentTweets; ++i) {
+			if (!objectsEqual(a._recentTweets[i], b._recentTweets[i]))
 				return false;
 		}
 		return true;
 	}
 	
-	private <T> String mkString(List<T> list, String separator) {
-		String result = "";
-		for (int i = 0; i < list.size(); ++i) {
+	private static String mkString(int[] values, String separator) {
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < values.length; ++i) {
 			if (i > 0)
-				result = result + separator;
-			result = result + list.get(i).toString();
+				result.append(separator);
+			result.append(values[i]);
 		}
-		return result;
+		return result.toString();
 	}
 	
 	private static String escapeString(String string) {
@@ -305,21 +385,22 @@ public class TwitterDemoTopicRecord implements Serializable {
 
 	@Override
 	public String toString() {
-		String result = ("{topic: " + escapeString(_topic) + ", "
+		StringBuilder result = new StringBuilder();
+		result.append("{topic: " + escapeString(_topic) + ", "
 				+ "topicEnglish: " + escapeString(_topicEnglish) + ", "
 				+ "countMonthly: " + _countMonthly + ", " + "countDaily: ["
 				+ mkString(_countDaily, ", ") + "], " + "countPer6hrs: ["
 				+ mkString(_countPer6hrs, ", ") + "], " + "countPerHour: ["
 				+ mkString(_countPerHour, ", ") + "], " + "recent: [");
-		for (int i = 0; i < _recentTweets.size(); ++i) {
-			RecentTweet rt = _recentTweets.get(i);
+		for (int i = 0; i < _numRecentTweets; ++i) {
+			RecentTweet rt = _recentTweets[i];
 			if (i > 0)
-				result += ", ";
-			result += "(" + escapeString(rt.getText()) + ", " + rt.getTime() + ", " + escapeString(rt.getUser()) + ", "
-					+ escapeString(rt.getSentiment()) + ")";
+				result.append(", ");
+			result.append("(" + escapeString(rt.getText()) + ", " + rt.getTime() + ", " + escapeString(rt.getUser()) + ", "
+					+ escapeString(rt.getSentiment()) + ")");
 		}
-		result += "], endTimeSecs: " + _endTimeSecs + "}";
-		return result;
+		result.append("], endTimeSecs: " + _endTimeSecs + "}");
+		return result.toString();
 	}
 
 	private static String eatIntList(String from, List<Integer> result) {
@@ -395,59 +476,101 @@ public class TwitterDemoTopicRecord implements Serializable {
 				countDaily, countPer6hrs, countPerHour, recentTweets, endTimeSecs);
 	}
 	
-	private static void addInPlace(List<Integer> accumulatedSum,
-			List<Integer> newAddend) {
-		for (int i = 0; i < newAddend.size(); ++i) {
-			if (i >= accumulatedSum.size()) {
-				accumulatedSum.add(newAddend.get(i));
-			} else {
-				accumulatedSum.set(i, accumulatedSum.get(i) + newAddend.get(i));
-			}
+	/**
+	 * Get a private copy of this record that can be merged into in place.
+	 * A copy is made even if this record is itself an accumulator, so that
+	 * the caller alone owns the result, and this record is never modified.
+	 *
+	 * The accumulator flag is not serialized, so a deserialized record is
+	 * always an ordinary, immutable record.
+	 */
+	public TwitterDemoTopicRecord asAccumulator() {
+		return new TwitterDemoTopicRecord(this, true);
+	}
+
+	public boolean isAccumulator() {
+		return _accumulator;
+	}
+
+	private void checkAccumulator() {
+		if (!_accumulator)
+			throw new IllegalStateException("Only accumulators can be modified in place");
+	}
+
+	private static void addInPlace(int[] accumulatedSum, int[] newAddend) {
+		for (int i = 0; i < newAddend.length; ++i) {
+			accumulatedSum[i] += newAddend[i];
 		}
 	}
 
-	private static void addRecentTweetInPlace(
-			LinkedList<RecentTweet> accumulatedTweets,
-			RecentTweet newTweet) {
-		ListIterator<RecentTweet> i = accumulatedTweets.listIterator();
-		int size = 0;
-		while (true) {
-			if (i.hasNext()) {
-				RecentTweet next = i.next();
-				++size;
-
-				if (next.getTime() <= newTweet.getTime()) {
-					// Insert the new tweet...
-					i.previous();
-					i.add(newTweet);
-					++size;
-					i.next();
-
-					// ... and trim the list to 10 elements
-					while (i.hasNext() && size < 10) {
-						i.next();
-						++size;
-					}
-					while (i.hasNext()) {
-						i.next();
-						i.remove();
-					}
-
-					return;
-				}
-			} else {
-				i.add(newTweet);
-				return;
-			}
+	// Insert a tweet into the recent tweets, keeping them sorted newest first,
+	// and keeping at most the MAX_RECENT_TWEETS most recent.
+	private void addRecentTweetInPlace(RecentTweet newTweet) {
+		if (null == _recentTweets) {
+			_recentTweets = new RecentTweet[MAX_RECENT_TWEETS];
+			_numRecentTweets = 0;
+		}
+		int position = 0;
+		while (position < _numRecentTweets && _recentTweets[position].getTime() > newTweet.getTime()) {
+			++position;
+		}
+		if (position >= MAX_RECENT_TWEETS) {
+			// older than all the tweets we are keeping
+			return;
+		}
+		int last = Math.min(_numRecentTweets, MAX_RECENT_TWEETS - 1);
+		System.arraycopy(_recentTweets, position, _recentTweets, position + 1, last - position);
+		_recentTweets[position] = newTweet;
+		for (int i = last + 1; i < _numRecentTweets; ++i) {
+			_recentTweets[i] = null;
 		}
+		_numRecentTweets = last + 1;
 	}
 
-	private static void addRecentTweetsInPlace(
-			LinkedList<RecentTweet> accumulatedTweets,
-			List<RecentTweet> newTweets) {
-		for (RecentTweet newTweet : newTweets) {
-			addRecentTweetInPlace(accumulatedTweets, newTweet);
+	/**
+	 * Merge another record into this accumulator, summing all counts, and
+	 * keeping the 10 most recent tweets. Tags must match for records to be
+	 * combined.
+	 *
+	 * @return This accumulator
+	 */
+	public TwitterDemoTopicRecord accumulate(TwitterDemoTopicRecord record) {
+		checkAccumulator();
+		if (!objectsEqual(_topic, record._topic) || (_endTimeSecs != record._endTimeSecs))
+			throw new IllegalArgumentException(
+					"Cannot add twitter records for different topics or end times");
+
+		_countMonthly += record._countMonthly;
+		addInPlace(_countDaily, record._countDaily);
+		addInPlace(_countPer6hrs, record._countPer6hrs);
+		addInPlace(_countPerHour, record._countPerHour);
+		for (int i = 0; i < record._numRecentTweets; ++i) {
+			addRecentTweetInPlace(record._recentTweets[i]);
+		}
+		return this;
+	}
+
+	/**
+	 * Add a tweet to this accumulator, if it is within the valid time window
+	 * (i.e., between endTime to endTime - 1 month).
+	 *
+	 * @return This accumulator
+	 */
+	public TwitterDemoTopicRecord accumulate(RecentTweet newTweet) {
+		checkAccumulator();
+		float secsSinceEnd = (float)(_endTimeSecs - newTweet.getTime());	// time interval between new tweet and endTime
+
+		if (secsSinceEnd > 2.6784e6) { // 2678400 = 31*24*60*60
+			// more than 1 month ago disregard this new tweet
+		} else if (secsSinceEnd <= 0) {
+			// before endTime so disregard this new tweet
+		} else {
+			// new tweet occurred within 1 month from endtime
+			_countMonthly++;
+			addRecentTweetInPlace(newTweet);
+			incrementCounts(secsSinceEnd);
 		}
+		return this;
 	}
 
 	/**
@@ -459,29 +582,12 @@ public class TwitterDemoTopicRecord implements Serializable {
 		if (null == records || 0 == records.length)
 			return null;
 
-		String topic = records[0]._topic;
-		String topicEnglish = records[0]._topicEnglish;
-		int countMonthly = records[0]._countMonthly;
-		List<Integer> countDaily = new ArrayList<>(records[0]._countDaily);
-		List<Integer> countPer6hrs = new ArrayList<>(records[0]._countPer6hrs);
-		List<Integer> countPerHour = new ArrayList<>(records[0]._countPerHour);
-		LinkedList<RecentTweet> recentTweets = new LinkedList<>(
-				records[0]._recentTweets);
-		long endTimeSecs = records[0]._endTimeSecs;
-
+		TwitterDemoTopicRecord result = new TwitterDemoTopicRecord(records[0], true);
 		for (int i = 1; i < records.length; ++i) {
-			if (!objectsEqual(topic, records[i]._topic) || (endTimeSecs != records[i]._endTimeSecs))
-				throw new IllegalArgumentException(
-						"Cannot add twitter records for different topics or end times");
-
-			countMonthly += records[i]._countMonthly;
-			addInPlace(countDaily, records[i]._countDaily);
-			addInPlace(countPer6hrs, records[i]._countPer6hrs);
-			addInPlace(countPerHour, records[i]._countPerHour);
-			addRecentTweetsInPlace(recentTweets, records[i]._recentTweets);
+			result.accumulate(records[i]);
 		}
-		return new TwitterDemoTopicRecord(topic, topicEnglish, countMonthly,
-				countDaily, countPer6hrs, countPerHour, recentTweets, endTimeSecs);
+		result._accumulator = false;
+		return result;
 	}
 
 	/**
@@ -494,62 +600,11 @@ public class TwitterDemoTopicRecord implements Serializable {
 			TwitterDemoTopicRecord record, RecentTweet newTweet) {
 		if (null == record)
 			return null;
-		
-		String topic = record._topic;
-		String topicEnglish = record._topicEnglish;
-		int countMonthly = record._countMonthly;
-		List<Integer> countDaily = new ArrayList<>(record._countDaily);
-		List<Integer> countPer6hrs = new ArrayList<>(record._countPer6hrs);
-		List<Integer> countPerHour = new ArrayList<>(record._countPerHour);
-
-		LinkedList<RecentTweet> recentTweets = new LinkedList<>(
-				record._recentTweets);
-		long endTimeSecs = record._endTimeSecs;	
-	
-		float secsSinceEnd = (float)(endTimeSecs - newTweet.getTime());	// time interval between new tweet and endTime
-		
-		if (secsSinceEnd > 2.6784e6) { // 2678400 = 31*24*60*60
-			// more than 1 month ago disregard this new tweet
-			return new TwitterDemoTopicRecord(topic, topicEnglish,
-					countMonthly, countDaily, countPer6hrs, countPerHour,
-					recentTweets, endTimeSecs);
-		} else if (secsSinceEnd <= 0) {
-			// before endTime so disregard this new tweet
-			return new TwitterDemoTopicRecord(topic, topicEnglish,
-					countMonthly, countDaily, countPer6hrs, countPerHour,
-					recentTweets, endTimeSecs);
-		} else {
-			// new tweet occurred within 1 month from endtime
-			countMonthly++;
-			addRecentTweetInPlace(recentTweets, newTweet);
-			int hours = (int)(secsSinceEnd * 2.7778e-4);	//1/3600
-			int quarterDays = (int)(secsSinceEnd * 4.6296e-5); // 1/21600 = 1/60*60*6;
-			int days = (int)(secsSinceEnd * 1.1574e-5); //1/86400 = 1/60*60*24;
-
-			if ((hours >= 0) && (hours < NUM_HOURS)) {
-				countPerHour.set(hours, countPerHour.get(hours) + 1);
-			}
-			if ((quarterDays >= 0) && (quarterDays < NUM_QUARTERDAYS)) {
-				countPer6hrs.set(quarterDays, countPer6hrs.get(quarterDays) + 1);
-			}
-			if ((days >= 0) && (days < NUM_DAYS)) {
-				countDaily.set(days, countDaily.get(days) + 1);
-			}
-		}
-		return new TwitterDemoTopicRecord(topic, topicEnglish, countMonthly,
-				countDaily, countPer6hrs, countPerHour, recentTweets, endTimeSecs);		
-	}
 
-	private static void minInPlace(List<Integer> accumulatedMin,
-			List<Integer> newMin) {
-		for (int i = 0; i < newMin.size(); ++i) {
-			if (i >= accumulatedMin.size()) {
-				accumulatedMin.add(newMin.get(i));
-			} else {
-				accumulatedMin.set(i,
-						Math.min(accumulatedMin.get(i), newMin.get(i)));
-			}
-		}
+		TwitterDemoTopicRecord result = new TwitterDemoTopicRecord(record, true);
+		result.accumulate(newTweet);
+		result._accumulator = false;
+		return result;
 	}
 
 	/**
@@ -561,35 +616,47 @@ public class TwitterDemoTopicRecord implements Serializable {
 			return null;
 
 		int minCount = Integer.MAX_VALUE;
-		List<Integer> minCountDaily = new ArrayList<>();
-		List<Integer> minCountPer6hrs = new ArrayList<>();
-		List<Integer> minCountPerHour = new ArrayList<>();
+		int[] minCountDaily = null;
+		int[] minCountPer6hrs = null;
+		int[] minCountPerHour = null;
 		long minEndTime = Long.MAX_VALUE;
 
 		for (TwitterDemoTopicRecord record : records) {
 			if (null != record) {
 				minCount = Math.min(minCount, record._countMonthly);
-				minInPlace(minCountDaily, record._countDaily);
-				minInPlace(minCountPer6hrs, record._countPer6hrs);
-				minInPlace(minCountPerHour, record._countPerHour);
+				minCountDaily = minInPlace(minCountDaily, record._countDaily);
+				minCountPer6hrs = minInPlace(minCountPer6hrs, record._countPer6hrs);
+				minCountPerHour = minInPlace(minCountPerHour, record._countPerHour);
 				minEndTime = Math.min(minEndTime, record._endTimeSecs);
 			}
 		}
-		return new TwitterDemoTopicRecord(null, null, minCount, minCountDaily,
-				minCountPer6hrs, minCountPerHour,
+		return new TwitterDemoTopicRecord(null, null, minCount, orEmpty(minCountDaily),
+				orEmpty(minCountPer6hrs), orEmpty(minCountPerHour),
 				new ArrayList<RecentTweet>(), minEndTime);
 	}
-	
-	private static void maxInPlace(List<Integer> accumulatedMax,
-			List<Integer> newMax) {
-		for (int i = 0; i < newMax.size(); ++i) {
-			if (i >= accumulatedMax.size()) {
-				accumulatedMax.add(newMax.get(i));
-			} else {
-				accumulatedMax.set(i,
-						Math.max(accumulatedMax.get(i), newMax.get(i)));
-			}
+
+	private static int[] orEmpty(int[] values) {
+		return (null == values ? new int[0] : values);
+	}
+
+	// Returns the element-wise minimum, reusing the accumulated array where possible
+	private static int[] minInPlace(int[] accumulatedMin, int[] newMin) {
+		if (null == newMin) return accumulatedMin;
+		if (null == accumulatedMin) return newMin.clone();
+		for (int i = 0; i < newMin.length; ++i) {
+			accumulatedMin[i] = Math.min(accumulatedMin[i], newMin[i]);
+		}
+		return accumulatedMin;
+	}
+
+	// Returns the element-wise maximum, reusing the accumulated array where possible
+	private static int[] maxInPlace(int[] accumulatedMax, int[] newMax) {
+		if (null == newMax) return accumulatedMax;
+		if (null == accumulatedMax) return newMax.clone();
+		for (int i = 0; i < newMax.length; ++i) {
+			accumulatedMax[i] = Math.max(accumulatedMax[i], newMax[i]);
 		}
+		return accumulatedMax;
 	}
 
 	/**
@@ -598,20 +665,20 @@ public class TwitterDemoTopicRecord implements Serializable {
 	public static TwitterDemoTopicRecord maxOfRecords(
 			TwitterDemoTopicRecord... records) {
 		int maxCount = Integer.MIN_VALUE;
-		List<Integer> maxCountDaily = new ArrayList<>();
-		List<Integer> maxCountPer6hrs = new ArrayList<>();
-		List<Integer> maxCountPerHour = new ArrayList<>();
+		int[] maxCountDaily = null;
+		int[] maxCountPer6hrs = null;
+		int[] maxCountPerHour = null;
 		long maxEndTime = Long.MIN_VALUE;
 
 		for (TwitterDemoTopicRecord record : records) {
 			maxCount = Math.max(maxCount, record._countMonthly);
-			maxInPlace(maxCountDaily, record._countDaily);
-			maxInPlace(maxCountPer6hrs, record._countPer6hrs);
-			maxInPlace(maxCountPerHour, record._countPerHour);
+			maxCountDaily = maxInPlace(maxCountDaily, record._countDaily);
+			maxCountPer6hrs = maxInPlace(maxCountPer6hrs, record._countPer6hrs);
+			maxCountPerHour = maxInPlace(maxCountPerHour, record._countPerHour);
 			maxEndTime = Math.max(maxEndTime, record._endTimeSecs);
 		}
-		return new TwitterDemoTopicRecord(null, null, maxCount, maxCountDaily,
-				maxCountPer6hrs, maxCountPerHour,
+		return new TwitterDemoTopicRecord(null, null, maxCount, orEmpty(maxCountDaily),
+				orEmpty(maxCountPer6hrs), orEmpty(maxCountPerHour),
 				new ArrayList<RecentTweet>(), maxEndTime);
 	}
 
@@ -25,6 +25,7 @@ package com.oculusinfo.twitter.binning;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericData;
@@ -54,7 +55,7 @@ extends GenericAvroArraySerializer<TwitterDemoTopicRecord> {
     private List<RecentTweet> recentListTOJava(GenericRecord entry) {
         @SuppressWarnings("unchecked")
         GenericData.Array<GenericRecord> values = (GenericData.Array<GenericRecord>) entry.get("recentTweets");
-        List<RecentTweet> results = new ArrayList<>();
+        List<RecentTweet> results = new ArrayList<>(values.size());
         for (GenericRecord value: values) {
             results.add(new RecentTweet(value.get("tweet").toString(),
 		            (Long) value.get("time"), value.get("user").toString(), value.get("sentiment").toString()));
@@ -62,22 +63,33 @@ extends GenericAvroArraySerializer<TwitterDemoTopicRecord> {
         return results;
     }
 
-    @SuppressWarnings("unchecked")
+    // Read an avro array of ints straight into a primitive array
+    private int[] intArrayToJava (Object value) {
+        @SuppressWarnings("unchecked")
+        Collection<Integer> values = (Collection<Integer>) value;
+        int[] result = new int[values.size()];
+        int n = 0;
+        for (Integer v: values) {
+            result[n++] = v;
+        }
+        return result;
+    }
+
     @Override
     protected TwitterDemoTopicRecord getEntryValue (GenericRecord entry) {
         return new TwitterDemoTopicRecord(entry.get("topic").toString(),
         								entry.get("topicEnglish").toString(),
         								(Integer)entry.get("countMonthly"),
-        								(List<Integer>)entry.get("countDaily"),
-        								(List<Integer>)entry.get("countPer6hrs"),
-        								(List<Integer>)entry.get("countPerHour"),
+        								intArrayToJava(entry.get("countDaily")),
+        								intArrayToJava(entry.get("countPer6hrs")),
+        								intArrayToJava(entry.get("countPerHour")),
         								recentListTOJava(entry),
         								(Long)entry.get("endTimeSecs"));
     }
 
     private List<GenericRecord> recentListToAvro (Schema mainSchema, List<RecentTweet> elts) {
         Schema eltSchema = mainSchema.getField("recentTweets").schema().getElementType();
-        List<GenericRecord> result = new ArrayList<>();
+        List<GenericRecord> result = new ArrayList<>(elts.size());
         for (int i=0; i < elts.size(); ++i) {
             GenericRecord elt = new GenericData.Record(eltSchema);
             RecentTweet rawElt = elts.get(i);
@@ -99,6 +111,8 @@ extends GenericAvroArraySerializer<TwitterDemoTopicRecord> {
             avroEntry.put("topic", rawEntry.getTopic());
             avroEntry.put("topicEnglish", rawEntry.getTopicEnglish());
             avroEntry.put("countMonthly", rawEntry.getCountMonthly());
+            // These are read-only views of the record's counts, which avro can
+            // write directly without copying
             avroEntry.put("countDaily", rawEntry.getCountDaily());
             avroEntry.put("countPer6hrs", rawEntry.getCountPer6hrs());
             avroEntry.put("countPerHour", rawEntry.getCountPerHour());
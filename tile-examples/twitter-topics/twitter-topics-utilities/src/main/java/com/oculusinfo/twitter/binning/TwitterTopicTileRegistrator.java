@@ -38,6 +38,8 @@ public class TwitterTopicTileRegistrator extends TileRegistrator {
 	public void registerClasses (Kryo kryo) {
 		super.registerClasses(kryo);
 		kryo.register(TwitterDemoTopicRecord.class);
+		kryo.register(RecentTweet.class);
+		kryo.register(RecentTweet[].class);
 		kryo.register(int[].class);
 		kryo.register(long[].class);
 		kryo.register(String[].class);
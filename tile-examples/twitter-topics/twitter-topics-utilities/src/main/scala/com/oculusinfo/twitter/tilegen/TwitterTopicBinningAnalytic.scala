@@ -39,6 +39,10 @@ import com.oculusinfo.tilegen.tiling.analytics.BinningAnalytic
 class TwitterTopicBinningAnalytic
 		extends BinningAnalytic[Map[String, TwitterDemoTopicRecord], JavaList[TwitterDemoTopicRecord]]
 {
+	/**
+	 * Records present in both maps are merged into a new record; neither input,
+	 * nor any record in them, is modified, as they may be cached or shared.
+	 */
 	def aggregate (a: Map[String, TwitterDemoTopicRecord],
 	               b: Map[String, TwitterDemoTopicRecord]): Map[String, TwitterDemoTopicRecord] = {
 		a ++ b.map{case (k, v) =>
@@ -459,5 +459,52 @@ public class TwitterTopicTests {
 //        Assert.assertTrue(a.getCountMonthly() == b.getCountMonthly());
 //        Assert.assertTrue(a.getEndTime() == b.getEndTime());
     }
-	
+
+	//---- Accumulating records in place, without modifying the originals
+	@Test
+	public void testAccumulation () {
+		TwitterDemoTopicRecord a = new TwitterDemoTopicRecord(_sampleTopic, _sampleTopicEnglish,
+								Arrays.asList(new RecentTweet("Eu amo o futebol", _endTimeSecs - 1L, "barry", "")),
+								_endTimeSecs);
+		TwitterDemoTopicRecord b = new TwitterDemoTopicRecord(_sampleTopic, _sampleTopicEnglish,
+								Arrays.asList(new RecentTweet("Nos todos amamos o futebol", _endTimeSecs - 3601L, "jorge", "")),
+								_endTimeSecs);
+
+		TwitterDemoTopicRecord accumulator = a.asAccumulator();
+		Assert.assertTrue(accumulator.isAccumulator());
+		Assert.assertSame(accumulator, accumulator.accumulate(b));
+
+		// Accumulators are copied too, so a shared accumulator is never modified
+		TwitterDemoTopicRecord copy = accumulator.asAccumulator();
+		Assert.assertNotSame(accumulator, copy);
+		copy.accumulate(b);
+		Assert.assertEquals(TwitterDemoTopicRecord.addRecords(a, b), accumulator);
+		Assert.assertEquals(TwitterDemoTopicRecord.addRecords(a, b, b), copy);
+
+		Assert.assertEquals(TwitterDemoTopicRecord.addRecords(a, b), accumulator);
+		Assert.assertEquals(1, a.getCountMonthly());
+		Assert.assertEquals(1, a.getRecentTweets().size());
+		Assert.assertFalse(a.isAccumulator());
+	}
+
+	//---- Only accumulators can be modified in place
+	@Test(expected=IllegalStateException.class)
+	public void testAccumulateIntoRecord () {
+		_sampleRecord.accumulate(new RecentTweet("Eu amo o futebol", _endTimeSecs - 1L, "", ""));
+	}
+
+	//---- Merging keeps only the 10 most recent tweets, newest first
+	@Test
+	public void testRecentTweetsBounded () {
+		TwitterDemoTopicRecord accumulator = _sampleRecord.asAccumulator();
+		for (int i = 0; i < 15; ++i) {
+			accumulator.accumulate(new RecentTweet("tweet "+i, _endTimeSecs - 100L + i, "", ""));
+		}
+		Assert.assertEquals(15, accumulator.getCountMonthly());
+		Assert.assertEquals(10, accumulator.getRecentTweets().size());
+		Assert.assertEquals(_endTimeSecs, accumulator.getRecentTweets().get(0).getTime());
+		for (int i = 1; i < 10; ++i) {
+			Assert.assertEquals("tweet "+(15-i), accumulator.getRecentTweets().get(i).getText());
+		}
+	}
 }
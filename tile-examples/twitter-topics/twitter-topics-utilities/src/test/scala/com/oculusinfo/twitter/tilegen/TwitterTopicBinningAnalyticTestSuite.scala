@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2013 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.oculusinfo.twitter.tilegen
+
+
+
+import java.util.Arrays
+
+import org.scalatest.FunSuite
+
+import com.oculusinfo.twitter.binning.{RecentTweet, TwitterDemoTopicRecord}
+
+
+
+class TwitterTopicBinningAnalyticTestSuite extends FunSuite {
+	val endTime = 2000000000L
+
+	def record (text: String, secondsBeforeEnd: Long): TwitterDemoTopicRecord =
+		new TwitterDemoTopicRecord("futebol", "football",
+		                           Arrays.asList(new RecentTweet(text, endTime - secondsBeforeEnd, "", "")),
+		                           endTime)
+
+	test("Aggregation doesn't modify its inputs") {
+		val analytic = new TwitterTopicBinningAnalytic
+		val aggregated = analytic.aggregate(Map("futebol" -> record("one", 1L)),
+		                                    Map("futebol" -> record("two", 3601L)))
+		val expected = TwitterDemoTopicRecord.addRecords(record("one", 1L), record("two", 3601L))
+		assert(expected === aggregated("futebol"))
+
+		// Aggregate the same aggregated value twice, as a cached cube cell would be
+		val more = Map("futebol" -> record("three", 7201L))
+		val first = analytic.aggregate(aggregated, more)
+		val second = analytic.aggregate(aggregated, more)
+
+		assert(expected === aggregated("futebol"))
+		assert(2 === aggregated("futebol").getCountMonthly)
+		assert(3 === first("futebol").getCountMonthly)
+		assert(first === second)
+	}
+}
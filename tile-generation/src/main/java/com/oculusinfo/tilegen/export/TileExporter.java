@@ -25,16 +25,33 @@
 
 package com.oculusinfo.tilegen.export;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.avro.file.CodecFactory;
 
+import com.google.common.util.concurrent.RateLimiter;
+import com.oculusinfo.binning.TileData;
 import com.oculusinfo.binning.TileIndex;
 import com.oculusinfo.binning.io.serialization.impl.PrimitiveAvroSerializer;
 import com.oculusinfo.binning.io.PyramidIO;
+import com.oculusinfo.binning.io.TileEnumerator;
 import com.oculusinfo.binning.io.impl.FileBasedPyramidIO;
 import com.oculusinfo.binning.io.impl.FileSystemPyramidSource;
 import com.oculusinfo.binning.io.impl.HBasePyramidIO;
@@ -43,6 +60,14 @@ import com.oculusinfo.binning.io.serialization.TileSerializer;
 /**
 * TileExporter is an application for the exporting aperture-tiles' data from HBase to a local filesystem.
 * 
+* The exporter itself will copy between any two PyramidIOs.  When the source
+* is a {@link TileEnumerator}, only tiles that actually exist are read;
+* otherwise, every tile in each level is probed.  Tiles are read and written
+* in blocks, on several threads at once, optionally throttled to a maximum
+* number of tiles per second.  If a checkpoint file is given, each completed
+* block is recorded there, and a re-run with the same checkpoint file skips
+* everything already copied.
+* 
 * Command line arguments are as follows:
 *  
 * -hbase -- HBase master. Default = hadoop-s1.oculus.local:60000
@@ -59,6 +84,14 @@ import com.oculusinfo.binning.io.serialization.TileSerializer;
 * 
 * -maxlevel -- Max aperture-tiles zoom level to export from hbase table.
 *
+* -threads -- Number of blocks to copy at once.  Default = 4
+*
+* -blocksize -- Number of tiles to read and write at once.  Default = 100
+*
+* -rate -- Maximum tiles per second to read from hbase.  Default is unlimited.
+*
+* -checkpoint -- File in which to record progress, so an interrupted export
+*                can be resumed.  Default is none.
 *
 **/
 
@@ -66,14 +99,52 @@ import com.oculusinfo.binning.io.serialization.TileSerializer;
 // Support for exporting other bin types should be added in the future.
 
 public class TileExporter {
+    private static final long PROGRESS_INTERVAL = 10000L;
 
-    private PyramidIO _from;
-    private PyramidIO _to;
+    private PyramidIO   _from;
+    private PyramidIO   _to;
+    private int         _threads;
+    private RateLimiter _rateLimiter;
+    private File        _checkpointFile;
 
     public TileExporter (String zookeeperQuorum, String zookeeperPort, String hbaseMaster,
                           String rootPath, String extension) throws IOException {
-        _from = new HBasePyramidIO(zookeeperQuorum, zookeeperPort, hbaseMaster);
-        _to = new FileBasedPyramidIO(new FileSystemPyramidSource(rootPath, extension));
+        this(new HBasePyramidIO(zookeeperQuorum, zookeeperPort, hbaseMaster),
+             new FileBasedPyramidIO(new FileSystemPyramidSource(rootPath, extension)));
+    }
+
+    public TileExporter (PyramidIO from, PyramidIO to) {
+        _from = from;
+        _to = to;
+        _threads = 1;
+        _rateLimiter = null;
+        _checkpointFile = null;
+    }
+
+    /**
+     * Set the number of blocks of tiles to copy simultaneously.
+     */
+    public void setThreads (int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Thread count must be positive");
+        _threads = threads;
+    }
+
+    /**
+     * Limit the rate at which tiles are read from the source.
+     * 
+     * @param tilesPerSecond The maximum number of tiles to request per second;
+     *            0 or less means there is no limit.
+     */
+    public void setRateLimit (double tilesPerSecond) {
+        _rateLimiter = (tilesPerSecond > 0 ? RateLimiter.create(tilesPerSecond) : null);
+    }
+
+    /**
+     * Set the file in which to record completed blocks; if it already exists,
+     * any blocks recorded in it are assumed complete, and are skipped.
+     */
+    public void setCheckpointFile (File checkpointFile) {
+        _checkpointFile = checkpointFile;
     }
 
     public <T> void copyPyramid (String pyramidId, int minLevel, int maxLevel, TileSerializer<T> serializer, int blockSize) throws IOException {
@@ -84,29 +155,202 @@ public class TileExporter {
         System.out.println("Writing metadata");
         _to.writeMetaData(pyramidId, _from.readMetaData(pyramidId));
         for (int level = minLevel; level <= maxLevel; ++level) {
-        	System.out.println("Copying level " + level);
+            System.out.println("Copying level " + level);
             copyLevel(pyramidId, level, serializer, blockSize);
         }
     }
-    public <T> void copyLevel (String pyramidId, int level, TileSerializer<T> serializer, int blockSize) throws IOException {
-
-        int N = 1 << level;
-
-        List<TileIndex> indices = new ArrayList<>(blockSize);
-        for (int x=0; x<N; ++x) {
-            for (int y=0; y<N; ++y) {
-                boolean last = (x == N-1 && y == N-1);
-                indices.add(new TileIndex(level, x, y));
-                if (indices.size() >= blockSize || last) {
-                    retrieveAndCopy(pyramidId, serializer, indices);
-                    indices.clear();
+
+    public <T> void copyLevel (final String pyramidId, final int level, final TileSerializer<T> serializer,
+                               int blockSize) throws IOException {
+        final Checkpoint checkpoint = new Checkpoint(_checkpointFile, pyramidId);
+        try {
+            if (checkpoint.isLevelDone(level)) {
+                System.out.println("Level " + level + " already copied; skipping");
+                return;
+            }
+
+            List<List<TileIndex>> blocks = getBlocks(pyramidId, level, blockSize);
+            final int totalBlocks = blocks.size();
+            final AtomicLong blocksDone = new AtomicLong(0);
+            final AtomicLong tilesCopied = new AtomicLong(0);
+            final AtomicLong lastReport = new AtomicLong(System.currentTimeMillis());
+            final long startTime = lastReport.get();
+            final AtomicReference<Throwable> failure = new AtomicReference<>();
+            // Bound the number of blocks queued or in progress, so that tiles
+            // read ahead of the writers can't pile up in memory
+            final Semaphore inFlight = new Semaphore(2 * _threads);
+            final RateLimiter rateLimiter = _rateLimiter;
+
+            ExecutorService executor = Executors.newFixedThreadPool(_threads);
+            List<Future<?>> results = new ArrayList<>();
+            try {
+                for (int b = 0; b < totalBlocks && null == failure.get(); ++b) {
+                    final int block = b;
+                    final List<TileIndex> indices = blocks.get(b);
+                    if (checkpoint.isBlockDone(level, block)) {
+                        blocksDone.incrementAndGet();
+                        continue;
+                    }
+
+                    inFlight.acquire();
+                    results.add(executor.submit(new Runnable() {
+                        @Override
+                        public void run () {
+                            try {
+                                if (null != rateLimiter) rateLimiter.acquire(indices.size());
+                                List<TileData<T>> tiles = _from.readTiles(pyramidId, serializer, indices);
+                                if (null != tiles && !tiles.isEmpty()) {
+                                    _to.writeTiles(pyramidId, serializer, tiles);
+                                    tilesCopied.addAndGet(tiles.size());
+                                }
+                                checkpoint.blockDone(level, block);
+                                reportProgress(level, blocksDone.incrementAndGet(), totalBlocks,
+                                               tilesCopied.get(), startTime, lastReport);
+                            } catch (Throwable t) {
+                                failure.compareAndSet(null, t);
+                            } finally {
+                                inFlight.release();
+                            }
+                        }
+                    }));
+                }
+                for (Future<?> result: results) {
+                    result.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted copying level " + level, e);
+            } catch (ExecutionException e) {
+                throw new IOException("Error copying level " + level, e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+
+            Throwable error = failure.get();
+            if (null != error) {
+                if (error instanceof IOException) throw (IOException) error;
+                throw new IOException("Error copying level " + level, error);
+            }
+            checkpoint.levelDone(level);
+            System.out.println("Level " + level + ": copied " + tilesCopied.get() + " tiles in "
+                               + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+        } finally {
+            checkpoint.close();
+        }
+    }
+
+    /*
+     * Split a level into blocks of tiles to copy.  If the source can tell us
+     * which tiles exist, only those are included; otherwise, we have to probe
+     * the whole level.  Either way, the split must be deterministic, since
+     * checkpoints refer to blocks by number.
+     */
+    private List<List<TileIndex>> getBlocks (String pyramidId, int level, int blockSize) throws IOException {
+        List<TileIndex> existing = null;
+        if (_from instanceof TileEnumerator) {
+            existing = ((TileEnumerator) _from).listTiles(pyramidId, level);
+        }
+
+        List<List<TileIndex>> blocks = new ArrayList<>();
+        if (null != existing) {
+            for (int i = 0; i < existing.size(); i += blockSize) {
+                blocks.add(existing.subList(i, Math.min(existing.size(), i + blockSize)));
+            }
+        } else {
+            int N = 1 << level;
+            List<TileIndex> indices = new ArrayList<>(blockSize);
+            for (int x=0; x<N; ++x) {
+                for (int y=0; y<N; ++y) {
+                    indices.add(new TileIndex(level, x, y));
+                    if (indices.size() >= blockSize) {
+                        blocks.add(indices);
+                        indices = new ArrayList<>(blockSize);
+                    }
                 }
             }
+            if (!indices.isEmpty()) blocks.add(indices);
         }
+        return blocks;
     }
 
-    private <T> void retrieveAndCopy (String pyramidId, TileSerializer<T> serializer, Iterable<TileIndex> indices) throws IOException {
-        _to.writeTiles(pyramidId, serializer, _from.readTiles(pyramidId, serializer, indices));
+    private static void reportProgress (int level, long blocksDone, int totalBlocks, long tilesCopied,
+                                        long startTime, AtomicLong lastReport) {
+        long now = System.currentTimeMillis();
+        long last = lastReport.get();
+        if (now - last < PROGRESS_INTERVAL || !lastReport.compareAndSet(last, now)) return;
+
+        double elapsed = (now - startTime) / 1000.0;
+        System.out.println(String.format("Level %d: %d of %d blocks, %d tiles copied (%.1f tiles/second)",
+                                         level, blocksDone, totalBlocks, tilesCopied, tilesCopied / elapsed));
+    }
+
+    /*
+     * A record of which blocks have been copied.  The file is a simple
+     * append-only log, with one "<level> <block> <pyramidId>" line per
+     * completed block, and a "<level> done <pyramidId>" line per completed
+     * level, so one checkpoint file can be shared between several pyramids.
+     * The pyramid id goes last, so ids containing spaces can't be confused
+     * with block entries.
+     */
+    private static class Checkpoint {
+        private static final String DONE = "done";
+
+        private String      _pyramidId;
+        private Set<String> _completed;
+        private Writer      _writer;
+
+        Checkpoint (File file, String pyramidId) throws IOException {
+            _pyramidId = pyramidId;
+            _completed = new HashSet<>();
+            _writer = null;
+            if (null == file) return;
+
+            if (file.exists()) {
+                BufferedReader reader = new BufferedReader(new FileReader(file));
+                try {
+                    String line;
+                    while (null != (line = reader.readLine())) {
+                        line = line.trim();
+                        if (!line.isEmpty()) _completed.add(line);
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+            _writer = new FileWriter(file, true);
+        }
+
+        boolean isLevelDone (int level) {
+            return _completed.contains(entry(level, DONE));
+        }
+
+        boolean isBlockDone (int level, int block) {
+            return _completed.contains(entry(level, Integer.toString(block)));
+        }
+
+        void blockDone (int level, int block) throws IOException {
+            record(entry(level, Integer.toString(block)));
+        }
+
+        void levelDone (int level) throws IOException {
+            record(entry(level, DONE));
+        }
+
+        private String entry (int level, String progress) {
+            return level + " " + progress + " " + _pyramidId;
+        }
+
+        private synchronized void record (String entry) throws IOException {
+            if (null == _writer) return;
+            _writer.write(entry);
+            _writer.write("\n");
+            _writer.flush();
+        }
+
+        synchronized void close () throws IOException {
+            if (null != _writer) _writer.close();
+            _writer = null;
+        }
     }
 
     public static void main(String [] args) {
@@ -119,6 +363,10 @@ public class TileExporter {
         String pyramidId = "";
         int minLevel = 0;
         int maxLevel = 0;
+        int threads = 4;
+        int blockSize = 100;
+        double rate = 0.0;
+        File checkpoint = null;
         
         String extension = "avro";
         //------
@@ -191,6 +439,21 @@ public class TileExporter {
             if ((minLevel < 0) || (maxLevel < 0) || (minLevel > maxLevel)) {
             	throw new IOException("minlevel and maxlevel parameters must be >=0 and minlevel <= maxlevel!");
             }
+            if (argMap.containsKey("threads")) {
+            	threads = Integer.parseInt(argMap.get("threads"));
+            }
+            if (argMap.containsKey("blocksize")) {
+            	blockSize = Integer.parseInt(argMap.get("blocksize"));
+            }
+            if (argMap.containsKey("rate")) {
+            	rate = Double.parseDouble(argMap.get("rate"));
+            }
+            if (argMap.containsKey("checkpoint")) {
+            	checkpoint = new File(argMap.get("checkpoint"));
+            }
+            if ((threads < 1) || (blockSize < 1)) {
+            	throw new IOException("threads and blocksize parameters must be >= 1!");
+            }
             
             System.out.println("------------------------");
             System.out.println("Starting Hbase Tile Exporter...");
@@ -199,11 +462,17 @@ public class TileExporter {
             System.out.println("From hbase table id: " + pyramidId);
             System.out.println("Storing at local path: " + rootPath);
             System.out.println("Extracting levels " + minLevel + " to " + maxLevel);      
+            System.out.println("Using " + threads + " threads, in blocks of " + blockSize + " tiles");
+            if (null != checkpoint) {
+            	System.out.println("Checkpointing to " + checkpoint);
+            }
             System.out.println("------------------------");
 
-            int blockSize = 100;
             TileSerializer<Double> serializer = new PrimitiveAvroSerializer<Double>(Double.class, CodecFactory.bzip2Codec());
             TileExporter extractor = new TileExporter(zookeeperQuorum, zookeeperPort, hbaseMaster, rootPath, extension);
+            extractor.setThreads(threads);
+            extractor.setRateLimit(rate);
+            extractor.setCheckpointFile(checkpoint);
             extractor.copyPyramid(pyramidId, minLevel, maxLevel, serializer, blockSize);
             
             System.out.println("Done!");
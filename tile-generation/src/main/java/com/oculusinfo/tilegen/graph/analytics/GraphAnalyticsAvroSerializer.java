@@ -54,30 +54,24 @@ extends GenericAvroArraySerializer<GraphAnalyticsRecord> {
         return "graphAnalyticsEntry.avsc";
     }
 
+    @SuppressWarnings("unchecked")
+    private List<GraphEdge> edgeListToJava (GenericRecord community, String field) {
+		GenericData.Array<GenericRecord> values = (GenericData.Array<GenericRecord>) community.get(field);
+		List<GraphEdge> results = new ArrayList<>(values.size());
+		for (GenericRecord valE: values) {
+			results.add(new GraphEdge((Long)valE.get("dstID"),
+			                          (Double)valE.get("dstX"),
+			                          (Double)valE.get("dstY"),
+			                          (Long)valE.get("weight")));
+		}
+		return results;
+    }
+
     @SuppressWarnings("unchecked")
     private List<GraphCommunity> communityListTOJava (GenericRecord entry) {
 		GenericData.Array<GenericRecord> values = (GenericData.Array<GenericRecord>) entry.get("communities");
-		List<GraphCommunity> results = new ArrayList<>();
+		List<GraphCommunity> results = new ArrayList<>(values.size());
 		for (GenericRecord value: values) {
-			
-			List<GraphEdge> interEdges = new ArrayList<>();
-			GenericData.Array<GenericRecord> interEvalues = (GenericData.Array<GenericRecord>) value.get("interEdges");			
-			for (GenericRecord valE: interEvalues) {
-				interEdges.add(new GraphEdge((Long)valE.get("dstID"),
-											(Double)valE.get("dstX"), 
-											(Double)valE.get("dstY"),
-											(Long)valE.get("weight")));
-			}
-			
-			List<GraphEdge> intraEdges = new ArrayList<>();
-			GenericData.Array<GenericRecord> intraEvalues = (GenericData.Array<GenericRecord>) value.get("intraEdges");
-			for (GenericRecord valE: intraEvalues) {
-				intraEdges.add(new GraphEdge((Long)valE.get("dstID"),
-											(Double)valE.get("dstX"), 
-											(Double)valE.get("dstY"),
-											(Long)valE.get("weight")));
-			}
-			
 			results.add(new GraphCommunity((Integer)value.get("hierLevel"),
 											(Long)value.get("id"),
 	                                        new Pair<Double, Double>((Double)value.get("x"), (Double)value.get("y")),
@@ -89,8 +83,8 @@ extends GenericAvroArraySerializer<GraphAnalyticsRecord> {
 	                                        (Long)value.get("parentID"),
 	                                        new Pair<Double, Double>((Double)value.get("parentX"), (Double)value.get("parentY")),
 	                                        (Double)value.get("parentR"),
-	                                        interEdges,
-	                                        intraEdges));
+	                                        edgeListToJava(value, "interEdges"),
+	                                        edgeListToJava(value, "intraEdges")));
 		}
 		return results;
 	}
@@ -101,9 +95,26 @@ extends GenericAvroArraySerializer<GraphAnalyticsRecord> {
     			  						communityListTOJava(entry));
     }
     
+    private List<GenericRecord> edgeListToAvro (Schema edgeSchema, List<GraphEdge> edges) {
+        List<GenericRecord> result = new ArrayList<>(edges.size());
+        for (int n=0; n < edges.size(); n++) {
+            GenericRecord edge = new GenericData.Record(edgeSchema);
+            GraphEdge rawEdge = edges.get(n);
+            edge.put("dstID", rawEdge.getDstID());
+            edge.put("dstX", rawEdge.getDstX());
+            edge.put("dstY", rawEdge.getDstY());
+            edge.put("weight", rawEdge.getWeight());
+            result.add(edge);
+        }
+        return result;
+    }
+
     private List<GenericRecord> communityListToAvro (Schema mainSchema, List<GraphCommunity> elts) {
+        // Look up sub-schemas once, rather than once per community
         Schema eltSchema = mainSchema.getField("communities").schema().getElementType();
-        List<GenericRecord> result = new ArrayList<>();
+        Schema interEschema = eltSchema.getField("interEdges").schema().getElementType();
+        Schema intraEschema = eltSchema.getField("intraEdges").schema().getElementType();
+        List<GenericRecord> result = new ArrayList<>(elts.size());
         for (int i=0; i < elts.size(); ++i) {
             GenericRecord elt = new GenericData.Record(eltSchema);
             GraphCommunity rawElt = elts.get(i);
@@ -120,37 +131,8 @@ extends GenericAvroArraySerializer<GraphAnalyticsRecord> {
             elt.put("parentX", rawElt.getParentCoords().getFirst());
             elt.put("parentY", rawElt.getParentCoords().getSecond());
             elt.put("parentR", rawElt.getParentRadius());
-            
-            Schema interEschema = eltSchema.getField("interEdges").schema().getElementType();
-            List<GenericRecord> interE = new ArrayList<>();
-            List<GraphEdge> interEdges = rawElt.getInterEdges();
-            for (int n=0; n < interEdges.size(); n++) {
-            	GenericRecord edge = new GenericData.Record(interEschema);
-            	GraphEdge rawEdge = interEdges.get(n);
-                edge.put("dstID", rawEdge.getDstID());
-                edge.put("dstX", rawEdge.getDstCoords().getFirst());
-                edge.put("dstY", rawEdge.getDstCoords().getSecond());
-                edge.put("weight", rawEdge.getWeight());
-            	
-            	interE.add(edge);
-            }
-            elt.put("interEdges", interE);
-            
-            Schema intraEschema = eltSchema.getField("intraEdges").schema().getElementType();
-            List<GenericRecord> intraE = new ArrayList<>();
-            List<GraphEdge> intraEdges = rawElt.getIntraEdges();
-            for (int n=0; n < intraEdges.size(); n++) {
-            	GenericRecord edge = new GenericData.Record(intraEschema);
-            	GraphEdge rawEdge = intraEdges.get(n);
-                edge.put("dstID", rawEdge.getDstID());
-                edge.put("dstX", rawEdge.getDstCoords().getFirst());
-                edge.put("dstY", rawEdge.getDstCoords().getSecond());
-                edge.put("weight", rawEdge.getWeight());
-            	
-            	intraE.add(edge);
-            }
-            elt.put("intraEdges", intraE); 
-            
+            elt.put("interEdges", edgeListToAvro(interEschema, rawElt.getInterEdges()));
+            elt.put("intraEdges", edgeListToAvro(intraEschema, rawElt.getIntraEdges()));
             result.add(elt);
         }
         return result;
@@ -24,12 +24,16 @@
 
 package com.oculusinfo.tilegen.graph.analytics;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 //import scala.Int;
 
 
@@ -58,6 +62,15 @@ import com.oculusinfo.factory.util.Pair;
  * 	_communities
  *            List of GraphCommunity objects for storing analytics info for a
  *            given graph community
+ * 
+ * Records are immutable once built, and are freely shared between tiles and
+ * cached datasets, so combining records always produces a new record. The
+ * new record gets its own community list - sized to take insertions without
+ * growing - but shares the (equally immutable) communities themselves.
+ * 
+ * Besides the string form used in tile metadata, records have a compact,
+ * columnar binary form (see {@link #toBytes()}), used to move them between
+ * machines during tile generation.
  */
 public class GraphAnalyticsRecord implements Serializable {
 	/**
@@ -67,6 +80,8 @@ public class GraphAnalyticsRecord implements Serializable {
 
 	private static int MAX_COMMUNITIES = 25;	// Max number of communities to keep analytics of 
 												//    per record.
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
 	private int _numCommunities;				// Total number of communities in a given tile
 	private List<GraphCommunity> _communities;
 	
@@ -89,6 +104,14 @@ public class GraphAnalyticsRecord implements Serializable {
 		}
 	}
 	
+	// Copy constructor, used as the starting point when combining records;
+	// only the community list is copied, so it can be inserted into
+	private GraphAnalyticsRecord(GraphAnalyticsRecord base) {
+		_numCommunities = base._numCommunities;
+		_communities = new ArrayList<>(Math.max(MAX_COMMUNITIES, base._communities.size()) + 1);
+		_communities.addAll(base._communities);
+	}
+	
 	public static void setMaxCommunities(int max) {
 		MAX_COMMUNITIES = max;
 	}	
@@ -209,57 +232,49 @@ public class GraphAnalyticsRecord implements Serializable {
 		}
 	}
 
+	private static void appendEdges(StringBuilder result, List<GraphEdge> edges) {
+		if (edges != null) {
+			for (int n = 0; n < edges.size(); n++) {
+				GraphEdge edge = edges.get(n);
+				if (n > 0)
+					result.append(", ");
+				result.append("{\"dstID\": ").append(edge.getDstID()).append(", ")
+					.append("\"dstCoords\": [").append(edge.getDstX()).append(", ").append(edge.getDstY()).append("], ")
+					.append("\"weight\": ").append(edge.getWeight()).append("}");
+			}
+		}
+	}
+
 	@Override
 	public String toString() {
-		String result = ("{\"numCommunities\": " + _numCommunities + ", "
-				+ "\"communities\": [");
+		StringBuilder result = new StringBuilder();
+		result.append("{\"numCommunities\": ").append(_numCommunities).append(", ")
+			.append("\"communities\": [");
 		for (int i = 0; i < _communities.size(); ++i) {
 			GraphCommunity node = _communities.get(i);
-			// List<GraphEdge> interEdges = node.getInterEdges();
-			// List<GraphEdge> intraEdges = node.getIntraEdges();
 
 			if (i > 0)
-				result += ", ";
-			result += "{\"hierLevel\": " + node.getHierLevel() + ", "
-						 + "\"id\": " + node.getID() + ", "
-						 + "\"coords\": [" + node.getCoords().getFirst() + ", " + node.getCoords().getSecond() + "], "
-						 + "\"radius\": " + node.getRadius() + ", "
-						 + "\"degree\": " + node.getDegree() + ", "
-						 + "\"numNodes\": " + node.getNumNodes() + ", "
-						 + "\"metadata\": " + escapeString(node.getMetadata()) + ", "
-						 + "\"isPrimaryNode\": " + node.isPrimaryNode() + ", "
-						 + "\"parentID\": " + node.getParentID() + ", "
-						 + "\"parentCoords\": [" + node.getParentCoords().getFirst() + ", " + node.getParentCoords().getSecond() + "], "
-						 + "\"parentRadius\": " + node.getParentRadius() + ", ";
-			
-			result += "\"interEdges\": [";
-			if (node.getInterEdges() != null) {
-				for (int n = 0; n < node.getInterEdges().size(); n++) {
-					GraphEdge edge = node.getInterEdges().get(n);
-					if (n > 0)
-						result += ", ";
-					result += "{\"dstID\": " + edge.getDstID() + ", "
-							 + "\"dstCoords\": [" + edge.getDstCoords().getFirst() + ", " + edge.getDstCoords().getSecond() + "], "
-							 + "\"weight\": " + edge.getWeight() + "}";
-				}
-			}
-			result += "], \"intraEdges\": [";
-			
-			if (node.getIntraEdges() != null) {
-				
-				for (int n = 0; n < node.getIntraEdges().size(); n++) {
-					GraphEdge edge = node.getIntraEdges().get(n);
-					if (n > 0)
-						result += ", ";
-					result += "{\"dstID\": " + edge.getDstID() + ", "
-							 + "\"dstCoords\": [" + edge.getDstCoords().getFirst() + ", " + edge.getDstCoords().getSecond() + "], "
-							 + "\"weight\": " + edge.getWeight() + "}";
-				}
-			}
-			result += "]}";
+				result.append(", ");
+			result.append("{\"hierLevel\": ").append(node.getHierLevel()).append(", ")
+				.append("\"id\": ").append(node.getID()).append(", ")
+				.append("\"coords\": [").append(node.getCoords().getFirst()).append(", ").append(node.getCoords().getSecond()).append("], ")
+				.append("\"radius\": ").append(node.getRadius()).append(", ")
+				.append("\"degree\": ").append(node.getDegree()).append(", ")
+				.append("\"numNodes\": ").append(node.getNumNodes()).append(", ")
+				.append("\"metadata\": ").append(escapeString(node.getMetadata())).append(", ")
+				.append("\"isPrimaryNode\": ").append(node.isPrimaryNode()).append(", ")
+				.append("\"parentID\": ").append(node.getParentID()).append(", ")
+				.append("\"parentCoords\": [").append(node.getParentCoords().getFirst()).append(", ").append(node.getParentCoords().getSecond()).append("], ")
+				.append("\"parentRadius\": ").append(node.getParentRadius()).append(", ");
+
+			result.append("\"interEdges\": [");
+			appendEdges(result, node.getInterEdges());
+			result.append("], \"intraEdges\": [");
+			appendEdges(result, node.getIntraEdges());
+			result.append("]}");
 		}
-		result += "]}";
-		return result;
+		result.append("]}");
+		return result.toString();
 	}
 
 	public static GraphAnalyticsRecord fromString(String value) {
@@ -401,82 +416,200 @@ public class GraphAnalyticsRecord implements Serializable {
 		return new GraphAnalyticsRecord(numCommunities, communities);
 	}	
 	
+	/**
+	 * Write this record in a compact, columnar binary form: each attribute of
+	 * all communities is written together, followed by the edges of all
+	 * communities, again attribute by attribute.
+	 */
+	public byte[] toBytes () {
+		int n = _communities.size();
+		int numInterEdges = 0;
+		int numIntraEdges = 0;
+		for (GraphCommunity community: _communities) {
+			numInterEdges += community.getInterEdges().size();
+			numIntraEdges += community.getIntraEdges().size();
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + 100 * n + 32 * (numInterEdges + numIntraEdges));
+		DataOutputStream output = new DataOutputStream(bytes);
+		try {
+			output.writeInt(_numCommunities);
+			output.writeInt(n);
+			for (GraphCommunity c: _communities) output.writeInt(c.getHierLevel());
+			for (GraphCommunity c: _communities) output.writeLong(c.getID());
+			for (GraphCommunity c: _communities) output.writeDouble(c.getCoords().getFirst());
+			for (GraphCommunity c: _communities) output.writeDouble(c.getCoords().getSecond());
+			for (GraphCommunity c: _communities) output.writeDouble(c.getRadius());
+			for (GraphCommunity c: _communities) output.writeInt(c.getDegree());
+			for (GraphCommunity c: _communities) output.writeLong(c.getNumNodes());
+			for (GraphCommunity c: _communities) output.writeBoolean(c.isPrimaryNode());
+			for (GraphCommunity c: _communities) output.writeLong(c.getParentID());
+			for (GraphCommunity c: _communities) output.writeDouble(c.getParentCoords().getFirst());
+			for (GraphCommunity c: _communities) output.writeDouble(c.getParentCoords().getSecond());
+			for (GraphCommunity c: _communities) output.writeDouble(c.getParentRadius());
+			for (GraphCommunity c: _communities) {
+				String metadata = c.getMetadata();
+				if (null == metadata) {
+					output.writeInt(-1);
+				} else {
+					byte[] utf8 = metadata.getBytes(UTF8);
+					output.writeInt(utf8.length);
+					output.write(utf8);
+				}
+			}
+			writeEdges(output, numInterEdges, true);
+			writeEdges(output, numIntraEdges, false);
+			output.flush();
+		} catch (IOException e) {
+			// Can't happen writing to a byte array
+			throw new IllegalStateException("Error writing graph analytics record", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private void writeEdges (DataOutputStream output, int numEdges, boolean inter) throws IOException {
+		GraphEdge[] edges = new GraphEdge[numEdges];
+		int e = 0;
+		for (GraphCommunity c: _communities) {
+			List<GraphEdge> communityEdges = (inter ? c.getInterEdges() : c.getIntraEdges());
+			output.writeInt(communityEdges.size());
+			for (GraphEdge edge: communityEdges) edges[e++] = edge;
+		}
+		for (GraphEdge edge: edges) output.writeLong(edge.getDstID());
+		for (GraphEdge edge: edges) output.writeDouble(edge.getDstX());
+		for (GraphEdge edge: edges) output.writeDouble(edge.getDstY());
+		for (GraphEdge edge: edges) output.writeLong(edge.getWeight());
+	}
+
+	private static List<List<GraphEdge>> readEdges (DataInputStream input, int n) throws IOException {
+		int[] counts = new int[n];
+		int numEdges = 0;
+		for (int i = 0; i < n; ++i) {
+			counts[i] = input.readInt();
+			numEdges += counts[i];
+		}
+		long[] dstIDs = new long[numEdges];
+		double[] dstXs = new double[numEdges];
+		double[] dstYs = new double[numEdges];
+		long[] weights = new long[numEdges];
+		for (int e = 0; e < numEdges; ++e) dstIDs[e] = input.readLong();
+		for (int e = 0; e < numEdges; ++e) dstXs[e] = input.readDouble();
+		for (int e = 0; e < numEdges; ++e) dstYs[e] = input.readDouble();
+		for (int e = 0; e < numEdges; ++e) weights[e] = input.readLong();
+
+		List<List<GraphEdge>> result = new ArrayList<>(n);
+		int e = 0;
+		for (int i = 0; i < n; ++i) {
+			List<GraphEdge> edges = new ArrayList<>(counts[i]);
+			for (int j = 0; j < counts[i]; ++j, ++e) {
+				edges.add(new GraphEdge(dstIDs[e], dstXs[e], dstYs[e], weights[e]));
+			}
+			result.add(edges);
+		}
+		return result;
+	}
+
+	/**
+	 * Read a record written by {@link #toBytes()}
+	 */
+	public static GraphAnalyticsRecord fromBytes (byte[] data) throws IOException {
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+		int numCommunities = input.readInt();
+		int n = input.readInt();
+
+		int[] hierLevels = new int[n];
+		long[] ids = new long[n];
+		double[] xs = new double[n];
+		double[] ys = new double[n];
+		double[] radii = new double[n];
+		int[] degrees = new int[n];
+		long[] numNodes = new long[n];
+		boolean[] primaryNodes = new boolean[n];
+		long[] parentIDs = new long[n];
+		double[] parentXs = new double[n];
+		double[] parentYs = new double[n];
+		double[] parentRadii = new double[n];
+		String[] metadata = new String[n];
+		for (int i = 0; i < n; ++i) hierLevels[i] = input.readInt();
+		for (int i = 0; i < n; ++i) ids[i] = input.readLong();
+		for (int i = 0; i < n; ++i) xs[i] = input.readDouble();
+		for (int i = 0; i < n; ++i) ys[i] = input.readDouble();
+		for (int i = 0; i < n; ++i) radii[i] = input.readDouble();
+		for (int i = 0; i < n; ++i) degrees[i] = input.readInt();
+		for (int i = 0; i < n; ++i) numNodes[i] = input.readLong();
+		for (int i = 0; i < n; ++i) primaryNodes[i] = input.readBoolean();
+		for (int i = 0; i < n; ++i) parentIDs[i] = input.readLong();
+		for (int i = 0; i < n; ++i) parentXs[i] = input.readDouble();
+		for (int i = 0; i < n; ++i) parentYs[i] = input.readDouble();
+		for (int i = 0; i < n; ++i) parentRadii[i] = input.readDouble();
+		for (int i = 0; i < n; ++i) {
+			int length = input.readInt();
+			if (length >= 0) {
+				byte[] utf8 = new byte[length];
+				input.readFully(utf8);
+				metadata[i] = new String(utf8, UTF8);
+			}
+		}
+		List<List<GraphEdge>> interEdges = readEdges(input, n);
+		List<List<GraphEdge>> intraEdges = readEdges(input, n);
+
+		List<GraphCommunity> communities = new ArrayList<>(n);
+		for (int i = 0; i < n; ++i) {
+			communities.add(new GraphCommunity(hierLevels[i], ids[i],
+			                                   new Pair<Double, Double>(xs[i], ys[i]),
+			                                   radii[i], degrees[i], numNodes[i], metadata[i],
+			                                   primaryNodes[i], parentIDs[i],
+			                                   new Pair<Double, Double>(parentXs[i], parentYs[i]),
+			                                   parentRadii[i], interEdges.get(i), intraEdges.get(i)));
+		}
+		return new GraphAnalyticsRecord(numCommunities, communities);
+	}
+
 	private static void addCommunityInPlace(
-			LinkedList<GraphCommunity> accumulatedCommunities,
+			List<GraphCommunity> accumulatedCommunities,
 			GraphCommunity newCommunity) {
-		ListIterator<GraphCommunity> i = accumulatedCommunities.listIterator();
-		int size = 0;
-		while (true) {
-			if (i.hasNext()) {
-				GraphCommunity next = i.next();
-				size++;
-				int hierLevel = next.getHierLevel();
-				if (hierLevel != newCommunity.getHierLevel()) {
-					throw new IllegalArgumentException("Cannot aggegrate communities from different hierarchy levels.");
-				}
+		int size = accumulatedCommunities.size();
+		for (int i = 0; i < size; ++i) {
+			GraphCommunity next = accumulatedCommunities.get(i);
+			int hierLevel = next.getHierLevel();
+			if (hierLevel != newCommunity.getHierLevel()) {
+				throw new IllegalArgumentException("Cannot aggegrate communities from different hierarchy levels.");
+			}
 
-				// Rank communities based on degree for lowest hierarchy level, OR
-				// rank by number of internal nodes for hierarchy levels > 0
-				if ((hierLevel==0 && next.getDegree() < newCommunity.getDegree()) || 		//TODO -- ideally, could use 'weighted degree' here 
-				   (hierLevel>0 && next.getNumNodes() < newCommunity.getNumNodes())) {
-					
-					// Insert the new community if it is larger (ie contains more raw nodes)
-					i.previous();
-					i.add(newCommunity);
-					size++;
-					i.next();
-					
-					if (!i.hasNext() && size == MAX_COMMUNITIES+1) {	// already at end of list but is 1 element too big
-						i.remove();
-						--size;
-					}
-					else {
-						// ... and trim the list to MAX_COMMUNITIES elements
-						while (i.hasNext() && size < MAX_COMMUNITIES) {
-							i.next();
-							++size;
-						}
-						while (i.hasNext()) {
-							i.next();
-							i.remove();
-						}
-					}
-
-					return;
-				}
-			} else {
-				if (size < MAX_COMMUNITIES) {
-					i.add(newCommunity);
+			// Rank communities based on degree for lowest hierarchy level, OR
+			// rank by number of internal nodes for hierarchy levels > 0
+			if ((hierLevel==0 && next.getDegree() < newCommunity.getDegree()) || 		//TODO -- ideally, could use 'weighted degree' here 
+			    (hierLevel>0 && next.getNumNodes() < newCommunity.getNumNodes())) {
+				// Insert the new community if it is larger (ie contains more raw nodes),
+				// and trim the list to MAX_COMMUNITIES elements
+				accumulatedCommunities.add(i, newCommunity);
+				for (int n = accumulatedCommunities.size() - 1; n >= MAX_COMMUNITIES; --n) {
+					accumulatedCommunities.remove(n);
 				}
 				return;
 			}
 		}
-	}
-
-	private static void addCommunitiesInPlace(
-			LinkedList<GraphCommunity> accumulatedCommunities,
-			List<GraphCommunity> newCommunities) {
-		for (GraphCommunity newCommunity : newCommunities) {
-			addCommunityInPlace(accumulatedCommunities, newCommunity);
+		if (size < MAX_COMMUNITIES) {
+			accumulatedCommunities.add(newCommunity);
 		}
 	}
 
 	/**
-	 * Combine two records.
+	 * Combine records into a new record, keeping the MAX_COMMUNITIES largest
+	 * communities. None of the given records are modified.
 	 */
 	public static GraphAnalyticsRecord addRecords(
 			GraphAnalyticsRecord... records) {
 		if (null == records || 0 == records.length)
 			return null;
 
-		int numCommunities = records[0].getNumCommunities();
-		LinkedList<GraphCommunity> communities = new LinkedList<>(records[0].getCommunities());
-
+		GraphAnalyticsRecord result = new GraphAnalyticsRecord(records[0]);
 		for (int i = 1; i < records.length; ++i) {
-			numCommunities += records[i].getNumCommunities();
-			addCommunitiesInPlace(communities, records[i].getCommunities());
+			result._numCommunities += records[i]._numCommunities;
+			for (GraphCommunity community: records[i]._communities) {
+				addCommunityInPlace(result._communities, community);
+			}
 		}
-		return new GraphAnalyticsRecord(numCommunities, communities);
+		return result;
 	}
 
 	/**
@@ -487,12 +620,11 @@ public class GraphAnalyticsRecord implements Serializable {
 			GraphAnalyticsRecord record, GraphCommunity newCommunity) {
 		if (null == record)
 			return null;
-		
-		int numCommunities = record.getNumCommunities() + 1;
-		LinkedList<GraphCommunity> accumulatedCommunities = new LinkedList<>(record.getCommunities());
-		addCommunityInPlace(accumulatedCommunities, newCommunity);
 
-		return new GraphAnalyticsRecord(numCommunities, accumulatedCommunities);		
+		GraphAnalyticsRecord result = new GraphAnalyticsRecord(record);
+		result._numCommunities++;
+		addCommunityInPlace(result._communities, newCommunity);
+		return result;
 	}
 
 	private static void minInPlace(GraphCommunity accumulatedMin,
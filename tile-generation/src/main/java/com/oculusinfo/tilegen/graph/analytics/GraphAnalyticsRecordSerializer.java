@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tilegen.graph.analytics;
+
+import java.io.IOException;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Writes {@link GraphAnalyticsRecord}s to Kryo in their compact, columnar binary
+ * form, rather than as a graph of community and edge objects.
+ */
+public class GraphAnalyticsRecordSerializer extends Serializer<GraphAnalyticsRecord> {
+	@Override
+	public void write (Kryo kryo, Output output, GraphAnalyticsRecord value) {
+		byte[] bytes = value.toBytes();
+		output.writeInt(bytes.length, true);
+		output.writeBytes(bytes);
+	}
+
+	@Override
+	public GraphAnalyticsRecord read (Kryo kryo, Input input, Class<GraphAnalyticsRecord> type) {
+		int length = input.readInt(true);
+		try {
+			return GraphAnalyticsRecord.fromBytes(input.readBytes(length));
+		} catch (IOException e) {
+			throw new KryoException("Error reading GraphAnalyticsRecord", e);
+		}
+	}
+}
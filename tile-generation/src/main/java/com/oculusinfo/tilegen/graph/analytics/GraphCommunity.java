@@ -26,10 +26,7 @@ package com.oculusinfo.tilegen.graph.analytics;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 
 import com.oculusinfo.factory.util.Pair;
 
@@ -135,6 +132,7 @@ public class GraphCommunity implements Serializable {
 		_parentCoords = parentCoords;
 		_parentRadius = parentRadius;
 				
+		// Edge lists are always copied, so that edges can be added to them in place
 		if (interEdges == null) {
 			_interEdges = new ArrayList<GraphEdge>();
 		}
@@ -142,7 +140,7 @@ public class GraphCommunity implements Serializable {
 			if (interEdges.size() > MAX_EDGES) {
 				throw new IllegalArgumentException("Number of inter-community edges in list must be <= " + MAX_EDGES);
 			}
-			_interEdges = interEdges;
+			_interEdges = new ArrayList<>(interEdges);
 		}
 		
 		if (intraEdges == null) {
@@ -152,7 +150,7 @@ public class GraphCommunity implements Serializable {
 			if (intraEdges.size() > MAX_EDGES) {
 				throw new IllegalArgumentException("Number of intra-community edges in list must be <= " + MAX_EDGES);
 			}
-			_intraEdges = intraEdges;
+			_intraEdges = new ArrayList<>(intraEdges);
 		}
 	}
 	
@@ -213,48 +211,23 @@ public class GraphCommunity implements Serializable {
 	}
 	
 	
-	private static void addEdgeInPlace(LinkedList<GraphEdge> accumulatedEdges, GraphEdge newEdge) {
-		ListIterator<GraphEdge> i = accumulatedEdges.listIterator();
-		int size = 0;
-		while (true) {
-			if (i.hasNext()) {
-				GraphEdge next = i.next();
-				size++;
-
-				// Rank edges based on weight
-				if (next.getWeight() < newEdge.getWeight()) {
-					
-					// Insert the new edge if has higher weight
-					i.previous();
-					i.add(newEdge);
-					size++;
-					i.next();
-					
-					if (!i.hasNext() && size == MAX_EDGES+1) {	// already at end of list but is 1 element too big
-						i.remove();
-						--size;
-					}
-					else {
-						// ... and trim the list to MAX_EDGES elements
-						while (i.hasNext() && size < MAX_EDGES) {
-							i.next();
-							++size;
-						}
-						while (i.hasNext()) {
-							i.next();
-							i.remove();
-						}
-					}
-
-					return;
-				}
-			} else {
-				if (size < MAX_EDGES) {
-					i.add(newEdge);
+	private static void addEdgeInPlace(List<GraphEdge> accumulatedEdges, GraphEdge newEdge) {
+		int size = accumulatedEdges.size();
+		for (int i = 0; i < size; ++i) {
+			// Rank edges based on weight
+			if (accumulatedEdges.get(i).getWeight() < newEdge.getWeight()) {
+				// Insert the new edge if has higher weight, and trim the list
+				// to MAX_EDGES elements
+				accumulatedEdges.add(i, newEdge);
+				for (int n = accumulatedEdges.size() - 1; n >= MAX_EDGES; --n) {
+					accumulatedEdges.remove(n);
 				}
 				return;
 			}
 		}
+		if (size < MAX_EDGES) {
+			accumulatedEdges.add(newEdge);
+		}
 	}
 
 //	private static void addEdgesInPlace(LinkedList<GraphEdge> accumulatedEdges, List<GraphEdge> newEdges) {
@@ -268,10 +241,7 @@ public class GraphCommunity implements Serializable {
 	 * the MAX_EDGES largest edges.
 	 */
 	public void addInterEdgeToCommunity(GraphEdge newEdge) {
-		
-		LinkedList<GraphEdge> accumulatedEdges = new LinkedList<>(_interEdges);
-		addEdgeInPlace(accumulatedEdges, newEdge);
-		_interEdges = accumulatedEdges;	
+		addEdgeInPlace(_interEdges, newEdge);
 	}
 	
 	/**
@@ -279,39 +249,40 @@ public class GraphCommunity implements Serializable {
 	 * the MAX_EDGES largest edges.
 	 */
 	public void addIntraEdgeToCommunity(GraphEdge newEdge) {
-		
-		LinkedList<GraphEdge> accumulatedEdges = new LinkedList<>(_intraEdges);
-		addEdgeInPlace(accumulatedEdges, newEdge);
-		_intraEdges = accumulatedEdges;	
+		addEdgeInPlace(_intraEdges, newEdge);
 	}
 
 	private List<GraphEdge> minOfEdgeLists(GraphEdge accumulatedMin, List<GraphEdge> newMin) {
 		long dstID = accumulatedMin.getDstID();
-		double x = accumulatedMin.getDstCoords().getFirst();
-		double y = accumulatedMin.getDstCoords().getSecond();
+		double x = accumulatedMin.getDstX();
+		double y = accumulatedMin.getDstY();
 		long weight = accumulatedMin.getWeight();
 		for (int i = 0; i < newMin.size(); ++i) {
 			dstID = Math.min(dstID, newMin.get(i).getDstID());
-			x = Math.min(x, newMin.get(i).getDstCoords().getFirst());
-			y = Math.min(y, newMin.get(i).getDstCoords().getSecond());
+			x = Math.min(x, newMin.get(i).getDstX());
+			y = Math.min(y, newMin.get(i).getDstY());
 			weight = Math.min(weight, newMin.get(i).getWeight());
 		}
-		return Arrays.asList(new GraphEdge(dstID, x, y, weight));
+		List<GraphEdge> result = new ArrayList<>(1);
+		result.add(new GraphEdge(dstID, x, y, weight));
+		return result;
 	}
 	
 
 	private List<GraphEdge> maxOfEdgeLists(GraphEdge accumulatedMax, List<GraphEdge> newMax) {
 		long dstID = accumulatedMax.getDstID();
-		double x = accumulatedMax.getDstCoords().getFirst();
-		double y = accumulatedMax.getDstCoords().getSecond();
+		double x = accumulatedMax.getDstX();
+		double y = accumulatedMax.getDstY();
 		long weight = accumulatedMax.getWeight();
 		for (int i = 0; i < newMax.size(); ++i) {
 			dstID = Math.max(dstID, newMax.get(i).getDstID());
-			x = Math.max(x, newMax.get(i).getDstCoords().getFirst());
-			y = Math.max(y, newMax.get(i).getDstCoords().getSecond());
+			x = Math.max(x, newMax.get(i).getDstX());
+			y = Math.max(y, newMax.get(i).getDstY());
 			weight = Math.max(weight, newMax.get(i).getWeight());
 		}
-		return Arrays.asList(new GraphEdge(dstID, x, y, weight));
+		List<GraphEdge> result = new ArrayList<>(1);
+		result.add(new GraphEdge(dstID, x, y, weight));
+		return result;
 	}	
 	
 	//---- min attribute values between two communities
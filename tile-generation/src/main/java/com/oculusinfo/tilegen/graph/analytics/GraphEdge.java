@@ -51,7 +51,8 @@ public class GraphEdge implements Serializable {
 	
 	//private long _srcID;						// source node ID of edge
 	private long _dstID;						// destination node ID of edge	
-	private Pair<Double, Double> _dstcoords;	// x,y coords of destination node
+	private double _dstX;						// x coord of destination node
+	private double _dstY;						// y coord of destination node
 	private long _weight;						// edge weight
 	
 	GraphEdge(long dstID,
@@ -60,7 +61,8 @@ public class GraphEdge implements Serializable {
 				long weight) {
 		//_srcID = srcID;
 		_dstID = dstID;
-		_dstcoords = new Pair<Double, Double>(dstX, dstY);
+		_dstX = dstX;
+		_dstY = dstY;
 		_weight = weight;
 	}
 	
@@ -73,8 +75,16 @@ public class GraphEdge implements Serializable {
 	}	
 		
 	public Pair<Double, Double> getDstCoords() {
-		return _dstcoords;
-	}		
+		return new Pair<Double, Double>(_dstX, _dstY);
+	}
+
+	public double getDstX() {
+		return _dstX;
+	}
+
+	public double getDstY() {
+		return _dstY;
+	}
 	
 	public long getWeight() {
 		return _weight;
@@ -94,7 +104,7 @@ public class GraphEdge implements Serializable {
 		if (this.getDstID() != that.getDstID()) {
 			return false;
 		}
-		else if (!(this.getDstCoords().equals(that.getDstCoords()))) {
+		else if (!(Double.valueOf(_dstX).equals(that._dstX) && Double.valueOf(_dstY).equals(that._dstY))) {
 			return false;
 		}
 		else if ((this.getWeight() != that.getWeight())) {
@@ -32,6 +32,8 @@ import com.oculusinfo.binning.impl.DenseTileData;
 import com.oculusinfo.binning.impl.SparseTileData;
 import com.oculusinfo.binning.impl.WebMercatorTilePyramid;
 import com.oculusinfo.factory.util.Pair;
+import com.oculusinfo.math.statistics.LogHistogram;
+import com.oculusinfo.math.statistics.QuantileSketch;
 import com.oculusinfo.tilegen.spark.DoubleMaxAccumulatorParam;
 import com.oculusinfo.tilegen.spark.DoubleMinAccumulatorParam;
 import com.oculusinfo.tilegen.spark.MinMaxAccumulableParam;
@@ -125,5 +127,9 @@ public class TileRegistrator implements KryoRegistrator {
 
 		// com.oculusinfo.binning.util
 		kryo.register(Pair.class);
+
+		// com.oculusinfo.math.statistics
+		kryo.register(QuantileSketch.class, new QuantileSketchSerializer());
+		kryo.register(LogHistogram.class, new LogHistogramSerializer());
 	}
 }
@@ -28,10 +28,12 @@ import java.text.SimpleDateFormat
 import java.util.TimeZone
 
 import com.oculusinfo.tilegen.util.KeyValueArgumentSource
+import org.apache.hadoop.fs.Path
+import org.apache.spark.Accumulator
+import org.apache.spark.SparkContext._
 import org.apache.spark.rdd.RDD
 import org.apache.spark.sql._
-
-import scala.util.Try
+import org.apache.spark.sql.catalyst.expressions.GenericRow
 
 /**
  * A class that allows reading a schema file and a CSV file as a SchemaRDD.
@@ -42,7 +44,14 @@ import scala.util.Try
  *
  * <dl>
  *   <dt> oculus.binning.parsing.separator </dt>
- *   <dd> The character or string to use as a separator between columns. Default is a tab </dd>
+ *   <dd> The character or string to use as a separator between columns. Default is a tab.  As with String.split,
+ *        this is treated as a regular expression, but simple separators (literal strings, or single escaped
+ *        characters like "\\t" or "\\|") are matched directly, without the overhead of regular expressions. </dd>
+ *   <dt> oculus.binning.parsing.parquet </dt>
+ *   <dd> Optional.  A location at which to persist the parsed data set as a Parquet file.  If a Parquet file
+ *        already exists at this location, it is read instead of the CSV data, skipping parsing entirely; if not,
+ *        the CSV data is parsed and written there for the next time.  It is up to the user to remove the Parquet
+ *        file when the CSV data or its schema changes. </dd>
  *   <dt> oculus.binning.parsing.&lt;field&gt;.index </dt>
  *   <dd> The column number of the described field. This field is mandatory for every field type to be used. </dd>
  *   <dt> oculus.binning.parsing.&lt;field&gt;.fieldType </dt>
@@ -55,7 +64,7 @@ import scala.util.Try
  *       <dd> Treat the column as containing boolean values (true/false, yes/no) </dd>
  *       <dt> byte </dt>
  *       <dd> Treat the column as containing bytes </dd>
- *       <dt> shoft </dt>
+ *       <dt> short </dt>
  *       <dd> Treat the column as containing short integers </dd>
  *       <dt> int </dt>
  *       <dd> Treat the column as containing integers </dd>
@@ -98,6 +107,11 @@ import scala.util.Try
  *   </dd>
  * </dl>
  *
+ * Lines are split in a single pass, and each needed column is parsed directly from the line, without
+ * intermediate substrings for numeric types.  Lines that don't have enough columns, or that have a column that
+ * can't be parsed, are dropped; the number of each is tallied, and can be retrieved with malformedRecords and
+ * fieldErrors after the data has been used.
+ *
  * Created by nkronenfeld on 12/16/2014.
  */
 class CSVReader (val sqlc: SQLContext, data: RDD[String], configuration: KeyValueArgumentSource) {
@@ -125,24 +139,82 @@ class CSVReader (val sqlc: SQLContext, data: RDD[String], configuration: KeyValu
 	                                                 "The separator to use between fields in the input data",
 	                                                 Some("\t"))
 
-	private lazy val _parsed: SchemaRDD = {
-		val separator = _separator
-		val parsers = _parsers
-		val indices = _indices
+	private val _parquetLocation = configuration.getStringOption(
+		"oculus.binning.parsing.parquet",
+		"A location at which to persist the parsed data as a Parquet file, to avoid reparsing it next time")
+
+	// Counts of dropped records.  These are only updated when the CSV data is actually parsed, and are updated each
+	// time it is parsed.
+	private lazy val _malformedRecords: Accumulator[Long] = sqlc.sparkContext.accumulator(0L)
+	private lazy val _fieldErrors: Array[Accumulator[Long]] = _schema.fields.map(field => sqlc.sparkContext.accumulator(0L)).toArray
+
+	/**
+	 * The number of records that have been dropped because they didn't have all the needed columns
+	 */
+	def malformedRecords: Long = _malformedRecords.value
+
+	/**
+	 * The number of records that have been dropped because of a bad value, broken down by the field with the bad
+	 * value.
+	 */
+	def fieldErrors: Map[String, Long] =
+		_schema.fields.map(_.name).zip(_fieldErrors.map(_.value)).toMap
+
+	private lazy val _parsed: SchemaRDD = _parquetLocation match {
+		case Some(location) => {
+			val path = new Path(location)
+			val fs = path.getFileSystem(sqlc.sparkContext.hadoopConfiguration)
+			if (!fs.exists(path)) sqlc.applySchema(parseRows, _schema).saveAsParquetFile(location)
+			sqlc.parquetFile(location)
+		}
+		case None => sqlc.applySchema(parseRows, _schema)
+	}
+
+	private def parseRows: RDD[Row] = {
+		val scanner = new DelimitedFieldScanner(_separator)
+		val parsers = _parsers.toArray
+		val indices = _indices.toArray
 		val N = _fields
-		val rowRDD: RDD[Row] = data.map(record =>
-			Try{
-				val fields = record.split(separator)
-				val values = (0 until N).map(n => parsers(n)(fields(indices(n))))
-				row(values:_*)
+		// We only need to find columns up to the last one we use
+		val numColumns = if (0 == N) 0 else indices.max + 1
+		val malformedRecords = _malformedRecords
+		val fieldErrors = _fieldErrors
+
+		data.mapPartitions(records =>
+			{
+				val starts = new Array[Int](numColumns)
+				val ends = new Array[Int](numColumns)
+
+				records.map(record =>
+					{
+						if (scanner.scan(record, starts, ends) < numColumns) {
+							malformedRecords += 1L
+							null
+						} else {
+							val values = new Array[Any](N)
+							var n = 0
+							while (n < N) {
+								val index = indices(n)
+								val value = parsers(n).parse(record, starts(index), ends(index))
+								if (null == value) {
+									fieldErrors(n) += 1L
+									n = N + 1
+								} else {
+									values(n) = value
+									n = n + 1
+								}
+							}
+							if (n == N) new GenericRow(values) else null
+						}
+					}
+				).filter(null != _)
 			}
-		).filter(_.isSuccess).map(_.get)
-		sqlc.applySchema(rowRDD, _schema)
+		)
 	}
 
 	// _schema: the schema of our CSV file, as specified by our configuration
 	// _indices: The column index of each field in the schema, in order
-	// _parsers: A parser of each field in the schema, in order, from a string to the desired type.
+	// _parsers: A parser of each field in the schema, in order, from a column of text to the desired type.
 	// _fields: the number of parsed fields
 	// Do not calculate these lazily - we want errors as soon as the reader is made, for ease of debugging.
 	private val (_schema, _indices, _parsers, _fields) = {
@@ -154,27 +226,25 @@ class CSVReader (val sqlc: SQLContext, data: RDD[String], configuration: KeyValu
 
 
 
-		// A quick internal function to parse a string type into a data type and a parser function
-		def getParseFunction (fieldName: String, stringType: String): (DataType, String => Any) =
+		// A quick internal function to parse a string type into a field parser
+		def getParser (fieldName: String, stringType: String): FieldParser =
 			stringType.toLowerCase.trim match {
-				case "boolean" => (BooleanType, s => s == "yes" || s == "true" || s == "1")
-				case "byte" => (ByteType, s => s.trim.toShort.toByte)
-				case "short" => (ShortType, s => s.trim.toShort)
-				case "int" => (IntegerType, s => s.trim.toInt)
-				case "long" => (LongType, s => s.trim.toLong)
-				case "float" => (FloatType, s => s.trim.toFloat)
-				case "double" => (DoubleType, s => s.trim.toDouble)
-				case "string" => (StringType, s => s)
-				case "ipv4" => (ArrayType(ByteType), s => {
-					                s.trim.split("\\.").map(_.trim.toShort.toByte).toSeq
-				                })
+				case "boolean" => new FieldParser.BooleanParser
+				case "byte" => new FieldParser.ByteParser
+				case "short" => new FieldParser.ShortParser
+				case "int" => new FieldParser.IntParser
+				case "long" => new FieldParser.LongParser
+				case "float" => new FieldParser.FloatParser
+				case "double" => new FieldParser.DoubleParser
+				case "string" => new FieldParser.StringParser
+				case "ipv4" => new FieldParser.IPv4Parser
 				case "date" => {
 					val format = new SimpleDateFormat(
 						configuration.getString("oculus.binning.parsing." + fieldName + ".dateFormat",
 						                        "The date format of the "+fieldName+" field",
 						                        Some("yyMMddHHmm")))
 					format.setTimeZone(TimeZone.getTimeZone("GMT"))
-					(LongType, s => format.parse(s.trim).getTime())
+					new FieldParser.DateParser(format)
 				}
 				case "propertymap" => {
 					val property = configuration.getString(
@@ -190,16 +260,9 @@ class CSVReader (val sqlc: SQLContext, data: RDD[String], configuration: KeyValu
 						"oculus.binning.parsing." + fieldName + ".propertyValueSeparator",
 						"The separator between keys and values of properties in the "+fieldName+" field",
 						None)
-					val (eltType, eltParser) = getParseFunction(fieldName, propertyType)
-
-					(eltType, s => {
-						 val rawValue = s.split(propSep)
-							 .map(_.split(valueSep))
-							 .filter(kv => property == kv(0).trim)
-							 .map(kv => if (kv.size > 1) kv(1) else "")
-							 .takeRight(1)(0)
-						 eltParser(rawValue)
-					 })
+
+					new FieldParser.PropertyMapParser(property, propSep, valueSep,
+					                                  getParser(fieldName, propertyType))
 				}
 			}
 
@@ -214,9 +277,9 @@ class CSVReader (val sqlc: SQLContext, data: RDD[String], configuration: KeyValu
 				                                        indexProperty.length - ".index".length)
 				val fieldIndex = configuration.getInt(indexProperty, "The column number of the " + fieldName + " field")
 				val fieldType = getFieldType(fieldName)
-				val (dataType, parser) = getParseFunction(fieldName, fieldType)
+				val parser = getParser(fieldName, fieldType)
 
-				(schemaField(fieldName, dataType), fieldIndex, parser)
+				(schemaField(fieldName, parser.dataType), fieldIndex, parser)
 			}
 		).toSeq.sortBy(_._2)
 
@@ -0,0 +1,517 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tilegen.datasets
+
+import java.text.{ParsePosition, SimpleDateFormat}
+import java.util.regex.Pattern
+
+import org.apache.spark.sql._
+
+import scala.collection.mutable.ArrayBuffer
+
+
+
+/**
+ * Splits lines of delimited text into fields in a single pass, recording the start and end offset of each field
+ * instead of creating substrings.
+ *
+ * Separators mean exactly what they would mean to String.split - i.e., they are regular expressions - and, as with
+ * String.split, trailing empty fields are dropped.  However, a separator that is just a literal string, or a single
+ * escaped character (like "\\t" or "\\|"), is matched directly, without going through the regular expression
+ * engine at all.
+ *
+ * @param separator The separator between fields
+ */
+class DelimitedFieldScanner (separator: String) extends Serializable {
+	private val _literal: String = DelimitedFieldScanner.toLiteral(separator)
+	private val _pattern: Pattern = if (null == _literal) Pattern.compile(separator) else null
+
+	/** True if this scanner can match its separator without using regular expressions */
+	def isLiteral = null != _literal
+
+	/**
+	 * Find the fields in a line of text.  Only as many fields as will fit in the given arrays are located.
+	 *
+	 * @param line The line of text to scan
+	 * @param starts An array into which to write the offset of the first character of each field
+	 * @param ends An array into which to write the offset just past the last character of each field
+	 * @return The number of fields found, at most the length of the given arrays.
+	 */
+	def scan (line: String, starts: Array[Int], ends: Array[Int]): Int =
+		if (null == _literal) scanPattern(line, starts, ends)
+		else scanLiteral(line, starts, ends)
+
+	/**
+	 * Split a string around our separator, exactly as String.split would
+	 */
+	def split (text: String): Array[String] =
+		if (null == _literal) {
+			_pattern.split(text)
+		} else {
+			val fields = new ArrayBuffer[String]()
+			val length = _literal.length
+			var start = 0
+			var end = text.indexOf(_literal)
+			if (-1 == end) {
+				Array(text)
+			} else {
+				while (-1 != end) {
+					fields += text.substring(start, end)
+					start = end + length
+					end = text.indexOf(_literal, start)
+				}
+				fields += text.substring(start)
+				var size = fields.size
+				while (size > 0 && fields(size - 1).isEmpty) size = size - 1
+				fields.take(size).toArray
+			}
+		}
+
+	private def scanLiteral (line: String, starts: Array[Int], ends: Array[Int]): Int = {
+		val maxFields = starts.length
+		val length = _literal.length
+		var count = 0
+		var lastNonEmpty = -1
+		var start = 0
+		var end = line.indexOf(_literal)
+
+		if (-1 == end) {
+			// No separators at all - String.split gives back the whole line, even if it is empty.
+			if (maxFields > 0) {
+				starts(0) = 0
+				ends(0) = line.length
+			}
+			math.min(1, maxFields)
+		} else {
+			while (-1 != end && count < maxFields) {
+				starts(count) = start
+				ends(count) = end
+				if (end > start) lastNonEmpty = count
+				count = count + 1
+				start = end + length
+				end = line.indexOf(_literal, start)
+			}
+
+			if (count < maxFields) {
+				// We ran out of separators; the rest of the line is the last field
+				starts(count) = start
+				ends(count) = line.length
+				if (line.length > start) lastNonEmpty = count
+				count = count + 1
+			} else {
+				// We have all the fields we want.  Any trailing empty fields we've found only count if there are
+				// non-empty fields after them.
+				var position = start
+				while (line.startsWith(_literal, position)) position = position + length
+				if (position < line.length) lastNonEmpty = count - 1
+			}
+			lastNonEmpty + 1
+		}
+	}
+
+	private def scanPattern (line: String, starts: Array[Int], ends: Array[Int]): Int = {
+		val maxFields = starts.length
+		val matcher = _pattern.matcher(line)
+		var total = 0
+		var lastNonEmpty = -1
+		var start = 0
+
+		def addField (end: Int): Unit = {
+			if (total < maxFields) {
+				starts(total) = start
+				ends(total) = end
+			}
+			if (end > start) lastNonEmpty = total
+			total = total + 1
+		}
+
+		while (matcher.find()) {
+			// Like String.split, a zero-width match at the start of the line doesn't create a leading empty field
+			if (!(0 == matcher.start() && 0 == matcher.end())) {
+				addField(matcher.start())
+				start = matcher.end()
+			}
+		}
+
+		if (0 == total) {
+			if (maxFields > 0) {
+				starts(0) = 0
+				ends(0) = line.length
+			}
+			math.min(1, maxFields)
+		} else {
+			addField(line.length)
+			math.min(lastNonEmpty + 1, maxFields)
+		}
+	}
+}
+
+object DelimitedFieldScanner {
+	private val RegexMetaCharacters = "\\^$.|?*+()[]{}"
+
+	/**
+	 * Determine the literal string matched by a separator regular expression, if it only matches a single,
+	 * fixed string that can be easily determined.
+	 *
+	 * @return The literal separator, or null if the separator must be treated as a regular expression
+	 */
+	private[datasets] def toLiteral (separator: String): String =
+		if (separator.isEmpty) {
+			null
+		} else if (!separator.exists(c => RegexMetaCharacters.indexOf(c) >= 0)) {
+			separator
+		} else if (2 == separator.length && '\\' == separator.charAt(0)) {
+			separator.charAt(1) match {
+				case 't' => "\t"
+				case 'n' => "\n"
+				case 'r' => "\r"
+				case 'f' => "\f"
+				case c if !Character.isLetterOrDigit(c) => c.toString
+				case _ => null
+			}
+		} else {
+			null
+		}
+}
+
+
+
+/**
+ * A parser for a single field of delimited text.
+ *
+ * Field parsers work directly on a range of characters in the original line, and never throw exceptions on bad
+ * input; instead, unparsable input is signified by a return value of null.
+ *
+ * @param dataType The type of value produced by this parser
+ */
+abstract class FieldParser (val dataType: DataType) extends Serializable {
+	/**
+	 * Parse a field
+	 *
+	 * @param text The text containing the field
+	 * @param start The offset of the start of the field in the text
+	 * @param end The offset just past the end of the field in the text
+	 * @return The parsed value, or null if the field couldn't be parsed
+	 */
+	def parse (text: String, start: Int, end: Int): Any
+
+	/** Parse an entire string as a field */
+	def parse (text: String): Any = parse(text, 0, text.length)
+}
+
+object FieldParser {
+	private val DoublePowersOfTen: Array[Double] = Array.tabulate(23)(n => math.pow(10.0, n))
+	private val FloatPowersOfTen: Array[Float] = Array.tabulate(11)(n => math.pow(10.0, n).toFloat)
+
+	/** Find the first non-whitespace character in a range, using the same definition of whitespace as String.trim */
+	def trimStart (text: String, start: Int, end: Int): Int = {
+		var s = start
+		while (s < end && text.charAt(s) <= ' ') s = s + 1
+		s
+	}
+
+	/** Find the end of a range, less any trailing whitespace, using the same definition as String.trim */
+	def trimEnd (text: String, start: Int, end: Int): Int = {
+		var e = end
+		while (e > start && text.charAt(e - 1) <= ' ') e = e - 1
+		e
+	}
+
+	private def digit (c: Char): Int =
+		if ('0' <= c && c <= '9') c - '0'
+		else if (c < 128) -1
+		else Character.digit(c, 10)
+
+
+
+	/** Parses "yes", "true", or "1" as true, and anything else as false */
+	class BooleanParser extends FieldParser(BooleanType) {
+		private def matches (text: String, start: Int, end: Int, value: String): Boolean =
+			end - start == value.length && text.regionMatches(start, value, 0, value.length)
+
+		def parse (text: String, start: Int, end: Int): Any =
+			matches(text, start, end, "yes") || matches(text, start, end, "true") || matches(text, start, end, "1")
+	}
+
+	/**
+	 * Parses a (whitespace-trimmed) decimal integer, accepting the same input as java.lang.Long.parseLong, but
+	 * limited to the given range.
+	 */
+	abstract class IntegralParser (dataType: DataType, min: Long, max: Long) extends FieldParser(dataType) {
+		protected def box (value: Long): Any
+
+		def parse (text: String, start: Int, end: Int): Any = {
+			val s = trimStart(text, start, end)
+			val e = trimEnd(text, s, end)
+			if (s == e) {
+				null
+			} else {
+				var i = s
+				val negative = '-' == text.charAt(i)
+				if (negative || '+' == text.charAt(i)) i = i + 1
+				if (i == e) {
+					null
+				} else {
+					// Accumulate negatively, as Long.parseLong does, so the most negative value doesn't overflow
+					val limit = if (negative) min else -max
+					val multiplyLimit = limit / 10
+					var result = 0L
+					var valid = true
+					while (valid && i < e) {
+						val d = digit(text.charAt(i))
+						if (d < 0 || result < multiplyLimit) {
+							valid = false
+						} else {
+							result = result * 10
+							if (result < limit + d) valid = false
+							else result = result - d
+						}
+						i = i + 1
+					}
+					if (valid) box(if (negative) result else -result)
+					else null
+				}
+			}
+		}
+	}
+
+	/** Parses bytes the way the reader always has - as shorts, wrapped into a byte */
+	class ByteParser extends IntegralParser(ByteType, Short.MinValue, Short.MaxValue) {
+		protected def box (value: Long): Any = value.toByte
+	}
+
+	class ShortParser extends IntegralParser(ShortType, Short.MinValue, Short.MaxValue) {
+		protected def box (value: Long): Any = value.toShort
+	}
+
+	class IntParser extends IntegralParser(IntegerType, Int.MinValue, Int.MaxValue) {
+		protected def box (value: Long): Any = value.toInt
+	}
+
+	class LongParser extends IntegralParser(LongType, Long.MinValue, Long.MaxValue) {
+		protected def box (value: Long): Any = value
+	}
+
+	/**
+	 * Parses (whitespace-trimmed) floating-point numbers.
+	 *
+	 * Simple decimal numbers with few enough digits, and a small enough exponent, that they can be converted
+	 * exactly with a single multiplication or division, are converted directly.  Anything else that looks like
+	 * a number - long mantissas, large exponents, NaN, Infinity, hexadecimal notation, type suffixes - is
+	 * handed off to the JVM's own parser, so the results are always identical to those of Double.parseDouble
+	 * (or Float.parseFloat)
+	 *
+	 * @param maxDigits The maximum number of significant mantissa digits that can be converted exactly
+	 * @param maxExponent The largest power of ten that can be converted exactly
+	 */
+	abstract class FloatingPointParser (dataType: DataType, maxDigits: Int, maxExponent: Int)
+			extends FieldParser(dataType) {
+		protected def exact (mantissa: Long, exponent: Int, negative: Boolean): Any
+		protected def fallback (text: String): Any
+
+		def parse (text: String, start: Int, end: Int): Any = {
+			val s = trimStart(text, start, end)
+			val e = trimEnd(text, s, end)
+			var i = s
+			val negative = i < e && '-' == text.charAt(i)
+			if (i < e && (negative || '+' == text.charAt(i))) i = i + 1
+			val numberStart = i
+
+			var mantissa = 0L
+			var significantDigits = 0
+			var exponent = 0
+			var anyDigits = false
+
+			// Integer part
+			var c = if (i < e) text.charAt(i) else ' '
+			while (i < e && '0' <= c && c <= '9') {
+				anyDigits = true
+				if (mantissa > 0 || c != '0') {
+					if (significantDigits < 18) mantissa = mantissa * 10 + (c - '0')
+					else exponent = exponent + 1
+					significantDigits = significantDigits + 1
+				}
+				i = i + 1
+				c = if (i < e) text.charAt(i) else ' '
+			}
+			// Fractional part
+			if (i < e && '.' == c) {
+				i = i + 1
+				c = if (i < e) text.charAt(i) else ' '
+				while (i < e && '0' <= c && c <= '9') {
+					anyDigits = true
+					if (mantissa > 0 || c != '0') {
+						if (significantDigits < 18) {
+							mantissa = mantissa * 10 + (c - '0')
+							exponent = exponent - 1
+						}
+						significantDigits = significantDigits + 1
+					} else {
+						exponent = exponent - 1
+					}
+					i = i + 1
+					c = if (i < e) text.charAt(i) else ' '
+				}
+			}
+			// Exponent
+			var validExponent = true
+			if (anyDigits && i < e && ('e' == c || 'E' == c)) {
+				i = i + 1
+				val negativeExponent = i < e && '-' == text.charAt(i)
+				if (i < e && (negativeExponent || '+' == text.charAt(i))) i = i + 1
+				var explicitExponent = 0
+				validExponent = false
+				while (i < e && '0' <= text.charAt(i) && text.charAt(i) <= '9') {
+					validExponent = true
+					if (explicitExponent < 100000) explicitExponent = explicitExponent * 10 + (text.charAt(i) - '0')
+					i = i + 1
+				}
+				exponent = exponent + (if (negativeExponent) -explicitExponent else explicitExponent)
+			}
+
+			if (anyDigits && validExponent && i == e) {
+				if (0L == mantissa) exact(0L, 0, negative)
+				else if (significantDigits <= maxDigits && math.abs(exponent) <= maxExponent)
+					exact(mantissa, exponent, negative)
+				else fallback(text.substring(s, e))
+			} else if (numberStart < e && looksNumeric(text, numberStart, e)) {
+				// Special values, hex notation, or type suffixes; rare enough to just let the JVM handle them
+				try {
+					fallback(text.substring(s, e))
+				} catch {
+					case _: NumberFormatException => null
+				}
+			} else {
+				null
+			}
+		}
+
+		private def looksNumeric (text: String, start: Int, end: Int): Boolean = {
+			val first = text.charAt(start)
+			val last = text.charAt(end - 1)
+			'N' == first || 'I' == first || text.startsWith("0x", start) || text.startsWith("0X", start) ||
+				(digit(first) >= 0 || '.' == first) &&
+				('d' == last || 'D' == last || 'f' == last || 'F' == last)
+		}
+	}
+
+	class DoubleParser extends FloatingPointParser(DoubleType, 15, 22) {
+		protected def exact (mantissa: Long, exponent: Int, negative: Boolean): Any = {
+			val magnitude =
+				if (exponent >= 0) mantissa.toDouble * DoublePowersOfTen(exponent)
+				else mantissa.toDouble / DoublePowersOfTen(-exponent)
+			if (negative) -magnitude else magnitude
+		}
+		protected def fallback (text: String): Any = java.lang.Double.parseDouble(text)
+	}
+
+	class FloatParser extends FloatingPointParser(FloatType, 7, 10) {
+		protected def exact (mantissa: Long, exponent: Int, negative: Boolean): Any = {
+			val magnitude =
+				if (exponent >= 0) mantissa.toFloat * FloatPowersOfTen(exponent)
+				else mantissa.toFloat / FloatPowersOfTen(-exponent)
+			if (negative) -magnitude else magnitude
+		}
+		protected def fallback (text: String): Any = java.lang.Float.parseFloat(text)
+	}
+
+	/** Returns fields untouched */
+	class StringParser extends FieldParser(StringType) {
+		def parse (text: String, start: Int, end: Int): Any = text.substring(start, end)
+	}
+
+	/** Parses dotted IP addresses into a sequence of bytes */
+	class IPv4Parser extends FieldParser(ArrayType(ByteType)) {
+		private val _octetParser = new ByteParser
+
+		def parse (text: String, start: Int, end: Int): Any = {
+			val s = trimStart(text, start, end)
+			val e = trimEnd(text, s, end)
+			// Like String.split, ignore trailing empty octets
+			var last = e
+			while (last > s && '.' == text.charAt(last - 1)) last = last - 1
+
+			var octets = 1
+			var i = s
+			while (i < last) {
+				if ('.' == text.charAt(i)) octets = octets + 1
+				i = i + 1
+			}
+
+			val result = new Array[Byte](octets)
+			var octetStart = s
+			var n = 0
+			var valid = true
+			while (valid && n < octets) {
+				var octetEnd = text.indexOf('.', octetStart)
+				if (-1 == octetEnd || octetEnd > last) octetEnd = last
+				val octet = _octetParser.parse(text, octetStart, octetEnd)
+				if (null == octet) valid = false
+				else result(n) = octet.asInstanceOf[Byte]
+				octetStart = octetEnd + 1
+				n = n + 1
+			}
+			if (valid) result.toSeq else null
+		}
+	}
+
+	/** Parses dates into milliseconds since the epoch */
+	class DateParser (format: SimpleDateFormat) extends FieldParser(LongType) {
+		def parse (text: String, start: Int, end: Int): Any = {
+			val s = trimStart(text, start, end)
+			val e = trimEnd(text, s, end)
+			val position = new ParsePosition(0)
+			val date = format.parse(text.substring(s, e), position)
+			if (null == date || 0 == position.getIndex) null
+			else date.getTime
+		}
+	}
+
+	/**
+	 * Parses a single value out of a property map.  If the property occurs several times, the last occurance is
+	 * used.
+	 */
+	class PropertyMapParser (property: String,
+	                         propertySeparator: String,
+	                         valueSeparator: String,
+	                         valueParser: FieldParser) extends FieldParser(valueParser.dataType) {
+		private val _propertyScanner = new DelimitedFieldScanner(propertySeparator)
+		private val _valueScanner = new DelimitedFieldScanner(valueSeparator)
+
+		def parse (text: String, start: Int, end: Int): Any = {
+			val properties = _propertyScanner.split(text.substring(start, end))
+			var value: String = null
+			var n = 0
+			while (n < properties.length) {
+				val keyValue = _valueScanner.split(properties(n))
+				if (keyValue.length > 0 && property == keyValue(0).trim)
+					value = if (keyValue.length > 1) keyValue(1) else ""
+				n = n + 1
+			}
+			if (null == value) null
+			else valueParser.parse(value)
+		}
+	}
+}
@@ -38,7 +38,7 @@ import com.oculusinfo.binning.{TileData, TileIndex}
 import com.oculusinfo.tilegen.tiling.analytics.AnalysisDescription
 import com.oculusinfo.tilegen.tiling.{RDDBinner, TileIO}
 import org.apache.spark.rdd.RDD
-import org.apache.spark.sql.SQLContext
+import org.apache.spark.sql.{SQLContext, SchemaRDD}
 import org.apache.spark.streaming.dstream.DStream
 
 import scala.reflect.ClassTag
@@ -272,6 +272,16 @@ abstract class TilingTask[PT: ClassTag, DT: ClassTag, AT: ClassTag, BT]
 		}
 	}
 
+	// Sibling pipeline branches can run tiling tasks concurrently on the same context, and the SQL
+	// catalog isn't thread-safe, so queries are parsed and analyzed under the context's lock.  Only
+	// running the resulting job happens outside it.
+	protected def query (selectStmt: String): SchemaRDD = sqlc.synchronized {
+		val data = sqlc.sql(selectStmt)
+		// Analysis, which looks the table up in the catalog, is otherwise lazy
+		data.schema
+		data
+	}
+
 	// Axis-related methods and fields
 	private lazy val axisBounds = getAxisBounds()
 
@@ -279,7 +289,7 @@ abstract class TilingTask[PT: ClassTag, DT: ClassTag, AT: ClassTag, BT]
 		val selectStmt =
 			indexer.fields.flatMap(field => List("min(" + field + ")", "max(" + field + ")"))
 				.mkString("SELECT ", ", ", " FROM " + table)
-		val bounds = sqlc.sql(selectStmt).take(1)(0)
+		val bounds = query(selectStmt).take(1)(0)
 		val minBounds = bounds.grouped(2).map(_(0)).toSeq
 		val maxBounds = bounds.grouped(2).map(_(1)).toSeq
 		val (minX, minY) = indexer.indexScheme.toCartesian(minBounds)
@@ -361,7 +371,7 @@ class StaticTilingTask[PT: ClassTag, DT: ClassTag, AT: ClassTag, BT]
 			val selectStmt =
 				allFields.mkString("SELECT ", ", ", " FROM "+table)
 
-			val data = sqlc.sql(selectStmt)
+			val data = query(selectStmt)
 
 			val indexFields = indexer.fields.length
 			val valueFields = valuer.fields.length
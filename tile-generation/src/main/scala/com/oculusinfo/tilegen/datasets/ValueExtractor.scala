@@ -60,6 +60,8 @@ import com.oculusinfo.factory.providers.FactoryProvider
 import com.oculusinfo.factory.providers.AbstractFactoryProvider
 import com.oculusinfo.factory.providers.StandardUberFactoryProvider
 
+import com.oculusinfo.math.statistics.{LogHistogram, QuantileSketch}
+
 import com.oculusinfo.tilegen.tiling.analytics._
 import com.oculusinfo.tilegen.util._
 
@@ -301,6 +303,14 @@ class FieldValueExtractorFactory (parent: ConfigurableFactory[_], path: JavaList
 			                                                                                         new TypeDescriptor(classOf[JavaDouble]),
 			                                                                                         new TypeDescriptor(classOf[JavaDouble])))
 			new StatsValueExtractor[T](field, analytic.asInstanceOf[NumericStatsBinningAnalytic[T]], serializer)(tag, numeric)
+		} else if (analytic.isInstanceOf[NumericQuantileBinningAnalytic[_]]) {
+			serializerFactory.setDefaultValue(UberFactory.FACTORY_TYPE, getDefaultSerializerType("%s-a", classOf[JavaDouble]))
+			val serializer = checkBinClass(produce(classOf[TileSerializer[_]]), classOf[JavaDouble], new TypeDescriptor(classOf[JavaDouble]))
+			new SketchValueExtractor[T, QuantileSketch](field, analytic.asInstanceOf[NumericQuantileBinningAnalytic[T]], serializer)(tag, implicitly[ClassTag[QuantileSketch]], numeric)
+		} else if (analytic.isInstanceOf[NumericHistogramBinningAnalytic[_]]) {
+			serializerFactory.setDefaultValue(UberFactory.FACTORY_TYPE, getDefaultSerializerType("%s-a", classOf[JavaDouble]))
+			val serializer = checkBinClass(produce(classOf[TileSerializer[_]]), classOf[JavaDouble], new TypeDescriptor(classOf[JavaDouble]))
+			new SketchValueExtractor[T, LogHistogram](field, analytic.asInstanceOf[NumericHistogramBinningAnalytic[T]], serializer)(tag, implicitly[ClassTag[LogHistogram]], numeric)
 		} else {
 			serializerFactory.setDefaultValue(UberFactory.FACTORY_TYPE, getDefaultSerializerType("%s-a", conversion.toClass))
 			val serializer = checkBinClass(produce(classOf[TileSerializer[_]]), conversion.toClass, new TypeDescriptor(conversion.toClass))
@@ -382,6 +392,31 @@ class StatsValueExtractor[T: ClassTag] (field: String, analytic: NumericStatsBin
 	override def serializer: TileSerializer[Pair[JavaDouble, JavaDouble]] = _serializer
 }
 
+/**
+ * A value extractor that summarizes the (numeric) values of a single field in each bin with a mergeable sketch (such
+ * as a quantile sketch or a histogram), from which a single value for the bin is read at the end.
+ * @param field The field whose value is used as the record's value
+ * @param analytic The sketching binning analytic used for aggregation by this extractor
+ * @tparam T The numeric type expected for the field in question.  Bins are always written as Java Doubles
+ * @tparam S The type of sketch used
+ */
+class SketchValueExtractor[T: ClassTag, S: ClassTag] (field: String,
+                                                      analytic: BinningAnalytic[S, JavaDouble] with SketchAnalytic[T, S],
+                                                      _serializer: TileSerializer[JavaDouble])
+                          (implicit numeric: ExtendedNumeric[T])
+		extends ValueExtractor[S, JavaDouble] with Serializable {
+	def name = field
+	def fields = Seq(field)
+	override def convert: (Seq[Any]) => S = s => analytic.sketch(s(0).asInstanceOf[T])
+	override def binningAnalytic: BinningAnalytic[S, JavaDouble] = analytic
+	def getTileAnalytics: Seq[AnalysisDescription[TileData[JavaDouble], _]] = {
+		val convertFcn: JavaDouble => T = bt => numeric.fromDouble(bt.doubleValue())
+		Seq(new AnalysisDescriptionTileWrapper[JavaDouble, T](convertFcn, new NumericMinTileAnalytic[T]()),
+		    new AnalysisDescriptionTileWrapper[JavaDouble, T](convertFcn, new NumericMaxTileAnalytic[T]()))
+	}
+	override def serializer: TileSerializer[JavaDouble] = _serializer
+}
+
 object SeriesValueExtractorFactory {
 	private[datasets] val NAME = "series"
 	def provider = ValueExtractorFactory.subFactoryProvider((parent, path) =>
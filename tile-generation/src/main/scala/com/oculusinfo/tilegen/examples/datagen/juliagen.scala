@@ -26,20 +26,235 @@
 package com.oculusinfo.tilegen.examples.datagen
 
 
-import scala.util.control.Breaks
 
-// import com.oculusinfo.math.statistics.PoissonDistribution
+import java.nio.ByteBuffer
+import java.util.Random
+
+import org.apache.hadoop.io.{BytesWritable, NullWritable}
+import org.apache.spark.SparkContext
+import org.apache.spark.SparkContext._
+import org.apache.spark.rdd.RDD
+import org.apache.spark.sql._
+import org.apache.spark.sql.catalyst.expressions.GenericRow
 
 import com.oculusinfo.tilegen.util.{ArgumentParser, MissingArgumentException}
 
 
 
+/**
+ * The parameters defining a generated Julia set data set
+ *
+ * @param cReal The real portion of the parameter defining the Julia set
+ * @param cImag The imaginary portion of the parameter defining the Julia set
+ * @param minReal The minimum real value of the input domain
+ * @param maxReal The maximum real value of the input domain
+ * @param minImag The minimum imaginary value of the input domain
+ * @param maxImag The maximum imaginary value of the input domain
+ * @param samples The total number of sample points to generate
+ * @param partitions The number of partitions into which to break up the data set
+ * @param maxIterations The maximum number of iterations to run for each sample
+ * @param seed An optional random seed, so that the same data set can be regenerated exactly
+ */
+case class JuliaSetParameters (cReal: Double,
+                               cImag: Double,
+                               minReal: Double = -2.0,
+                               maxReal: Double = 2.0,
+                               minImag: Double = -2.0,
+                               maxImag: Double = 2.0,
+                               samples: Long = 10000000L,
+                               partitions: Int = 5,
+                               maxIterations: Int = 1000,
+                               seed: Option[Long] = None)
+
+/**
+ * A block of Julia set samples, stored by column.
+ *
+ * @param size The number of samples in this block
+ * @param real The real coordinate of each sample
+ * @param imag The imaginary coordinate of each sample
+ * @param iterations The number of iterations for which each sample stayed in bounds
+ * @param value The value of the Julia function at each sample when iteration stopped
+ */
+class JuliaSampleBlock (val size: Int,
+                        val real: Array[Double],
+                        val imag: Array[Double],
+                        val iterations: Array[Int],
+                        val value: Array[Double]) extends Serializable
+
+
+
 /**
  * This object generates data for a Julia set, which can then be binned using
  * an inverse maximum aggregator or inverse average aggregator to allow
  * someone to investigate the Julia set.
+ *
+ * Samples are generated and iterated a block at a time, on primitive arrays,
+ * and can be written as text (the original, tab-delimited format), as
+ * sequence files, or as parquet files, or used directly, in memory, as a
+ * SchemaRDD (for instance, to register as a table for a TilingTask).
+ *
+ * Whatever the format, each sample has the columns:
+ * <ol>
+ * <li> real: real coordinate </li>
+ * <li> imag: imaginary coordinate </li>
+ * <li> iterations: number of iterations </li>
+ * <li> maxIterations: maximum number of iterations </li>
+ * <li> value: julia function value </li>
+ * <li> inverse: inverse of julia function value (1/f) </li>
+ * </ol>
  */
 object JuliaSetGenerator {
+	val BLOCK_SIZE = 4096
+
+	/** The schema of generated Julia set data, as a SchemaRDD */
+	val schema = StructType(Seq(StructField("real", DoubleType, false),
+	                            StructField("imag", DoubleType, false),
+	                            StructField("iterations", IntegerType, false),
+	                            StructField("maxIterations", IntegerType, false),
+	                            StructField("value", DoubleType, false),
+	                            StructField("inverse", DoubleType, false)))
+
+	/**
+	 * Iterate the Julia function z -> z^2 + c on each sample of a block, until
+	 * the real part of z leaves (-2, 2), or maxIterations is reached.
+	 */
+	def iterate (block: JuliaSampleBlock, cReal: Double, cImag: Double, maxIterations: Int): Unit = {
+		var i = 0
+		while (i < block.size) {
+			var zr = block.real(i)
+			var zi = block.imag(i)
+			var top = 0
+			var n = 0
+			while (n < maxIterations) {
+				val t = zr * zi
+				zr = zr * zr - zi * zi + cReal
+				zi = t + t + cImag
+				if (math.abs(zr) < 2.0) {
+					top += 1
+					n += 1
+				} else {
+					n = maxIterations
+				}
+			}
+			block.iterations(i) = top
+			block.value(i) = zr
+			i += 1
+		}
+	}
+
+	/**
+	 * Generate Julia set samples, as blocks of columns
+	 */
+	def generateBlocks (sc: SparkContext, params: JuliaSetParameters): RDD[JuliaSampleBlock] = {
+		val samplesPerPartition = (params.samples / params.partitions).toInt
+		sc.parallelize(Range(0, params.partitions), params.partitions).mapPartitionsWithIndex { (partition, ignored) =>
+			val random = params.seed match {
+				case Some(seed) => new Random(seed ^ (partition * 0x9E3779B97F4A7C15L))
+				case None => new Random()
+			}
+			val realRange = params.maxReal - params.minReal
+			val imagRange = params.maxImag - params.minImag
+
+			Iterator.range(0, samplesPerPartition, BLOCK_SIZE).map { start =>
+				val size = math.min(BLOCK_SIZE, samplesPerPartition - start)
+				val block = new JuliaSampleBlock(size, new Array[Double](size), new Array[Double](size),
+				                                 new Array[Int](size), new Array[Double](size))
+				var i = 0
+				while (i < size) {
+					block.real(i) = random.nextDouble * realRange + params.minReal
+					block.imag(i) = random.nextDouble * imagRange + params.minImag
+					i += 1
+				}
+				iterate(block, params.cReal, params.cImag, params.maxIterations)
+				block
+			}
+		}
+	}
+
+	/**
+	 * Generate Julia set samples as a SchemaRDD with our standard schema, which can be registered
+	 * as a table and tiled directly, without ever being written out.
+	 */
+	def generateSchemaRDD (sqlc: SQLContext, params: JuliaSetParameters): SchemaRDD = {
+		val maxIterations = params.maxIterations
+		val rows: RDD[Row] = generateBlocks(sqlc.sparkContext, params).flatMap { block =>
+			Iterator.range(0, block.size).map { i =>
+				val value = block.value(i)
+				new GenericRow(Array[Any](block.real(i), block.imag(i), block.iterations(i), maxIterations,
+				                          value, 1.0 / value))
+			}
+		}
+		sqlc.applySchema(rows, schema)
+	}
+
+	// Append a value to a string builder with 6 decimal places, rounding half-up, as with "%.6f"
+	private def appendFixed6 (builder: java.lang.StringBuilder, value: Double): Unit = {
+		if (value.isNaN || value.isInfinite || math.abs(value) >= 1e12) {
+			builder.append("%.6f".format(value))
+		} else {
+			if (java.lang.Double.doubleToRawLongBits(value) < 0) builder.append('-')
+			val scaled = math.round(math.abs(value) * 1e6)
+			val fraction = scaled % 1000000L
+			builder.append(scaled / 1000000L).append('.')
+			var place = 100000L
+			while (place > fraction && place > 1L) {
+				builder.append('0')
+				place /= 10
+			}
+			builder.append(fraction)
+		}
+	}
+
+	/**
+	 * Generate Julia set samples as lines of tab-delimited text
+	 */
+	def generateText (sc: SparkContext, params: JuliaSetParameters): RDD[String] = {
+		val maxIterations = params.maxIterations
+		generateBlocks(sc, params).mapPartitions { blocks =>
+			val builder = new java.lang.StringBuilder(80)
+			blocks.flatMap(block =>
+				Iterator.range(0, block.size).map { i =>
+					val value = block.value(i)
+					builder.setLength(0)
+					appendFixed6(builder, block.real(i))
+					builder.append('\t')
+					appendFixed6(builder, block.imag(i))
+					builder.append('\t').append(block.iterations(i)).append('\t').append(maxIterations).append('\t')
+					appendFixed6(builder, value)
+					builder.append('\t')
+					appendFixed6(builder, 1.0 / value)
+					builder.toString
+				}
+			)
+		}
+	}
+
+	/**
+	 * Generate Julia set samples, and write them to a sequence file.  Keys are null; each value
+	 * holds one sample, written as by a DataOutput, in the order: real (double), imag (double),
+	 * iterations (int), maxIterations (int), value (double), inverse (double).
+	 */
+	def saveAsSequenceFile (sc: SparkContext, params: JuliaSetParameters, location: String): Unit = {
+		val maxIterations = params.maxIterations
+		generateBlocks(sc, params).mapPartitions { blocks =>
+			// Records are written as soon as they are produced, so we can reuse our writables
+			val buffer = ByteBuffer.allocate(40)
+			val bytes = new BytesWritable()
+			val key = NullWritable.get()
+			blocks.flatMap(block =>
+				Iterator.range(0, block.size).map { i =>
+					val value = block.value(i)
+					buffer.clear()
+					buffer.putDouble(block.real(i)).putDouble(block.imag(i))
+						.putInt(block.iterations(i)).putInt(maxIterations)
+						.putDouble(value).putDouble(1.0 / value)
+					bytes.set(buffer.array(), 0, buffer.position())
+					(key, bytes)
+				}
+			)
+		}.saveAsSequenceFile(location)
+	}
+
 	def main (args: Array[String]): Unit = {
 		val argParser = new ArgumentParser(args)
 		try {
@@ -84,54 +299,35 @@ object JuliaSetGenerator {
 				                                  +"into which to break up "
 				                                  +"the data set.",
 			                                  Some(5))
-			val meanIterations =
-				argParser.getInt("iter",
-				                 "The average number of iterations to use "
-					                 +"for each sample",
-				                 Some(100))
+			val maxIterations = argParser.getInt("maxiter",
+			                                     "The maximum number of iterations "
+				                                     +"to use for each sample",
+			                                     Some(1000))
+			val seed = argParser.getLongOption("seed",
+			                                   "A random seed, so that the same "
+				                                   +"data set can be regenerated "
+				                                   +"exactly.  If not given, each "
+				                                   +"run is different.")
+			val format = argParser.getString("format",
+			                                 "The format in which to write the "
+				                                 +"data: text (tab-delimited), "
+				                                 +"sequence (a sequence file of "
+				                                 +"binary records), or parquet.",
+			                                 Some("text"))
 			val outputFile = argParser.getString("output",
 			                                     "The location to which to "
 				                                     +"output the generated "
 				                                     +"data.",
 			                                     Some("julia"))
 
-
-			val C = new Complex(cReal, cImag)
-			//      val poisson = new PoissonDistribution(meanIterations)
-			sc.parallelize(Range(0, partitions), partitions).flatMap(p =>
-				{
-					// Don't actually care about n, it's just there to make sure
-					// the partition exists
-					Range(0, (samples/partitions).toInt).iterator.map(s =>
-						{
-							// Again, don't care about m, just making sure there are the
-							// right number of samples
-							val zReal = math.random*(maxR-minR)+minR
-							val zImag = math.random*(maxI-minI)+minI
-							//          val N = poisson.sample
-							val N = 1000
-							var Z = new Complex(zReal, zImag)
-							var top = 0
-							val loop = new Breaks
-							loop.breakable {
-								for (n <- 0 until N) {
-									Z = Z.square + C
-									if (math.abs(Z.real) < 2.0) top = top + 1
-									else loop.break
-								}
-							}
-							// Output is in columns:
-							//   1: real coordinate
-							//   2: imaginary coordinate
-							//   3: number of iterations
-							//   4: julia function value
-							//   5: inverse of julia function value (1/f)
-							"%.6f\t%.6f\t%d\t%d\t%.6f\t%.6f".format(zReal, zImag, top, N,
-							                                        Z.real, 1.0/Z.real)
-						}
-					)
-				}
-			).saveAsTextFile(outputFile)
+			val params = JuliaSetParameters(cReal, cImag, minR, maxR, minI, maxI,
+			                                samples, partitions, maxIterations, seed)
+			format.toLowerCase match {
+				case "text" => generateText(sc, params).saveAsTextFile(outputFile)
+				case "sequence" => saveAsSequenceFile(sc, params, outputFile)
+				case "parquet" => generateSchemaRDD(new SQLContext(sc), params).saveAsParquetFile(outputFile)
+				case _ => throw new IllegalArgumentException("Unknown output format "+format)
+			}
 		} catch {
 			case e: MissingArgumentException => {
 				println("JuliaSetGenerator - Generate a Julia Set")
@@ -39,8 +39,9 @@ class GraphBinningAnalytic
 {
 	def aggregate (a: GraphAnalyticsRecord,
 	               b: GraphAnalyticsRecord): GraphAnalyticsRecord = {
-		
-		GraphAnalyticsRecord.addRecords(a,b)
+		// Either record may be cached or shared, so neither is modified; the
+		// result copies only a's list of communities, and inserts b's into it.
+		GraphAnalyticsRecord.addRecords(a, b)
 	}
 
 	/**
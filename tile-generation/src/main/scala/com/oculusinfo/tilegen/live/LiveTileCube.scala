@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.oculusinfo.tilegen.live
+
+
+
+import scala.collection.mutable.{ArrayBuffer, HashMap}
+import scala.reflect.ClassTag
+
+import com.oculusinfo.binning.TileIndex
+import com.oculusinfo.binning.TilePyramid
+
+import com.oculusinfo.tilegen.tiling.analytics.BinningAnalytic
+
+
+
+/**
+ * The contents of one base-level tile of a live tile cube: the partially
+ * aggregated (i.e., unfinished) value of each occupied bin, and the raw
+ * records that fell in the tile, for answering requests for tiles below the
+ * base level.
+ *
+ * Both are stored in parallel arrays, rather than as collections of tuples,
+ * to keep the cube compact.
+ */
+class LiveTileCubeCell[PT] (val binIndices: Array[Int],
+                            val binValues: Array[PT],
+                            val xs: Array[Double],
+                            val ys: Array[Double],
+                            val values: Array[PT])
+		extends Serializable
+
+/**
+ * One partition of a live tile cube, indexed by the base-level tile
+ * coordinates of each of its cells.
+ */
+class LiveTileCubePartition[PT: ClassTag] (baseLevel: Int,
+                                           numXBins: Int,
+                                           numYBins: Int,
+                                           cells: Map[(Int, Int), LiveTileCubeCell[PT]])
+		extends Serializable
+{
+	/**
+	 * Merge the cube cells under a tile at or above the base level into that
+	 * tile's bins.
+	 *
+	 * @return The aggregated value of each occupied bin of the target tile,
+	 *         keyed by bin index (x + y * numXBins)
+	 */
+	def aggregateCells (target: TileIndex, analytic: BinningAnalytic[PT, _]): Array[(Int, PT)] = {
+		val shift = baseLevel - target.getLevel
+		// Top-left corner of the target tile, in target-level universal bins
+		val left = target.getX.toLong * numXBins
+		val top = ((1L << target.getLevel) - target.getY - 1) * numYBins
+		val baseTiles = 1L << baseLevel
+
+		// Look up the base tiles under the target directly, unless there are
+		// more of them than there are cells in this partition
+		val span = 1L << shift
+		val underTarget: Iterator[((Int, Int), LiveTileCubeCell[PT])] =
+			if (shift < 16 && span * span <= cells.size) {
+				val minX = target.getX << shift
+				val minY = target.getY << shift
+				(minX until minX + span.toInt).iterator.flatMap(tileX =>
+					(minY until minY + span.toInt).iterator.flatMap(tileY =>
+						cells.get((tileX, tileY)).map(cell => ((tileX, tileY), cell))
+					)
+				)
+			} else {
+				cells.iterator.filter{case ((tileX, tileY), cell) =>
+					(tileX >> shift) == target.getX && (tileY >> shift) == target.getY
+				}
+			}
+
+		val result = HashMap[Int, PT]()
+		underTarget.foreach{case ((tileX, tileY), cell) =>
+			val baseLeft = tileX.toLong * numXBins
+			val baseTop = (baseTiles - tileY - 1) * numYBins
+			var i = 0
+			while (i < cell.binIndices.length) {
+				val bin = cell.binIndices(i)
+				val x = (((baseLeft + bin % numXBins) >> shift) - left).toInt
+				val y = (((baseTop + bin / numXBins) >> shift) - top).toInt
+				val targetBin = x + y * numXBins
+				val value = cell.binValues(i)
+				result(targetBin) = result.get(targetBin).map(analytic.aggregate(_, value)).getOrElse(value)
+				i += 1
+			}
+		}
+		result.toArray
+	}
+
+	/**
+	 * Bin the raw records under a tile below the base level into that tile's
+	 * bins.
+	 *
+	 * @return The aggregated value of each occupied bin of the target tile,
+	 *         keyed by bin index (x + y * numXBins)
+	 */
+	def aggregateRecords (target: TileIndex, pyramid: TilePyramid,
+	                      analytic: BinningAnalytic[PT, _]): Array[(Int, PT)] = {
+		val shift = target.getLevel - baseLevel
+		val result = HashMap[Int, PT]()
+		cells.get((target.getX >> shift, target.getY >> shift)).foreach(cell =>
+			{
+				var i = 0
+				while (i < cell.xs.length) {
+					val x = cell.xs(i)
+					val y = cell.ys(i)
+					val tile = pyramid.rootToTile(x, y, target.getLevel, numXBins, numYBins)
+					if (tile.getX == target.getX && tile.getY == target.getY) {
+						val bin = pyramid.rootToBin(x, y, target)
+						val targetBin = bin.getX + bin.getY * numXBins
+						val value = cell.values(i)
+						result(targetBin) = result.get(targetBin).map(analytic.aggregate(_, value)).getOrElse(value)
+					}
+					i += 1
+				}
+			}
+		)
+		result.toArray
+	}
+}
+
+object LiveTileCubePartition {
+	/**
+	 * Build a cube partition from the records in one partition of a data
+	 * set, each keyed by the base-level tile into which it falls.
+	 */
+	def apply[PT: ClassTag] (records: Iterator[((Int, Int), (Double, Double, PT))],
+	                         pyramid: TilePyramid,
+	                         baseLevel: Int,
+	                         numXBins: Int,
+	                         numYBins: Int,
+	                         analytic: BinningAnalytic[PT, _]): LiveTileCubePartition[PT] = {
+		val byTile = HashMap[(Int, Int), ArrayBuffer[(Double, Double, PT)]]()
+		records.foreach{case (key, record) =>
+			byTile.getOrElseUpdate(key, ArrayBuffer[(Double, Double, PT)]()) += record
+		}
+
+		val cells = byTile.map{case (key, tileRecords) =>
+			val tile = new TileIndex(baseLevel, key._1, key._2, numXBins, numYBins)
+			val bins = HashMap[Int, PT]()
+			tileRecords.foreach(record =>
+				{
+					val bin = pyramid.rootToBin(record._1, record._2, tile)
+					val binIndex = bin.getX + bin.getY * numXBins
+					bins(binIndex) = bins.get(binIndex).map(analytic.aggregate(_, record._3)).getOrElse(record._3)
+				}
+			)
+			val sortedBins = bins.toArray.sortBy(_._1)
+
+			(key, new LiveTileCubeCell[PT](sortedBins.map(_._1),
+			                               sortedBins.map(_._2),
+			                               tileRecords.map(_._1).toArray,
+			                               tileRecords.map(_._2).toArray,
+			                               tileRecords.map(_._3).toArray))
+		}.toMap
+
+		new LiveTileCubePartition[PT](baseLevel, numXBins, numYBins, cells)
+	}
+}
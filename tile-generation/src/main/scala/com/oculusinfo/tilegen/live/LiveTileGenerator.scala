@@ -26,8 +26,10 @@
 package com.oculusinfo.tilegen.live
 
 
+import scala.collection.mutable.HashMap
 import scala.reflect.ClassTag
 
+import org.apache.spark.HashPartitioner
 import org.apache.spark.SparkContext._
 import org.apache.spark.rdd.RDD
 
@@ -41,29 +43,112 @@ import com.oculusinfo.tilegen.tiling.analytics.BinningAnalytic
 
 
 
+/**
+ * Generates tiles on demand from a data set.
+ *
+ * The first request builds a cube of partially aggregated bin values for
+ * every tile at a base level, cached in memory as an RDD keyed (and
+ * partitioned) by base-level tile, with each partition indexed by tile.
+ * Requests for tiles at or above the base level are then answered by merging
+ * the cube cells under them; requests for tiles below it, by scanning the
+ * raw records of the single base-level tile above them.  Either way, only the
+ * partitions holding the relevant base-level tiles are touched.
+ *
+ * The choice of base level trades the size of the cube (up to 4^baseLevel
+ * cells of numXBins x numYBins bins each, though only occupied bins are
+ * stored) against the number of records scanned for deeper tiles.
+ *
+ * @param data The data from which to generate tiles, as (x, y, value)
+ *             records
+ * @param baseLevel The level at which to build the cube
+ * @param numPartitions The number of partitions into which to divide the
+ *                      cube; defaults to the number of partitions of the
+ *                      data set.
+ */
 class LiveTileGenerator[PT: ClassTag,
                         BT: ClassTag] (data: RDD[(Double, Double, PT)],
                                        pyramidScheme: TilePyramid,
                                        binAnalytic: BinningAnalytic[PT, BT],
                                        numXBins: Int = 256,
-                                       numYBins: Int = 256) {
-	def getTile (tileLevel: Int, tileX: Int, tileY: Int): TileData[BT] = {
+                                       numYBins: Int = 256,
+                                       baseLevel: Int = 8,
+                                       numPartitions: Option[Int] = None) {
+	private val partitioner = new HashPartitioner(numPartitions.getOrElse(data.partitions.size))
+
+	private lazy val cube: RDD[LiveTileCubePartition[PT]] = {
 		// Localize some of our fields to avoid the need for serialization
 		val localPyramidScheme = pyramidScheme
 		val localBinAnalytic = binAnalytic
-		val targetTile = new TileIndex(tileLevel, tileX, tileY, numXBins, numYBins)
+		val localBaseLevel = baseLevel
+		val localNumXBins = numXBins
+		val localNumYBins = numYBins
+		val localValueTag = implicitly[ClassTag[PT]]
 
-		val bins = data.filter(record =>
+		val cube = data.map(record =>
 			{
-				val tile = localPyramidScheme.rootToTile(record._1, record._2, tileLevel)
-				tileX == tile.getX() && tileY == tile.getY()
+				val tile = localPyramidScheme.rootToTile(record._1, record._2, localBaseLevel,
+				                                         localNumXBins, localNumYBins)
+				((tile.getX(), tile.getY()), record)
 			}
-		).map(record =>
-			{
-				val bin = localPyramidScheme.rootToBin(record._1, record._2, targetTile)
-				(bin, record._3)
+		).partitionBy(partitioner).mapPartitions(records =>
+			Iterator(LiveTileCubePartition(records, localPyramidScheme, localBaseLevel,
+			                               localNumXBins, localNumYBins, localBinAnalytic)(localValueTag)),
+			true
+		).cache
+		cube.setName("Live tile cube, base level "+baseLevel)
+		cube
+	}
+
+	/**
+	 * Build the cube now, rather than on the first tile request.
+	 */
+	def prepare (): Unit = cube.count()
+
+	/**
+	 * Release the cube.
+	 */
+	def unpersist (): Unit = cube.unpersist(blocking=false)
+
+	// The partitions holding the base-level tiles under (or over) a tile
+	private def getPartitions (tile: TileIndex): Seq[Int] = {
+		if (tile.getLevel > baseLevel) {
+			val shift = tile.getLevel - baseLevel
+			Seq(partitioner.getPartition((tile.getX >> shift, tile.getY >> shift)))
+		} else {
+			val scale = 1 << (baseLevel - tile.getLevel)
+			if (scale.toLong * scale >= 4L * partitioner.numPartitions) {
+				// More than enough base tiles to hit every partition anyway
+				Range(0, partitioner.numPartitions)
+			} else {
+				val x0 = tile.getX * scale
+				val y0 = tile.getY * scale
+				(for (x <- x0 until x0 + scale; y <- y0 until y0 + scale)
+				 yield partitioner.getPartition((x, y))).distinct.sorted
 			}
-		).reduceByKey(localBinAnalytic.aggregate(_, _)).collect()
+		}
+	}
+
+	def getTile (tileLevel: Int, tileX: Int, tileY: Int): TileData[BT] = {
+		// Localize some of our fields to avoid the need for serialization
+		val localPyramidScheme = pyramidScheme
+		val localBinAnalytic = binAnalytic
+		val targetTile = new TileIndex(tileLevel, tileX, tileY, numXBins, numYBins)
+
+		val partitionBins: Array[Array[(Int, PT)]] =
+			if (tileLevel <= baseLevel) {
+				cube.context.runJob(cube, (partitions: Iterator[LiveTileCubePartition[PT]]) =>
+					partitions.flatMap(_.aggregateCells(targetTile, localBinAnalytic)).toArray,
+				                    getPartitions(targetTile), false)
+			} else {
+				cube.context.runJob(cube, (partitions: Iterator[LiveTileCubePartition[PT]]) =>
+					partitions.flatMap(_.aggregateRecords(targetTile, localPyramidScheme, localBinAnalytic)).toArray,
+				                    getPartitions(targetTile), false)
+			}
+
+		val bins = HashMap[Int, PT]()
+		partitionBins.foreach(_.foreach{case (bin, value) =>
+			bins(bin) = bins.get(bin).map(localBinAnalytic.aggregate(_, value)).getOrElse(value)
+		})
 
 		val tile = new DenseTileData[BT](targetTile)
 		val defaultBinValue = localBinAnalytic.finish(localBinAnalytic.defaultProcessedValue)
@@ -76,7 +161,7 @@ class LiveTileGenerator[PT: ClassTag,
 			{
 				val bin = p._1
 				val value = p._2
-				tile.setBin(bin.getX(), bin.getY(), localBinAnalytic.finish(value))
+				tile.setBin(bin % numXBins, bin / numXBins, localBinAnalytic.finish(value))
 			}
 		)
 		tile
@@ -106,7 +106,8 @@ object PipelineOperations {
 	 */
 	def cacheDataOp()(input: PipelineData) = {
 		val tableName = getOrGenTableName(input, "cached_table_")
-		input.sqlContext.cacheTable(tableName)
+		// Sibling pipeline branches can run concurrently, and the SQL catalog isn't thread-safe
+		input.sqlContext.synchronized(input.sqlContext.cacheTable(tableName))
 		PipelineData(input.sqlContext, input.srdd, Some(tableName))
 	}
 
@@ -317,7 +318,8 @@ object PipelineOperations {
 	def getOrGenTableName(input: PipelineData, baseName: String) = {
 		input.tableName.getOrElse {
 			val name = baseName + tableIdCount.getAndIncrement
-			input.srdd.registerTempTable(name)
+			// Sibling pipeline branches can run concurrently, and the SQL catalog isn't thread-safe
+			input.sqlContext.synchronized(input.srdd.registerTempTable(name))
 			name
 		}
 	}
@@ -26,9 +26,14 @@
  */
 package com.oculusinfo.tilegen.pipeline
 
+import java.util.{Collections, IdentityHashMap}
+import java.util.concurrent.{Callable, ExecutionException, Executors, Future, Semaphore, ThreadFactory}
+import java.util.concurrent.atomic.AtomicInteger
+
 import grizzled.slf4j.Logging
 import org.apache.spark.sql.catalyst.types.StructType
 import org.apache.spark.sql.{SchemaRDD, SQLContext}
+import org.apache.spark.storage.StorageLevel
 
 /**
  * Data that is passed from stage to stage of the tile pipeline.
@@ -74,28 +79,148 @@ case class PipelineStage(name: String, op: PipelineData => PipelineData, var chi
  * Pipelines.execute(parent, sqlc)
  * }}}
  *
+ * The output of any stage with more than one child is persisted before its children run, so that
+ * each branch doesn't recompute it, and is unpersisted once all its children have finished.  Sibling
+ * branches may be run as concurrent Spark jobs, up to a configurable limit; Pipelines.runPipeline
+ * does so by default.
  */
 object PipelineTree extends Logging {
+	/** Default maximum number of pipeline branches Pipelines.runPipeline runs at once */
+	val DEFAULT_MAX_CONCURRENT_BRANCHES = 4
+	/** Default storage level for the output of stages with more than one child */
+	val DEFAULT_SHARED_STORAGE_LEVEL = StorageLevel.MEMORY_AND_DISK
+
 	/**
-	 * Executes the pipeline via depth first tree traversal.
+	 * Executes the pipeline.  Each stage is run before its children.  Unless maxConcurrentBranches
+	 * is raised, the pipeline is executed via depth first tree traversal, in child order; with
+	 * maxConcurrentBranches greater than 1, the children of a stage are run concurrently, up to
+	 * maxConcurrentBranches at a time.
+	 *
+	 * Concurrent branches share a single SQLContext, which is not thread-safe.  The pipeline and
+	 * tiling operations register, cache and query tables while holding the context's lock; custom
+	 * stages that use the table catalog must do the same (sqlContext.synchronized) to be run
+	 * concurrently.
 	 *
 	 * @param start PipelineStage to start the traversal from
 	 * @param sqlContext Spark SQL context to run the jobs under
 	 * @param input Optional start data.  Data based on an empty SchemaRDD will be used if not set.
+	 * @param sharedStorageLevel The storage level with which to persist the output of stages with more
+	 *                           than one child.  StorageLevel.NONE turns this automatic persistence off.
+	 * @param maxConcurrentBranches The maximum number of branches of the pipeline to run at once.
+	 *                              Defaults to 1 (no concurrency).
 	 */
-	def execute(start: PipelineStage, sqlContext: SQLContext, input: Option[PipelineData] = None) = {
+	def execute(start: PipelineStage, sqlContext: SQLContext, input: Option[PipelineData] = None,
+	            sharedStorageLevel: StorageLevel = DEFAULT_SHARED_STORAGE_LEVEL,
+	            maxConcurrentBranches: Int = 1) = {
+		require(maxConcurrentBranches > 0, "maxConcurrentBranches must be positive")
+
 		// TODO: Should run a check for cycles here (tsort?)
+		val branches = new BranchRunner(maxConcurrentBranches)
+		// Data persisted by this execution; stages that pass their input through unchanged mustn't
+		// persist (and so unpersist) it again
+		val persistedData = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap[SchemaRDD, java.lang.Boolean]))
 		def ex(stage: PipelineStage, result: PipelineData): Unit = {
 			logger.info(s"Executing pipeline stage [${stage.name}]")
 			val stageResult = stage.op(result)
-			stage.children.foreach(ex(_, stageResult))
+			stage.children match {
+				case Nil =>
+				case child :: Nil => ex(child, stageResult)
+				case children =>
+					val persisted = !persistedData.contains(stageResult.srdd) &&
+						persistShared(stage, stageResult, sharedStorageLevel, maxConcurrentBranches > 1)
+					if (persisted) persistedData.add(stageResult.srdd)
+					try {
+						branches.runAll(children.map(child => () => ex(child, stageResult)))
+					} finally {
+						if (persisted) {
+							logger.info(s"Unpersisting shared output of pipeline stage [${stage.name}]")
+							persistedData.remove(stageResult.srdd)
+							stageResult.srdd.unpersist(false)
+						}
+					}
+			}
+		}
+
+		try {
+			input match {
+				case Some(i) => ex(start, i)
+				case None =>
+					val emptySchema = sqlContext.jsonRDD(sqlContext.sparkContext.emptyRDD[String], new StructType(Seq()))
+					ex(start, PipelineData(sqlContext, emptySchema))
+			}
+		} finally {
+			branches.shutdown()
+		}
+	}
+
+	// Persist the output of a stage that is about to be used by several branches, unless it is
+	// already cached; returns true if it was persisted here (and so should be unpersisted here too)
+	private def persistShared (stage: PipelineStage, data: PipelineData, level: StorageLevel,
+	                           materialize: Boolean): Boolean = {
+		// Note that SchemaRDDs cache their query plan, rather than setting a storage level on the RDD
+		val alreadyCached =
+			StorageLevel.NONE != data.srdd.getStorageLevel ||
+				data.tableName.exists(data.sqlContext.isCached(_))
+		if (StorageLevel.NONE == level || alreadyCached) {
+			false
+		} else {
+			logger.info(s"Persisting shared output of pipeline stage [${stage.name}] at $level")
+			data.srdd.persist(level)
+			// Compute it once up front, so concurrent branches don't race to compute the same partitions
+			if (materialize) data.srdd.count()
+			true
+		}
+	}
+
+	/*
+	 * Runs sibling branches of a pipeline.  At most maxConcurrent branches run at once; a branch
+	 * that can't get a slot is run on the calling thread, so branches that fan out themselves
+	 * never wait on the pool, and can't deadlock it.
+	 */
+	private class BranchRunner (maxConcurrent: Int) {
+		private val slots = new Semaphore(maxConcurrent - 1)
+		private lazy val pool = Executors.newCachedThreadPool(new ThreadFactory {
+			private val count = new AtomicInteger(0)
+			def newThread (r: Runnable): Thread = {
+				val thread = new Thread(r, "pipeline-branch-" + count.getAndIncrement)
+				thread.setDaemon(true)
+				thread
+			}
+		})
+		private var poolUsed = false
+
+		def runAll (branches: Seq[() => Unit]): Unit = {
+			// Start whatever branches we can in the background, keeping the last for this thread
+			val background: Seq[Future[Unit]] = branches.init.flatMap { branch =>
+				if (slots.tryAcquire()) {
+					synchronized(poolUsed = true)
+					Some(pool.submit(new Callable[Unit] {
+						def call (): Unit = try branch() finally slots.release()
+					}))
+				} else {
+					branch()
+					None
+				}
+			}
+			var failure: Option[Throwable] = None
+			try {
+				branches.last()
+			} catch {
+				case t: Throwable => failure = Some(t)
+			}
+			// Wait for all branches, even if one has failed, so none outlive the pipeline
+			background.foreach { future =>
+				try {
+					future.get()
+				} catch {
+					case e: ExecutionException => if (failure.isEmpty) failure = Some(e.getCause)
+				}
+			}
+			failure.foreach(throw _)
 		}
 
-		input match {
-			case Some(i) => ex(start, i)
-			case None =>
-				val emptySchema = sqlContext.jsonRDD(sqlContext.sparkContext.emptyRDD[String], new StructType(Seq()))
-				ex(start, PipelineData(sqlContext, emptySchema))
+		def shutdown (): Unit = synchronized {
+			if (poolUsed) pool.shutdown()
 		}
 	}
 }
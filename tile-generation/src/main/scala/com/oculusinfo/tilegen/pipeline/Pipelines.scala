@@ -130,9 +130,13 @@ class Pipelines(val pipelineRoots: Map[String, PipelineStage] = Map.empty,
 	 *
 	 * @param pipelineId Unique ID of the pipeline.
 	 * @param sqlContext Spark SQL context to run the job under.
+	 * @param maxConcurrentBranches The maximum number of branches of the pipeline to run at once; 1
+	 *                              runs them one at a time, depth first.  See PipelineTree.execute
+	 *                              for what custom stages must do to be run concurrently.
 	 */
-	def runPipeline(pipelineId: String, sqlContext: SQLContext) = {
-		PipelineTree.execute(pipelineRoots(pipelineId), sqlContext)
+	def runPipeline(pipelineId: String, sqlContext: SQLContext,
+	                maxConcurrentBranches: Int = PipelineTree.DEFAULT_MAX_CONCURRENT_BRANCHES) = {
+		PipelineTree.execute(pipelineRoots(pipelineId), sqlContext, maxConcurrentBranches = maxConcurrentBranches)
 	}
 
 	private def findNode(nodeId: String, toVisit: List[PipelineStage]): Option[PipelineStage] = {
@@ -45,8 +45,11 @@ import org.apache.hadoop.conf.Configuration
 import org.apache.hadoop.fs.FileSystem
 import org.apache.hadoop.fs.Path
 import org.apache.hadoop.io.BytesWritable
+import org.apache.hadoop.io.LongWritable
+import org.apache.hadoop.io.MapFile
 import org.apache.hadoop.io.Text
 import org.apache.hadoop.io.SequenceFile
+import org.apache.hadoop.mapred.MapFileOutputFormat
 
 import org.apache.spark.SparkContext
 import org.apache.spark.SparkContext._
@@ -58,6 +61,7 @@ import com.oculusinfo.binning.TileData
 import com.oculusinfo.binning.io.PyramidIO
 import com.oculusinfo.binning.io.impl.FileBasedPyramidIO
 import com.oculusinfo.binning.io.impl.FileSystemPyramidSource
+import com.oculusinfo.binning.io.impl.SequenceFilePyramidIO
 import com.oculusinfo.binning.io.serialization.TileSerializer
 import com.oculusinfo.binning.metadata.PyramidMetaData
 
@@ -84,6 +88,11 @@ import com.oculusinfo.tilegen.util.MissingArgumentException
  * subdirectories, so they can be read out the same way, with later writes
  * overwriting earlier.
  * 
+ * Each set is sorted, and written as MapFiles keyed by the binary (level,
+ * Morton code) key of SequenceFilePyramidIO, which can then serve individual
+ * tiles directly, without a Spark job.  Older sets, written as plain
+ * SequenceFiles keyed by the tile index string, can still be read here.
+ * 
  * MetaData is written as a separate file, in the base directory with the 
  * numerically increasing subdirectories.
  * 
@@ -120,7 +129,7 @@ class SequenceFileTileIO (connection: String) extends TileIO {
 
 
 
-	def getPyramidIO : PyramidIO = null
+	def getPyramidIO : PyramidIO = new SequenceFilePyramidIO(connection)
 
 	override def readTileSet[T] (sc: SparkContext,
 	                             serializer: TileSerializer[T],
@@ -130,19 +139,33 @@ class SequenceFileTileIO (connection: String) extends TileIO {
 		checkBaseLocation(fs, baseLocation)
 		val fullLocation = getFullLocation(baseLocation)
 
+		val levelSet = levels.toSet
 		val blocks = getBlocks(fs, fullLocation)
 		blocks.map(block =>
 			{
-				sc.sequenceFile(block.getName, classOf[Text], classOf[BytesWritable], 1)
-					.map(pair =>
-					{
-						val key = pair._1.toString
-						val value = pair._2.getBytes
-						val index = TileIndex.fromString(key)
-
-						serializer.deserialize(index, new ByteArrayInputStream(value))
-					}
-				)
+				if (isMapFileBlock(fs, block)) {
+					sc.sequenceFile(block.toString+"/*/"+MapFile.DATA_FILE_NAME,
+					                classOf[LongWritable], classOf[BytesWritable], 1)
+						.filter(pair => levelSet.contains(SequenceFilePyramidIO.getTileLevel(pair._1.get)))
+						.map(pair =>
+						{
+							val index = SequenceFilePyramidIO.getTileIndex(pair._1.get)
+							val value = new ByteArrayInputStream(pair._2.getBytes, 0, pair._2.getLength)
+
+							serializer.deserialize(index, value)
+						}
+					)
+				} else {
+					sc.sequenceFile(block.toString, classOf[Text], classOf[BytesWritable], 1)
+						.map(pair =>
+						{
+							val index = TileIndex.fromString(pair._1.toString)
+							val value = new ByteArrayInputStream(pair._2.getBytes, 0, pair._2.getLength)
+
+							serializer.deserialize(index, value)
+						}
+					).filter(tile => levelSet.contains(tile.getDefinition.getLevel))
+				}
 			}
 		).fold(sc.emptyRDD[TileData[T]])(_ union _)
 	}
@@ -171,33 +194,36 @@ class SequenceFileTileIO (connection: String) extends TileIO {
 		val ybins = data.context.accumulator(0)(new IntMaxAccumulatorParam)
 
 
-		// Turn each tile into a table row, noting mins, maxes, and counts as
-		// we go.  Note that none of the min/max/count accumulation is actually
-		// done until the file is writting - this just sets it up, it doesn't
-		// run it
-		val tileSequence: RDD[(String, Array[Byte])] = data.mapPartitions(iter =>
+		// Serialize each tile, keyed by its binary tile key.  We keep the bin
+		// counts alongside, so the statistics below can be gathered after the
+		// sort - the sort samples its input, which would otherwise count
+		// tiles twice.
+		val tileSequence: RDD[(Long, (Int, Int, Array[Byte]))] = data.map(tile =>
 			{
-				iter.map(tile =>
-					{
-						val index = tile.getDefinition()
-						val level = index.getLevel()
+				val index = tile.getDefinition()
+				val baos = new ByteArrayOutputStream()
+				serializer.serialize(tile, baos);
+				baos.close
 
-						// Update count, level bounds, tile sizes
-						tileCount += 1
-						levelSet += level
-						xbins += index.getXBins
-						ybins += index.getYBins
+				(SequenceFilePyramidIO.getTileKey(index),
+				 (index.getXBins, index.getYBins, baos.toByteArray))
+			}
+		)
 
-						// Create a Put (a table write object) that will write this tile
-						val baos = new ByteArrayOutputStream()
-						serializer.serialize(tile, baos);
-						baos.close
-						baos.flush
+		// MapFiles must be written in key order.  Note that none of the
+		// count/level/size accumulation is actually done until the file is
+		// written - this just sets it up, it doesn't run it
+		val sortedTiles = tileSequence.sortByKey().map(record =>
+			{
+				val (key, (xBins, yBins, bytes)) = record
 
+				// Update count, level bounds, tile sizes
+				tileCount += 1
+				levelSet += SequenceFilePyramidIO.getTileLevel(key)
+				xbins += xBins
+				ybins += yBins
 
-						(index.toString, baos.toByteArray)
-					}
-				)
+				(new LongWritable(key), new BytesWritable(bytes))
 			}
 		)
 
@@ -208,12 +234,11 @@ class SequenceFileTileIO (connection: String) extends TileIO {
 		val block = maxBlock+1
 		val blockLocation = getBlockLocation(block, baseLocation)
 		println("Saving block "+block+" to "+blockLocation)
-		tileSequence.saveAsSequenceFile(blockLocation)
+		sortedTiles.saveAsHadoopFile(blockLocation, classOf[LongWritable], classOf[BytesWritable],
+		                             classOf[MapFileOutputFormat])
 
 
 
-		// TODO: Actually write the data!
-		// (And: figure out in how many partitions to write it)
 		println("Input tiles: "+tileCount)
 		println("Input levels: "+levelSet.value)
 		println("X bins: "+xbins.value)
@@ -284,7 +309,14 @@ object SequenceFileTileIO {
 	}
 
 	def getMetaDataPath (location: Path) =
-		new Path(location, "metadata")
+		new Path(location, SequenceFilePyramidIO.METADATA_FILENAME)
+
+	/**
+	 * Determine if a block was written as sorted MapFiles (as opposed to the
+	 * older plain sequence files)
+	 */
+	def isMapFileBlock (fs: FileSystem, block: Path): Boolean =
+		fs.listStatus(block).exists(status => SequenceFilePyramidIO.isMapFile(fs, status.getPath))
 
 	def localizeFiles[T] (hdfsLoc: String, fsLoc: String, serializer: TileSerializer[T]): Unit = {
 		// Make sure our source location exists
@@ -309,17 +341,26 @@ object SequenceFileTileIO {
 		getBlocks(fs, hdfsBase).sortBy(getBlockNum(_)).foreach(block =>
 			{
 				println("Looking at block "+block)
-				val fileIter = fs.listFiles(block, false)
+				val fileIter = fs.listLocatedStatus(block)
 				while (fileIter.hasNext) {
 					val status = fileIter.next
 					val path = status.getPath
-					if ("_SUCCESS" != path.getName) {
-						val reader = new SequenceFile.Reader(fs.getConf, SequenceFile.Reader.file(path))
-						val key = new Text
+					if (!path.getName.startsWith("_")) {
+						// MapFile blocks have a directory per part; older blocks
+						// a plain sequence file per part.
+						val dataPath =
+							if (SequenceFilePyramidIO.isMapFile(fs, path)) new Path(path, MapFile.DATA_FILE_NAME)
+							else path
+						val reader = new SequenceFile.Reader(fs.getConf, SequenceFile.Reader.file(dataPath))
+						val binaryKeys = classOf[LongWritable] == reader.getKeyClass
+						val key = if (binaryKeys) new LongWritable else new Text
 						val value = new BytesWritable
 						while (reader.next(key, value)) {
-							val index = TileIndex.fromString(key.toString)
-							val bais = new ByteArrayInputStream(value.getBytes)
+							val index = key match {
+								case longKey: LongWritable => SequenceFilePyramidIO.getTileIndex(longKey.get)
+								case textKey => TileIndex.fromString(textKey.toString)
+							}
+							val bais = new ByteArrayInputStream(value.getBytes, 0, value.getLength)
 							val tile = serializer.deserialize(index, bais)
 							fsio.writeTiles(fsLoc, serializer, List(tile).asJava)
 						}
@@ -28,23 +28,27 @@ package com.oculusinfo.tilegen.tiling.analytics
 
 
 import java.lang.{Double => JavaDouble}
+import java.text.DecimalFormat
 import java.util.{List => JavaList}
 import com.oculusinfo.factory.ConfigurableFactory
 import com.oculusinfo.factory.properties.{IntegerProperty, DoubleProperty, StringProperty}
 import com.oculusinfo.factory.util.Pair
+import com.oculusinfo.math.statistics.{LogHistogram, QuantileSketch}
 import com.oculusinfo.tilegen.tiling.IPv4ZCurveIndexScheme._
 import com.oculusinfo.tilegen.util.{NumericallyConfigurableFactory, ExtendedNumeric, TypeConversion}
-import org.json.JSONObject
+import org.json.{JSONArray, JSONObject}
 import scala.reflect.ClassTag
 import com.oculusinfo.tilegen.util.OptionsFactoryMixin
 
 
 object NumericAnalyticFactory {
 	val AGGREGATION_TYPE = new StringProperty("aggregation", "The type of analytic to use", "sum",
-	                                          Array[String]("sum", "min", "max", "mean", "stats"))
+	                                          Array[String]("sum", "min", "max", "mean", "stats", "median", "quantile", "histogram"))
 	val MIN_COUNT = new IntegerProperty("mincount", "The minimum number of data points a bin must have to be considered for statistical binning", 1)
 	val EMPTY_MEAN = new DoubleProperty("emptymean", "The value to use as a bin's mean when it doesn't have enough data", JavaDouble.NaN)
 	val EMPTY_DEV = new DoubleProperty("emptydev", "The value to use as a bin's standard deviation when it doesn't have enough data", JavaDouble.NaN)
+	val QUANTILE = new DoubleProperty("quantile", "The quantile (between 0 and 1) to record in each bin, for quantile and histogram aggregation", 0.5)
+	val ACCURACY = new DoubleProperty("accuracy", "The relative accuracy of values read from histograms, for histogram aggregation", LogHistogram.DEFAULT_RELATIVE_ACCURACY)
 }
 class NumericBinningAnalyticFactory (name: String,
                                      parent: ConfigurableFactory[_],
@@ -56,6 +60,8 @@ class NumericBinningAnalyticFactory (name: String,
 	addProperty(EMPTY_MEAN)
 	addProperty(EMPTY_DEV)
 	addProperty(MIN_COUNT)
+	addProperty(QUANTILE)
+	addProperty(ACCURACY)
 
 
 
@@ -84,6 +90,10 @@ class NumericBinningAnalyticFactory (name: String,
 			case "average" => new NumericMeanBinningAnalytic[ST](getPropertyValue(EMPTY_MEAN), getPropertyValue(MIN_COUNT))(numeric)
 			case "stats" =>   new NumericStatsBinningAnalytic[ST]((getPropertyValue(EMPTY_MEAN), getPropertyValue(EMPTY_DEV)),
 			                                                      getPropertyValue(MIN_COUNT))(numeric)
+			case "median" =>  new NumericQuantileBinningAnalytic[ST](0.5, getPropertyValue(EMPTY_MEAN))(numeric)
+			case "quantile" => new NumericQuantileBinningAnalytic[ST](getPropertyValue(QUANTILE), getPropertyValue(EMPTY_MEAN))(numeric)
+			case "histogram" => new NumericHistogramBinningAnalytic[ST](getPropertyValue(QUANTILE), getPropertyValue(EMPTY_MEAN),
+			                                                            getPropertyValue(ACCURACY))(numeric)
 		}
 	}
 }
@@ -105,6 +115,7 @@ class NumericTileAnalyticFactory (name: String = null,
 	addProperty(EMPTY_MEAN)
 	addProperty(EMPTY_DEV)
 	addProperty(MIN_COUNT)
+	addProperty(ACCURACY)
 
 	/**
 	 * This function serves the purpose of the {@link ConfigurableFactory#create} function in normal factories.
@@ -129,6 +140,9 @@ class NumericTileAnalyticFactory (name: String = null,
 			case "average" => new NumericMeanTileAnalytic[ST](getPropertyValue(EMPTY_MEAN), getPropertyValue(MIN_COUNT), name)(numeric)
 			case "stats"   => new NumericStatsTileAnalytic[ST]((getPropertyValue(EMPTY_MEAN), getPropertyValue(EMPTY_DEV)),
 			                                                   getPropertyValue(MIN_COUNT), name)(numeric)
+			case "median"  => new NumericQuantileTileAnalytic[ST](analyticName = name)(numeric)
+			case "quantile" => new NumericQuantileTileAnalytic[ST](analyticName = name)(numeric)
+			case "histogram" => new NumericHistogramTileAnalytic[ST](accuracy = getPropertyValue(ACCURACY), analyticName = name)(numeric)
 		}
 	}
 }
@@ -499,3 +513,171 @@ class NumericStatsTileAnalytic[T] (emptyValue: (Double, Double) = (JavaDouble.Na
 		Some(result)
 	}
 }
+
+
+
+/**
+ * An analytic whose processing values are sketches summarizing a number of
+ * raw values, rather than raw values themselves.
+ *
+ * @tparam T The type of raw value summarized
+ * @tparam S The type of sketch
+ */
+trait SketchAnalytic[T, S] {
+	/**
+	 * Create a sketch of a single raw value
+	 */
+	def sketch (value: T): S
+}
+
+
+
+/**
+ * This analytic estimates quantiles (such as the median) of some quantity
+ * across a data set, in bounded memory, by aggregating mergeable quantile
+ * sketches instead of lists of values.
+ *
+ * Sketches are never modified once made; aggregation creates a new sketch.
+ *
+ * @tparam T The numeric type of the raw data.  Quantiles are always
+ *           reported as Java Doubles.
+ */
+class NumericQuantileAnalytic[T] (compression: Double = QuantileSketch.DEFAULT_COMPRESSION)
+                                 (implicit numeric: ExtendedNumeric[T])
+		extends Analytic[QuantileSketch] with SketchAnalytic[T, QuantileSketch]
+{
+	def aggregate (a: QuantileSketch, b: QuantileSketch): QuantileSketch =
+		if (0 == b.count) a
+		else if (0 == a.count) b
+		else QuantileSketch.merge(a, b)
+	def defaultProcessedValue: QuantileSketch = new QuantileSketch(compression)
+	def defaultUnprocessedValue: QuantileSketch = new QuantileSketch(compression)
+	def sketch (value: T): QuantileSketch = {
+		val result = new QuantileSketch(compression)
+		result.add(numeric.toDouble(value))
+		result
+	}
+}
+/**
+ * {@see NumericQuantileAnalytic}
+ *
+ * @param quantile The quantile (between 0 and 1) to write into each bin
+ * @param emptyValue The value to write into bins with no data
+ */
+class NumericQuantileBinningAnalytic[T] (quantile: Double = 0.5,
+                                         emptyValue: Double = JavaDouble.NaN,
+                                         compression: Double = QuantileSketch.DEFAULT_COMPRESSION)
+                                        (implicit numeric: ExtendedNumeric[T])
+		extends NumericQuantileAnalytic[T](compression)
+		with BinningAnalytic[QuantileSketch, JavaDouble]
+{
+	def finish (value: QuantileSketch): JavaDouble =
+		Double.box(if (0 == value.count) emptyValue else value.quantile(quantile))
+}
+/**
+ * {@see NumericQuantileAnalytic}
+ *
+ * The total count, and each of a list of quantiles, are inserted into any
+ * relevant metadata.
+ *
+ * @param quantiles The quantiles (between 0 and 1) to write into metadata
+ */
+class NumericQuantileTileAnalytic[T] (quantiles: Seq[Double] = Seq(0.05, 0.25, 0.5, 0.75, 0.95),
+                                      compression: Double = QuantileSketch.DEFAULT_COMPRESSION,
+                                      analyticName: Option[String] = None)
+                                     (implicit numeric: ExtendedNumeric[T])
+		extends NumericQuantileAnalytic[T](compression)
+		with TileAnalytic[QuantileSketch]
+{
+	private def statName (stat: String): String = analyticName.map(stat+" "+_).getOrElse(stat)
+	def name = statName("quantiles")
+	override def storableValue (value: QuantileSketch, location: TileAnalytic.Locations.Value): Option[JSONObject] = {
+		val result = new JSONObject()
+		result.put(statName("count"), value.count)
+		if (value.count > 0) {
+			val format = new DecimalFormat("0.###")
+			quantiles.foreach(q => result.put(statName("p"+format.format(q*100)), value.quantile(q)))
+		}
+		Some(result)
+	}
+}
+
+
+
+/**
+ * This analytic keeps a histogram of some quantity across a data set, with
+ * logarithmically sized buckets, so that quantiles may be read from it to
+ * within a fixed relative accuracy.  Unlike {@see NumericQuantileAnalytic},
+ * the error is bounded relative to the value, rather than to its rank.
+ *
+ * Histograms are never modified once made; aggregation creates a new one.
+ *
+ * @tparam T The numeric type of the raw data.  Quantiles are always
+ *           reported as Java Doubles.
+ */
+class NumericHistogramAnalytic[T] (accuracy: Double = LogHistogram.DEFAULT_RELATIVE_ACCURACY,
+                                   maxBuckets: Int = LogHistogram.DEFAULT_MAX_BUCKETS)
+                                  (implicit numeric: ExtendedNumeric[T])
+		extends Analytic[LogHistogram] with SketchAnalytic[T, LogHistogram]
+{
+	def aggregate (a: LogHistogram, b: LogHistogram): LogHistogram =
+		if (0 == b.count) a
+		else if (0 == a.count) b
+		else LogHistogram.merge(a, b)
+	def defaultProcessedValue: LogHistogram = new LogHistogram(accuracy, maxBuckets)
+	def defaultUnprocessedValue: LogHistogram = new LogHistogram(accuracy, maxBuckets)
+	def sketch (value: T): LogHistogram = {
+		val result = new LogHistogram(accuracy, maxBuckets)
+		result.add(numeric.toDouble(value))
+		result
+	}
+}
+/**
+ * {@see NumericHistogramAnalytic}
+ *
+ * @param quantile The quantile (between 0 and 1) to write into each bin
+ * @param emptyValue The value to write into bins with no data
+ */
+class NumericHistogramBinningAnalytic[T] (quantile: Double = 0.5,
+                                          emptyValue: Double = JavaDouble.NaN,
+                                          accuracy: Double = LogHistogram.DEFAULT_RELATIVE_ACCURACY,
+                                          maxBuckets: Int = LogHistogram.DEFAULT_MAX_BUCKETS)
+                                         (implicit numeric: ExtendedNumeric[T])
+		extends NumericHistogramAnalytic[T](accuracy, maxBuckets)
+		with BinningAnalytic[LogHistogram, JavaDouble]
+{
+	def finish (value: LogHistogram): JavaDouble =
+		Double.box(if (0 == value.count) emptyValue else value.quantile(quantile))
+}
+/**
+ * {@see NumericHistogramAnalytic}
+ *
+ * The total count, and the bounds and count of each non-empty bucket, are
+ * inserted into any relevant metadata.
+ */
+class NumericHistogramTileAnalytic[T] (accuracy: Double = LogHistogram.DEFAULT_RELATIVE_ACCURACY,
+                                       maxBuckets: Int = LogHistogram.DEFAULT_MAX_BUCKETS,
+                                       analyticName: Option[String] = None)
+                                      (implicit numeric: ExtendedNumeric[T])
+		extends NumericHistogramAnalytic[T](accuracy, maxBuckets)
+		with TileAnalytic[LogHistogram]
+{
+	private def statName (stat: String): String = analyticName.map(stat+" "+_).getOrElse(stat)
+	def name = statName("histogram")
+	override def storableValue (value: LogHistogram, location: TileAnalytic.Locations.Value): Option[JSONObject] = {
+		val result = new JSONObject()
+		result.put(statName("count"), value.count)
+		val buckets = new JSONArray()
+		value.getBuckets.foreach(bucket =>
+			{
+				val jsonBucket = new JSONObject()
+				jsonBucket.put("min", bucket(0))
+				jsonBucket.put("max", bucket(1))
+				jsonBucket.put("count", bucket(2).toLong)
+				buckets.put(jsonBucket)
+			}
+		)
+		result.put(statName("histogram"), buckets)
+		Some(result)
+	}
+}
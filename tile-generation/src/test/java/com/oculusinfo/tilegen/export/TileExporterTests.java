@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2015 Oculus Info Inc. 
+ * http://www.oculusinfo.com/
+ * 
+ * Released under the MIT License.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tilegen.export;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.avro.file.CodecFactory;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.oculusinfo.binning.TileData;
+import com.oculusinfo.binning.TileIndex;
+import com.oculusinfo.binning.impl.DenseTileData;
+import com.oculusinfo.binning.io.PyramidIO;
+import com.oculusinfo.binning.io.impl.FileBasedPyramidIO;
+import com.oculusinfo.binning.io.impl.FileSystemPyramidSource;
+import com.oculusinfo.binning.io.serialization.TileSerializer;
+import com.oculusinfo.binning.io.serialization.impl.PrimitiveAvroSerializer;
+
+/**
+ * Unit tests for the TileExporter, copying between two file-system pyramids
+ */
+public class TileExporterTests {
+	private static final String PYRAMID_ID = "exporter-test";
+
+	private File                   _root;
+	private PyramidIO              _source;
+	private PyramidIO              _destination;
+	private TileSerializer<Double> _serializer;
+
+	@Before
+	public void setup () throws IOException {
+		_root = new File("./build/tmp/exporter-test");
+		FileUtils.deleteDirectory(_root);
+		_source = new FileBasedPyramidIO(new FileSystemPyramidSource(new File(_root, "from").getPath(), "avro"));
+		_destination = new FileBasedPyramidIO(new FileSystemPyramidSource(new File(_root, "to").getPath(), "avro"));
+		_serializer = new PrimitiveAvroSerializer<>(Double.class, CodecFactory.nullCodec());
+
+		// A sparse pyramid - two tiles on level 6, one on level 2
+		List<TileData<Double>> tiles = new ArrayList<>();
+		tiles.add(createTile(2, 1, 3, 1.0));
+		tiles.add(createTile(6, 0, 63, 2.0));
+		tiles.add(createTile(6, 40, 17, 3.0));
+		_source.initializeForWrite(PYRAMID_ID);
+		_source.writeTiles(PYRAMID_ID, _serializer, tiles);
+		_source.writeMetaData(PYRAMID_ID, "{\"name\": \"exporter-test\"}");
+	}
+
+	@After
+	public void teardown () throws IOException {
+		FileUtils.deleteDirectory(_root);
+	}
+
+	private TileData<Double> createTile (int level, int x, int y, double value) {
+		return new DenseTileData<>(new TileIndex(level, x, y, 2, 2), value);
+	}
+
+	private void assertCopied (TileIndex index, double value) throws IOException {
+		List<TileData<Double>> read = _destination.readTiles(PYRAMID_ID, _serializer, Arrays.asList(index));
+		Assert.assertEquals(1, read.size());
+		Assert.assertEquals(value, read.get(0).getBin(1, 1), 0.0);
+	}
+
+	@Test
+	public void testSparseCopy () throws IOException {
+		TileExporter exporter = new TileExporter(_source, _destination);
+		exporter.setThreads(3);
+		exporter.copyPyramid(PYRAMID_ID, 0, 6, _serializer, 1);
+
+		Assert.assertEquals("{\"name\": \"exporter-test\"}", _destination.readMetaData(PYRAMID_ID));
+		assertCopied(new TileIndex(2, 1, 3, 2, 2), 1.0);
+		assertCopied(new TileIndex(6, 0, 63, 2, 2), 2.0);
+		assertCopied(new TileIndex(6, 40, 17, 2, 2), 3.0);
+		Assert.assertTrue(_destination.readTiles(PYRAMID_ID, _serializer,
+		                                         Arrays.asList(new TileIndex(6, 1, 1, 2, 2))).isEmpty());
+	}
+
+	@Test
+	public void testCheckpointResume () throws IOException {
+		File checkpoint = new File(_root, "checkpoint");
+		TileExporter exporter = new TileExporter(_source, _destination);
+		exporter.setCheckpointFile(checkpoint);
+		exporter.setRateLimit(1000.0);
+		exporter.copyPyramid(PYRAMID_ID, 6, 6, _serializer, 1);
+
+		List<String> lines = new ArrayList<>();
+		BufferedReader reader = new BufferedReader(new FileReader(checkpoint));
+		try {
+			String line;
+			while (null != (line = reader.readLine())) lines.add(line);
+		} finally {
+			reader.close();
+		}
+		Assert.assertEquals(Arrays.asList("6 0 "+PYRAMID_ID, "6 1 "+PYRAMID_ID, "6 done "+PYRAMID_ID), lines);
+
+		// Re-running from the same checkpoint should copy nothing
+		FileUtils.deleteDirectory(new File(_root, "to"));
+		exporter.copyPyramid(PYRAMID_ID, 6, 6, _serializer, 1);
+		Assert.assertTrue(_destination.readTiles(PYRAMID_ID, _serializer,
+		                                         Arrays.asList(new TileIndex(6, 0, 63, 2, 2))).isEmpty());
+	}
+
+	@Test
+	public void testCheckpointPerPyramid () throws IOException {
+		File checkpoint = new File(_root, "checkpoint");
+		TileExporter exporter = new TileExporter(_source, _destination);
+		exporter.setCheckpointFile(checkpoint);
+		exporter.copyPyramid(PYRAMID_ID, 6, 6, _serializer, 1);
+
+		// A second pyramid sharing the checkpoint file must still be copied
+		String otherId = "exporter-test-2";
+		_source.initializeForWrite(otherId);
+		_source.writeTiles(otherId, _serializer, Arrays.asList(createTile(6, 0, 63, 4.0)));
+		_source.writeMetaData(otherId, "{\"name\": \"exporter-test-2\"}");
+		exporter.copyPyramid(otherId, 6, 6, _serializer, 1);
+
+		List<TileData<Double>> read = _destination.readTiles(otherId, _serializer,
+		                                                     Arrays.asList(new TileIndex(6, 0, 63, 2, 2)));
+		Assert.assertEquals(1, read.size());
+		Assert.assertEquals(4.0, read.get(0).getBin(1, 1), 0.0);
+	}
+}
@@ -24,6 +24,7 @@
  */
 package com.oculusinfo.tilegen.graph.analytics;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
@@ -453,4 +454,66 @@ public class GraphAnalyticsTests {
         Assert.assertEquals(c, GraphAnalyticsRecord.maxOfRecords(a, b));
     }	
 	
+    //---- Binary round trip
+    @Test
+    public void testBinaryRoundTrip () throws IOException {
+		GraphCommunity community_b = new GraphCommunity(_hierLevel,
+														456L,
+														new Pair<Double, Double>(3.3, 4.4),
+														3.4,
+														4,
+														54,
+														"blah4\tbl\u00e4h5",
+														true,
+														_parentID,
+														_parentCoords,
+														_parentRadius,
+														null,
+														_intraEdges);
+		GraphAnalyticsRecord a = new GraphAnalyticsRecord(7, Arrays.asList(_sampleCommunity, community_b));
+		GraphAnalyticsRecord b = GraphAnalyticsRecord.fromBytes(a.toBytes());
+
+		Assert.assertEquals(a, b);
+		Assert.assertEquals(a.toString(), b.toString());
+    }
+
+    //---- Combining records builds a new record, ranking communities by size
+    @Test
+    public void testCombiningLeavesInputsUnchanged () {
+		GraphAnalyticsRecord a = new GraphAnalyticsRecord(1, Arrays.asList(_sampleCommunity));
+		GraphCommunity community_b = new GraphCommunity(_hierLevel,
+														456L,
+														new Pair<Double, Double>(3.3, 4.4),
+														3.4,
+														4,
+														54,
+														"blah4\tblah5",
+														true,
+														_parentID,
+														_parentCoords,
+														_parentRadius,
+														_interEdges,
+														_intraEdges);
+		GraphAnalyticsRecord b = new GraphAnalyticsRecord(1, Arrays.asList(community_b));
+		String aString = a.toString();
+		String bString = b.toString();
+
+		GraphAnalyticsRecord combined = GraphAnalyticsRecord.addRecords(a, b);
+		Assert.assertEquals(2, combined.getNumCommunities());
+		// above hierarchy level 0, the community with more nodes comes first
+		Assert.assertEquals(Arrays.asList(community_b, _sampleCommunity), combined.getCommunities());
+		Assert.assertEquals(aString, a.toString());
+		Assert.assertEquals(bString, b.toString());
+
+		// Aggregating the same combined record twice (as happens to a cached
+		// value) gives the same answer both times, and leaves it as it was
+		String combinedString = combined.toString();
+		GraphBinningAnalytic analytic = new GraphBinningAnalytic();
+		GraphAnalyticsRecord first = analytic.aggregate(combined, b);
+		GraphAnalyticsRecord second = analytic.aggregate(combined, b);
+		Assert.assertEquals(3, first.getNumCommunities());
+		Assert.assertEquals(first, second);
+		Assert.assertEquals(combinedString, combined.toString());
+		Assert.assertEquals(2, combined.getCommunities().size());
+    }
 }
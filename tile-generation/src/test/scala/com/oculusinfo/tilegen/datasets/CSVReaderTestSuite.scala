@@ -27,6 +27,7 @@ package com.oculusinfo.tilegen.datasets
 
 
 
+import java.io.File
 import java.util.{Calendar, Properties, TimeZone}
 
 import com.oculusinfo.tilegen.util.PropertiesWrapper
@@ -226,4 +227,115 @@ class CSVReaderTestSuite extends FunSuite with SharedSparkContext {
 			failReader.asSchemaRDD.select('testMap).map(_(0).asInstanceOf[String]).first()
 		}
 	}
+
+	test("Field scanning matches String.split") {
+		val lines = List("a,b,c", "a,,c", "a,b,,", ",,", "", ",a", "abc", "a,b,c,d,e", "a,b,,,e", "a,b,,,")
+		List(",", "\\t", "\\|", "[,;]", "\\s*,\\s*").foreach(separator =>
+			{
+				val scanner = new DelimitedFieldScanner(separator)
+				lines.map(_.replace(",", separator match {
+					          case "\\t" => "\t"
+					          case "\\|" => "|"
+					          case _ => ","
+				          })).foreach(line =>
+					{
+						val expected = line.split(separator)
+						assert(expected.toList === scanner.split(line).toList)
+
+						val starts = new Array[Int](3)
+						val ends = new Array[Int](3)
+						val found = scanner.scan(line, starts, ends)
+						assert(math.min(3, expected.size) === found, "for line \""+line+"\" split on "+separator)
+						(0 until found).foreach(n => assert(expected(n) === line.substring(starts(n), ends(n))))
+					}
+				)
+			}
+		)
+
+		assert(new DelimitedFieldScanner(",").isLiteral)
+		assert(new DelimitedFieldScanner("\\t").isLiteral)
+		assert(new DelimitedFieldScanner("::").isLiteral)
+		assert(!new DelimitedFieldScanner("[,;]").isLiteral)
+	}
+
+	test("Numeric field parsing matches the JVM") {
+		val doubleParser = new FieldParser.DoubleParser
+		val floatParser = new FieldParser.FloatParser
+		List("0", "-0", "1", "1.5", " -12.25 ", "3.141592653589793", "1e10", "1.7976931348623157E308", "4.9e-324",
+		     "123456789012345678901234", "0.000001", ".5", "5.", "+2", "NaN", "-Infinity", "1.5f", "0x1p3",
+		     "0.1", "1234567.891", "9007199254740993").foreach(text =>
+			{
+				// Use equals rather than ==, so NaN matches itself and -0 doesn't match 0
+				assert(java.lang.Double.valueOf(text).equals(doubleParser.parse(text)), "for "+text)
+				assert(java.lang.Float.valueOf(text).equals(floatParser.parse(text)), "for "+text)
+			}
+		)
+		List("", "abc", "1.2.3", "e5", "1e", "--1", ".", "1,000").foreach(text =>
+			{
+				assert(null == doubleParser.parse(text), "for "+text)
+				assert(null == floatParser.parse(text), "for "+text)
+			}
+		)
+
+		val intParser = new FieldParser.IntParser
+		val longParser = new FieldParser.LongParser
+		assert(Int.MaxValue === intParser.parse(Int.MaxValue.toString))
+		assert(Int.MinValue === intParser.parse(" "+Int.MinValue.toString))
+		assert(null == intParser.parse((Int.MaxValue.toLong+1).toString))
+		assert(null == intParser.parse("1.0"))
+		assert(Long.MinValue === longParser.parse(Long.MinValue.toString))
+		assert(null == longParser.parse("9223372036854775808"))
+		assert(-200.toShort.toByte === new FieldParser.ByteParser().parse("-200"))
+	}
+
+	test("Bad records are counted and dropped") {
+		val configuration = new Properties()
+		configuration.setProperty("oculus.binning.parsing.separator",      ",")
+		configuration.setProperty("oculus.binning.parsing.a.index",        "0")
+		configuration.setProperty("oculus.binning.parsing.a.fieldType",    "int")
+		configuration.setProperty("oculus.binning.parsing.b.index",        "2")
+		configuration.setProperty("oculus.binning.parsing.b.fieldType",    "double")
+
+		val data = sc.parallelize(List("1,x,1.5", "2,x", "three,x,3.0", "4,x,four", "5,x,5e1", "6,x,,", "7,x,7.0,y"))
+		val reader = new CSVReader(sqlc, data, new PropertiesWrapper(configuration))
+
+		val results = reader.asSchemaRDD.collect.map(row => (row.getInt(0), row.getDouble(1))).toList
+		assert(List((1, 1.5), (5, 50.0), (7, 7.0)) === results)
+		assert(2L === reader.malformedRecords)
+		assert(Map("a" -> 1L, "b" -> 1L) === reader.fieldErrors)
+	}
+
+	test("Parsed data can be persisted as Parquet") {
+		val location = File.createTempFile("csv-reader-test", ".parquet")
+		location.delete()
+		try {
+			val configuration = new Properties()
+			configuration.setProperty("oculus.binning.parsing.separator",      ",")
+			configuration.setProperty("oculus.binning.parsing.parquet",        location.getAbsolutePath)
+			configuration.setProperty("oculus.binning.parsing.a.index",        "0")
+			configuration.setProperty("oculus.binning.parsing.a.fieldType",    "long")
+			configuration.setProperty("oculus.binning.parsing.b.index",        "1")
+			configuration.setProperty("oculus.binning.parsing.b.fieldType",    "string")
+
+			val data = sc.parallelize(1 to 10).map(n => n+",s"+n)
+			val reader = new CSVReader(sqlc, data, new PropertiesWrapper(configuration))
+			val written = reader.asSchemaRDD.collect.map(row => (row.getLong(0), row.getString(1))).toSet
+			assert((1 to 10).map(n => (n.toLong, "s"+n)).toSet === written)
+			assert(location.exists())
+
+			// A second reader shouldn't look at its data at all
+			val unparsable = sc.parallelize(List("not,a,number"))
+			val rereader = new CSVReader(sqlc, unparsable, new PropertiesWrapper(configuration))
+			val read = rereader.asSchemaRDD.collect.map(row => (row.getLong(0), row.getString(1))).toSet
+			assert(written === read)
+			assert(0L === rereader.malformedRecords)
+			assert(Map("a" -> 0L, "b" -> 0L) === rereader.fieldErrors)
+		} finally {
+			def delete (file: File): Unit = {
+				if (file.isDirectory) file.listFiles.foreach(delete)
+				file.delete()
+			}
+			delete(location)
+		}
+	}
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.oculusinfo.tilegen.live
+
+
+
+import java.lang.{Double => JavaDouble}
+
+import scala.util.Random
+
+import org.scalatest.FunSuite
+
+import org.apache.spark.SharedSparkContext
+
+import com.oculusinfo.binning.TileIndex
+import com.oculusinfo.binning.impl.AOITilePyramid
+
+import com.oculusinfo.tilegen.tiling.analytics.NumericSumBinningAnalytic
+
+
+
+class LiveTileGeneratorTestSuite extends FunSuite with SharedSparkContext {
+	val pyramid = new AOITilePyramid(0.0, 0.0, 1.0, 1.0)
+
+	def randomData (n: Int): Seq[(Double, Double, Double)] = {
+		val random = new Random(2014)
+		Range(0, n).map(i => (random.nextDouble, random.nextDouble, (1 + random.nextInt(10)).toDouble))
+	}
+
+	// Bin the data directly, the way the cube should
+	def expectedBins (data: Seq[(Double, Double, Double)], tile: TileIndex): Map[(Int, Int), Double] = {
+		data.filter(record =>
+			{
+				val recordTile = pyramid.rootToTile(record._1, record._2, tile.getLevel)
+				recordTile.getX == tile.getX && recordTile.getY == tile.getY
+			}
+		).groupBy(record =>
+			{
+				val bin = pyramid.rootToBin(record._1, record._2, tile)
+				(bin.getX, bin.getY)
+			}
+		).map{case (bin, records) => (bin, records.map(_._3).sum)}
+	}
+
+	def assertTile (generator: LiveTileGenerator[Double, JavaDouble],
+	                data: Seq[(Double, Double, Double)],
+	                level: Int, x: Int, y: Int): Unit = {
+		val tile = generator.getTile(level, x, y)
+		val expected = expectedBins(data, tile.getDefinition)
+		for (bx <- 0 until 4; by <- 0 until 4) {
+			assert(expected.getOrElse((bx, by), 0.0) === tile.getBin(bx, by).doubleValue,
+			       "Bin ["+bx+", "+by+"] of tile "+tile.getDefinition)
+		}
+	}
+
+	test("Tiles at and above the base level are merged from the cube") {
+		val data = randomData(2000)
+		val generator = new LiveTileGenerator[Double, JavaDouble](
+			sc.parallelize(data, 4), pyramid, new NumericSumBinningAnalytic[Double, JavaDouble](),
+			4, 4, 3, Some(5))
+		try {
+			assertTile(generator, data, 0, 0, 0)
+			assertTile(generator, data, 1, 0, 1)
+			assertTile(generator, data, 2, 3, 1)
+			assertTile(generator, data, 3, 5, 6)
+		} finally {
+			generator.unpersist()
+		}
+	}
+
+	test("Tiles below the base level are binned from the raw records") {
+		val data = randomData(2000)
+		val generator = new LiveTileGenerator[Double, JavaDouble](
+			sc.parallelize(data, 4), pyramid, new NumericSumBinningAnalytic[Double, JavaDouble](),
+			4, 4, 2, Some(3))
+		try {
+			assertTile(generator, data, 3, 5, 6)
+			assertTile(generator, data, 4, 0, 15)
+			assertTile(generator, data, 6, 40, 17)
+		} finally {
+			generator.unpersist()
+		}
+	}
+
+	test("Empty tiles get default values") {
+		val data = Seq((0.1, 0.1, 1.0), (0.2, 0.15, 2.0))
+		val generator = new LiveTileGenerator[Double, JavaDouble](
+			sc.parallelize(data, 2), pyramid, new NumericSumBinningAnalytic[Double, JavaDouble](),
+			4, 4, 2)
+		try {
+			generator.prepare()
+			val tile = generator.getTile(1, 1, 1)
+			for (bx <- 0 until 4; by <- 0 until 4) {
+				assert(0.0 === tile.getBin(bx, by).doubleValue)
+			}
+			assertTile(generator, data, 0, 0, 0)
+			assertTile(generator, data, 4, 1, 1)
+		} finally {
+			generator.unpersist()
+		}
+	}
+}
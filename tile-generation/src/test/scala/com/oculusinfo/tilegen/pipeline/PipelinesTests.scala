@@ -24,7 +24,11 @@
  */
 package com.oculusinfo.tilegen.pipeline
 
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+import java.util.concurrent.atomic.AtomicInteger
+
 import org.apache.spark.SharedSparkContext
+import org.apache.spark.storage.StorageLevel
 import org.scalatest.FunSuite
 
 class PipelinesTests extends FunSuite with SharedSparkContext {
@@ -63,6 +67,87 @@ class PipelinesTests extends FunSuite with SharedSparkContext {
 		assertResult(List("p", "c0", "g0", "c1", "g1"))(data)
 	}
 
+	test("Test concurrent pipeline tree traversal") {
+		var data = List[String]()
+
+		def testOp(opName: String)(input: PipelineData) = {
+			synchronized(data = data :+ opName)
+			input
+		}
+
+		// Each child waits (for a while) until three children are running at once
+		val running = new AtomicInteger(0)
+		val maxRunning = new AtomicInteger(0)
+		val overlap = new CountDownLatch(3)
+		def childOp(opName: String)(input: PipelineData) = {
+			testOp(opName)(input)
+			val now = running.incrementAndGet()
+			maxRunning.synchronized(maxRunning.set(maxRunning.get max now))
+			overlap.countDown()
+			overlap.await(10, TimeUnit.SECONDS)
+			running.decrementAndGet()
+			input
+		}
+
+		val parent = PipelineStage("parent", testOp("p")(_))
+		val children = (0 to 3).map(n => parent.addChild(PipelineStage("child"+n, childOp("c"+n)(_))))
+		children.zipWithIndex.foreach { case (child, n) =>
+			child.addChild(PipelineStage("grandchild"+n+"a", testOp("g"+n+"a")(_)))
+			child.addChild(PipelineStage("grandchild"+n+"b", testOp("g"+n+"b")(_)))
+		}
+
+		PipelineTree.execute(parent, sqlc, maxConcurrentBranches = 3)
+
+		assertResult(3)(maxRunning.get)
+		assertResult(13)(data.size)
+		assertResult("p")(data.head)
+		(0 to 3).foreach { n =>
+			assert(data.indexOf("c"+n) < data.indexOf("g"+n+"a"))
+			assert(data.indexOf("c"+n) < data.indexOf("g"+n+"b"))
+		}
+	}
+
+	test("Test shared stage output is persisted while its children run") {
+		var childCached = List[Boolean]()
+
+		// Register the shared output under a name, without telling the pipeline, so we can check
+		// if it's cached
+		def parentOp(input: PipelineData) = {
+			val output = input.sqlContext.applySchema(input.srdd, input.srdd.schema)
+			output.registerTempTable("shared_output")
+			PipelineData(input.sqlContext, output)
+		}
+		def childOp(input: PipelineData) = {
+			synchronized(childCached = input.sqlContext.isCached("shared_output") :: childCached)
+			input
+		}
+
+		val parent = PipelineStage("parent", parentOp)
+		val child0 = parent.addChild(PipelineStage("child0", childOp))
+		parent.addChild(PipelineStage("child1", childOp))
+		// child0 passes the shared data on to several children of its own
+		child0.addChild(PipelineStage("grandchild0", childOp))
+		child0.addChild(PipelineStage("grandchild1", childOp))
+
+		PipelineTree.execute(parent, sqlc, sharedStorageLevel = StorageLevel.MEMORY_ONLY)
+
+		assertResult(List(true, true, true, true))(childCached)
+		assert(!sqlc.isCached("shared_output"))
+	}
+
+	test("Test failures in concurrent branches are propagated") {
+		def okOp(input: PipelineData) = input
+		def failOp(input: PipelineData): PipelineData = throw new IllegalStateException("branch failed")
+
+		val parent = PipelineStage("parent", okOp)
+		parent.addChild(PipelineStage("child0", failOp))
+		parent.addChild(PipelineStage("child1", okOp))
+
+		intercept[IllegalStateException] {
+			PipelineTree.execute(parent, sqlc, maxConcurrentBranches = 2)
+		}
+	}
+
 	test("Test symbolic pipeline creation") {
 		val pipelines = Pipelines()
 			.createPipeline("pipeline")
@@ -51,6 +51,11 @@ import com.oculusinfo.binning.impl.DenseTileData
 import com.oculusinfo.binning.impl.SparseTileData
 import com.oculusinfo.binning.io.serialization.impl.KryoSerializer
 import com.oculusinfo.binning.util.TypeDescriptor
+import com.oculusinfo.math.statistics.{LogHistogram, QuantileSketch}
+import com.oculusinfo.tilegen.kryo.TileRegistrator
+
+import com.esotericsoftware.kryo.Kryo
+import com.esotericsoftware.kryo.io.{Input, Output}
 
 
 
@@ -220,4 +225,30 @@ class KryoSerializationTestSuite extends FunSuite with SharedSparkContext with B
 		                            empty, empty, empty, empty,
 		                            List(8.0, 16.0), empty, empty, empty), tile111)
 	}
+
+	test("Test kryo sketch serialization/deserialization") {
+		val kryo = new Kryo()
+		new TileRegistrator().registerClasses(kryo)
+
+		val sketch = new QuantileSketch()
+		val histogram = new LogHistogram()
+		Range(0, 1000).foreach{n =>
+			sketch.add(n)
+			histogram.add(n)
+		}
+
+		val baos = new ByteArrayOutputStream
+		val output = new Output(baos)
+		kryo.writeObject(output, sketch)
+		kryo.writeObject(output, histogram)
+		output.close()
+
+		val input = new Input(new ByteArrayInputStream(baos.toByteArray()))
+		val sketchCopy = kryo.readObject(input, classOf[QuantileSketch])
+		val histogramCopy = kryo.readObject(input, classOf[LogHistogram])
+		assert(1000 === sketchCopy.count)
+		assert(sketch.quantile(0.5) === sketchCopy.quantile(0.5))
+		assert(1000 === histogramCopy.count)
+		assert(histogram.quantile(0.9) === histogramCopy.quantile(0.9))
+	}
 }
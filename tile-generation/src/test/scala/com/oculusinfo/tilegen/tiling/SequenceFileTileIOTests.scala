@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tilegen.tiling
+
+
+
+import java.io.File
+import java.lang.{Double => JavaDouble}
+
+import scala.collection.JavaConverters._
+
+import org.apache.avro.file.CodecFactory
+import org.apache.commons.io.FileUtils
+
+import org.apache.spark.SharedSparkContext
+
+import org.scalatest.FunSuite
+
+import com.oculusinfo.binning.TileData
+import com.oculusinfo.binning.TileIndex
+import com.oculusinfo.binning.impl.AOITilePyramid
+import com.oculusinfo.binning.impl.DenseTileData
+import com.oculusinfo.binning.io.serialization.impl.PrimitiveAvroSerializer
+import com.oculusinfo.tilegen.tiling.analytics.AnalysisDescription
+
+
+
+class SequenceFileTileIOTestSuite extends FunSuite with SharedSparkContext {
+	val rootDir = new File("./build/tmp/sequence-file-tile-io")
+	val pyramidId = "test"
+	val serializer = new PrimitiveAvroSerializer(classOf[JavaDouble], CodecFactory.nullCodec())
+
+	def writeLevel (tileIO: SequenceFileTileIO, level: Int, value: Double): Unit = {
+		val tiles = sc.parallelize(for (x <- 0 until (1 << level); y <- 0 until (1 << level)) yield (x, y), 3)
+			.map{case (x, y) =>
+				val tile: TileData[JavaDouble] = new DenseTileData[JavaDouble](new TileIndex(level, x, y, 2, 2))
+				for (bx <- 0 until 2; by <- 0 until 2) tile.setBin(bx, by, value+x*10+y)
+				tile
+			}
+		val noTileAnalytics: Option[AnalysisDescription[TileData[JavaDouble], Double]] = None
+		val noDataAnalytics: Option[AnalysisDescription[_, Double]] = None
+		tileIO.writeTileSet(new AOITilePyramid(0.0, 0.0, 1.0, 1.0), pyramidId, tiles, serializer,
+		                    noTileAnalytics, noDataAnalytics)
+	}
+
+	test("Tile sets written from Spark can be served by a pyramid IO") {
+		FileUtils.deleteDirectory(rootDir)
+		try {
+			val tileIO = new SequenceFileTileIO("file://"+rootDir.getAbsolutePath)
+			writeLevel(tileIO, 2, 0.0)
+			writeLevel(tileIO, 3, 0.0)
+			// A later write overrides earlier tiles
+			writeLevel(tileIO, 2, 1000.0)
+
+			val pyramidIO = tileIO.getPyramidIO
+			val requested = List(new TileIndex(2, 1, 3, 2, 2), new TileIndex(3, 7, 0, 2, 2), new TileIndex(4, 0, 0, 2, 2))
+			val tiles = pyramidIO.readTiles(pyramidId, serializer, requested.asJava).asScala
+			assert(2 === tiles.size)
+			assert(requested(0) === tiles(0).getDefinition)
+			assert(1013.0 === tiles(0).getBin(1, 1))
+			assert(requested(1) === tiles(1).getDefinition)
+			assert(70.0 === tiles(1).getBin(0, 0))
+
+			assert(Some(List(2, 3)) === tileIO.readMetaData(pyramidId).map(_.getValidZoomLevels.asScala.map(_.intValue).toList.sorted))
+
+			val level3 = tileIO.readTileSet(sc, serializer, pyramidId, List(3)).collect
+			assert(64 === level3.size)
+			assert(level3.forall(_.getDefinition.getLevel == 3))
+		} finally {
+			FileUtils.deleteDirectory(rootDir)
+		}
+	}
+}
@@ -235,4 +235,66 @@ class NumericAnalyticsTestSuite extends FunSuite {
 		val analytic = new NumericMeanAnalytic[Double]()
 		assert(analytic.aggregate((2.0, 1), (1.0, 2))._1.isInstanceOf[Double])
 	}
+
+	test("Quantile Binning Analytic") {
+		val analytic = new NumericQuantileBinningAnalytic[Int](quantile=0.5)
+		val sketch = Range(1, 100).map(analytic.sketch(_)).reduce(analytic.aggregate(_, _))
+		assert(99 === sketch.count)
+		assert(50.0 === analytic.finish(sketch).doubleValue)
+
+		// Aggregation doesn't change its inputs
+		val a = analytic.sketch(1)
+		val b = analytic.sketch(2)
+		analytic.aggregate(a, b)
+		assert(1 === a.count)
+		assert(1 === b.count)
+
+		// Empty bins get the empty value
+		assert(analytic.finish(analytic.defaultProcessedValue).isNaN)
+		assert(3.0 === new NumericQuantileBinningAnalytic[Int](emptyValue=3.0).finish(analytic.defaultProcessedValue).doubleValue)
+	}
+
+	test("Quantile Tile Analytic") {
+		val analytic = new NumericQuantileTileAnalytic[Double](quantiles=Seq(0.0, 0.5, 1.0))
+		val sketch = Seq(1.0, 2.0, 3.0).map(analytic.sketch(_)).reduce(analytic.aggregate(_, _))
+		val json = analytic.storableValue(sketch, Tile).get
+		assert(3 === json.getLong("count"))
+		assert(1.0 === json.getDouble("p0"))
+		assert(2.0 === json.getDouble("p50"))
+		assert(3.0 === json.getDouble("p100"))
+	}
+
+	test("Histogram Binning Analytic") {
+		val analytic = new NumericHistogramBinningAnalytic[Double](quantile=0.9, accuracy=0.01)
+		val histogram = Range(1, 1001).map(n => analytic.sketch(n.toDouble)).reduce(analytic.aggregate(_, _))
+		assert(1000 === histogram.count)
+		assert(math.abs(analytic.finish(histogram) - 900.0) <= 9.0)
+		assert(analytic.finish(analytic.defaultProcessedValue).isNaN)
+	}
+
+	test("Histogram Tile Analytic") {
+		val analytic = new NumericHistogramTileAnalytic[Int](accuracy=0.1)
+		val histogram = Seq(0, 10, 10).map(analytic.sketch(_)).reduce(analytic.aggregate(_, _))
+		val json = analytic.storableValue(histogram, Tile).get
+		assert(3 === json.getLong("count"))
+		val buckets = json.getJSONArray("histogram")
+		assert(2 === buckets.length)
+		assert(1 === buckets.getJSONObject(0).getLong("count"))
+		assert(0.0 === buckets.getJSONObject(0).getDouble("max"))
+		assert(2 === buckets.getJSONObject(1).getLong("count"))
+		assert(buckets.getJSONObject(1).getDouble("min") < 10.0)
+		assert(buckets.getJSONObject(1).getDouble("max") >= 10.0)
+	}
+
+	test("Quantile and histogram analytics from factory") {
+		val quantileFactory = new NumericBinningAnalyticFactory(null, List[String]().asJava)
+		quantileFactory.readConfiguration(new JSONObject("""{"aggregation": "quantile", "quantile": 0.25}"""))
+		val quantile = quantileFactory.produce(classOf[BinningAnalytic[_, _]])
+		assert(quantile.isInstanceOf[NumericQuantileBinningAnalytic[_]])
+
+		val histogramFactory = new NumericBinningAnalyticFactory(null, List[String]().asJava)
+		histogramFactory.readConfiguration(new JSONObject("""{"aggregation": "histogram"}"""))
+		val histogram = histogramFactory.produce(classOf[BinningAnalytic[_, _]])
+		assert(histogram.isInstanceOf[NumericHistogramBinningAnalytic[_]])
+	}
 }
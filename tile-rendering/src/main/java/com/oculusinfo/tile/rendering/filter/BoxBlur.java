@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rendering.filter;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.oculusinfo.tile.util.GraphicsUtilities;
+
+/**
+ * The box blur shared by {@link FastBlurFilter} and {@link StackBlurFilter}.
+ *
+ * Each pass blurs the rows of its source and writes them transposed, so two
+ * passes blur both ways and leave the image the right way around. Rows are
+ * independent of each other, so large images are split by row across a shared
+ * fork/join pool.
+ *
+ * Sum lookup tables are cached per radius, and the working pixel buffers are
+ * kept per thread, so blurring a tile allocates nothing in the steady state.
+ * Images backed by a simple int raster are read and written in place, rather
+ * than copied in and out.
+ */
+final class BoxBlur {
+	// Images smaller than this many pixels are blurred on the calling thread
+	private static final int PARALLEL_THRESHOLD = 128 * 1024;
+	// The smallest number of pixels given to a single fork/join task
+	private static final int TASK_PIXELS = 32 * 1024;
+	// Working buffers for images larger than this aren't kept between calls
+	private static final int MAX_CACHED_PIXELS = 4 * 1024 * 1024;
+
+	private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+	private static final ConcurrentMap<Integer, int[]> SUM_LOOKUP_TABLES = new ConcurrentHashMap<>();
+
+	private static final ThreadLocal<int[][]> SCRATCH = new ThreadLocal<int[][]>() {
+		@Override
+		protected int[][] initialValue () {
+			return new int[2][0];
+		}
+	};
+
+
+
+	private BoxBlur () {
+	}
+
+	/**
+	 * Blur src into dst, which must be the same size; src and dst may be the
+	 * same image.
+	 *
+	 * @param radius the radius of the blur, at least 1
+	 * @param iterations how many times to apply the blur, at least 1
+	 */
+	static void filter (BufferedImage src, BufferedImage dst, int radius, int iterations) {
+		int width = src.getWidth();
+		int height = src.getHeight();
+		int size = width * height;
+		if (0 == size) return;
+
+		int[] srcPixels = getDirectPixels(src);
+		int[] dstPixels = getDirectPixels(dst);
+		int[][] scratch = getScratch(size);
+		int[] transposed = scratch[0];
+		int[] buffer = scratch[1];
+
+		int[] input = srcPixels;
+		if (null == input) {
+			input = GraphicsUtilities.getPixels(src, 0, 0, width, height, buffer);
+		}
+		for (int i = 0; i < iterations; i++) {
+			// horizontal pass
+			blur(input, transposed, width, height, radius);
+			// vertical pass; the last one can go straight into the destination
+			int[] output = buffer;
+			if (i == iterations-1 && null != dstPixels) output = dstPixels;
+			blur(transposed, output, height, width, radius);
+			input = output;
+		}
+		if (null == dstPixels) {
+			GraphicsUtilities.setPixels(dst, 0, 0, width, height, input);
+		}
+	}
+
+	/**
+	 * Blur each row of srcPixels, writing the result, transposed, into
+	 * dstPixels. Both are expected to be in INT_ARGB format.
+	 */
+	static void blur (int[] srcPixels, int[] dstPixels, int width, int height, int radius) {
+		int[] sumLookupTable = getSumLookupTable(radius);
+		int[] indexLookupTable = getIndexLookupTable(width, radius);
+
+		if (width * height < PARALLEL_THRESHOLD) {
+			blurRows(srcPixels, dstPixels, width, height, radius, sumLookupTable, indexLookupTable, 0, height);
+		} else {
+			POOL.invoke(new BlurTask(srcPixels, dstPixels, width, height, radius,
+			                         sumLookupTable, indexLookupTable, 0, height));
+		}
+	}
+
+	private static void blurRows (int[] srcPixels, int[] dstPixels, int width, int height, int radius,
+	                              int[] sumLookupTable, int[] indexLookupTable, int fromRow, int toRow) {
+		final int radiusPlusOne = radius + 1;
+
+		int sumAlpha;
+		int sumRed;
+		int sumGreen;
+		int sumBlue;
+
+		int srcIndex = fromRow * width;
+		int dstIndex;
+		int pixel;
+
+		for (int y = fromRow; y < toRow; y++) {
+			sumAlpha = sumRed = sumGreen = sumBlue = 0;
+			dstIndex = y;
+
+			pixel = srcPixels[srcIndex];
+			sumAlpha += radiusPlusOne * ((pixel >> 24) & 0xFF);
+			sumRed   += radiusPlusOne * ((pixel >> 16) & 0xFF);
+			sumGreen += radiusPlusOne * ((pixel >>  8) & 0xFF);
+			sumBlue  += radiusPlusOne * ( pixel        & 0xFF);
+
+			for (int i = 1; i <= radius; i++) {
+				pixel = srcPixels[srcIndex + indexLookupTable[i]];
+				sumAlpha += (pixel >> 24) & 0xFF;
+				sumRed   += (pixel >> 16) & 0xFF;
+				sumGreen += (pixel >>  8) & 0xFF;
+				sumBlue  +=  pixel        & 0xFF;
+			}
+
+			for  (int x = 0; x < width; x++) {
+				dstPixels[dstIndex] = sumLookupTable[sumAlpha] << 24 |
+					sumLookupTable[sumRed]   << 16 |
+					sumLookupTable[sumGreen] <<  8 |
+					sumLookupTable[sumBlue];
+				dstIndex += height;
+
+				int nextPixelIndex = x + radiusPlusOne;
+				if (nextPixelIndex >= width) {
+					nextPixelIndex = width - 1;
+				}
+
+				int previousPixelIndex = x - radius;
+				if (previousPixelIndex < 0) {
+					previousPixelIndex = 0;
+				}
+
+				int nextPixel = srcPixels[srcIndex + nextPixelIndex];
+				int previousPixel = srcPixels[srcIndex + previousPixelIndex];
+
+				sumAlpha += (nextPixel     >> 24) & 0xFF;
+				sumAlpha -= (previousPixel >> 24) & 0xFF;
+
+				sumRed += (nextPixel     >> 16) & 0xFF;
+				sumRed -= (previousPixel >> 16) & 0xFF;
+
+				sumGreen += (nextPixel     >> 8) & 0xFF;
+				sumGreen -= (previousPixel >> 8) & 0xFF;
+
+				sumBlue += nextPixel & 0xFF;
+				sumBlue -= previousPixel & 0xFF;
+			}
+
+			srcIndex += width;
+		}
+	}
+
+	// Maps a channel sum over the blur window to the channel average
+	private static int[] getSumLookupTable (int radius) {
+		int[] table = SUM_LOOKUP_TABLES.get(radius);
+		if (null == table) {
+			int windowSize = radius * 2 + 1;
+			table = new int[256 * windowSize];
+			for (int i = 0; i < table.length; i++) {
+				table[i] = i / windowSize;
+			}
+			SUM_LOOKUP_TABLES.putIfAbsent(radius, table);
+		}
+		return table;
+	}
+
+	// Clamps the initial window offsets to rows narrower than the radius
+	private static int[] getIndexLookupTable (int width, int radius) {
+		int[] indexLookupTable = new int[radius + 1];
+		for (int i = 0; i < indexLookupTable.length; i++) {
+			indexLookupTable[i] = Math.min(i, width - 1);
+		}
+		return indexLookupTable;
+	}
+
+	private static int[][] getScratch (int size) {
+		if (size > MAX_CACHED_PIXELS) {
+			return new int[][] {new int[size], new int[size]};
+		}
+
+		int[][] scratch = SCRATCH.get();
+		if (scratch[0].length < size) {
+			scratch[0] = new int[size];
+			scratch[1] = new int[size];
+		}
+		return scratch;
+	}
+
+	/**
+	 * Get the backing pixel array of an INT_ARGB or INT_RGB image whose raster
+	 * covers exactly its whole data buffer, one int per pixel, row by row.
+	 *
+	 * @return The pixel array, or null if the image isn't laid out that way
+	 */
+	private static int[] getDirectPixels (BufferedImage image) {
+		int type = image.getType();
+		if (BufferedImage.TYPE_INT_ARGB != type && BufferedImage.TYPE_INT_RGB != type) return null;
+
+		WritableRaster raster = image.getRaster();
+		DataBuffer buffer = raster.getDataBuffer();
+		if (!(buffer instanceof DataBufferInt) || 1 != buffer.getNumBanks() || 0 != buffer.getOffset()) return null;
+		if (!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) return null;
+		if (0 != raster.getSampleModelTranslateX() || 0 != raster.getSampleModelTranslateY()) return null;
+		if (((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride() != image.getWidth()) return null;
+
+		int[] pixels = ((DataBufferInt) buffer).getData();
+		if (pixels.length < image.getWidth() * image.getHeight()) return null;
+		return pixels;
+	}
+
+
+
+	private static class BlurTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private int[] _srcPixels;
+		private int[] _dstPixels;
+		private int   _width;
+		private int   _height;
+		private int   _radius;
+		private int[] _sumLookupTable;
+		private int[] _indexLookupTable;
+		private int   _fromRow;
+		private int   _toRow;
+
+		BlurTask (int[] srcPixels, int[] dstPixels, int width, int height, int radius,
+		          int[] sumLookupTable, int[] indexLookupTable, int fromRow, int toRow) {
+			_srcPixels = srcPixels;
+			_dstPixels = dstPixels;
+			_width = width;
+			_height = height;
+			_radius = radius;
+			_sumLookupTable = sumLookupTable;
+			_indexLookupTable = indexLookupTable;
+			_fromRow = fromRow;
+			_toRow = toRow;
+		}
+
+		@Override
+		protected void compute () {
+			int rows = _toRow - _fromRow;
+			if (rows < 2 || rows * _width <= TASK_PIXELS) {
+				blurRows(_srcPixels, _dstPixels, _width, _height, _radius,
+				         _sumLookupTable, _indexLookupTable, _fromRow, _toRow);
+			} else {
+				int middle = _fromRow + rows / 2;
+				invokeAll(new BlurTask(_srcPixels, _dstPixels, _width, _height, _radius,
+				                       _sumLookupTable, _indexLookupTable, _fromRow, middle),
+				          new BlurTask(_srcPixels, _dstPixels, _width, _height, _radius,
+				                       _sumLookupTable, _indexLookupTable, middle, _toRow));
+			}
+		}
+	}
+}
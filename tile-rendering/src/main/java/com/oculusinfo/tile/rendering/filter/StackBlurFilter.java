@@ -31,8 +31,6 @@ package com.oculusinfo.tile.rendering.filter;
  * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
-import com.oculusinfo.tile.util.GraphicsUtilities;
-
 import java.awt.image.BufferedImage;
 
 /**
@@ -125,25 +123,11 @@ public class StackBlurFilter extends AbstractFilter {
 	 */
 	@Override
 	public BufferedImage filter(BufferedImage src, BufferedImage dst) {
-		int width = src.getWidth();
-		int height = src.getHeight();
-
 		if (dst == null) {
 			dst = createCompatibleDestImage(src, null);
 		}
 
-		int[] srcPixels = new int[width * height];
-		int[] dstPixels = new int[width * height];
-
-		GraphicsUtilities.getPixels(src, 0, 0, width, height, srcPixels);
-		for (int i = 0; i < iterations; i++) {
-			// horizontal pass
-			FastBlurFilter.blur(srcPixels, dstPixels, width, height, radius);
-			// vertical pass
-			FastBlurFilter.blur(dstPixels, srcPixels, height, width, radius);
-		}
-		// the result is now stored in srcPixels due to the 2nd pass
-		GraphicsUtilities.setPixels(dst, 0, 0, width, height, srcPixels);
+		BoxBlur.filter(src, dst, radius, iterations);
 
 		return dst;
 	}
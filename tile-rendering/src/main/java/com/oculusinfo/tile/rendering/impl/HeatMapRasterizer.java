@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rendering.impl;
+
+import java.util.Arrays;
+
+import com.oculusinfo.tile.rendering.color.ColorRamp;
+import com.oculusinfo.tile.rendering.transformations.value.ValueTransformer;
+
+/**
+ * Shared inner loops of the heat map renderers.
+ *
+ * Bin values are gathered into a primitive buffer by the renderer, then
+ * transformed, culled and colored in a single pass over that buffer, and
+ * finally written into the image raster one row-major span at a time.
+ */
+class HeatMapRasterizer {
+	/**
+	 * Color a buffer of raw bin values. Bins with no value (zero or less) are
+	 * blank; so are bins whose transformed value falls outside the value range
+	 * when culling.
+	 *
+	 * @param values The raw bin values, in row-major order
+	 * @param transformed A buffer, at least as long as the number of bins, to
+	 *            hold the transformed values
+	 * @param length The number of bins
+	 * @param t The transformation to apply to the raw values
+	 * @param valueMin The transformed value mapped to the start of the ramp
+	 * @param valueMax The transformed value mapped to the end of the ramp
+	 * @param cull If true, out-of-range values are left blank rather than
+	 *            colored
+	 * @param colorRamp The color ramp with which to color transformed values
+	 * @param blank The color to use for blank bins
+	 * @param colors The array into which to put each bin's color
+	 */
+	static void colorBins (double[] values, double[] transformed, int length, ValueTransformer<?> t,
+	                       double valueMin, double valueMax, boolean cull,
+	                       ColorRamp colorRamp, int blank, int[] colors) {
+		t.transform(values, transformed, length);
+
+		double oneOverScaledRange = 1.0 / (valueMax - valueMin);
+		for (int i = 0; i < length; ++i) {
+			double transformedValue = transformed[i];
+			if (!(values[i] > 0) || cull && !(transformedValue >= valueMin && transformedValue <= valueMax)) {
+				colors[i] = blank;
+			} else {
+				colors[i] = colorRamp.getRGB( ( transformedValue - valueMin ) * oneOverScaledRange );
+			}
+		}
+	}
+
+	/**
+	 * Get the pixel boundaries of each bin along one axis, so that bin
+	 * <code>n</code> covers pixels <code>[bounds[n], bounds[n+1])</code>.
+	 */
+	static int[] getBinBounds (int bins, double scale) {
+		int[] bounds = new int[bins+1];
+		for (int n = 0; n <= bins; ++n) {
+			bounds[n] = (int) Math.round(n*scale);
+		}
+		return bounds;
+	}
+
+	/**
+	 * Draw colored bins into an image raster as rectangles, row by row.
+	 *
+	 * @param colors The color of each bin, in row-major order
+	 * @param xBounds The horizontal pixel boundaries of the bins (see
+	 *            {@link #getBinBounds(int, double)})
+	 * @param yBounds The vertical pixel boundaries of the bins
+	 * @param raster The raster into which to draw
+	 * @param rasterWidth The width of a row of the raster
+	 */
+	static void fillSquares (int[] colors, int[] xBounds, int[] yBounds, int[] raster, int rasterWidth) {
+		int xBins = xBounds.length - 1;
+		int yBins = yBounds.length - 1;
+		for (int ty = 0; ty < yBins; ++ty) {
+			int binRow = ty*xBins;
+			for (int iy = yBounds[ty]; iy < yBounds[ty+1]; ++iy) {
+				int pixelRow = iy*rasterWidth;
+				for (int tx = 0; tx < xBins; ++tx) {
+					int minX = xBounds[tx];
+					int maxX = xBounds[tx+1];
+					if (maxX > minX)
+						Arrays.fill(raster, pixelRow + minX, pixelRow + maxX, colors[binRow + tx]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Draw colored bins into an image raster as circles inscribed in their
+	 * rectangles, row by row. Pixels of a bin outside its circle are blank.
+	 *
+	 * @param colors The color of each bin, in row-major order
+	 * @param xBounds The horizontal pixel boundaries of the bins (see
+	 *            {@link #getBinBounds(int, double)})
+	 * @param yBounds The vertical pixel boundaries of the bins
+	 * @param radius2 The square of the radius of each circle
+	 * @param blank The color to use outside each circle
+	 * @param raster The raster into which to draw
+	 * @param rasterWidth The width of a row of the raster
+	 */
+	static void fillCircles (int[] colors, int[] xBounds, int[] yBounds, double radius2, int blank,
+	                         int[] raster, int rasterWidth) {
+		int xBins = xBounds.length - 1;
+		int yBins = yBounds.length - 1;
+		for (int ty = 0; ty < yBins; ++ty) {
+			int binRow = ty*xBins;
+			int minY = yBounds[ty];
+			int maxY = yBounds[ty+1];
+			double centreY = (maxY + minY) * 0.5;
+			for (int iy = minY; iy < maxY; ++iy) {
+				int pixelRow = iy*rasterWidth;
+				double dy = iy+0.5-centreY;
+				double dy2 = dy*dy;
+				for (int tx = 0; tx < xBins; ++tx) {
+					int rgb = colors[binRow + tx];
+					int minX = xBounds[tx];
+					int maxX = xBounds[tx+1];
+					double centreX = (maxX + minX) * 0.5;
+					for (int ix = minX; ix < maxX; ++ix) {
+						double dx = ix+0.5-centreX;
+						raster[pixelRow + ix] = (dx*dx + dy2 <= radius2) ? rgb : blank;
+					}
+				}
+			}
+		}
+	}
+}
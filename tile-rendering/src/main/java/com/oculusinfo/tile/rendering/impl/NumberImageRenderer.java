@@ -128,99 +128,42 @@ public class NumberImageRenderer implements TileDataImageRenderer<Number> {
 		float yScale = outHeight / yBins;
 		double radius2 = pow2(Math.min(xScale, yScale)*0.5);	// min squared 'radius' of final scaled bin
 
-		double oneOverScaledRange = 1.0 / (valueMax - valueMin);
 		boolean bCoarseCircles = pixelShape.equals("circle");	// render 'coarse' bins as circles or squares?
-		
+		int blank = COLOR_BLANK.getRGB();
+
+		// gather the bins into a primitive buffer, and color them all in one pass
+		int numBins = xBins*yBins;
+		double[] binCounts = new double[numBins];
+		for(int ty = 0; ty < yBins; ty++){
+			int row = ty*xBins;
+			for(int tx = 0; tx < xBins; tx++){
+				binCounts[row + tx] = data.getBin(tx, ty).doubleValue();
+			}
+		}
+		int[] binColors = new int[numBins];
+		HeatMapRasterizer.colorBins(binCounts, new double[numBins], numBins, t, valueMin, valueMax,
+		                            mode.equals("cull"), colorRamp, blank, binColors);
+
 		int[] rgbArray = ((DataBufferInt)bi.getRaster().getDataBuffer()).getData();
 		
 		if ((xScale==1.0) && (yScale==1.0)) {
-			// no bin scaling needed
-
+			// no bin scaling needed; copy each row of bins straight into the image
 			for(int ty = 0; ty < yBins; ty++){
-				for(int tx = 0; tx < xBins; tx++){
-
-					double binCount = data.getBin(tx, ty).doubleValue();
-					double transformedValue = t.transform(binCount).doubleValue();
-					int rgb;
-
-					if (binCount > 0) {
-						if ( mode.equals("cull") ) {
-							if ( transformedValue >= valueMin && transformedValue <= valueMax ) {
-								rgb = colorRamp.getRGB( ( transformedValue - valueMin ) * oneOverScaledRange );
-							} else {
-								rgb = COLOR_BLANK.getRGB();
-							}
-						} else {
-							rgb = colorRamp.getRGB( ( transformedValue - valueMin ) * oneOverScaledRange );
-						}
-					} else {
-						rgb = COLOR_BLANK.getRGB();
-					}
-					
-					//'draw' out the scaled 'pixel'
-					int i = ty*outWidth + tx;
-					rgbArray[i] = rgb;
-				}
-			}						
+				System.arraycopy(binColors, ty*xBins, rgbArray, ty*outWidth, xBins);
+			}
 		}
 		else {
 			// perform bin scaling (i.e. if bin coarseness != 1.0)
-			
-			for(int ty = 0; ty < yBins; ty++){
-				for(int tx = 0; tx < xBins; tx++){
-					//calculate the scaled dimensions of this 'pixel' within the image
-					int minX = (int) Math.round(tx*xScale);
-					int maxX = (int) Math.round((tx+1)*xScale);
-					int minY = (int) Math.round(ty*yScale);
-					int maxY = (int) Math.round((ty+1)*yScale);					
-					double centreX = (maxX + minX) * 0.5;
-					double centreY = (maxY + minY) * 0.5;
-					//double radius2 = (maxX - centreX)*(maxX - centreX);	// squared radius 
-
-					double binCount = data.getBin(tx, ty).doubleValue();
-					double transformedValue = t.transform(binCount).doubleValue();
-					int rgb;
-
-					if (binCount > 0) {
-						if ( mode.equals("cull") ) {
-							if ( transformedValue >= valueMin && transformedValue <= valueMax ) {
-								rgb = colorRamp.getRGB( ( transformedValue - valueMin ) * oneOverScaledRange );
-							} else {
-								rgb = COLOR_BLANK.getRGB();
-							}
-						} else {
-							rgb = colorRamp.getRGB( ( transformedValue - valueMin ) * oneOverScaledRange );
-						}
-					} else {
-						rgb = COLOR_BLANK.getRGB();
-					}
-
-					//'draw' out the scaled 'pixel'
-					if (bCoarseCircles && radius2 > 1.0) {
-						// draw scaled (coarse) bin as a circle (Note: need radius to be > 1.0 pixels in order to render a circle)
-						for (int ix = minX; ix < maxX; ++ix) {
-							for (int iy = minY; iy < maxY; ++iy) {							
-								int i = iy*outWidth + ix;
-								double dist = (pow2(ix+0.5-centreX) + pow2(iy+0.5-centreY));
-								if (dist <= radius2) {
-									rgbArray[i] = rgb;		// scaled bin is within bin's valid radius, so render normally
-								} else {
-									rgbArray[i] = COLOR_BLANK.getRGB();	// scaled bin is outside bin's valid radius, so force to be blank
-								}
-							}
-						}										
-					}
-					else {
-						// draw scaled bin simply as a square
-						for (int ix = minX; ix < maxX; ++ix) {
-							for (int iy = minY; iy < maxY; ++iy) {
-								int i = iy*outWidth + ix;
-								rgbArray[i] = rgb;
-							}
-						}
-					}
-				}
-			}			
+			int[] xBounds = HeatMapRasterizer.getBinBounds(xBins, xScale);
+			int[] yBounds = HeatMapRasterizer.getBinBounds(yBins, yScale);
+
+			if (bCoarseCircles && radius2 > 1.0) {
+				// draw scaled (coarse) bins as circles (Note: need radius to be > 1.0 pixels in order to render a circle)
+				HeatMapRasterizer.fillCircles(binColors, xBounds, yBounds, radius2, blank, rgbArray, outWidth);
+			} else {
+				// draw scaled bins simply as squares
+				HeatMapRasterizer.fillSquares(binColors, xBounds, yBounds, rgbArray, outWidth);
+			}
 		}
 
 		return bi;
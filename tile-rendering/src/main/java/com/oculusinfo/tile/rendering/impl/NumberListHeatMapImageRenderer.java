@@ -26,6 +26,7 @@ package com.oculusinfo.tile.rendering.impl;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.List;
 
 import com.oculusinfo.tile.rendering.LayerConfiguration;
@@ -107,11 +108,9 @@ public class NumberListHeatMapImageRenderer implements TileDataImageRenderer<Lis
 
             @SuppressWarnings("unchecked")
             ValueTransformer<Number> t = config.produce(ValueTransformer.class);
-            int[] rgbArray = new int[outputWidth*outputHeight];
 
             double scaledMax = (double)rangeMax/100;
             double scaledMin = (double)rangeMin/100;
-            double oneOverScaledRange = 1.0 / (scaledMax - scaledMin);
 
             int xBins = data.getDefinition().getXBins();
             int yBins = data.getDefinition().getYBins();
@@ -120,50 +119,33 @@ public class NumberListHeatMapImageRenderer implements TileDataImageRenderer<Lis
             double yScale = ((double) bi.getHeight())/yBins;
             ColorRamp colorRamp = config.produce(ColorRamp.class);
 
+            // gather the sum of each bin into a primitive buffer, and color them all in one pass
+            int numBins = xBins*yBins;
+            double[] binCounts = new double[numBins];
             for(int ty = 0; ty < yBins; ty++){
+                int row = ty*xBins;
                 for(int tx = 0; tx < xBins; tx++){
-                    //calculate the scaled dimensions of this 'pixel' within the image
-                    int minX = (int) Math.round(tx*xScale);
-                    int maxX = (int) Math.round((tx+1)*xScale);
-                    int minY = (int) Math.round(ty*yScale);
-                    int maxY = (int) Math.round((ty+1)*yScale);
-
                     List<Number> binContents = data.getBin(tx, ty);
                     double binCount = 0;
                     for(int i = 0; i < binContents.size(); i++) {
-                    	if ( binContents.get(i) != null ) {
-                    		binCount = binCount + binContents.get(i).doubleValue();
+                    	Number value = binContents.get(i);
+                    	if ( value != null ) {
+                    		binCount = binCount + value.doubleValue();
                     	}
                     }
-
-                    //log/linear
-                    double transformedValue = t.transform(binCount).doubleValue();
-                    int rgb;
-                    if (binCount > 0) {
-						if ( rangeMode.equals("cull") ) {
-							if ( transformedValue >= scaledMin && transformedValue <= scaledMax ) {
-								rgb = colorRamp.getRGB( ( transformedValue - scaledMin ) * oneOverScaledRange );
-							} else {
-								rgb = COLOR_BLANK.getRGB();
-							}
-						}  else {
-							rgb = colorRamp.getRGB( ( transformedValue - scaledMin ) * oneOverScaledRange );
-						}
-                    } else {
-                        rgb = COLOR_BLANK.getRGB();
-                    }
-
-                    //'draw' out the scaled 'pixel'
-                    for (int ix = minX; ix < maxX; ++ix) {
-                        for (int iy = minY; iy < maxY; ++iy) {
-                            int i = iy*bi.getWidth() + ix;
-                            rgbArray[i] = rgb;
-                        }
-                    }
+                    binCounts[row + tx] = binCount;
                 }
             }
-
-            bi.setRGB(0, 0, outputWidth, outputHeight, rgbArray, 0, outputWidth);
+            int[] binColors = new int[numBins];
+            HeatMapRasterizer.colorBins(binCounts, new double[numBins], numBins, t, scaledMin, scaledMax,
+                                        rangeMode.equals("cull"), colorRamp, COLOR_BLANK.getRGB(), binColors);
+
+            //'draw' out the scaled 'pixels', straight into the image's raster
+            int[] rgbArray = ((DataBufferInt)bi.getRaster().getDataBuffer()).getData();
+            HeatMapRasterizer.fillSquares(binColors,
+                                          HeatMapRasterizer.getBinBounds(xBins, xScale),
+                                          HeatMapRasterizer.getBinBounds(yBins, yScale),
+                                          rgbArray, outputWidth);
         } catch (Exception e) {
             LOGGER.error("Tile error: " + layerId + ":" + index, e);
             bi = null;
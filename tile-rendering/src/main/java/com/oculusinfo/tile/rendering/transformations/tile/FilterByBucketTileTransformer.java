@@ -24,13 +24,10 @@
  */
 package com.oculusinfo.tile.rendering.transformations.tile;
 
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 
 import com.oculusinfo.binning.TileData;
-import com.oculusinfo.binning.TileIndex;
-import com.oculusinfo.binning.impl.DenseTileData;
+import com.oculusinfo.binning.impl.DenseTileBucketRangeView;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -72,58 +69,21 @@ public class FilterByBucketTileTransformer<T> implements TileTransformer<List<T>
 	 * (non-Javadoc)
 	 * @see com.oculusinfo.tile.rendering.transformations.tile.TileTransformer#transform(com.oculusinfo.binning.TileData)
 	 *
-	 * Note: This transformer explicitly transforms all tiles into a dense tile format.  If a sparse tile is
-	 * 			passed in, the values not explicitly represented will be set to null.
+	 * Note: The returned tile is a lazy view of the input tile; bins keep their full size, with the
+	 * 			values outside the bucket range read as null.
 	 */
     @Override
     public TileData<List<T>> transform (TileData<List<T>> inputData) throws Exception {
-    	TileData<List<T>> resultTile = null;
-
 		if ( _startBucket != null && _endBucket != null ) {
 			if ( _startBucket < 0 || _startBucket > _endBucket ) {
 				throw new IllegalArgumentException("Filter by time transformer arguments are invalid.  start time bucket: " + _startBucket + ", end time bucket: " + _endBucket);
         	}
 		}
 
-        int xBins = inputData.getDefinition().getXBins();
-        int yBins = inputData.getDefinition().getYBins();
-
-        TileIndex index = inputData.getDefinition();
-		List<List<T>> transformedData = new ArrayList<>(index.getXBins()*index.getYBins());
-
-        for (int ty = 0; ty < yBins; ty++){
-            for (int tx = 0; tx < xBins; tx++){
-                List<T> binContents = inputData.getBin(tx, ty);
-                int binSize = binContents.size();
-				int start = ( _startBucket != null ) ? _startBucket : 0;
-				int end = ( _endBucket != null ) ? _endBucket : binSize;
-
-                // make sure we have a full array to add into the tile for dense tile creation
-                List<T> transformedBin = new ArrayList<>();
-                for(int i = 0; i < binSize; i++) {
-                    if ( i >= start && i <= end ) {
-                    	transformedBin.add(i, binContents.get(i));
-                    } else {
-                    	transformedBin.add(i, null);
-                    }
-                }
-                transformedData.add(transformedBin);
-            }
-        }
-
-        resultTile = new DenseTileData<>(inputData.getDefinition(), transformedData);
-
-        // add in metadata to the tile
-        Collection<String> keys = inputData.getMetaDataProperties();
-		if (null != keys && !keys.isEmpty()) {
-			for (String key: keys) {
-			String value = inputData.getMetaData(key);
-			if (null != value)
-				resultTile.setMetaData(key, value);
-			}
-		}
+		int start = ( _startBucket != null ) ? _startBucket : 0;
+		int end = ( _endBucket != null ) ? _endBucket : Integer.MAX_VALUE;
 
-        return resultTile;
+        return new DenseTileBucketRangeView<>(inputData, start, end);
     }
 
 }
@@ -27,6 +27,7 @@ package com.oculusinfo.tile.rendering.transformations.tile;
 import java.util.List;
 
 import com.oculusinfo.binning.TileData;
+import com.oculusinfo.binning.impl.MappedTileView;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -71,7 +72,8 @@ public class FilterTopicByBucketTileTransformer<T> implements TileTransformer<Li
 
 	@Override
     public TileData<List<T>> transform (TileData<List<T>> inputData) throws Exception {
-    	TileData<List<T>> resultTile = inputData;
+    	// A view of the input, so the filtered metadata doesn't overwrite the (possibly cached) input tile's
+    	TileData<List<T>> resultTile = MappedTileView.map(inputData, MappedTileView.<List<T>>identity());
 
     	// add in metadata to the tile
         JSONObject metadata = new JSONObject(inputData.getMetaData("meta"));
@@ -28,8 +28,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.oculusinfo.binning.TileData;
-import com.oculusinfo.binning.TileIndex;
-import com.oculusinfo.binning.impl.DenseTileData;
+import com.oculusinfo.binning.impl.DenseTileMultiSliceView;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -130,21 +129,8 @@ public class FilterVarsDoubleArrayTileTransformer<T> implements TileTransformer<
         if (_variables == null) {
             resultTile = null;
         } else {
-			TileIndex index = inputData.getDefinition();
-			List<List<T>> rawData = DenseTileData.getData(inputData);
-			List<List<T>> transformedData = new ArrayList<>(index.getXBins()*index.getYBins());
-			for (List<T> rawEntry: rawData) {
-				int size = rawEntry.size();
-				List<T> transformedEntry = new ArrayList<>(_variables.size());
-
-				for (int varIndex : _variables) {
-					if (varIndex < size)
-						transformedEntry.add(rawEntry.get(varIndex));
-				}
-				transformedData.add(transformedEntry);
-			}
-
-            resultTile = new DenseTileData<>(inputData.getDefinition(), transformedData);
+            // A lazy view; bins are projected as the renderer reads them
+            resultTile = new DenseTileMultiSliceView<>(inputData, _variables);
         }
 
         return resultTile;
@@ -49,6 +49,15 @@ public class HalfSigmoidValueTransformer implements ValueTransformer<Double> {
         return (1/(1+Math.exp(-scaledInput)))*2.0-1.0;
     }
 
+    @Override
+    public void transform (double[] values, double[] results, int length) {
+        double denominator = _scale - _center;
+        for (int i = 0; i < length; ++i) {
+            double scaledInput = (values[i]-_center) / denominator;
+            results[i] = (1/(1+Math.exp(-scaledInput)))*2.0-1.0;
+        }
+    }
+
     @Override
     public Double getMaximumValue () {
         return 1.0;
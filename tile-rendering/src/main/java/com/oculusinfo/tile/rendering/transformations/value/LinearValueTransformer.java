@@ -41,6 +41,13 @@ public class LinearValueTransformer implements ValueTransformer<Double> {
 		return (Math.max(Math.min(value, _max), _min) - _min) / _range;
 	}
 
+	@Override
+	public void transform (double[] values, double[] results, int length) {
+		for (int i = 0; i < length; ++i) {
+			results[i] = (Math.max(Math.min(values[i], _max), _min) - _min) / _range;
+		}
+	}
+
 	@Override
 	public Double getMaximumValue () {
 		return _max;
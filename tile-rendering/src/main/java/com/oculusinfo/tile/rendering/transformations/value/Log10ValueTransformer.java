@@ -52,6 +52,23 @@ public class Log10ValueTransformer implements ValueTransformer<Double> {
 		return ( Math.log10( Math.max(Math.min(value, _max), _min)) - _logMin ) * _oneOverLogRange;
 	}
 
+	@Override
+	public void transform (double[] values, double[] results, int length) {
+		// Clamped values - most notably empty bins - all transform to one of
+		// the two end values, so skip the logarithm for them.
+		double maxResult = ( Math.log10(Math.max(_max, _min)) - _logMin ) * _oneOverLogRange;
+		for (int i = 0; i < length; ++i) {
+			double value = values[i];
+			if (value <= _min) {
+				results[i] = 0.0;
+			} else if (value >= _max) {
+				results[i] = maxResult;
+			} else {
+				results[i] = ( Math.log10(value) - _logMin ) * _oneOverLogRange;
+			}
+		}
+	}
+
 	@Override
 	public Double getMaximumValue () {
 		return _max;
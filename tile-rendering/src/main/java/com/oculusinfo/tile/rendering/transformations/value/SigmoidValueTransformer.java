@@ -47,6 +47,15 @@ public class SigmoidValueTransformer implements ValueTransformer<Double> {
         return (1/(1+Math.exp(-scaledInput)));
     }
 
+    @Override
+    public void transform (double[] values, double[] results, int length) {
+        double denominator = _scale - _center;
+        for (int i = 0; i < length; ++i) {
+            double scaledInput = (values[i]-_center) / denominator;
+            results[i] = (1/(1+Math.exp(-scaledInput)));
+        }
+    }
+
     @Override
     public Double getMaximumValue () {
         return 1.0;
@@ -38,6 +38,17 @@ public interface ValueTransformer<T> {
      */
 	public T transform (T value);
 
+    /**
+     * Transform a whole batch of values at once, without boxing each one.
+     * This must give exactly the same results as transforming each value
+     * individually.
+     * @param values The data to be transformed.
+     * @param results The array into which to put the transformed data; this
+     *            may be the same array as values.
+     * @param length The number of values to transform
+     */
+	public void transform (double[] values, double[] results, int length);
+
     /**
      * Get the maximum value possible from the transformer
      * @return The maximum value possible respective to the transform
@@ -25,30 +25,22 @@
 package com.oculusinfo.tile.util;
 
 
-import org.apache.avro.Schema;
-import org.apache.avro.file.DataFileReader;
-import org.apache.avro.file.FileReader;
-import org.apache.avro.file.SeekableByteArrayInput;
-import org.apache.avro.file.SeekableInput;
-import org.apache.avro.generic.GenericDatumReader;
-import org.apache.avro.generic.GenericDatumWriter;
-import org.apache.avro.io.DatumWriter;
-import org.apache.avro.io.EncoderFactory;
-import org.apache.avro.io.JsonEncoder;
-import org.apache.commons.io.IOUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONArray;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
 
 
 
 /**
  * Simple utility class to convert Avro files to JSON (and, maybe, vice versa)
  *
+ * Where the JSON is just going to be written out again, use
+ * {@link AvroJSONWriter} directly instead, which avoids building the
+ * intermediate JSON object entirely.
+ *
  * @author nkronenfeld
  */
 public class AvroJSONConverter {
@@ -61,44 +53,8 @@ public class AvroJSONConverter {
 	 * @throws JSONException
 	 */
 	public static JSONObject convert (InputStream stream) throws IOException, JSONException {
-		SeekableInput input = new SeekableByteArrayInput(IOUtils.toByteArray(stream));
-		ByteArrayOutputStream output = new ByteArrayOutputStream();
-
-		// Conversion code taken from org.apache.avro.tool.DataFileReadTool
-		GenericDatumReader<Object> reader = new GenericDatumReader<>();
-		FileReader<Object> fileReader = DataFileReader.openReader(input, reader);
-		try {
-			Schema schema = fileReader.getSchema();
-			DatumWriter<Object> writer = new GenericDatumWriter<>(schema);
-			JsonEncoder encoder = EncoderFactory.get().jsonEncoder(schema, output);
-			for (Object datum: fileReader) {
-				encoder.configure(output);
-				writer.write(datum, encoder);
-				encoder.flush();
-				// For some reason, we only contain one record, but the
-				// decoding thinks we contain more and fails; so just break
-				// after our first one.
-				break;
-			}
-			output.flush();
-		} finally {
-			fileReader.close();
-		}
-		String jsonString = output.toString("UTF-8");
-		JSONObject json = new JSONObject(jsonString);
-
-		// check meta data node of tile, typically it is serialized as a string
-		// however this string will be valid JSON and can thus be parsed further
-		JSONObject meta = json.optJSONObject("meta");
-		if ( meta != null ) {
-			JSONObject map = meta.optJSONObject("map");
-			if ( map != null ) {
-				String bins = map.optString("bins", null);
-				if ( bins != null ) {
-					map.put( "bins", new JSONArray( bins ) );
-				}
-			}
-		}
-		return json;
+		StringWriter output = new StringWriter();
+		AvroJSONWriter.write(stream, output);
+		return new JSONObject(output.toString());
 	}
 }
@@ -0,0 +1,420 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.util;
+
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+
+/**
+ * Writes serialized Avro tiles out as JSON, in a single streaming pass.
+ *
+ * The output is identical to that of Avro's own JSON encoding (as produced
+ * by {@link AvroJSONConverter}) - including the wrapping of non-null union
+ * values in an object keyed by branch type - except that a tile's
+ * meta.map.bins string, which is itself JSON, is written inline rather than
+ * as a string.
+ *
+ * Rather than decoding into generic records and re-encoding them, the binary
+ * record is read straight off the stream by a tree of transcoders compiled
+ * (and cached) once per schema; transcoders hold no state, so are shared
+ * between threads.  Records consisting only of primitive
+ * fields - the bins of numeric and word-score tiles - get a flattened
+ * transcoder that avoids per-field dispatch.
+ */
+public class AvroJSONWriter {
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+	private static final Map<Schema, Transcoder> TRANSCODERS = new ConcurrentHashMap<>();
+
+
+
+	/**
+	 * Write the first record of an Avro data stream to a JSON output stream,
+	 * as UTF-8.
+	 */
+	public static void write (InputStream stream, OutputStream output) throws IOException {
+		JsonGenerator json = JSON_FACTORY.createJsonGenerator(output, JsonEncoding.UTF8);
+		json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		write(stream, json);
+		json.close();
+	}
+
+	/**
+	 * Write the first record of an Avro data stream to a character stream.
+	 */
+	public static void write (InputStream stream, Writer output) throws IOException {
+		JsonGenerator json = JSON_FACTORY.createJsonGenerator(output);
+		json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		write(stream, json);
+		json.close();
+	}
+
+	/**
+	 * Write the first record of an Avro data stream as the next value of a
+	 * JSON generator.  Nothing is flushed, so this may be used in the middle
+	 * of a larger document.
+	 */
+	public static void write (InputStream stream, JsonGenerator json) throws IOException {
+		read(stream).write(json);
+	}
+
+	/**
+	 * Read the container header and first block of an Avro data stream, so
+	 * that problems with the stream show up before anything is written.  The
+	 * stream is consumed and closed.
+	 */
+	public static Block read (InputStream stream) throws IOException {
+		DataFileStream<Object> file = new DataFileStream<>(stream, new GenericDatumReader<Object>());
+		try {
+			// Tiles only ever contain one record, so only the first block
+			// matters.
+			if (!file.hasNext()) {
+				return new Block(null, null);
+			}
+			Schema schema = file.getSchema();
+			return new Block(getTranscoder(schema), file.nextBlock());
+		} catch (AvroRuntimeException e) {
+			// Avro reports a corrupt block this way
+			throw new IOException("Error reading avro stream", e);
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * The first block of an Avro data stream, read and ready to be written out
+	 * as JSON.
+	 */
+	public static class Block {
+		private final Transcoder _transcoder;
+		private final ByteBuffer _data;
+
+		private Block (Transcoder transcoder, ByteBuffer data) {
+			_transcoder = transcoder;
+			_data = data;
+		}
+
+		/**
+		 * Write the first record of the block as the next value of a JSON
+		 * generator, or null if the stream held no records.  Nothing is
+		 * flushed.
+		 */
+		public void write (JsonGenerator json) throws IOException {
+			if (null == _data) {
+				json.writeNull();
+				return;
+			}
+			BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(_data.array(),
+			                                                           _data.arrayOffset() + _data.position(),
+			                                                           _data.remaining(), null);
+			_transcoder.transcode(decoder, json);
+		}
+	}
+
+	private static Transcoder getTranscoder (Schema schema) {
+		Transcoder transcoder = TRANSCODERS.get(schema);
+		if (null == transcoder) {
+			transcoder = compile(schema, true, new HashMap<Schema, Transcoder>());
+			TRANSCODERS.put(schema, transcoder);
+		}
+		return transcoder;
+	}
+
+
+
+	/*
+	 * Transcoders
+	 */
+	private interface Transcoder {
+		void transcode (Decoder in, JsonGenerator out) throws IOException;
+	}
+
+	private static Transcoder compile (Schema schema, boolean topLevel, Map<Schema, Transcoder> records) {
+		switch (schema.getType()) {
+		case RECORD: {
+			Transcoder existing = records.get(schema);
+			if (null != existing) return existing;
+			if (isFlat(schema)) {
+				Transcoder flat = new FlatRecordTranscoder(schema);
+				records.put(schema, flat);
+				return flat;
+			}
+			RecordTranscoder record = new RecordTranscoder();
+			// registered before compiling fields, so recursive schemas terminate
+			records.put(schema, record);
+			List<Schema.Field> fields = schema.getFields();
+			record._names = new String[fields.size()];
+			record._fields = new Transcoder[fields.size()];
+			for (int i=0; i<fields.size(); ++i) {
+				Schema.Field field = fields.get(i);
+				record._names[i] = field.name();
+				if (topLevel && "meta".equals(field.name())) {
+					record._fields[i] = compileMeta(field.schema(), records);
+				} else {
+					record._fields[i] = compile(field.schema(), false, records);
+				}
+			}
+			return record;
+		}
+		case ARRAY:
+			return new ArrayTranscoder(compile(schema.getElementType(), false, records));
+		case MAP:
+			return new MapTranscoder(compile(schema.getValueType(), false, records), false);
+		case UNION: {
+			List<Schema> types = schema.getTypes();
+			String[] labels = new String[types.size()];
+			Transcoder[] branches = new Transcoder[types.size()];
+			for (int i=0; i<types.size(); ++i) {
+				labels[i] = types.get(i).getFullName();
+				branches[i] = (Schema.Type.NULL == types.get(i).getType()) ? null : compile(types.get(i), false, records);
+			}
+			return new UnionTranscoder(labels, branches);
+		}
+		case ENUM:
+			return new EnumTranscoder(schema.getEnumSymbols());
+		case FIXED:
+			return new FixedTranscoder(schema.getFixedSize());
+		default:
+			return new PrimitiveTranscoder(schema.getType());
+		}
+	}
+
+	// Tile metadata is a (possibly nullable) map of strings, the "bins"
+	// entry of which holds JSON that should be written inline
+	private static Transcoder compileMeta (Schema schema, Map<Schema, Transcoder> records) {
+		if (Schema.Type.MAP == schema.getType() && Schema.Type.STRING == schema.getValueType().getType()) {
+			return new MapTranscoder(new PrimitiveTranscoder(Schema.Type.STRING), true);
+		}
+		if (Schema.Type.UNION == schema.getType()) {
+			List<Schema> types = schema.getTypes();
+			String[] labels = new String[types.size()];
+			Transcoder[] branches = new Transcoder[types.size()];
+			for (int i=0; i<types.size(); ++i) {
+				labels[i] = types.get(i).getFullName();
+				branches[i] = (Schema.Type.NULL == types.get(i).getType()) ? null : compileMeta(types.get(i), records);
+			}
+			return new UnionTranscoder(labels, branches);
+		}
+		return compile(schema, false, records);
+	}
+
+	private static boolean isFlat (Schema record) {
+		for (Schema.Field field: record.getFields()) {
+			switch (field.schema().getType()) {
+			case BOOLEAN: case INT: case LONG: case FLOAT: case DOUBLE: case STRING:
+				break;
+			default:
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static class RecordTranscoder implements Transcoder {
+		String[]     _names;
+		Transcoder[] _fields;
+		@Override
+		public void transcode (Decoder in, JsonGenerator out) throws IOException {
+			out.writeStartObject();
+			for (int i=0; i<_fields.length; ++i) {
+				out.writeFieldName(_names[i]);
+				_fields[i].transcode(in, out);
+			}
+			out.writeEndObject();
+		}
+	}
+
+	// A record of nothing but primitive fields
+	private static class FlatRecordTranscoder implements Transcoder {
+		private final String[]      _names;
+		private final Schema.Type[] _types;
+		FlatRecordTranscoder (Schema schema) {
+			List<Schema.Field> fields = schema.getFields();
+			_names = new String[fields.size()];
+			_types = new Schema.Type[fields.size()];
+			for (int i=0; i<fields.size(); ++i) {
+				_names[i] = fields.get(i).name();
+				_types[i] = fields.get(i).schema().getType();
+			}
+		}
+		@Override
+		public void transcode (Decoder in, JsonGenerator out) throws IOException {
+			out.writeStartObject();
+			for (int i=0; i<_types.length; ++i) {
+				out.writeFieldName(_names[i]);
+				switch (_types[i]) {
+				case DOUBLE:  out.writeNumber(in.readDouble()); break;
+				case STRING:  out.writeString(in.readString()); break;
+				case INT:     out.writeNumber(in.readInt()); break;
+				case LONG:    out.writeNumber(in.readLong()); break;
+				case FLOAT:   out.writeNumber(in.readFloat()); break;
+				default:      out.writeBoolean(in.readBoolean()); break;
+				}
+			}
+			out.writeEndObject();
+		}
+	}
+
+	private static class ArrayTranscoder implements Transcoder {
+		private final Transcoder _items;
+		ArrayTranscoder (Transcoder items) {
+			_items = items;
+		}
+		@Override
+		public void transcode (Decoder in, JsonGenerator out) throws IOException {
+			out.writeStartArray();
+			for (long n = in.readArrayStart(); n > 0; n = in.arrayNext()) {
+				for (long i=0; i<n; ++i) {
+					_items.transcode(in, out);
+				}
+			}
+			out.writeEndArray();
+		}
+	}
+
+	private static class MapTranscoder implements Transcoder {
+		private final Transcoder _values;
+		private final boolean    _inlineBins;
+		MapTranscoder (Transcoder values, boolean inlineBins) {
+			_values = values;
+			_inlineBins = inlineBins;
+		}
+		@Override
+		public void transcode (Decoder in, JsonGenerator out) throws IOException {
+			out.writeStartObject();
+			for (long n = in.readMapStart(); n > 0; n = in.mapNext()) {
+				for (long i=0; i<n; ++i) {
+					String key = in.readString();
+					out.writeFieldName(key);
+					if (_inlineBins && "bins".equals(key)) {
+						String bins = in.readString();
+						String trimmed = bins.trim();
+						if (trimmed.startsWith("[") && trimmed.endsWith("]")) {
+							out.writeRawValue(trimmed);
+						} else {
+							out.writeString(bins);
+						}
+					} else {
+						_values.transcode(in, out);
+					}
+				}
+			}
+			out.writeEndObject();
+		}
+	}
+
+	private static class UnionTranscoder implements Transcoder {
+		private final String[]     _labels;
+		private final Transcoder[] _branches;
+		UnionTranscoder (String[] labels, Transcoder[] branches) {
+			_labels = labels;
+			_branches = branches;
+		}
+		@Override
+		public void transcode (Decoder in, JsonGenerator out) throws IOException {
+			int branch = in.readIndex();
+			if (null == _branches[branch]) {
+				in.readNull();
+				out.writeNull();
+			} else {
+				out.writeStartObject();
+				out.writeFieldName(_labels[branch]);
+				_branches[branch].transcode(in, out);
+				out.writeEndObject();
+			}
+		}
+	}
+
+	private static class EnumTranscoder implements Transcoder {
+		private final List<String> _symbols;
+		EnumTranscoder (List<String> symbols) {
+			_symbols = symbols;
+		}
+		@Override
+		public void transcode (Decoder in, JsonGenerator out) throws IOException {
+			out.writeString(_symbols.get(in.readEnum()));
+		}
+	}
+
+	private static class FixedTranscoder implements Transcoder {
+		private final int _size;
+		FixedTranscoder (int size) {
+			_size = size;
+		}
+		@Override
+		public void transcode (Decoder in, JsonGenerator out) throws IOException {
+			byte[] bytes = new byte[_size];
+			in.readFixed(bytes);
+			out.writeString(new String(bytes, "ISO-8859-1"));
+		}
+	}
+
+	private static class PrimitiveTranscoder implements Transcoder {
+		private final Schema.Type _type;
+		PrimitiveTranscoder (Schema.Type type) {
+			_type = type;
+		}
+		@Override
+		public void transcode (Decoder in, JsonGenerator out) throws IOException {
+			switch (_type) {
+			case NULL:    in.readNull(); out.writeNull(); break;
+			case BOOLEAN: out.writeBoolean(in.readBoolean()); break;
+			case INT:     out.writeNumber(in.readInt()); break;
+			case LONG:    out.writeNumber(in.readLong()); break;
+			case FLOAT:   out.writeNumber(in.readFloat()); break;
+			case DOUBLE:  out.writeNumber(in.readDouble()); break;
+			case STRING:  out.writeString(in.readString()); break;
+			case BYTES: {
+				ByteBuffer bytes = in.readBytes(null);
+				out.writeString(new String(bytes.array(), bytes.arrayOffset() + bytes.position(),
+				                           bytes.remaining(), "ISO-8859-1"));
+				break;
+			}
+			default:
+				throw new IOException("Unexpected avro type "+_type);
+			}
+		}
+	}
+}
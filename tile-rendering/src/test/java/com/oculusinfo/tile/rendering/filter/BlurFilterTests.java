@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rendering.filter;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BlurFilterTests {
+	private static BufferedImage randomImage (int width, int height, int type, long seed) {
+		Random random = new Random(seed);
+		BufferedImage image = new BufferedImage(width, height, type);
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				image.setRGB(x, y, random.nextInt());
+			}
+		}
+		return image;
+	}
+
+	private static int[] pixels (BufferedImage image) {
+		return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+	}
+
+	// A straightforward clamped box blur of each row, written transposed
+	private static int[] referencePass (int[] src, int width, int height, int radius) {
+		int[] dst = new int[width * height];
+		int windowSize = 2 * radius + 1;
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				int result = 0;
+				for (int shift = 0; shift < 32; shift += 8) {
+					int sum = 0;
+					for (int k = -radius; k <= radius; ++k) {
+						int sx = Math.min(Math.max(x + k, 0), width - 1);
+						sum += (src[y * width + sx] >> shift) & 0xFF;
+					}
+					result |= (sum / windowSize) << shift;
+				}
+				dst[x * height + y] = result;
+			}
+		}
+		return dst;
+	}
+
+	private static int[] referenceBlur (int[] src, int width, int height, int radius, int iterations) {
+		int[] result = src;
+		for (int i = 0; i < iterations; ++i) {
+			result = referencePass(referencePass(result, width, height, radius), height, width, radius);
+		}
+		return result;
+	}
+
+	@Test
+	public void testFastBlur () {
+		BufferedImage source = randomImage(17, 11, BufferedImage.TYPE_INT_ARGB, 1);
+		BufferedImage result = new FastBlurFilter(2).filter(source, null);
+
+		Assert.assertArrayEquals(referenceBlur(pixels(source), 17, 11, 2, 1), pixels(result));
+	}
+
+	@Test
+	public void testParallelStackBlur () {
+		// Large enough to be split across threads
+		BufferedImage source = randomImage(613, 401, BufferedImage.TYPE_INT_ARGB, 2);
+		BufferedImage result = new StackBlurFilter(3, 2).filter(source, null);
+
+		Assert.assertArrayEquals(referenceBlur(pixels(source), 613, 401, 3, 2), pixels(result));
+	}
+
+	@Test
+	public void testRadiusWiderThanImage () {
+		BufferedImage source = randomImage(3, 5, BufferedImage.TYPE_INT_ARGB, 3);
+		BufferedImage result = new StackBlurFilter(4, 3).filter(source, null);
+
+		Assert.assertArrayEquals(referenceBlur(pixels(source), 3, 5, 4, 3), pixels(result));
+	}
+
+	@Test
+	public void testNonIntRaster () {
+		BufferedImage source = randomImage(40, 30, BufferedImage.TYPE_INT_ARGB, 4);
+		BufferedImage byteSource = new BufferedImage(40, 30, BufferedImage.TYPE_4BYTE_ABGR);
+		byteSource.setRGB(0, 0, 40, 30, pixels(source), 0, 40);
+
+		BufferedImage result = new StackBlurFilter(2, 3).filter(byteSource, null);
+
+		Assert.assertArrayEquals(referenceBlur(pixels(source), 40, 30, 2, 3), pixels(result));
+	}
+
+	@Test
+	public void testInPlace () {
+		BufferedImage image = randomImage(64, 48, BufferedImage.TYPE_INT_ARGB, 5);
+		int[] expected = referenceBlur(pixels(image), 64, 48, 3, 3);
+
+		new StackBlurFilter(3, 3).filter(image, image);
+
+		Assert.assertArrayEquals(expected, pixels(image));
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rendering.impl;
+
+import com.oculusinfo.binning.TileData;
+import com.oculusinfo.binning.TileIndex;
+import com.oculusinfo.binning.impl.DenseTileData;
+import com.oculusinfo.tile.rendering.color.ColorRamp;
+import com.oculusinfo.tile.rendering.color.impl.HueColorRamp;
+import com.oculusinfo.tile.rendering.transformations.value.HalfSigmoidValueTransformer;
+import com.oculusinfo.tile.rendering.transformations.value.LinearValueTransformer;
+import com.oculusinfo.tile.rendering.transformations.value.Log10ValueTransformer;
+import com.oculusinfo.tile.rendering.transformations.value.SigmoidValueTransformer;
+import com.oculusinfo.tile.rendering.transformations.value.ValueTransformer;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class NumberImageRendererTests {
+	private static final int BLANK = 0x00FFFFFF;
+
+	private ColorRamp _ramp = new HueColorRamp(0.0, 1.0);
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private List<ValueTransformer<Number>> getTransformers () {
+		return (List) Arrays.asList(new LinearValueTransformer(0, 100),
+		                            new Log10ValueTransformer(1, 100),
+		                            new SigmoidValueTransformer(0, 100),
+		                            new HalfSigmoidValueTransformer(0, 100));
+	}
+
+	private TileData<Number> createTile (int bins, long seed) {
+		Random random = new Random(seed);
+		TileData<Number> tile = new DenseTileData<Number>(new TileIndex(4, 3, 5, bins, bins));
+		for (int x=0; x<bins; ++x) {
+			for (int y=0; y<bins; ++y) {
+				// A quarter of the bins are empty
+				double value = random.nextInt(4) == 0 ? 0.0 : random.nextDouble()*120.0;
+				tile.setBin(x, y, value);
+			}
+		}
+		return tile;
+	}
+
+	private int[] render (TileData<Number> tile, ValueTransformer<Number> t, String mode, String shape, int size) {
+		BufferedImage bi = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+		bi = new NumberImageRenderer().renderImage(tile, t, 0.2, 0.8, mode, _ramp, bi, shape);
+		return ((DataBufferInt) bi.getRaster().getDataBuffer()).getData();
+	}
+
+	@Test
+	public void testMatchesPerBinRendering () {
+		for (ValueTransformer<Number> t: getTransformers()) {
+			for (String mode: new String[] {"cull", "clamp"}) {
+				for (String shape: new String[] {"square", "circle"}) {
+					for (int bins: new int[] {16, 4}) {
+						TileData<Number> tile = createTile(bins, 1234L);
+						int[] expected = renderPerBin(tile, t, 0.2, 0.8, mode, shape, 16);
+						int[] actual = render(tile, t, mode, shape, 16);
+						Assert.assertArrayEquals(t.getClass().getSimpleName()+", "+mode+", "+shape+", "+bins,
+						                         expected, actual);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testEmptyAndCulledBinsBlank () {
+		TileData<Number> tile = new DenseTileData<Number>(new TileIndex(0, 0, 0, 2, 1));
+		tile.setBin(0, 0, 0.0);
+		tile.setBin(1, 0, 100.0);
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		ValueTransformer<Number> t = (ValueTransformer) new LinearValueTransformer(0, 100);
+
+		int[] culled = render(tile, t, "cull", "square", 2);
+		Assert.assertEquals(BLANK, culled[0]);
+		Assert.assertEquals(BLANK, culled[1]);
+
+		int[] clamped = render(tile, t, "clamp", "square", 2);
+		Assert.assertEquals(BLANK, clamped[0]);
+		Assert.assertEquals(_ramp.getRGB((1.0 - 0.2) / (0.8 - 0.2)), clamped[1]);
+	}
+
+	@Ignore( "benchmark" )
+	@Test
+	public void benchmark () {
+		TileData<Number> tile = createTile(256, 5678L);
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		ValueTransformer<Number> t = (ValueTransformer) new Log10ValueTransformer(1, 100);
+
+		for (String shape: new String[] {"square", "circle"}) {
+			for (int size: new int[] {256, 1024}) {
+				// warm up
+				for (int i=0; i<200; ++i) {
+					renderPerBin(tile, t, 0.2, 0.8, "cull", shape, size);
+					render(tile, t, "cull", shape, size);
+				}
+
+				int runs = 500;
+				long start = System.nanoTime();
+				for (int i=0; i<runs; ++i) {
+					renderPerBin(tile, t, 0.2, 0.8, "cull", shape, size);
+				}
+				long perBinTime = (System.nanoTime() - start) / runs;
+
+				start = System.nanoTime();
+				for (int i=0; i<runs; ++i) {
+					render(tile, t, "cull", shape, size);
+				}
+				long batchTime = (System.nanoTime() - start) / runs;
+
+				Assert.assertArrayEquals(renderPerBin(tile, t, 0.2, 0.8, "cull", shape, size),
+				                         render(tile, t, "cull", shape, size));
+				Assert.assertTrue(String.format("Batched rendering of 256x256 bins to %dx%d %ss took %.3fms, per bin %.3fms",
+				                                size, size, shape, batchTime / 1e6, perBinTime / 1e6),
+				                  batchTime < perBinTime);
+			}
+		}
+	}
+
+
+
+	// The original renderer inner loop: one boxed transform per bin, and
+	// column-major fills of scaled bins
+	private int[] renderPerBin (TileData<Number> data, ValueTransformer<Number> t,
+	                            double valueMin, double valueMax, String mode, String pixelShape, int size) {
+		BufferedImage bi = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+		int[] rgbArray = ((DataBufferInt) bi.getRaster().getDataBuffer()).getData();
+		int xBins = data.getDefinition().getXBins();
+		int yBins = data.getDefinition().getYBins();
+		float xScale = size / xBins;
+		float yScale = size / yBins;
+		double radius2 = Math.pow(Math.min(xScale, yScale)*0.5, 2);
+		double oneOverScaledRange = 1.0 / (valueMax - valueMin);
+		boolean bCoarseCircles = pixelShape.equals("circle");
+
+		for (int ty = 0; ty < yBins; ty++) {
+			for (int tx = 0; tx < xBins; tx++) {
+				int minX = (int) Math.round(tx*xScale);
+				int maxX = (int) Math.round((tx+1)*xScale);
+				int minY = (int) Math.round(ty*yScale);
+				int maxY = (int) Math.round((ty+1)*yScale);
+				double centreX = (maxX + minX) * 0.5;
+				double centreY = (maxY + minY) * 0.5;
+
+				double binCount = data.getBin(tx, ty).doubleValue();
+				double transformedValue = t.transform(binCount).doubleValue();
+				int rgb;
+				if (binCount > 0) {
+					if (mode.equals("cull")) {
+						if (transformedValue >= valueMin && transformedValue <= valueMax) {
+							rgb = _ramp.getRGB((transformedValue - valueMin) * oneOverScaledRange);
+						} else {
+							rgb = BLANK;
+						}
+					} else {
+						rgb = _ramp.getRGB((transformedValue - valueMin) * oneOverScaledRange);
+					}
+				} else {
+					rgb = BLANK;
+				}
+
+				for (int ix = minX; ix < maxX; ++ix) {
+					for (int iy = minY; iy < maxY; ++iy) {
+						int i = iy*size + ix;
+						if (bCoarseCircles && radius2 > 1.0) {
+							double dist = Math.pow(ix+0.5-centreX, 2) + Math.pow(iy+0.5-centreY, 2);
+							rgbArray[i] = (dist <= radius2) ? rgb : BLANK;
+						} else {
+							rgbArray[i] = rgb;
+						}
+					}
+				}
+			}
+		}
+		return rgbArray;
+	}
+}
@@ -53,4 +53,15 @@ public class LinearValueTransformerTests {
 		Assert.assertEquals(0.5, t.transform(5.0), EPS);
 		Assert.assertEquals(1, t.transform(20.0), EPS);
 	}
+
+	@Test
+	public void testBatchMatchesSingleValues () {
+		LinearValueTransformer t = new LinearValueTransformer(-10,20);
+		double[] values = {-20.0, -10.0, 0.0, 5.0, 12.5, 20.0, 50.0};
+		double[] results = new double[values.length];
+		t.transform(values, results, values.length);
+		for (int i=0; i<values.length; ++i) {
+			Assert.assertEquals(t.transform(values[i]), results[i], 0.0);
+		}
+	}
 }
@@ -55,4 +55,21 @@ public class Log10ValueTransformerTests {
 		Assert.assertEquals(1, t.transform(5000.0), EPS);
 	}
 
+
+	@Test
+	public void testBatchInPlace () {
+		Log10ValueTransformer t = new Log10ValueTransformer(1,1000);
+		double[] values = {0.0, 1.0, 10.0, 31.6, 1000.0, 1e6, 0.0};
+		double[] expected = new double[values.length];
+		for (int i=0; i<values.length; ++i) {
+			expected[i] = t.transform(values[i]);
+		}
+		// Only transform the first few, in place
+		t.transform(values, values, 6);
+		for (int i=0; i<6; ++i) {
+			Assert.assertEquals(expected[i], values[i], 0.0);
+		}
+		Assert.assertEquals(0.0, values[6], 0.0);
+	}
+
 }
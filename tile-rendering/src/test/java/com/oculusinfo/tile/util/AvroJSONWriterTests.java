@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.util;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.FileReader;
+import org.apache.avro.file.SeekableByteArrayInput;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.io.JsonEncoder;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oculusinfo.binning.TileData;
+import com.oculusinfo.binning.TileIndex;
+import com.oculusinfo.binning.impl.DenseTileData;
+import com.oculusinfo.binning.impl.SparseTileData;
+import com.oculusinfo.binning.io.serialization.TileSerializer;
+import com.oculusinfo.binning.io.serialization.impl.PairArrayAvroSerializer;
+import com.oculusinfo.binning.io.serialization.impl.PrimitiveAvroSerializer;
+import com.oculusinfo.factory.util.Pair;
+
+
+
+public class AvroJSONWriterTests {
+	private static <T> byte[] serialize (TileSerializer<T> serializer, TileData<T> tile) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		serializer.serialize(tile, baos);
+		baos.close();
+		return baos.toByteArray();
+	}
+
+	// The JSON produced by Avro's own encoder, which the writer must match
+	private static String avroJSON (byte[] data) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		GenericDatumReader<Object> reader = new GenericDatumReader<>();
+		FileReader<Object> fileReader = DataFileReader.openReader(new SeekableByteArrayInput(data), reader);
+		try {
+			Schema schema = fileReader.getSchema();
+			DatumWriter<Object> writer = new GenericDatumWriter<>(schema);
+			JsonEncoder encoder = EncoderFactory.get().jsonEncoder(schema, output);
+			writer.write(fileReader.next(), encoder);
+			encoder.flush();
+		} finally {
+			fileReader.close();
+		}
+		return output.toString("UTF-8");
+	}
+
+	private static String writerJSON (byte[] data) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		AvroJSONWriter.write(new ByteArrayInputStream(data), output);
+		return output.toString("UTF-8");
+	}
+
+	@Test
+	public void testDenseNumericTile () throws Exception {
+		TileSerializer<Double> serializer = new PrimitiveAvroSerializer<>(Double.class, CodecFactory.nullCodec());
+		DenseTileData<Double> tile = new DenseTileData<>(new TileIndex(4, 3, 2, 8, 8), 0.0);
+		for (int x=0; x<8; ++x) {
+			for (int y=0; y<8; ++y) {
+				tile.setBin(x, y, x * 1.5 - y * 0.25);
+			}
+		}
+		tile.setMetaData("minimum", "-1.75");
+		byte[] data = serialize(serializer, tile);
+
+		Assert.assertEquals(avroJSON(data), writerJSON(data));
+	}
+
+	@Test
+	public void testSparseCompressedTile () throws Exception {
+		TileSerializer<Double> serializer = new PrimitiveAvroSerializer<>(Double.class, CodecFactory.deflateCodec(4));
+		SparseTileData<Double> tile = new SparseTileData<>(new TileIndex(2, 1, 1, 16, 16), -1.0);
+		tile.setBin(3, 4, 2.0);
+		tile.setBin(15, 0, 7.5);
+		byte[] data = serialize(serializer, tile);
+
+		Assert.assertEquals(avroJSON(data), writerJSON(data));
+	}
+
+	@Test
+	public void testWordScoreTile () throws Exception {
+		TileSerializer<List<Pair<String, Double>>> serializer = new PairArrayAvroSerializer<>(String.class, Double.class, CodecFactory.nullCodec());
+		DenseTileData<List<Pair<String, Double>>> tile = new DenseTileData<>(new TileIndex(0, 0, 0, 2, 2));
+		for (int x=0; x<2; ++x) {
+			for (int y=0; y<2; ++y) {
+				List<Pair<String, Double>> bin = new ArrayList<>();
+				bin.add(new Pair<String, Double>("abc\"\u00e9", 1.0 + x));
+				bin.add(new Pair<String, Double>("def", 1.5 * y));
+				tile.setBin(x, y, bin);
+			}
+		}
+		byte[] data = serialize(serializer, tile);
+
+		Assert.assertEquals(avroJSON(data), writerJSON(data));
+	}
+
+	@Test
+	public void testInlineBinsMetaData () throws Exception {
+		TileSerializer<Double> serializer = new PrimitiveAvroSerializer<>(Double.class, CodecFactory.nullCodec());
+		DenseTileData<Double> tile = new DenseTileData<>(new TileIndex(0, 0, 0, 1, 1), 3.0);
+		tile.setMetaData("bins", "[\"a\", \"b\", \"c\"]");
+		tile.setMetaData("other", "[not json");
+		byte[] data = serialize(serializer, tile);
+
+		JSONObject json = new JSONObject(writerJSON(data));
+		JSONObject map = json.getJSONObject("meta").getJSONObject("map");
+		JSONArray bins = map.getJSONArray("bins");
+		Assert.assertEquals(3, bins.length());
+		Assert.assertEquals("b", bins.getString(1));
+		Assert.assertEquals("[not json", map.getString("other"));
+
+		JSONObject converted = AvroJSONConverter.convert(new ByteArrayInputStream(data));
+		Assert.assertEquals(3, converted.getJSONObject("meta").getJSONObject("map").getJSONArray("bins").length());
+	}
+
+	// A corrupt tile must fail when read, before anything has been written
+	@Test(expected=IOException.class)
+	public void testCorruptTileFailsOnRead () throws Exception {
+		TileSerializer<Double> serializer = new PrimitiveAvroSerializer<>(Double.class, CodecFactory.nullCodec());
+		DenseTileData<Double> tile = new DenseTileData<>(new TileIndex(4, 3, 2, 8, 8), 1.0);
+		byte[] data = serialize(serializer, tile);
+		// Break the sync marker that ends the block
+		data[data.length - 1] ^= 0xff;
+
+		AvroJSONWriter.read(new ByteArrayInputStream(data));
+	}
+}
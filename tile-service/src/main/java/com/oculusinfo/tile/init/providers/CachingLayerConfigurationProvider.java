@@ -26,6 +26,8 @@ package com.oculusinfo.tile.init.providers;
 import java.io.IOException;
 import java.util.List;
 
+import javax.servlet.ServletContextEvent;
+
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,6 +43,9 @@ import com.oculusinfo.factory.ConfigurableFactory;
 import com.oculusinfo.factory.ConfigurationException;
 import com.oculusinfo.factory.providers.FactoryProvider;
 import com.oculusinfo.factory.providers.AbstractFactoryProvider;
+import com.oculusinfo.tile.ServletLifecycleListener;
+import com.oculusinfo.tile.TileServiceConfiguration;
+import com.oculusinfo.tile.metrics.TileMetrics;
 import com.oculusinfo.tile.rendering.LayerConfiguration;
 import com.oculusinfo.tile.rendering.TileDataImageRenderer;
 import com.oculusinfo.tile.rendering.transformations.tile.TileTransformer;
@@ -64,7 +69,9 @@ public class CachingLayerConfigurationProvider extends AbstractFactoryProvider<L
                                               FactoryProvider<TilePyramid> tilePyramidFactoryProvider,
                                               FactoryProvider<TileSerializer<?>> serializationFactoryProvider,
                                               FactoryProvider<TileDataImageRenderer<?>> rendererFactoryProvider,
-                                              FactoryProvider<TileTransformer<?>> tileTransformerFactoryProvider ) {
+                                              FactoryProvider<TileTransformer<?>> tileTransformerFactoryProvider,
+                                              TileMetrics metrics,
+                                              TileServiceConfiguration config ) {
 
         _pyramidIOFactoryProvider = pyramidIOFactoryProvider;
         _tilePyramidFactoryProvider = tilePyramidFactoryProvider;
@@ -72,7 +79,20 @@ public class CachingLayerConfigurationProvider extends AbstractFactoryProvider<L
         _rendererFactoryProvider = rendererFactoryProvider;
         _tileTransformerFactoryProvider = tileTransformerFactoryProvider;
         _cachingProvider = new CachingPyramidIOProvider();
-		_pyramidIO = new CachingPyramidIO();
+		_pyramidIO = new CachingPyramidIO(metrics);
+
+		// Stop prefetching when the servlet goes away, so redeploys don't
+		// leak prefetch threads
+		config.addLifecycleListener(new ServletLifecycleListener() {
+				@Override
+				public void onServletInitialized (ServletContextEvent event) {
+				}
+
+				@Override
+				public void onServletDestroyed (ServletContextEvent event) {
+					_pyramidIO.shutdown();
+				}
+			});
     }
 
 	public void addLayerListener (LayerDataChangedListener listener) {
@@ -118,8 +138,9 @@ public class CachingLayerConfigurationProvider extends AbstractFactoryProvider<L
 		                                 Iterable<TileIndex> tileSet) {
 			try {
 				TileSerializer<?> serializer = produce(TileSerializer.class);
-				String pyramidId = getPropertyValue(LayerConfiguration.LAYER_ID);
-				_pyramidIO.requestTiles(pyramidId, serializer, tileSet);
+				String layerId = getPropertyValue(LayerConfiguration.LAYER_ID);
+				String pyramidId = getPropertyValue(LayerConfiguration.DATA_ID);
+				_pyramidIO.requestTiles(layerId, pyramidId, serializer, tile, tileSet);
 			} catch (IOException e) {
 				LOGGER.warn("Error requesting tile set", e);
 			} catch (ConfigurationException e) {
@@ -161,8 +182,9 @@ public class CachingLayerConfigurationProvider extends AbstractFactoryProvider<L
 
 		private void setupBasePyramidIO () {
 			if (!_baseInitialized) {
-				String pyramidId = _parent.getPropertyValue(LayerConfiguration.LAYER_ID);
-				_pyramidIO.setupBasePyramidIO(pyramidId, _baseFactory);
+				String layerId = _parent.getPropertyValue(LayerConfiguration.LAYER_ID);
+				String pyramidId = _parent.getPropertyValue(LayerConfiguration.DATA_ID);
+				_pyramidIO.setupBasePyramidIO(layerId, pyramidId, _baseFactory);
 				_baseInitialized = true;
 			}
 		}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram.
+ *
+ * Latencies are counted in log-linear buckets - each power of two is split
+ * into {@value #SUB_BUCKETS} equal buckets - so any recorded value is known to
+ * within about 6%, over a range from nanoseconds to minutes, in a fixed
+ * handful of kilobytes. Recording is a few atomic increments, and is safe to
+ * do from any number of threads at once; summaries are read without stopping
+ * recording, so are only approximately consistent with each other.
+ */
+public class LatencyRecorder {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+	// Values are clamped to 2^40 ns, about 18 minutes
+	private static final int MAX_EXPONENT    = 39;
+	private static final int BUCKETS         = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+	private static final long MAX_VALUE      = (1L << (MAX_EXPONENT + 1)) - 1;
+
+
+
+	private AtomicLongArray _counts;
+	private AtomicLong      _count;
+	private AtomicLong      _total;
+	private AtomicLong      _max;
+
+	public LatencyRecorder () {
+		_counts = new AtomicLongArray(BUCKETS);
+		_count = new AtomicLong(0);
+		_total = new AtomicLong(0);
+		_max = new AtomicLong(0);
+	}
+
+	/**
+	 * Record a single latency
+	 * 
+	 * @param nanos The latency, in nanoseconds; negative values are counted as 0
+	 */
+	public void record (long nanos) {
+		long value = Math.min(Math.max(nanos, 0L), MAX_VALUE);
+		_counts.incrementAndGet(bucketIndex(value));
+		_count.incrementAndGet();
+		_total.addAndGet(value);
+
+		long max = _max.get();
+		while (value > max && !_max.compareAndSet(max, value)) {
+			max = _max.get();
+		}
+	}
+
+	/**
+	 * Record the time elapsed since the given start time
+	 * 
+	 * @param startNanos A start time, as given by {@link System#nanoTime()}
+	 */
+	public void recordSince (long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	public long getCount () {
+		return _count.get();
+	}
+
+	/**
+	 * Get the latency below which the given fraction of recorded latencies
+	 * fall, in nanoseconds. The value reported is the top of the bucket
+	 * holding that latency, so errs on the high side.
+	 * 
+	 * @param quantile The fraction of interest, between 0 and 1
+	 */
+	public long getQuantile (double quantile) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			counts[i] = _counts.get(i);
+			total += counts[i];
+		}
+		if (0 == total) return 0L;
+
+		long rank = (long) Math.ceil(Math.min(Math.max(quantile, 0.0), 1.0) * total);
+		if (rank < 1) rank = 1;
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(bucketUpperBound(i), _max.get());
+			}
+		}
+		return _max.get();
+	}
+
+	/**
+	 * Get a summary of all latencies recorded so far.
+	 */
+	public LatencySummary getSummary () {
+		long count = _count.get();
+		double mean = (0 == count ? 0.0 : ((double) _total.get()) / count);
+		return new LatencySummary(count, mean, getQuantile(0.5), getQuantile(0.9), getQuantile(0.99), _max.get());
+	}
+
+	static int bucketIndex (long value) {
+		if (value < SUB_BUCKETS) return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long bucketLowerBound (int index) {
+		if (index < SUB_BUCKETS) return index;
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int subBucket = index % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + subBucket)) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	static long bucketUpperBound (int index) {
+		if (index + 1 >= BUCKETS) return MAX_VALUE;
+		return bucketLowerBound(index + 1) - 1;
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.metrics;
+
+import java.beans.ConstructorProperties;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * An immutable summary of the latencies seen by a {@link LatencyRecorder}.
+ * Latencies are given in milliseconds.
+ */
+public class LatencySummary {
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	private long   _count;
+	private double _mean;
+	private double _median;
+	private double _p90;
+	private double _p99;
+	private double _max;
+
+	LatencySummary (long count, double meanNanos, long medianNanos, long p90Nanos, long p99Nanos, long maxNanos) {
+		this(count, meanNanos / NANOS_PER_MILLI, medianNanos / NANOS_PER_MILLI,
+		     p90Nanos / NANOS_PER_MILLI, p99Nanos / NANOS_PER_MILLI, maxNanos / NANOS_PER_MILLI);
+	}
+
+	@ConstructorProperties({"count", "mean", "median", "p90", "p99", "max"})
+	public LatencySummary (long count, double mean, double median, double p90, double p99, double max) {
+		_count = count;
+		_mean = mean;
+		_median = median;
+		_p90 = p90;
+		_p99 = p99;
+		_max = max;
+	}
+
+	public long getCount () {
+		return _count;
+	}
+
+	public double getMean () {
+		return _mean;
+	}
+
+	public double getMedian () {
+		return _median;
+	}
+
+	public double getP90 () {
+		return _p90;
+	}
+
+	public double getP99 () {
+		return _p99;
+	}
+
+	public double getMax () {
+		return _max;
+	}
+
+	public JSONObject toJSON () throws JSONException {
+		JSONObject result = new JSONObject();
+		result.put("count", _count);
+		result.put("mean", _mean);
+		result.put("median", _median);
+		result.put("p90", _p90);
+		result.put("p99", _p99);
+		result.put("max", _max);
+		return result;
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.oculusinfo.tile.metrics.TileMetrics.Stage;
+
+/**
+ * Latencies and counters for a single layer.
+ */
+public class LayerMetrics implements LayerMetricsMXBean {
+	private String                       _layer;
+	private Map<Stage, LatencyRecorder> _stages;
+	private AtomicLong                   _requests;
+	private AtomicLong                   _errors;
+	private AtomicLong                   _cacheHits;
+	private AtomicLong                   _cacheMisses;
+	private AtomicLong                   _cacheEvictions;
+
+	LayerMetrics (String layer) {
+		_layer = layer;
+		_stages = new EnumMap<>(Stage.class);
+		for (Stage stage: Stage.values()) {
+			_stages.put(stage, new LatencyRecorder());
+		}
+		_requests = new AtomicLong(0);
+		_errors = new AtomicLong(0);
+		_cacheHits = new AtomicLong(0);
+		_cacheMisses = new AtomicLong(0);
+		_cacheEvictions = new AtomicLong(0);
+	}
+
+	public String getLayer () {
+		return _layer;
+	}
+
+	public LatencyRecorder getRecorder (Stage stage) {
+		return _stages.get(stage);
+	}
+
+	public void recordRequest () {
+		_requests.incrementAndGet();
+	}
+
+	public void recordError () {
+		_errors.incrementAndGet();
+	}
+
+	public void recordCacheHits (long hits) {
+		_cacheHits.addAndGet(hits);
+	}
+
+	public void recordCacheMisses (long misses) {
+		_cacheMisses.addAndGet(misses);
+	}
+
+	public void recordCacheEviction () {
+		_cacheEvictions.incrementAndGet();
+	}
+
+
+
+	@Override
+	public LatencySummary getConfigure () {
+		return _stages.get(Stage.CONFIGURE).getSummary();
+	}
+
+	@Override
+	public LatencySummary getRead () {
+		return _stages.get(Stage.READ).getSummary();
+	}
+
+	@Override
+	public LatencySummary getDeserialize () {
+		return _stages.get(Stage.DESERIALIZE).getSummary();
+	}
+
+	@Override
+	public LatencySummary getTransform () {
+		return _stages.get(Stage.TRANSFORM).getSummary();
+	}
+
+	@Override
+	public LatencySummary getRender () {
+		return _stages.get(Stage.RENDER).getSummary();
+	}
+
+	@Override
+	public LatencySummary getEncode () {
+		return _stages.get(Stage.ENCODE).getSummary();
+	}
+
+	@Override
+	public long getRequests () {
+		return _requests.get();
+	}
+
+	@Override
+	public long getErrors () {
+		return _errors.get();
+	}
+
+	@Override
+	public long getCacheHits () {
+		return _cacheHits.get();
+	}
+
+	@Override
+	public long getCacheMisses () {
+		return _cacheMisses.get();
+	}
+
+	@Override
+	public long getCacheEvictions () {
+		return _cacheEvictions.get();
+	}
+
+	@Override
+	public double getCacheHitRatio () {
+		long hits = _cacheHits.get();
+		long total = hits + _cacheMisses.get();
+		return (0 == total ? 0.0 : ((double) hits) / total);
+	}
+
+	public JSONObject toJSON () throws JSONException {
+		JSONObject result = new JSONObject();
+		result.put("layer", _layer);
+		result.put("requests", getRequests());
+		result.put("errors", getErrors());
+
+		JSONObject stages = new JSONObject();
+		for (Stage stage: Stage.values()) {
+			stages.put(stage.name().toLowerCase(), _stages.get(stage).getSummary().toJSON());
+		}
+		result.put("stages", stages);
+
+		JSONObject cache = new JSONObject();
+		cache.put("hits", getCacheHits());
+		cache.put("misses", getCacheMisses());
+		cache.put("evictions", getCacheEvictions());
+		cache.put("hitRatio", getCacheHitRatio());
+		result.put("cache", cache);
+
+		return result;
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.metrics;
+
+/**
+ * The JMX view of the metrics gathered for a single layer. Latencies are
+ * given in milliseconds.
+ */
+public interface LayerMetricsMXBean {
+	/** Time spent getting and preparing the layer configuration */
+	public LatencySummary getConfigure ();
+	/** Time spent reading tiles from the pyramid, including deserialization */
+	public LatencySummary getRead ();
+	/** Time spent deserializing tiles */
+	public LatencySummary getDeserialize ();
+	/** Time spent in tile transformers */
+	public LatencySummary getTransform ();
+	/** Time spent rendering tiles into images */
+	public LatencySummary getRender ();
+	/** Time spent writing tiles or images to the client */
+	public LatencySummary getEncode ();
+
+	public long getRequests ();
+	public long getErrors ();
+
+	public long getCacheHits ();
+	public long getCacheMisses ();
+	public long getCacheEvictions ();
+	public double getCacheHitRatio ();
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Per-layer latency and throughput metrics for the tile server.
+ *
+ * Each layer gets a latency recorder for each stage of serving a tile, along
+ * with request, error, and cache counters. Layers are added the first time
+ * {@link #getLayerMetrics(String)} is asked for them - callers should only
+ * do so for layers they know to be configured; anything that can't check
+ * uses {@link #findLayerMetrics(String)} instead - and each is published
+ * over JMX as
+ * <code>com.oculusinfo.tile:type=LayerMetrics,layer=&lt;layer&gt;</code>.
+ * The same data is available as JSON through the metrics REST resource.
+ */
+@Singleton
+public class TileMetrics {
+	private static final Logger LOGGER = LoggerFactory.getLogger(TileMetrics.class);
+
+	public static final String JMX_DOMAIN = "com.oculusinfo.tile";
+
+	/**
+	 * The stages of serving a tile
+	 */
+	public static enum Stage {
+		CONFIGURE,
+		READ,
+		DESERIALIZE,
+		TRANSFORM,
+		RENDER,
+		ENCODE
+	}
+
+
+
+	private ConcurrentMap<String, LayerMetrics> _layers;
+	private boolean                              _publish;
+
+	@Inject
+	public TileMetrics () {
+		this(true);
+	}
+
+	/**
+	 * @param publish Whether or not to publish layer metrics over JMX
+	 */
+	public TileMetrics (boolean publish) {
+		_layers = new ConcurrentHashMap<>();
+		_publish = publish;
+	}
+
+	/**
+	 * Get the metrics for the given layer, creating them if this is the first
+	 * time the layer has been seen.
+	 */
+	public LayerMetrics getLayerMetrics (String layer) {
+		LayerMetrics metrics = _layers.get(layer);
+		if (null == metrics) {
+			LayerMetrics newMetrics = new LayerMetrics(layer);
+			metrics = _layers.putIfAbsent(layer, newMetrics);
+			if (null == metrics) {
+				metrics = newMetrics;
+				if (_publish) publish(metrics);
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Get metrics for a request that can't be attributed to a configured
+	 * layer. These are neither kept nor published, so requests naming
+	 * arbitrary layers can't grow the set of tracked layers without bound.
+	 */
+	public LayerMetrics getUntrackedMetrics (String layer) {
+		return new LayerMetrics(layer);
+	}
+
+	/**
+	 * Get the metrics for a layer that is already being tracked, or untracked
+	 * metrics if it isn't. This never adds a layer, so it is safe to use with
+	 * ids that haven't been checked against the layer configuration.
+	 */
+	public LayerMetrics findLayerMetrics (String layer) {
+		LayerMetrics metrics = _layers.get(layer);
+		if (null == metrics) {
+			return getUntrackedMetrics(layer);
+		}
+		return metrics;
+	}
+
+	public List<String> getLayers () {
+		List<String> layers = new ArrayList<>(_layers.keySet());
+		Collections.sort(layers);
+		return layers;
+	}
+
+	public JSONObject toJSON () throws JSONException {
+		JSONArray layers = new JSONArray();
+		for (String layer: getLayers()) {
+			layers.put(_layers.get(layer).toJSON());
+		}
+		JSONObject result = new JSONObject();
+		result.put("layers", layers);
+		return result;
+	}
+
+	/**
+	 * Remove all published layer metrics from JMX
+	 */
+	public void unpublish () {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (String layer: _layers.keySet()) {
+			try {
+				ObjectName name = getObjectName(layer);
+				if (server.isRegistered(name))
+					server.unregisterMBean(name);
+			} catch (JMException e) {
+				LOGGER.warn("Error removing metrics for layer {} from JMX", layer, e);
+			}
+		}
+	}
+
+	private void publish (LayerMetrics metrics) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = getObjectName(metrics.getLayer());
+			// Replace metrics left over from an earlier instance (such as a redeployed web app)
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+			server.registerMBean(metrics, name);
+		} catch (JMException e) {
+			LOGGER.warn("Error publishing metrics for layer {} to JMX", metrics.getLayer(), e);
+		}
+	}
+
+	private static ObjectName getObjectName (String layer) throws JMException {
+		return new ObjectName(JMX_DOMAIN+":type=LayerMetrics,layer="+ObjectName.quote(layer));
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest;
+
+import java.util.Date;
+
+import org.restlet.data.CacheDirective;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.representation.EmptyRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.resource.ServerResource;
+
+import com.oculusinfo.tile.rest.layer.LayerMetaData;
+
+/**
+ * Helpers for HTTP conditional responses. Responses derived from a layer are
+ * tagged with the layer's entity tag and modification date, and marked as
+ * needing revalidation, so browsers and proxies can check with a cheap 304
+ * instead of downloading the response again.
+ */
+public class ConditionalResponses {
+
+    /**
+     * Checks the conditions of the current request against the given layer
+     * version. If the client's copy is still current, sets the response status
+     * to 304, and returns the (empty) representation to return; otherwise,
+     * returns null, and the response should be generated as normal.
+     *
+     * This should be called before doing any real work to generate a response.
+     */
+    public static Representation notModified( ServerResource resource, LayerMetaData metaData ) {
+        if ( null == metaData ) {
+            return null;
+        }
+        return notModified( resource, metaData.getETag(), metaData.getLastModified() );
+    }
+
+    /**
+     * Like {@link #notModified(ServerResource, LayerMetaData)}, but with explicit validators.
+     */
+    public static Representation notModified( ServerResource resource, String eTag, Date lastModified ) {
+        Status status = resource.getRequest().getConditions().getStatus( resource.getMethod(), true,
+                                                                        new Tag( eTag, false ), lastModified );
+        if ( !Status.REDIRECTION_NOT_MODIFIED.equals( status ) ) {
+            return null;
+        }
+        resource.setStatus( status );
+        return tag( resource, new EmptyRepresentation(), eTag, lastModified );
+    }
+
+    /**
+     * Sets the validators of the given layer version on a response.
+     *
+     * @return The representation passed in, for convenience
+     */
+    public static <T extends Representation> T tag( ServerResource resource, T representation, LayerMetaData metaData ) {
+        if ( null == metaData ) {
+            return representation;
+        }
+        return tag( resource, representation, metaData.getETag(), metaData.getLastModified() );
+    }
+
+    /**
+     * Like {@link #tag(ServerResource, Representation, LayerMetaData)}, but with explicit validators.
+     */
+    public static <T extends Representation> T tag( ServerResource resource, T representation,
+                                                    String eTag, Date lastModified ) {
+        if ( null != representation ) {
+            representation.setTag( new Tag( eTag, false ) );
+            representation.setModificationDate( lastModified );
+            // Cache, but always check back with us before reusing
+            resource.getResponse().getCacheDirectives().add( CacheDirective.noCache() );
+        }
+        return representation;
+    }
+}
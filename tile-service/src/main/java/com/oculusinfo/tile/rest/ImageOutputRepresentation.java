@@ -24,6 +24,7 @@
  */
 package com.oculusinfo.tile.rest;
 
+import com.oculusinfo.tile.metrics.LatencyRecorder;
 import org.restlet.data.MediaType;
 import org.restlet.representation.OutputRepresentation;
 
@@ -36,16 +37,28 @@ import java.io.OutputStream;
  * @author dgray
  */
 public class ImageOutputRepresentation extends OutputRepresentation {
-	private BufferedImage _image;
+	private BufferedImage   _image;
+	private LatencyRecorder _encodeRecorder;
 	
 	/**
 	 * @param mediaType
 	 * @param image
 	 */
 	public ImageOutputRepresentation(MediaType mediaType, BufferedImage image) {
+		this(mediaType, image, null);
+	}
+
+	/**
+	 * @param mediaType
+	 * @param image
+	 * @param encodeRecorder A recorder for the time taken to encode the
+	 *            image; may be null
+	 */
+	public ImageOutputRepresentation(MediaType mediaType, BufferedImage image, LatencyRecorder encodeRecorder) {
 		super(mediaType);
 
 		_image = image;
+		_encodeRecorder = encodeRecorder;
 	}
 
 	/* (non-Javadoc)
@@ -54,6 +67,8 @@ public class ImageOutputRepresentation extends OutputRepresentation {
 	@Override
 	public void write(OutputStream outputStream) throws IOException {
 		// TODO: create a constant map of MediaType to ImageIO file type for the "png".
+		long start = System.nanoTime();
 		ImageIO.write(_image, "png", outputStream);
+		if (null != _encodeRecorder) _encodeRecorder.recordSince(start);
 	}
 }
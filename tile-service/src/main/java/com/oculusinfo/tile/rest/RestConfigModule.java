@@ -29,6 +29,7 @@ import com.google.inject.multibindings.MapBinder;
 import com.oculusinfo.tile.rest.layer.LayerResource;
 import com.oculusinfo.tile.rest.layer.StateResource;
 import com.oculusinfo.tile.rest.legend.LegendResource;
+import com.oculusinfo.tile.rest.metrics.MetricsResource;
 import com.oculusinfo.tile.rest.tile.TileResource;
 import oculus.aperture.common.rest.ResourceDefinition;
 
@@ -57,5 +58,11 @@ public class RestConfigModule extends AbstractModule {
 
         resourceBinder.addBinding("/{version}/legend/{layer}").toInstance(new ResourceDefinition(LegendResource.class));
         resourceBinder.addBinding("/legend/{layer}").toInstance(new ResourceDefinition(LegendResource.class));
+
+        resourceBinder.addBinding("/{version}/metrics").toInstance(new ResourceDefinition(MetricsResource.class));
+        resourceBinder.addBinding("/metrics").toInstance(new ResourceDefinition(MetricsResource.class));
+
+        resourceBinder.addBinding("/{version}/metrics/{layer}").toInstance(new ResourceDefinition(MetricsResource.class));
+        resourceBinder.addBinding("/metrics/{layer}").toInstance(new ResourceDefinition(MetricsResource.class));
 	}
 }
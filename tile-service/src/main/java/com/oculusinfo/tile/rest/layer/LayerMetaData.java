@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest.layer;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import org.json.JSONObject;
+
+import com.oculusinfo.binning.metadata.PyramidMetaData;
+
+
+
+/**
+ * An immutable, pre-parsed view of a layer's pyramid metadata, as cached by the
+ * {@link LayerService}. Along with the metadata itself, it holds the level
+ * extrema, extracted once into arrays indexed by level, a bitmap of the levels
+ * that actually hold tiles, and the validators (entity tag and modification
+ * date) to use on any HTTP response derived from this version of the layer.
+ */
+public class LayerMetaData {
+	private PyramidMetaData _metaData;
+	private String[]        _levelMinimums;
+	private String[]        _levelMaximums;
+	private BitSet          _populatedLevels;
+	private String          _eTag;
+	private long            _lastModified;
+
+	/**
+	 * Create a cached view of layer metadata
+	 * 
+	 * @param metaData The pyramid metadata of the layer
+	 * @param layerSha A hash of the server configuration of the layer
+	 * @param version The version of the metadata; this must change whenever the
+	 *            layer's data might have changed.
+	 * @param lastModified The time at which this version of the metadata was
+	 *            loaded, in milliseconds since the epoch
+	 */
+	public LayerMetaData (PyramidMetaData metaData, String layerSha, long version, long lastModified) {
+		_metaData = metaData;
+		_eTag = layerSha + "-" + Long.toHexString(version);
+		// HTTP dates only have a resolution of seconds
+		_lastModified = lastModified - lastModified % 1000;
+
+		List<String> minimums = new ArrayList<>();
+		List<String> maximums = new ArrayList<>();
+		JSONObject meta = metaData.getRawData().optJSONObject("meta");
+		if (null != meta) {
+			Iterator<?> keys = meta.keys();
+			while (keys.hasNext()) {
+				Object key = keys.next();
+				int level;
+				try {
+					level = Integer.parseInt(key.toString());
+				} catch (NumberFormatException e) {
+					continue;
+				}
+				if (level < 0) continue;
+				while (minimums.size() <= level) {
+					minimums.add(null);
+					maximums.add(null);
+				}
+				minimums.set(level, metaData.getCustomMetaData(key.toString(), "minimum"));
+				maximums.set(level, metaData.getCustomMetaData(key.toString(), "maximum"));
+			}
+		}
+		_levelMinimums = minimums.toArray(new String[minimums.size()]);
+		_levelMaximums = maximums.toArray(new String[maximums.size()]);
+
+		// Pyramids written without a level list could have tiles anywhere
+		List<Integer> levels = metaData.getValidZoomLevels();
+		if (levels.isEmpty()) {
+			_populatedLevels = null;
+		} else {
+			_populatedLevels = new BitSet();
+			for (int level: levels) {
+				if (level >= 0) _populatedLevels.set(level);
+			}
+		}
+	}
+
+	public PyramidMetaData getPyramidMetaData () {
+		return _metaData;
+	}
+
+	/**
+	 * Get the minimum value of the given level, as recorded in the metadata, or
+	 * null if none is recorded
+	 */
+	public String getLevelMinimum (int level) {
+		if (level < 0 || level >= _levelMinimums.length) return null;
+		return _levelMinimums[level];
+	}
+
+	/**
+	 * Get the maximum value of the given level, as recorded in the metadata, or
+	 * null if none is recorded
+	 */
+	public String getLevelMaximum (int level) {
+		if (level < 0 || level >= _levelMaximums.length) return null;
+		return _levelMaximums[level];
+	}
+
+	/**
+	 * Determine if the given level may hold tiles. This is only false for
+	 * levels the metadata shows were never written, so callers can skip
+	 * reading from such levels entirely.
+	 */
+	public boolean mayHaveTiles (int level) {
+		if (level < 0) return false;
+		if (null == _populatedLevels) return true;
+		return _populatedLevels.get(level);
+	}
+
+	/**
+	 * Get an opaque tag identifying this version of the layer's configuration
+	 * and data, for use as an HTTP entity tag.
+	 */
+	public String getETag () {
+		return _eTag;
+	}
+
+	/**
+	 * Get the time at which this version of the layer's data was loaded, for
+	 * use as an HTTP modification date.
+	 */
+	public Date getLastModified () {
+		return new Date(_lastModified);
+	}
+}
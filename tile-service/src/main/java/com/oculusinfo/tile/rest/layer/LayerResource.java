@@ -30,7 +30,9 @@ import com.oculusinfo.binning.util.JsonUtilities;
 import com.oculusinfo.factory.ConfigurationException;
 import com.oculusinfo.tile.rendering.LayerConfiguration;
 import com.oculusinfo.tile.rendering.TileDataImageRenderer;
+import com.oculusinfo.tile.rest.ConditionalResponses;
 import oculus.aperture.common.rest.ApertureServerResource;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -41,6 +43,8 @@ import org.restlet.resource.Get;
 import org.restlet.resource.ResourceException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
 
@@ -114,11 +118,36 @@ public class LayerResource extends ApertureServerResource {
                 version = LayerConfiguration.DEFAULT_VERSION;
             }
             String layerURN = (String) getRequest().getAttributes().get("layer");
+            List<String> layerIds = ( layerURN == null ) ? _service.getLayerIds() : Collections.singletonList( layerURN );
+
+            // let the client reuse its copy, if none of the layers have changed since
+            String eTag = null;
+            Date lastModified = null;
+            StringBuilder eTags = new StringBuilder();
+            for ( String layerId : layerIds ) {
+                LayerMetaData metaData = _service.getLayerMetaData( layerId );
+                if ( null == metaData ) {
+                    eTags = null;
+                    break;
+                }
+                eTags.append( metaData.getETag() ).append( "." );
+                if ( null == lastModified || metaData.getLastModified().after( lastModified ) ) {
+                    lastModified = metaData.getLastModified();
+                }
+            }
+            if ( null != eTags && null != lastModified ) {
+                eTag = ( 1 == layerIds.size() ) ? eTags.substring( 0, eTags.length() - 1 )
+                                                : DigestUtils.sha256Hex( eTags.toString() ).substring( 0, 32 );
+                Representation notModified = ConditionalResponses.notModified( this, eTag, lastModified );
+                if ( null != notModified ) {
+                    return notModified;
+                }
+            }
+
             JSONObject result = new JSONObject();
             if ( layerURN == null ) {
                  // if not, return all layers
                 JSONArray jsonLayers = new JSONArray();
-                List<String> layerIds = _service.getLayerIds();
                 for (int i=0; i<layerIds.size(); ++i) {
                     jsonLayers.put( i, getLayerInformation( layerIds.get(i), version ) );
                 }
@@ -129,7 +158,11 @@ public class LayerResource extends ApertureServerResource {
             }
             setStatus(Status.SUCCESS_OK);
             result.put( "version", version );
-            return new JsonRepresentation( result );
+            JsonRepresentation representation = new JsonRepresentation( result );
+            if ( null != eTag ) {
+                ConditionalResponses.tag( this, representation, eTag, lastModified );
+            }
+            return representation;
         } catch (JSONException e) {
             throw new ResourceException(Status.SERVER_ERROR_INTERNAL,
                                         "Unable to create JSON object from supplied options string",
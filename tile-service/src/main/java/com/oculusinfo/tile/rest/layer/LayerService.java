@@ -92,4 +92,11 @@ public interface LayerService {
      * @param layerId The layer identification string
      */
     public PyramidMetaData getMetaData (String layerId);
+
+    /**
+     * Returns the cached, pre-parsed meta-data associated with the given layer, along
+     * with the validators to use on responses derived from it.
+     * @param layerId The layer identification string
+     */
+    public LayerMetaData getLayerMetaData (String layerId);
 }
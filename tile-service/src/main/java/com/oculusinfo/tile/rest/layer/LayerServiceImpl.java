@@ -38,6 +38,7 @@ import com.oculusinfo.tile.init.providers.CachingLayerConfigurationProvider;
 import com.oculusinfo.tile.rendering.LayerConfiguration;
 import com.oculusinfo.tile.rest.tile.caching.CachingPyramidIO.LayerDataChangedListener;
 
+import org.apache.commons.codec.binary.Hex;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -47,7 +48,16 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Singleton
 public class LayerServiceImpl implements LayerService {
@@ -57,7 +67,11 @@ public class LayerServiceImpl implements LayerService {
 	private List< JSONObject > _layers;
 	private Map< String, JSONObject > _layersById;
     private Map< String, JSONObject > _layersBySha;
-	private Map< String, JSONObject > _metaDataCache;
+	private Map< String, String > _layerShas;
+	// Metadata is loaded at most once per layer at a time, no matter how many
+	// requests need it at once; waiting requests share the loading future.
+	private ConcurrentMap< String, Future< LayerMetaData > > _metaDataCache;
+	private AtomicLong _lastMetaDataVersion;
     private FactoryProvider< LayerConfiguration > _layerConfigurationProvider;
 
 	@Inject
@@ -65,8 +79,10 @@ public class LayerServiceImpl implements LayerService {
 	                         FactoryProvider<LayerConfiguration> layerConfigProvider ) {
 		_layers = new ArrayList<>();
 		_layersById = new HashMap<>();
-        _layersBySha = new HashMap<>();
-		_metaDataCache = new HashMap<>();
+        _layersBySha = new ConcurrentHashMap<>();
+		_layerShas = new HashMap<>();
+		_metaDataCache = new ConcurrentHashMap<>();
+		_lastMetaDataVersion = new AtomicLong( 0L );
         _layerConfigurationProvider = layerConfigProvider;
 
 		if (layerConfigProvider instanceof CachingLayerConfigurationProvider) {
@@ -105,33 +121,72 @@ public class LayerServiceImpl implements LayerService {
 
 	@Override
 	public PyramidMetaData getMetaData( String layerId ) {
+		LayerMetaData metaData = getLayerMetaData( layerId );
+		return null == metaData ? null : metaData.getPyramidMetaData();
+	}
+
+	@Override
+	public LayerMetaData getLayerMetaData( final String layerId ) {
+		Future< LayerMetaData > future = _metaDataCache.get( layerId );
+		if ( null == future ) {
+			FutureTask< LayerMetaData > task = new FutureTask<>( new Callable< LayerMetaData >() {
+				@Override
+				public LayerMetaData call() {
+					return loadMetaData( layerId );
+				}
+			} );
+			future = _metaDataCache.putIfAbsent( layerId, task );
+			if ( null == future ) {
+				future = task;
+				task.run();
+			}
+		}
+		try {
+			LayerMetaData metaData = future.get();
+			if ( null == metaData ) {
+				// Don't cache failures; try again next time
+				_metaDataCache.remove( layerId, future );
+			}
+			return metaData;
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch ( ExecutionException e ) {
+			_metaDataCache.remove( layerId, future );
+			LOGGER.error( "Couldn't read metadata: {}", layerId, e.getCause() );
+			return null;
+		}
+	}
+
+	private LayerMetaData loadMetaData( String layerId ) {
 		try {
 			LayerConfiguration config = getLayerConfiguration( layerId, null );
+			if ( config == null ) {
+				return null;
+			}
             String dataId = config.getPropertyValue(LayerConfiguration.DATA_ID);
             if ( dataId == null ) {
                 return null;
             }
 			PyramidIO pyramidIO = config.produce( PyramidIO.class );
-			return getMetaData( layerId, dataId, pyramidIO );
+			String s = pyramidIO.readMetaData( dataId );
+			JSONObject metadata;
+			if ( s == null ) {
+				metadata = new JSONObject();
+			} else {
+				metadata = new JSONObject( s );
+			}
+			// Versions are load times, but must change on every load, however quick
+			long now = System.currentTimeMillis();
+			long version;
+			do {
+				long last = _lastMetaDataVersion.get();
+				version = Math.max( now, last + 1 );
+				if ( _lastMetaDataVersion.compareAndSet( last, version ) ) break;
+			} while ( true );
+			return new LayerMetaData( new PyramidMetaData( metadata ), _layerShas.get( layerId ), version, now );
 		} catch (ConfigurationException e) {
 			LOGGER.error( "Couldn't determine pyramid I/O method for {}", layerId, e );
-			return null;
-		}
-	}
-
-	private PyramidMetaData getMetaData( String layerId, String dataId, PyramidIO pyramidIO ) {
-		try {
-			JSONObject metadata = _metaDataCache.get( layerId );
-			if ( metadata == null ) {
-				String s = pyramidIO.readMetaData( dataId );
-				if ( s == null ) {
-                    metadata = new JSONObject();
-				} else {
-                    metadata = new JSONObject( s );
-                }
-				_metaDataCache.put( layerId, metadata );
-			}
-			return new PyramidMetaData( metadata );
 		} catch (JSONException e) {
 			LOGGER.error("Metadata file for layer is missing or corrupt: {}", layerId, e);
 		} catch (IOException e) {
@@ -254,6 +309,18 @@ public class LayerServiceImpl implements LayerService {
         return null;
     }
 
+	// A short hash of the server configuration of a layer, to tag anything generated from it
+	private static String generateSHA( JSONObject layerJSON ) {
+		try {
+			MessageDigest md = MessageDigest.getInstance( "SHA-256" );
+			md.update( layerJSON.toString().getBytes( "UTF-8" ) );
+			return Hex.encodeHexString( md.digest() ).substring( 0, 16 );
+		} catch ( NoSuchAlgorithmException | UnsupportedEncodingException e ) {
+			LOGGER.warn( "Error generating layer configuration SHA", e );
+			return Integer.toHexString( layerJSON.toString().hashCode() );
+		}
+	}
+
 	private File[] getConfigurationFiles (String location) {
 		try {
 			// Find our configuration file.
@@ -286,7 +353,9 @@ public class LayerServiceImpl implements LayerService {
                 for ( int i=0; i<contents.length(); i++ ) {
                     if( contents.get(i) instanceof JSONObject ) {
                         JSONObject layerJSON = contents.getJSONObject(i);
-                        _layersById.put( layerJSON.getString( LayerConfiguration.LAYER_ID.getName() ), layerJSON );
+                        String layerId = layerJSON.getString( LayerConfiguration.LAYER_ID.getName() );
+                        _layersById.put( layerId, layerJSON );
+                        _layerShas.put( layerId, generateSHA( layerJSON ) );
                         _layers.add( layerJSON );
                     }
                 }
@@ -43,16 +43,21 @@ import org.restlet.resource.Get;
 import org.restlet.resource.ResourceException;
 
 import com.google.inject.Inject;
+import com.oculusinfo.tile.rest.ConditionalResponses;
 import com.oculusinfo.tile.rest.ImageOutputRepresentation;
 import com.oculusinfo.tile.rest.QueryParamDecoder;
+import com.oculusinfo.tile.rest.layer.LayerMetaData;
+import com.oculusinfo.tile.rest.layer.LayerService;
 
 public class LegendResource extends ApertureServerResource {
 
 	private LegendService _service;
+	private LayerService _layerService;
 
     @Inject
-	public LegendResource( LegendService service ) {
+	public LegendResource( LegendService service, LayerService layerService ) {
         _service = service;
+        _layerService = layerService;
 	}
 
     /**
@@ -71,6 +76,13 @@ public class LegendResource extends ApertureServerResource {
 
 		try {
 
+            // let the client reuse its copy of the legend, if the layer hasn't changed since
+            LayerMetaData metaData = _layerService.getLayerMetaData( layer );
+            Representation notModified = ConditionalResponses.notModified( this, metaData );
+            if ( null != notModified ) {
+                return notModified;
+            }
+
             String outputType = "uri";
 			int width = 128;
             int height = 1;
@@ -90,9 +102,9 @@ public class LegendResource extends ApertureServerResource {
             setStatus(Status.SUCCESS_OK);
 
             if(outputType.equalsIgnoreCase("uri")){
-                return generateEncodedImage( layer, width, height, renderHorizontally, decodedQueryParams );
+                return ConditionalResponses.tag( this, generateEncodedImage( layer, width, height, renderHorizontally, decodedQueryParams ), metaData );
             } else { //(outputType.equalsIgnoreCase("png")){
-                return generateImage( layer, width, height, renderHorizontally, decodedQueryParams );
+                return ConditionalResponses.tag( this, generateImage( layer, width, height, renderHorizontally, decodedQueryParams ), metaData );
             }
 
 		} catch ( Exception e) {
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest.metrics;
+
+import oculus.aperture.common.rest.ApertureServerResource;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.restlet.data.Status;
+import org.restlet.ext.json.JsonRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.resource.Get;
+import org.restlet.resource.ResourceException;
+
+import com.google.inject.Inject;
+import com.oculusinfo.tile.metrics.TileMetrics;
+
+/**
+ * Reports per-layer tile server metrics: latencies of each stage of serving
+ * a tile, request and error counts, and cache statistics.
+ */
+public class MetricsResource extends ApertureServerResource {
+	private TileMetrics _metrics;
+
+	@Inject
+	public MetricsResource (TileMetrics metrics) {
+		_metrics = metrics;
+	}
+
+	/**
+	 * GET request. If a layer is specified, returns the metrics for that
+	 * layer; if not, returns metrics for all layers that have served tiles.
+	 */
+	@Get
+	public Representation getMetrics () {
+		try {
+			String layer = (String) getRequest().getAttributes().get("layer");
+			JSONObject result;
+			if (null == layer) {
+				result = _metrics.toJSON();
+			} else if (_metrics.getLayers().contains(layer)) {
+				result = new JSONObject();
+				result.put("layer", _metrics.getLayerMetrics(layer).toJSON());
+			} else {
+				throw new ResourceException(Status.CLIENT_ERROR_NOT_FOUND, "No metrics for layer "+layer);
+			}
+			setStatus(Status.SUCCESS_OK);
+			return new JsonRepresentation(result);
+		} catch (JSONException e) {
+			throw new ResourceException(Status.SERVER_ERROR_INTERNAL, "Unable to write metrics", e);
+		}
+	}
+}
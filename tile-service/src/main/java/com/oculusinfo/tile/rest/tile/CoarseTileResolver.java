@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest.tile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import com.oculusinfo.binning.TileData;
+import com.oculusinfo.binning.TileIndex;
+import com.oculusinfo.binning.impl.SubTileDataView;
+import com.oculusinfo.binning.io.PyramidIO;
+import com.oculusinfo.binning.io.serialization.TileSerializer;
+import com.oculusinfo.tile.rest.layer.LayerMetaData;
+
+
+
+/**
+ * Finds the data for tiles viewed with coarseness - that is, tiles drawn from
+ * the data of the coarsest available of their ancestors, up to
+ * <code>coarseness-1</code> levels above them.
+ *
+ * Tiles are resolved a request wave at a time, a wave being the set of tiles
+ * a client asks for together (the tile set it sends along with each tile
+ * request). Every candidate ancestor of every tile in the wave is read from
+ * the pyramid in a single batch, skipping levels that the layer metadata
+ * shows hold no tiles at all. The ancestors each tile resolves to are then
+ * kept for a short while, so that the sibling requests of the wave find them
+ * already resolved rather than each going back to the pyramid.
+ */
+class CoarseTileResolver {
+	// How long the resolved tiles of a wave are kept for its sibling requests, in ms
+	private static final long WAVE_LIFETIME_MS = 10000;
+	// The maximum number of waves kept at once
+	private static final int  MAX_WAVES        = 32;
+
+	private ConcurrentMap<String, Wave> _waves;
+
+	CoarseTileResolver () {
+		_waves = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Get the data to display for a tile with the given coarseness
+	 * 
+	 * @param dataId The id of the pyramid from which to read
+	 * @param serializer The serializer with which to read tiles
+	 * @param pyramidIO The pyramid IO from which to read tiles
+	 * @param metaData The cached metadata of the layer being read; this must
+	 *            change whenever the layer data might have changed.
+	 * @param index The tile to display
+	 * @param tileSet The other tiles requested along with this one; may be
+	 *            null
+	 * @param coarseness The coarseness with which to display the tile; 1 is
+	 *            the tile's own data, 2 its parent's, etc.
+	 * @return A view of the requested tile from the data of its coarsest
+	 *         available ancestor, or null if neither it nor any of its
+	 *         candidate ancestors exist.
+	 */
+	<T> TileData<T> getTileData (final String dataId,
+	                             final TileSerializer<T> serializer,
+	                             final PyramidIO pyramidIO,
+	                             final LayerMetaData metaData,
+	                             TileIndex index, Iterable<TileIndex> tileSet,
+	                             final int coarseness) throws IOException {
+		TileIndex key = normalize(index);
+
+		// The tiles of this wave, on the level of the requested tile
+		final SortedSet<TileIndex> waveTiles = new TreeSet<>();
+		waveTiles.add(key);
+		if (null != tileSet) {
+			for (TileIndex sibling: tileSet) {
+				if (sibling.getLevel() == index.getLevel())
+					waveTiles.add(normalize(sibling));
+			}
+		}
+
+		Callable<Map<TileIndex, TileData<?>>> resolution = new Callable<Map<TileIndex, TileData<?>>>() {
+			@Override
+			public Map<TileIndex, TileData<?>> call () throws IOException {
+				return resolve(dataId, serializer, pyramidIO, metaData, waveTiles, coarseness);
+			}
+		};
+
+		Map<TileIndex, TileData<?>> sources;
+		purgeExpiredWaves();
+		if (_waves.size() >= MAX_WAVES) {
+			// Too many waves in flight to keep another, so nothing resolved
+			// here would be shared; resolve just this tile
+			SortedSet<TileIndex> single = new TreeSet<>();
+			single.add(key);
+			sources = resolve(dataId, serializer, pyramidIO, metaData, single, coarseness);
+		} else {
+			String waveKey = getWaveKey(dataId, serializer, metaData, coarseness, waveTiles);
+			Wave wave = new Wave(resolution);
+			Wave existing = _waves.putIfAbsent(waveKey, wave);
+			if (null == existing) {
+				wave.run();
+			} else {
+				wave = existing;
+			}
+
+			try {
+				sources = wave.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted resolving coarse tile "+index, e);
+			} catch (ExecutionException e) {
+				// Don't keep failures around; the next request should try again
+				_waves.remove(waveKey, wave);
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException) throw (IOException) cause;
+				if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+				throw new IOException(cause);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		TileData<T> source = (TileData<T>) sources.get(key);
+		if (null == source) return null;
+		return SubTileDataView.fromSourceAbsolute(source, index);
+	}
+
+	/**
+	 * Get the candidate tiles from which the given tile may be drawn, in order
+	 * of preference - coarsest first. Levels which the metadata shows hold no
+	 * tiles are left out.
+	 */
+	static List<TileIndex> getCandidates (TileIndex index, int coarseness, LayerMetaData metaData) {
+		List<TileIndex> candidates = new ArrayList<>(coarseness);
+		for (int coarsenessLevel = coarseness - 1; coarsenessLevel >= 0; --coarsenessLevel) {
+			int level = index.getLevel() - coarsenessLevel;
+			if (level < 0 || !metaData.mayHaveTiles(level)) continue;
+			candidates.add(new TileIndex(level,
+			                             index.getX() >> coarsenessLevel,
+			                             index.getY() >> coarsenessLevel));
+		}
+		return candidates;
+	}
+
+	// Read all candidates of all tiles in a wave, and figure out from which
+	// source each tile is drawn
+	private static <T> Map<TileIndex, TileData<?>> resolve (String dataId, TileSerializer<T> serializer,
+	                                                        PyramidIO pyramidIO, LayerMetaData metaData,
+	                                                        SortedSet<TileIndex> waveTiles,
+	                                                        int coarseness) throws IOException {
+		Map<TileIndex, List<TileIndex>> candidates = new HashMap<>();
+		SortedSet<TileIndex> toRead = new TreeSet<>();
+		for (TileIndex tile: waveTiles) {
+			List<TileIndex> tileCandidates = getCandidates(tile, coarseness, metaData);
+			candidates.put(tile, tileCandidates);
+			toRead.addAll(tileCandidates);
+		}
+
+		Map<TileIndex, TileData<?>> found = new HashMap<>();
+		if (!toRead.isEmpty()) {
+			for (TileData<T> tile: pyramidIO.readTiles(dataId, serializer, toRead)) {
+				if (null != tile) found.put(normalize(tile.getDefinition()), tile);
+			}
+		}
+
+		Map<TileIndex, TileData<?>> sources = new HashMap<>();
+		for (Map.Entry<TileIndex, List<TileIndex>> entry: candidates.entrySet()) {
+			for (TileIndex candidate: entry.getValue()) {
+				TileData<?> source = found.get(candidate);
+				if (null != source) {
+					sources.put(entry.getKey(), source);
+					break;
+				}
+			}
+		}
+		return sources;
+	}
+
+	// Tiles are compared by position only; bin counts are whatever the
+	// pyramid says they are
+	private static TileIndex normalize (TileIndex index) {
+		return new TileIndex(index.getLevel(), index.getX(), index.getY());
+	}
+
+	private static String getWaveKey (String dataId, TileSerializer<?> serializer, LayerMetaData metaData,
+	                                  int coarseness, SortedSet<TileIndex> waveTiles) {
+		StringBuilder key = new StringBuilder();
+		key.append(metaData.getETag()).append('|')
+			.append(dataId).append('|')
+			.append(serializer.getBinTypeDescription()).append('|')
+			.append(coarseness);
+		for (TileIndex tile: waveTiles) {
+			key.append('|').append(tile.getX()).append(',').append(tile.getY());
+		}
+		key.append('@').append(waveTiles.first().getLevel());
+		return key.toString();
+	}
+
+	private void purgeExpiredWaves () {
+		long now = System.currentTimeMillis();
+		Iterator<Wave> waves = _waves.values().iterator();
+		while (waves.hasNext()) {
+			if (now - waves.next()._created > WAVE_LIFETIME_MS)
+				waves.remove();
+		}
+	}
+
+
+
+	// The resolution of a single wave, shared by all its tiles
+	private static class Wave extends FutureTask<Map<TileIndex, TileData<?>>> {
+		private long _created;
+
+		Wave (Callable<Map<TileIndex, TileData<?>>> resolution) {
+			super(resolution);
+			_created = System.currentTimeMillis();
+		}
+	}
+}
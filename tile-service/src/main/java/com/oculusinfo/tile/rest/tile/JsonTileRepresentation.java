@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest.tile;
+
+import com.oculusinfo.binning.TileIndex;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.restlet.data.MediaType;
+import org.restlet.representation.OutputRepresentation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A JSON tile response, streamed directly to the client.  The tile index and
+ * version are written first, followed by the tile itself.  The tile has
+ * already been read by the time this representation is created (see
+ * {@link TileService#getTileObjectWriter}), so there is nothing left to fail
+ * part-way through but the transcoding itself.
+ */
+public class JsonTileRepresentation extends OutputRepresentation {
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private String                       _version;
+	private TileIndex                    _index;
+	private TileService.TileObjectWriter _tile;
+
+	/**
+	 * @param tile The tile to write; null writes a null tile
+	 */
+	public JsonTileRepresentation (String version, TileIndex index, TileService.TileObjectWriter tile) {
+		super(MediaType.APPLICATION_JSON);
+
+		_version = version;
+		_index = index;
+		_tile = tile;
+	}
+
+	@Override
+	public void write (OutputStream outputStream) throws IOException {
+		JsonGenerator json = JSON_FACTORY.createJsonGenerator(outputStream, JsonEncoding.UTF8);
+		json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+		json.writeStartObject();
+		json.writeObjectFieldStart("index");
+		json.writeNumberField("level", _index.getLevel());
+		json.writeNumberField("xIndex", _index.getX());
+		json.writeNumberField("yIndex", _index.getY());
+		json.writeEndObject();
+		json.writeStringField("version", _version);
+		json.writeFieldName("tile");
+		if (null == _tile) {
+			json.writeNull();
+		} else {
+			_tile.write(json);
+		}
+		json.writeEndObject();
+		json.close();
+	}
+}
@@ -26,15 +26,20 @@ package com.oculusinfo.tile.rest.tile;
 
 import com.google.inject.Inject;
 import com.oculusinfo.binning.TileIndex;
+import com.oculusinfo.tile.metrics.LayerMetrics;
+import com.oculusinfo.tile.metrics.TileMetrics;
+import com.oculusinfo.tile.metrics.TileMetrics.Stage;
 import com.oculusinfo.tile.rendering.LayerConfiguration;
+import com.oculusinfo.tile.rest.ConditionalResponses;
 import com.oculusinfo.tile.rest.ImageOutputRepresentation;
 import com.oculusinfo.tile.rest.QueryParamDecoder;
+import com.oculusinfo.tile.rest.layer.LayerMetaData;
+import com.oculusinfo.tile.rest.layer.LayerService;
 import oculus.aperture.common.rest.ApertureServerResource;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.restlet.data.MediaType;
 import org.restlet.data.Status;
-import org.restlet.ext.json.JsonRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.resource.Get;
 import org.restlet.resource.ResourceException;
@@ -69,11 +74,15 @@ public class TileResource extends ApertureServerResource {
 	}
 	
 	private TileService _service;
+	private LayerService _layerService;
+	private TileMetrics _metrics;
 	
 	
 	@Inject
-	public TileResource(TileService service) {
+	public TileResource(TileService service, LayerService layerService, TileMetrics metrics) {
 		this._service = service;
+		this._layerService = layerService;
+		this._metrics = metrics;
 	}
 
     /**
@@ -162,6 +171,13 @@ public class TileResource extends ApertureServerResource {
             String ext = (String) getRequest().getAttributes().get("ext");
 			ExtensionType extType = ExtensionType.valueOf(ext.trim().toLowerCase());
 
+            // let the client reuse its copy of the tile, if the layer hasn't changed since
+            LayerMetaData metaData = _layerService.getLayerMetaData( layer );
+            Representation notModified = ConditionalResponses.notModified( this, metaData );
+            if ( null != notModified ) {
+                return notModified;
+            }
+
             // decode and build JSONObject from request parameters
             JSONObject decodedQueryParams = QueryParamDecoder.decode( getRequest().getResourceRef().getQuery() );
 
@@ -174,9 +190,14 @@ public class TileResource extends ApertureServerResource {
 			} else if (ResponseType.Image.equals(extType.getResponseType())) {
 
 				BufferedImage tile = _service.getTileImage( layer, index, tileSet, decodedQueryParams );
-				ImageOutputRepresentation imageRep = new ImageOutputRepresentation(extType.getMediaType(), tile);
+				// only configured layers are tracked
+				LayerMetrics metrics = (null == _layerService.getLayerJSON( layer )
+				                        ? _metrics.getUntrackedMetrics( layer )
+				                        : _metrics.getLayerMetrics( layer ));
+				ImageOutputRepresentation imageRep = new ImageOutputRepresentation(extType.getMediaType(), tile,
+				                                                                   metrics.getRecorder(Stage.ENCODE));
 				setStatus(Status.SUCCESS_OK);
-				return imageRep;
+				return ConditionalResponses.tag( this, imageRep, metaData );
 
 			} else if (ResponseType.Tile.equals(extType.getResponseType())) {
 				// We return an object including the tile index ("index") and 
@@ -184,16 +205,15 @@ public class TileResource extends ApertureServerResource {
 				//
 				// The data should include index information, but it has to be 
 				// there for tiles with no data too, so we can't count on it.
-				JSONObject result = new JSONObject();
-				JSONObject tileIndex = new JSONObject();
-				tileIndex.put("level", zoomLevel);
-				tileIndex.put("xIndex", x);
-				tileIndex.put("yIndex", y);
-				result.put("index", tileIndex);
-                result.put("version", version);
-				result.put("tile", _service.getTileObject( layer, index, tileSet, decodedQueryParams ));
+				//
+				// The tile is read here, so that a missing or unreadable tile
+				// is known about before the response is committed; it is then
+				// streamed straight from its serialized form to the response.
+				TileService.TileObjectWriter tile = _service.getTileObjectWriter( layer, index, tileSet, decodedQueryParams );
 				setStatus(Status.SUCCESS_OK);
-				return new JsonRepresentation(result);
+				return ConditionalResponses.tag( this,
+				                                 new JsonTileRepresentation(version, index, tile),
+				                                 metaData );
 
 			} else {
 				setStatus(Status.SERVER_ERROR_INTERNAL);
@@ -25,7 +25,9 @@
 package com.oculusinfo.tile.rest.tile;
 
 import java.awt.image.BufferedImage;
+import java.io.IOException;
 
+import org.codehaus.jackson.JsonGenerator;
 import org.json.JSONObject;
 
 import com.oculusinfo.binning.TileIndex;
@@ -52,4 +54,31 @@ public interface TileService {
 	 * @return The raw data for the indicated tile
 	 */
 	public JSONObject getTileObject( String layer, TileIndex index, Iterable<TileIndex> tileSet, JSONObject query );
+
+	/**
+	 * TMS raw tile data request, for streaming to a response. The tile is
+	 * read here - so a missing or unreadable tile is known about before any
+	 * response is committed - and the returned writer then writes the same
+	 * JSON as {@link #getTileObject(String, TileIndex, Iterable, JSONObject)}
+	 * would return. Where possible, the tile is converted directly from its
+	 * serialized form, without ever building a JSON object.
+	 *
+	 * @param layer - The layer for which to get tile data
+	 * @param index The index of the desired tile
+	 * @param tileSet A set of other tiles which will be wanted along with this
+	 *            one
+	 * @return A writer for the tile, or null if there is no such tile, or it
+	 *         can't be read.
+	 */
+	public TileObjectWriter getTileObjectWriter( String layer, TileIndex index, Iterable<TileIndex> tileSet, JSONObject query );
+
+	/**
+	 * A tile that has been read, and is ready to be written as JSON.
+	 */
+	public interface TileObjectWriter {
+		/**
+		 * Write the tile as the next value of a JSON generator.
+		 */
+		public void write( JsonGenerator output ) throws IOException;
+	}
 }
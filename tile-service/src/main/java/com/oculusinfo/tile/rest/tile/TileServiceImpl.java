@@ -28,20 +28,27 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.oculusinfo.binning.TileData;
 import com.oculusinfo.binning.TileIndex;
-import com.oculusinfo.binning.impl.SubTileDataView;
 import com.oculusinfo.binning.io.PyramidIO;
 import com.oculusinfo.binning.io.serialization.SerializationTypeChecker;
 import com.oculusinfo.binning.io.serialization.TileSerializer;
-import com.oculusinfo.binning.metadata.PyramidMetaData;
 import com.oculusinfo.factory.ConfigurationException;
+import com.oculusinfo.factory.util.Pair;
+import com.oculusinfo.tile.metrics.LayerMetrics;
+import com.oculusinfo.tile.metrics.TileMetrics;
+import com.oculusinfo.tile.metrics.TileMetrics.Stage;
+import com.oculusinfo.tile.metrics.TimedTileSerializer;
 import com.oculusinfo.tile.rendering.LayerConfiguration;
 import com.oculusinfo.tile.rendering.TileDataImageRenderer;
+import com.oculusinfo.tile.rendering.transformations.tile.IdentityTileTransformer;
 import com.oculusinfo.tile.rendering.transformations.tile.TileTransformer;
+import com.oculusinfo.tile.rest.layer.LayerMetaData;
 import com.oculusinfo.tile.rest.layer.LayerService;
 import com.oculusinfo.tile.util.AvroJSONConverter;
+import com.oculusinfo.tile.util.AvroJSONWriter;
 
 
 
+import org.codehaus.jackson.JsonGenerator;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -60,45 +67,39 @@ public class TileServiceImpl implements TileService {
 	private static final Logger LOGGER = LoggerFactory.getLogger(TileServiceImpl.class);
 	private static final Color COLOR_BLANK = new Color(255,255,255,0);
 
-	private LayerService _layerService;
+	private LayerService       _layerService;
+	private TileMetrics        _metrics;
+	private CoarseTileResolver _coarseTiles;
 
 	@Inject
-	public TileServiceImpl ( LayerService layerService ) {
+	public TileServiceImpl ( LayerService layerService, TileMetrics metrics ) {
         _layerService = layerService;
+        _metrics = metrics;
+        _coarseTiles = new CoarseTileResolver();
 	}
 
+	// Only configured layers get tracked metrics; anything else would let
+	// requests for made-up layer names create metrics without bound
+	private LayerMetrics getLayerMetrics (String layer) {
+		if (null == _layerService.getLayerJSON( layer )) {
+			return _metrics.getUntrackedMetrics( layer );
+		}
+		return _metrics.getLayerMetrics( layer );
+	}
 
-	private <T> TileData<T> tileDataForIndex(TileIndex index, String dataId, TileSerializer<T> serializer, PyramidIO pyramidIO, int coarseness) throws IOException {
+	private <T> TileData<T> tileDataForIndex(TileIndex index, Iterable<TileIndex> tileSet, String dataId, TileSerializer<T> serializer,
+	                                         PyramidIO pyramidIO, LayerMetaData metadata, int coarseness) throws IOException {
 		TileData<T> data = null;
 		if (coarseness > 1) {
-			int coarsenessFactor = (int)Math.pow(2, coarseness - 1);
-
 			// Coarseness support:
-			// Find the appropriate tile data for the given level and coarseness
-			java.util.List<TileData<T>> tileDatas = null;
-			TileIndex scaleLevelIndex = null;
-
-			// need to get the tile data for the level of the base level minus the coarseness
-			for (int coarsenessLevel = coarseness - 1; coarsenessLevel >= 0; --coarsenessLevel) {
-				scaleLevelIndex = new TileIndex(index.getLevel() - coarsenessLevel,
-						(int) Math.floor(index.getX() / coarsenessFactor),
-						(int) Math.floor(index.getY() / coarsenessFactor));
-
-				tileDatas = pyramidIO.readTiles(dataId, serializer, Collections.singleton(scaleLevelIndex));
-				if (tileDatas.size() >= 1) {
-					//we got data for this level so use it
-					break;
-				}
-			}
+			// Find the appropriate tile data for the given level and coarseness, resolving all
+			// the tiles requested along with this one at the same time
+			data = _coarseTiles.getTileData(dataId, serializer, pyramidIO, metadata, index, tileSet, coarseness);
 
 			// Missing tiles are commonplace and we didn't find any data up the tree either.  We don't want a big long error for that.
-			if (tileDatas.size() < 1) {
+			if (null == data) {
 				LOGGER.info("Missing tile " + index + " for layer data id " + dataId);
-				return null;
 			}
-
-			// We're using a scaled tile so wrap in a view class that will make the source data look like original tile we're looking for
-			data = SubTileDataView.fromSourceAbsolute(tileDatas.get(0), index);
 		} else {
 			// No coarseness - use requested tile
 			java.util.List<TileData<T>> tileDatas = pyramidIO.readTiles(dataId, serializer, Collections.singleton(index));
@@ -119,25 +120,33 @@ public class TileServiceImpl implements TileService {
 		int width = 256;
 		int height = 256;
 		BufferedImage bi = null;
+		LayerMetrics metrics = getLayerMetrics( layer );
+		metrics.recordRequest();
 
 		try {
+			long start = System.nanoTime();
             // get layer configuration
 			LayerConfiguration config = _layerService.getLayerConfiguration( layer, query );
             // set level extrema
-            PyramidMetaData metadata = _layerService.getMetaData( layer );
-            String minimum = metadata.getCustomMetaData(""+index.getLevel(), "minimum");
-            String maximum = metadata.getCustomMetaData(""+index.getLevel(), "maximum");
+            LayerMetaData metadata = _layerService.getLayerMetaData( layer );
+            String minimum = metadata.getLevelMinimum( index.getLevel() );
+            String maximum = metadata.getLevelMaximum( index.getLevel() );
             config.setLevelProperties( index, minimum, maximum );
 
             // produce the tile renderer from the configuration
 			TileDataImageRenderer<?> tileRenderer = config.produce(TileDataImageRenderer.class);
-			bi = renderTileImage(config, layer, index, tileSet, tileRenderer);
+			metrics.getRecorder(Stage.CONFIGURE).recordSince(start);
+
+			bi = renderTileImage(config, layer, metadata, index, tileSet, tileRenderer, metrics);
 
 		} catch (ConfigurationException e) {
+			metrics.recordError();
 			LOGGER.warn("No renderer specified for tile request. "+ e.getMessage());
 		} catch (IllegalArgumentException e) {
+			metrics.recordError();
             LOGGER.info("Renderer configuration not recognized.");
 		} catch (Exception e) {
+			metrics.recordError();
 			LOGGER.warn("Tile is corrupt: " + layer + ":" + index);
 			LOGGER.warn("Tile error: ", e);
 		}
@@ -153,9 +162,11 @@ public class TileServiceImpl implements TileService {
 		return bi;
 	}
 
-	private <T> BufferedImage renderTileImage (LayerConfiguration config, String layer,
+	private <T> BufferedImage renderTileImage (LayerConfiguration config, String layer, LayerMetaData metadata,
 	                                           TileIndex index, Iterable<TileIndex> tileSet,
-	                                           TileDataImageRenderer<T> renderer) throws ConfigurationException, IOException, Exception {
+	                                           TileDataImageRenderer<T> renderer,
+	                                           LayerMetrics metrics) throws ConfigurationException, IOException, Exception {
+		long start = System.nanoTime();
         // prepare for rendering
 		config.prepareForRendering(layer, index, tileSet);
 
@@ -164,47 +175,139 @@ public class TileServiceImpl implements TileService {
 		TileSerializer<T> serializer = SerializationTypeChecker.checkBinClass(config.produce(TileSerializer.class),
 		                                                                      renderer.getAcceptedBinClass(),
 		                                                                      renderer.getAcceptedTypeDescriptor());
+		serializer = new TimedTileSerializer<>(serializer, metrics.getRecorder(Stage.DESERIALIZE));
 
 		int coarseness = config.getPropertyValue(LayerConfiguration.COARSENESS);
-		TileData<T> data = tileDataForIndex(index, dataId, serializer, pyramidIO, coarseness);
+		TileData<T> data = tileDataForIndex(index, tileSet, dataId, serializer, pyramidIO, metadata, coarseness);
+		metrics.getRecorder(Stage.READ).recordSince(start);
 
+		start = System.nanoTime();
         @SuppressWarnings("unchecked")
         TileTransformer<T> tileTransformer = config.produce(TileTransformer.class);
         data = tileTransformer.transform( data );
+		metrics.getRecorder(Stage.TRANSFORM).recordSince(start);
 
 		if (data != null) {
-			return renderer.render(data, config);
+			start = System.nanoTime();
+			BufferedImage image = renderer.render(data, config);
+			metrics.getRecorder(Stage.RENDER).recordSince(start);
+			return image;
 		} else {
 			return null;
 		}
 	}
 
+	// Get the serialized form of a tile, and the transformer to apply to it
+	private Pair<InputStream, TileTransformer<?>> getTileStream( String layer, TileIndex index, Iterable<TileIndex> tileSet, JSONObject query,
+	                                                             LayerMetrics metrics )
+		throws IOException, ConfigurationException {
+		long start = System.nanoTime();
+		// get layer configuration
+		LayerConfiguration config = _layerService.getLayerConfiguration( layer, query );
+		// get data source id, and produce pyramid io and serializer
+		String dataId = config.getPropertyValue(LayerConfiguration.DATA_ID);
+		PyramidIO pyramidIO = config.produce(PyramidIO.class);
+		TileSerializer<?> serializer = config.produce(TileSerializer.class);
+		// produce transformer
+		TileTransformer<?> transformer = config.produce(TileTransformer.class);
+		metrics.getRecorder(Stage.CONFIGURE).recordSince(start);
+
+		start = System.nanoTime();
+		// prepare for rendering
+		config.prepareForRendering(layer, index, tileSet);
+		// pull tile data from pyramid io
+		InputStream tile = pyramidIO.getTileStream( dataId, serializer, index );
+		metrics.getRecorder(Stage.READ).recordSince(start);
+		if (null == tile) {
+			return null;
+		}
+		return new Pair<InputStream, TileTransformer<?>>(tile, transformer);
+	}
+
 	@Override
 	public JSONObject getTileObject( String layer, TileIndex index, Iterable<TileIndex> tileSet, JSONObject query) {
+		LayerMetrics metrics = getLayerMetrics( layer );
+		metrics.recordRequest();
 		try {
-            // get layer configuration
-		    LayerConfiguration config = _layerService.getLayerConfiguration( layer, query );
-            // get data source id, and produce pyramid io and serializer
-            String dataId = config.getPropertyValue(LayerConfiguration.DATA_ID);
-		    PyramidIO pyramidIO = config.produce(PyramidIO.class);
-			TileSerializer<?> serializer = config.produce(TileSerializer.class);
-            // prepare for rendering
-			config.prepareForRendering(layer, index, tileSet);
-            // pull tile data from pyramid io
-			InputStream tile = pyramidIO.getTileStream( dataId, serializer, index );
+			Pair<InputStream, TileTransformer<?>> tile = getTileStream( layer, index, tileSet, query, metrics );
 			if (null == tile) {
                 return null;
             }
-            // produce transformer, return transformed de-serialized data
-			TileTransformer<?> transformer = config.produce(TileTransformer.class);
-			JSONObject deserializedJSON = AvroJSONConverter.convert(tile);
-			
-			return transformer.transform(deserializedJSON);
+			long start = System.nanoTime();
+            // return transformed de-serialized data
+			JSONObject deserializedJSON = AvroJSONConverter.convert(tile.getFirst());
+			metrics.getRecorder(Stage.DESERIALIZE).recordSince(start);
+
+			start = System.nanoTime();
+			JSONObject transformed = tile.getSecond().transform(deserializedJSON);
+			metrics.getRecorder(Stage.TRANSFORM).recordSince(start);
+			return transformed;
 		} catch (IOException | JSONException | ConfigurationException e) {
+			metrics.recordError();
 			LOGGER.warn("Exception getting tile for {}", index, e);
 		}  catch (IllegalArgumentException e) {
+			metrics.recordError();
             LOGGER.info("Renderer configuration not recognized.");
         }
 		return null;
 	}
+
+	@Override
+	public TileObjectWriter getTileObjectWriter( String layer, TileIndex index, Iterable<TileIndex> tileSet, JSONObject query ) {
+		final LayerMetrics metrics = getLayerMetrics( layer );
+		metrics.recordRequest();
+
+		try {
+			Pair<InputStream, TileTransformer<?>> tile = getTileStream( layer, index, tileSet, query, metrics );
+			if (null == tile) {
+				return null;
+			}
+
+			if (tile.getSecond() instanceof IdentityTileTransformer) {
+				// Nothing to transform, so go straight from binary to JSON.
+				// Reading the block checks the container is intact; the record
+				// itself is only transcoded as it is written.
+				long start = System.nanoTime();
+				final AvroJSONWriter.Block block = AvroJSONWriter.read(tile.getFirst());
+				metrics.getRecorder(Stage.DESERIALIZE).recordSince(start);
+				return new TileObjectWriter() {
+					@Override
+					public void write (JsonGenerator output) throws IOException {
+						long start = System.nanoTime();
+						block.write(output);
+						metrics.getRecorder(Stage.ENCODE).recordSince(start);
+					}
+				};
+			} else {
+				long start = System.nanoTime();
+				JSONObject deserialized = AvroJSONConverter.convert(tile.getFirst());
+				metrics.getRecorder(Stage.DESERIALIZE).recordSince(start);
+
+				start = System.nanoTime();
+				final JSONObject transformed = tile.getSecond().transform(deserialized);
+				metrics.getRecorder(Stage.TRANSFORM).recordSince(start);
+				if (null == transformed) {
+					return null;
+				}
+				return new TileObjectWriter() {
+					@Override
+					public void write (JsonGenerator output) throws IOException {
+						long start = System.nanoTime();
+						output.writeRawValue(transformed.toString());
+						metrics.getRecorder(Stage.ENCODE).recordSince(start);
+					}
+				};
+			}
+		} catch (IOException | JSONException | ConfigurationException e) {
+			metrics.recordError();
+			LOGGER.warn("Exception getting tile for {}", index, e);
+		} catch (IllegalArgumentException e) {
+			metrics.recordError();
+			LOGGER.info("Renderer configuration not recognized.");
+		} catch (RuntimeException e) {
+			metrics.recordError();
+			LOGGER.warn("Tile is corrupt: " + layer + ":" + index, e);
+		}
+		return null;
+	}
 }
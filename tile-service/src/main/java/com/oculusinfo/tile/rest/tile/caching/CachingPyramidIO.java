@@ -28,10 +28,15 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,19 +47,71 @@ import com.oculusinfo.binning.io.PyramidIO;
 import com.oculusinfo.binning.io.serialization.TileSerializer;
 import com.oculusinfo.factory.ConfigurableFactory;
 import com.oculusinfo.factory.ConfigurationException;
+import com.oculusinfo.tile.metrics.LayerMetrics;
+import com.oculusinfo.tile.metrics.TileMetrics;
+import com.oculusinfo.tile.metrics.TileMetrics.Stage;
+import com.oculusinfo.tile.metrics.TimedTileSerializer;
 import com.oculusinfo.tile.rest.tile.caching.TileCacheEntry.CacheRequestCallback;
 
+/**
+ * A read-only pyramid IO that caches tiles read from a base pyramid IO for
+ * each pyramid.
+ *
+ * Tiles are read from the base pyramid without holding any cache-wide lock;
+ * concurrent requests for a tile already being read wait for that read rather
+ * than repeating it - unless the prefetcher is the one reading it, in which
+ * case they read the tile themselves rather than wait behind a background
+ * batch. Clients that send their viewport with their requests
+ * (see {@link #requestTiles(String, TileSerializer, TileIndex, Iterable)})
+ * get the rest of that viewport, and the tiles they are likely to want next,
+ * read into the cache in the background by a {@link TilePrefetcher}.
+ *
+ * Caches are kept per pyramid (the data id tiles are read with), since
+ * several layers may show the same pyramid. Metrics and data-change
+ * notifications go to the layers set up to read each pyramid, by layer id;
+ * metrics are only tracked for layers the tile service has already checked
+ * are configured (see {@link TileMetrics#findLayerMetrics(String)}).
+ */
 public class CachingPyramidIO implements PyramidIO {
 	private static final Logger LOGGER = LoggerFactory.getLogger(CachingPyramidIO.class);
 
+	// Background threads used to prefetch tiles
+	private static final int  PREFETCH_THREADS = 2;
+	// The maximum number of predicted tiles prefetched per new viewport
+	private static final int  PREFETCH_TILES   = 32;
+	// How long to wait for a tile being read by someone else, in ms, before
+	// reading it ourselves
+	private static final long TILE_WAIT_MS     = 1000;
+
 	private Map<String, TileCache<?>>                    _tileCaches;
 	private Map<String, PyramidIO>                       _basePyramidIOs;
+	// The layers set up to read each pyramid
+	private ConcurrentMap<String, Set<String>>           _pyramidLayers;
 	private List<LayerDataChangedListener>               _layerListeners;
+	private TileMetrics                                  _metrics;
+	private AtomicInteger                                _foregroundReads;
+	// Tiles currently being read by the prefetcher, by pyramid
+	private ConcurrentMap<String, Set<TileIndex>>        _prefetching;
+	private TilePrefetcher                               _prefetcher;
 
 	public CachingPyramidIO () {
+		this(null);
+	}
+
+	/**
+	 * @param metrics Where to record cache hits, misses, and evictions, and
+	 *            the time taken to deserialize tiles read into the cache, for
+	 *            each layer. May be null, in which case nothing is recorded.
+	 */
+	public CachingPyramidIO (TileMetrics metrics) {
 		_tileCaches = new HashMap<>();
 		_basePyramidIOs = new HashMap<>();
+		_pyramidLayers = new ConcurrentHashMap<>();
 		_layerListeners = new ArrayList<>();
+		_metrics = metrics;
+		_foregroundReads = new AtomicInteger(0);
+		_prefetching = new ConcurrentHashMap<>();
+		_prefetcher = new TilePrefetcher(this, PREFETCH_THREADS, PREFETCH_TILES);
 	}
 
 	public void addLayerListener (LayerDataChangedListener listener) {
@@ -81,20 +138,131 @@ public class CachingPyramidIO implements PyramidIO {
 		return cache;
 	}
 
-	// Using the callback mechanism in the tile cache, get a tile and hand it
-	// back synchronously.
+	// Get the tiles for a foreground request, once fetchTiles has put them in
+	// (or on their way into) the cache.
 	//
-	// This does _not_ handle making the request; that must be done separately
-	// with RequestData.
-	private <T> TileData<T> getTileData (String pyramidId, TileIndex index) {
+	// Tiles being read by someone else are waited for, through the callback
+	// mechanism in the tile cache - except those being read by the
+	// prefetcher, which could take a whole background batch to arrive. Those,
+	// and any we can't get from the cache in time, we read ourselves.
+	private <T> List<TileData<T>> getTileData (String pyramidId, TileSerializer<T> serializer,
+	                                           Iterable<TileIndex> indices) throws IOException {
 		TileCache<T> cache = getTileCache(pyramidId);
+		Set<TileIndex> prefetching = getPrefetchingTiles(pyramidId);
+
+		List<TileData<T>> tiles = new ArrayList<>();
+		List<TileIndex> unresolved = new ArrayList<>();
+		for (TileIndex index: indices) {
+			if (prefetching.contains(index)) {
+				unresolved.add(index);
+				continue;
+			}
+
+			CacheListenerCallback<T> callback = new CacheListenerCallback<>();
+			if (cache.requestTile(index, callback)) {
+				TileData<T> tile = callback.waitForTile();
+				if (callback.wasReceived()) {
+					if (null != tile) tiles.add(tile);
+					continue;
+				}
+			}
+			unresolved.add(index);
+		}
+
+		if (!unresolved.isEmpty()) {
+			_foregroundReads.incrementAndGet();
+			try {
+				tiles.addAll(getBasePyramidIO(pyramidId).readTiles(pyramidId, serializer, unresolved));
+			} finally {
+				_foregroundReads.decrementAndGet();
+			}
+		}
+		return tiles;
+	}
+
+	private Set<TileIndex> getPrefetchingTiles (String pyramidId) {
+		Set<TileIndex> prefetching = _prefetching.get(pyramidId);
+		if (null == prefetching) {
+			Set<TileIndex> newSet = Collections.newSetFromMap(new ConcurrentHashMap<TileIndex, Boolean>());
+			prefetching = _prefetching.putIfAbsent(pyramidId, newSet);
+			if (null == prefetching) prefetching = newSet;
+		}
+		return prefetching;
+	}
+
+	/*
+	 * Read any of the given tiles not already in (or on their way into) the
+	 * cache from the base pyramid, and put them in the cache. No lock is held
+	 * while reading.
+	 *
+	 * @return The number of tiles that weren't already cached
+	 */
+	private <T> int fetchTiles (String pyramidId, TileSerializer<T> serializer,
+	                            Iterable<TileIndex> indices, boolean foreground) throws IOException {
+		TileCache<T> cache = getTileCache(pyramidId);
+
+		// Claim the tiles nobody else has yet
+		List<TileIndex> newIndices = new ArrayList<>(cache.getNewRequests(indices));
+		if (newIndices.isEmpty())
+			return 0;
+		int claimed = newIndices.size();
+
+		Set<TileIndex> prefetching = getPrefetchingTiles(pyramidId);
+		boolean succeeded = false;
+		List<TileIndex> prefetched = (foreground ? Collections.<TileIndex>emptyList() : new ArrayList<>(newIndices));
+		if (foreground) _foregroundReads.incrementAndGet();
+		else prefetching.addAll(prefetched);
+		try {
+			PyramidIO base = getBasePyramidIO(pyramidId);
+			List<TileData<T>> tiles = base.readTiles(pyramidId, serializer, newIndices);
 
-		CacheListenerCallback<T> callback = new CacheListenerCallback<>();
-		cache.requestTile(index, callback);
+			// Cache recieved tiles...
+			for (TileData<T> tile: tiles) {
+				cache.provideTile(tile);
+				newIndices.remove(tile.getDefinition());
+			}
+			// And the fact that some were empty
+			for (TileIndex index: newIndices) {
+				cache.provideEmptyTile(index);
+			}
+			succeeded = true;
+		} finally {
+			if (foreground) _foregroundReads.decrementAndGet();
+			else prefetching.removeAll(prefetched);
+			// Release anyone waiting on tiles we failed to read
+			if (!succeeded) cache.cancelRequests(newIndices);
+		}
+		return claimed;
+	}
 
-		TileData<T> tile = callback.waitForTile();
+	/*
+	 * Read tiles into the cache in the background, on behalf of the prefetcher.
+	 */
+	<T> void prefetchTiles (String pyramidId, TileSerializer<T> serializer,
+	                        Iterable<TileIndex> indices) throws IOException {
+		fetchTiles(pyramidId, serializer, indices, false);
+	}
+
+	/*
+	 * Is the given tile currently being read by the prefetcher?
+	 */
+	boolean isPrefetching (String pyramidId, TileIndex index) {
+		return getPrefetchingTiles(pyramidId).contains(index);
+	}
 
-		return tile;
+	/*
+	 * The number of reads currently being made on behalf of tile requests,
+	 * rather than the prefetcher.
+	 */
+	int getForegroundReads () {
+		return _foregroundReads.get();
+	}
+
+	/**
+	 * Stop background prefetching
+	 */
+	public void shutdown () {
+		_prefetcher.shutdown();
 	}
 
 
@@ -120,9 +288,18 @@ public class CachingPyramidIO implements PyramidIO {
 
 
 	/*
-	 * Set up a base pyramid from which to read when we get a cache miss
+	 * Set up a base pyramid from which to read when we get a cache miss, for
+	 * the given layer
 	 */
-	public void setupBasePyramidIO (String pyramidId, ConfigurableFactory<? extends PyramidIO> factory) {
+	public void setupBasePyramidIO (String layer, String pyramidId, ConfigurableFactory<? extends PyramidIO> factory) {
+		Set<String> layers = _pyramidLayers.get(pyramidId);
+		if (null == layers) {
+			Set<String> newLayers = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+			layers = _pyramidLayers.putIfAbsent(pyramidId, newLayers);
+			if (null == layers) layers = newLayers;
+		}
+		layers.add(layer);
+
 		if (!_basePyramidIOs.containsKey(pyramidId)) {
 			synchronized (_basePyramidIOs) {
 				if (!_basePyramidIOs.containsKey(pyramidId)) {
@@ -149,38 +326,72 @@ public class CachingPyramidIO implements PyramidIO {
 	}
 
 	/**
-	 * Request a set of tiles, retrieving some of them immediately, and setting
-	 * the rest up for eventual retrieval
+	 * Request a set of tiles, reading any not already cached into the cache
+	 * immediately.
 	 * 
+	 * @param layer the layer on whose behalf the tiles are requested
 	 * @param pyramidId the pyramid io
 	 * @param serializer the serializer
 	 * @param indices Indices of tiles to be requested.  May not be null.
 	 * @throws IOException
 	 */
-	public <T> void requestTiles (String pyramidId,
+	public <T> void requestTiles (String layer,
+	                              String pyramidId,
 	                              TileSerializer<T> serializer,
 	                              Iterable<TileIndex> indices) throws IOException {
-		TileCache<T> cache = getTileCache(pyramidId);
+		List<TileIndex> requested = new ArrayList<>();
+		for (TileIndex index: indices) requested.add(index);
 
-		synchronized (cache) {
-			// First, request and retrieve all tiles needed over the long term
-			// Only request those we don't already have
-			List<TileIndex> newIndices = new ArrayList<>(cache.getNewRequests(indices));
-			if (newIndices.isEmpty())
-				return;
+		LayerMetrics metrics = findLayerMetrics(layer);
+		int misses = fetchTiles(pyramidId, timed(serializer, metrics), requested, true);
+		recordCacheAccess(metrics, requested.size() - misses, misses);
+	}
 
-			PyramidIO base = getBasePyramidIO(pyramidId);
-			List<TileData<T>> tiles = base.readTiles(pyramidId, serializer, newIndices);
-    
-			// Cache recieved tiles...
-			for (TileData<T> tile: tiles) {
-				cache.provideTile(tile);
-				newIndices.remove(tile.getDefinition());
-			}
-			// And the fact that some were empty
-			for (TileIndex index: newIndices) {
-				cache.provideEmptyTile(index);
-			}
+	/**
+	 * Request a tile, reading it into the cache immediately if it isn't
+	 * already there, and have the rest of the client's viewport - and the
+	 * tiles the client is likely to want next - read into the cache in the
+	 * background.
+	 * 
+	 * @param layer the layer on whose behalf the tile is requested
+	 * @param pyramidId the pyramid io
+	 * @param serializer the serializer
+	 * @param tile The tile being requested
+	 * @param tileSet The tiles in the requesting client's viewport; may be null
+	 * @throws IOException
+	 */
+	public <T> void requestTiles (String layer,
+	                              String pyramidId,
+	                              TileSerializer<T> serializer,
+	                              TileIndex tile,
+	                              Iterable<TileIndex> tileSet) throws IOException {
+		LayerMetrics metrics = findLayerMetrics(layer);
+		serializer = timed(serializer, metrics);
+		int misses = fetchTiles(pyramidId, serializer, Collections.singletonList(tile), true);
+		recordCacheAccess(metrics, 1 - misses, misses);
+
+		_prefetcher.onTileRequest(pyramidId, serializer, tile, tileSet);
+	}
+
+	// Never adds a layer to those tracked; only the tile service, which
+	// checks layers against their configuration, does that
+	private LayerMetrics findLayerMetrics (String layer) {
+		if (null == _metrics) return null;
+		return _metrics.findLayerMetrics(layer);
+	}
+
+	// Time deserialization of tiles read for (or prefetched on behalf of) a
+	// layer. Serializers generally come already timed by the tile service;
+	// don't count their time twice.
+	private <T> TileSerializer<T> timed (TileSerializer<T> serializer, LayerMetrics metrics) {
+		if (null == metrics || serializer instanceof TimedTileSerializer) return serializer;
+		return new TimedTileSerializer<>(serializer, metrics.getRecorder(Stage.DESERIALIZE));
+	}
+
+	private void recordCacheAccess (LayerMetrics metrics, int hits, int misses) {
+		if (null != metrics) {
+			metrics.recordCacheHits(hits);
+			metrics.recordCacheMisses(misses);
 		}
 	}
 
@@ -188,35 +399,28 @@ public class CachingPyramidIO implements PyramidIO {
 	public <T> List<TileData<T>> readTiles (String pyramidId,
 	                                        TileSerializer<T> serializer,
 	                                        Iterable<TileIndex> indices) throws IOException {
-		TileCache<T> cache = getTileCache(pyramidId);
-		synchronized (cache) {
-			List<TileData<T>> tiles = new ArrayList<>();
-			for (TileIndex index: indices) {
-				// We rely on configuration to make sure types match here
-				@SuppressWarnings({"unchecked", "rawtypes"})
-				TileData<T> tile = (TileData) getTileData(pyramidId, index);
-
-				if (null != tile)
-					tiles.add(tile);
-			}
-    
-			return(tiles);
-		}
+		// Read through anything not already requested (such as the coarser
+		// tiles used for coarseness), or since dropped from the cache
+		fetchTiles(pyramidId, serializer, indices, true);
+
+		return getTileData(pyramidId, serializer, indices);
 	}
 
 	@Override
 	public <T> InputStream getTileStream (String pyramidId,
 	                                      TileSerializer<T> serializer,
 	                                      TileIndex index) throws IOException {
+		fetchTiles(pyramidId, serializer, Collections.singletonList(index), true);
+
 		// We cache tiles, not streams, so we need to serialize the tile into a
 		// stream, in order to return a stream.
-		TileData<T> tile = getTileData(pyramidId, index);
+		List<TileData<T>> tiles = getTileData(pyramidId, serializer, Collections.singletonList(index));
 
-		if (null == tile) {
+		if (tiles.isEmpty()) {
 			return null;
 		} else {
 			ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			serializer.serialize(tile, baos);
+			serializer.serialize(tiles.get(0), baos);
 			baos.flush();
 			baos.close();
 			return new ByteArrayInputStream(baos.toByteArray());
@@ -237,6 +441,7 @@ public class CachingPyramidIO implements PyramidIO {
 		private TileData<T> _tile;
 		private boolean     _waiting;
 		private boolean     _notified;
+		private boolean     _received;
 
 
 
@@ -244,54 +449,79 @@ public class CachingPyramidIO implements PyramidIO {
 			_tile = null;
 			_waiting = false;
 			_notified = false;
+			_received = false;
 		}
 
-		synchronized public TileData<T> waitForTile () {
-				if (!_notified)
-					try {
-						_waiting = true;
-						wait(1000);
-					} catch (InterruptedException e) {
-						LOGGER.warn("Error waiting for return for tile.", e);
-						return null;
-					} finally {
-						_waiting = false;
-					}
+		// True if the tile (or the fact that it is empty) actually arrived,
+		// rather than being abandoned or timing out
+		synchronized public boolean wasReceived () {
+			return _received;
+		}
 
-				return _tile;
+		synchronized public TileData<T> waitForTile () {
+			long deadline = System.currentTimeMillis() + TILE_WAIT_MS;
+			try {
+				_waiting = true;
+				while (!_notified) {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) break;
+					wait(remaining);
+				}
+			} catch (InterruptedException e) {
+				LOGGER.warn("Error waiting for return for tile.", e);
+				Thread.currentThread().interrupt();
+				return null;
+			} finally {
+				_waiting = false;
 			}
 
+			return _tile;
+		}
+
 		@Override
 		synchronized public boolean onTileReceived (TileIndex index, TileData<T> tile) {
-				_tile = tile;
-				_notified = true;
-				if (_waiting)
-					this.notify();
-				return true;
-			}
+			_tile = tile;
+			_notified = true;
+			_received = true;
+			if (_waiting)
+				this.notify();
+			return true;
+		}
 
 		@Override
-		public void onTileAbandoned (TileIndex index) {
+		synchronized public void onTileAbandoned (TileIndex index) {
+			_notified = true;
 			if (_waiting)
 				this.notify();
 		}
 	}
 
 	private class GlobalCallback<T> implements TileCacheEntry.CacheRequestCallback<T> {
-		private String _layer;
-		GlobalCallback (String layer) {
-			_layer = layer;
+		private String _pyramidId;
+		GlobalCallback (String pyramidId) {
+			_pyramidId = pyramidId;
+		}
+		private Set<String> getLayers () {
+			Set<String> layers = _pyramidLayers.get(_pyramidId);
+			if (null == layers) return Collections.emptySet();
+			return layers;
 		}
 		@Override
 		public boolean onTileReceived (TileIndex index, TileData<T> tile) {
-			for (LayerDataChangedListener listener: _layerListeners) {
-				listener.onLayerDataChanged(_layer);
+			for (String layer: getLayers()) {
+				for (LayerDataChangedListener listener: _layerListeners) {
+					listener.onLayerDataChanged(layer);
+				}
 			}
 			return false;
 		}
 
 		@Override
 		public void onTileAbandoned (TileIndex index) {
+			for (String layer: getLayers()) {
+				LayerMetrics metrics = findLayerMetrics(layer);
+				if (null != metrics) metrics.recordCacheEviction();
+			}
 		}
 	}
 	public interface LayerDataChangedListener {
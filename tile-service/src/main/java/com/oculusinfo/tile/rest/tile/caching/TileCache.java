@@ -116,9 +116,34 @@ public class TileCache<T> {
 	 * 
 	 * @param callback
 	 *            A callback to call when the request is fulfilled.
+	 * @return False if the tile was never requested through
+	 *         {@link #getNewRequests(Iterable)}, or has since left the cache,
+	 *         in which case the callback is told the tile is abandoned.
 	 */
-	public void requestTile (TileIndex index, CacheRequestCallback<T> callback) {
-		_cache.get(index).requestTile(callback);
+	public boolean requestTile (TileIndex index, CacheRequestCallback<T> callback) {
+		TileCacheEntry<T> entry = _cache.get(index);
+		if (null == entry) {
+			callback.onTileAbandoned(index);
+			return false;
+		}
+		entry.requestTile(callback);
+		return true;
+	}
+
+	/**
+	 * Withdraw requests that will never be fulfilled - for instance, because
+	 * reading them failed - so that anyone waiting on them is released, and
+	 * they may be requested again.
+	 */
+	public void cancelRequests (Iterable<TileIndex> indices) {
+		synchronized (_cache) {
+			for (TileIndex index: indices) {
+				TileCacheEntry<T> entry = _cache.get(index);
+				if (null != entry && !entry.hasBeenReceived()) {
+					_cache.remove(index);
+				}
+			}
+		}
 	}
 
 	public void provideTile (TileData<T> tile) {
@@ -140,10 +165,12 @@ public class TileCache<T> {
 	private class CacheEntryListener implements CacheRequestCallback<T> {
 		@Override
 		public boolean onTileReceived (TileIndex index, TileData<T> tile) {
-			TileCacheEntry<T> entry = _cache.get(index);
-			if (null != entry) {
-				_haveData.add(new Pair<TileIndex, Long>(index,
-				                                        entry.initialRequestTime()));
+			synchronized (_cache) {
+				TileCacheEntry<T> entry = _cache.get(index);
+				if (null != entry) {
+					_haveData.add(new Pair<TileIndex, Long>(index,
+					                                        entry.initialRequestTime()));
+				}
 			}
 			// Notify any global listeners
 			if (null != _globalCallbacks && !_globalCallbacks.isEmpty()) {
@@ -186,7 +213,7 @@ public class TileCache<T> {
 					for (Pair<TileIndex, Long> hasData: _haveData) {
 						TileIndex index = hasData.getFirst();
 						TileCacheEntry<T> entryWithData = _cache.get(index);
-						if (entryWithData.hasBeenRetrieved()) {
+						if (null != entryWithData && entryWithData.hasBeenRetrieved()) {
 							_cache.remove(index);
 							return false;
 						}
@@ -199,7 +226,7 @@ public class TileCache<T> {
 					if (_orderedKeys.size() > 0) {
 						TileIndex oldestKey = _orderedKeys.get(0);
 						TileCacheEntry<T> oldestEntry = _cache.get(oldestKey);
-						if (oldestEntry.age() > _maxTileAge) {
+						if (null != oldestEntry && oldestEntry.age() > _maxTileAge) {
 							_cache.remove(oldestKey);
 						}
 					}
@@ -211,7 +238,18 @@ public class TileCache<T> {
 		@Override
 		public void onElementRemoved (TileIndex key,
 		                              TileCacheEntry<T> value) {
+			if (null == value)
+				return;
+
+			_orderedKeys.remove(key);
+			_haveData.remove(new Pair<TileIndex, Long>(key, value.initialRequestTime()));
 			value.abandonTile();
+			// Let global listeners know the tile has left the cache
+			if (null != _globalCallbacks && !_globalCallbacks.isEmpty()) {
+				for (CacheRequestCallback<T> callback: _globalCallbacks) {
+					callback.onTileAbandoned(key);
+				}
+			}
 		}
 	}
 
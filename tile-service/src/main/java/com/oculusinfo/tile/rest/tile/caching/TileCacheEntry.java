@@ -28,7 +28,6 @@ import com.oculusinfo.binning.TileData;
 import com.oculusinfo.binning.TileIndex;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -66,14 +65,23 @@ public class TileCacheEntry<T> {
 	/**
 	 * Used to request a tile, of course. The callback will be called once when
 	 * the tile is received (immediately if it is already there)
+	 *
+	 * Entries are filled in and read from different threads, so all state is
+	 * guarded by the entry; callbacks, however, are always called without
+	 * holding that lock, since they may well need the cache's lock, and the
+	 * cache calls into its entries while holding it.
 	 */
 	public void requestTile (CacheRequestCallback<T> callback) {
-		if (_received) {
-			callback.onTileReceived(_index, _tile);
+		TileData<T> tile;
+		synchronized (this) {
+			if (!_received) {
+				_requests.add(callback);
+				return;
+			}
+			tile = _tile;
 			_retreived = true;
-		} else {
-			_requests.add(callback);
 		}
+		callback.onTileReceived(_index, tile);
 	}
 
 	/*
@@ -83,14 +91,24 @@ public class TileCacheEntry<T> {
 	 *            The requested tile
 	 */
 	void setTile (TileData<T> tile) {
-		_received = true;
-		_tile = tile;
-		Iterator<CacheRequestCallback<T>> i = _requests.iterator();
-		while (i.hasNext()) {
-			CacheRequestCallback<T> callback = i.next();
-			if (callback.onTileReceived(_index, _tile)) {
+		List<CacheRequestCallback<T>> callbacks;
+		synchronized (this) {
+			_received = true;
+			_tile = tile;
+			callbacks = new ArrayList<>(_requests);
+		}
+
+		List<CacheRequestCallback<T>> handled = new ArrayList<>();
+		for (CacheRequestCallback<T> callback: callbacks) {
+			if (callback.onTileReceived(_index, tile)) {
+				handled.add(callback);
+			}
+		}
+
+		if (!handled.isEmpty()) {
+			synchronized (this) {
 				_retreived = true;
-				i.remove();
+				_requests.removeAll(handled);
 			}
 		}
 	}
@@ -99,21 +117,31 @@ public class TileCacheEntry<T> {
 	 * Notify the anyone who cares that a tile has been abandoned.
 	 */
 	void abandonTile () {
-		Iterator<CacheRequestCallback<T>> i = _requests.iterator();
-		while (i.hasNext()) {
-			CacheRequestCallback<T> callback = i.next();
+		List<CacheRequestCallback<T>> callbacks;
+		synchronized (this) {
+			callbacks = new ArrayList<>(_requests);
+			_requests.clear();
+		}
+		for (CacheRequestCallback<T> callback: callbacks) {
 			callback.onTileAbandoned(_index);
-			i.remove();
 		}
 	}
 
 	/**
 	 * Indicates whether or not the requested tile has yet been received
 	 */
-	public boolean hasBeenRetrieved () {
+	synchronized public boolean hasBeenRetrieved () {
 		return _retreived;
 	}
 
+	/**
+	 * Indicates whether or not the data for this tile (or the knowledge that
+	 * there is no such tile) has arrived
+	 */
+	synchronized public boolean hasBeenReceived () {
+		return _received;
+	}
+
 	/**
 	 * Indicates the first time at which this request was made
 	 */
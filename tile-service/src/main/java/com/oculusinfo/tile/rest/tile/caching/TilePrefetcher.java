@@ -0,0 +1,359 @@
+/**
+ * Copyright (c) 2013 Oculus Info Inc. http://www.oculusinfo.com/
+ * 
+ * Released under the MIT License.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest.tile.caching;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.oculusinfo.binning.TileIndex;
+import com.oculusinfo.binning.io.serialization.TileSerializer;
+
+/**
+ * Predicts the tiles a client will want next, and reads them into the tile
+ * cache in the background.
+ *
+ * Predictions are driven by the viewports (the tile sets) that clients send
+ * with their tile requests. Each new viewport is matched with the most recent
+ * nearby viewport seen for the same pyramid - the same client, most likely,
+ * panning or zooming - and from the movement between them, the prefetcher
+ * queues, in order:
+ * <ol>
+ * <li>The rest of the current viewport</li>
+ * <li>The next ring of tiles in the direction of movement, or the whole ring
+ * around the viewport if it isn't moving</li>
+ * <li>The children and the parents of the viewport, those in the direction of
+ * any zoom first</li>
+ * </ol>
+ *
+ * Reads run in small batches on a small pool of low-priority daemon threads
+ * with a bounded queue; when the queue is full, the oldest predictions are
+ * dropped. Before each batch, the prefetcher waits (briefly) for any
+ * foreground reads to finish.
+ */
+public class TilePrefetcher {
+	private static final Logger LOGGER = LoggerFactory.getLogger(TilePrefetcher.class);
+
+	// The number of tiles read from the base pyramid at once
+	private static final int  BATCH_SIZE       = 16;
+	// The number of recent viewports remembered per pyramid
+	private static final int  HISTORY_SIZE     = 16;
+	// The number of predictions waiting to be read before old ones are dropped
+	private static final int  QUEUE_SIZE       = 32;
+	// How long to wait for foreground reads to finish before each batch, in ms
+	private static final long MAX_YIELD_MS     = 200;
+	private static final long YIELD_STEP_MS    = 5;
+
+
+
+	private CachingPyramidIO               _pyramidIO;
+	private int                            _maxPredictedTiles;
+	private ThreadPoolExecutor             _executor;
+	private Map<String, LinkedList<Viewport>> _history;
+
+	/**
+	 * @param pyramidIO The caching pyramid IO into whose cache to prefetch
+	 * @param threads The number of background threads on which to read
+	 * @param maxPredictedTiles The maximum number of predicted tiles to read
+	 *            for each new viewport, not counting the viewport itself
+	 */
+	public TilePrefetcher (CachingPyramidIO pyramidIO, int threads, int maxPredictedTiles) {
+		_pyramidIO = pyramidIO;
+		_maxPredictedTiles = maxPredictedTiles;
+		_executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+		                                   new ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+		                                   new PrefetchThreadFactory(),
+		                                   new ThreadPoolExecutor.DiscardOldestPolicy());
+		_history = new HashMap<>();
+	}
+
+	/**
+	 * Stop prefetching; queued predictions are dropped.
+	 */
+	public void shutdown () {
+		_executor.shutdownNow();
+	}
+
+	/**
+	 * Note a tile request, with the viewport of the client requesting it, and
+	 * queue up reads of the tiles that client is likely to want next.
+	 *
+	 * @param pyramidId The pyramid being read
+	 * @param serializer The serializer with which to read tiles
+	 * @param tile The tile being requested
+	 * @param tileSet The tiles in the client's current viewport
+	 */
+	public <T> void onTileRequest (String pyramidId, TileSerializer<T> serializer,
+	                               TileIndex tile, Iterable<TileIndex> tileSet) {
+		if (null == tileSet) return;
+
+		Viewport viewport = Viewport.fromTileSet(tile, tileSet);
+		// A lone tile tells us nothing about where its client is going
+		if (null == viewport || viewport.isSingleTile()) return;
+
+		Viewport previous = null;
+		synchronized (_history) {
+			LinkedList<Viewport> history = _history.get(pyramidId);
+			if (null == history) {
+				history = new LinkedList<>();
+				_history.put(pyramidId, history);
+			}
+			// Every tile of a viewport comes with the same tile set; only
+			// predict from the first one.
+			if (history.contains(viewport)) return;
+
+			for (Viewport candidate: history) {
+				if (candidate.isNear(viewport)) {
+					previous = candidate;
+					break;
+				}
+			}
+			history.addFirst(viewport);
+			if (history.size() > HISTORY_SIZE) history.removeLast();
+		}
+
+		Set<TileIndex> predicted = new LinkedHashSet<>();
+		for (TileIndex index: tileSet) {
+			if (!index.equals(tile)) predicted.add(index);
+		}
+		int limit = predicted.size() + _maxPredictedTiles;
+		for (TileIndex index: viewport.predict(previous)) {
+			if (predicted.size() >= limit) break;
+			predicted.add(index);
+		}
+
+		if (!predicted.isEmpty()) {
+			_executor.execute(new PrefetchTask<>(pyramidId, serializer, new ArrayList<>(predicted)));
+		}
+	}
+
+
+
+	private class PrefetchTask<T> implements Runnable {
+		private String            _pyramidId;
+		private TileSerializer<T> _serializer;
+		private List<TileIndex>   _indices;
+
+		PrefetchTask (String pyramidId, TileSerializer<T> serializer, List<TileIndex> indices) {
+			_pyramidId = pyramidId;
+			_serializer = serializer;
+			_indices = indices;
+		}
+
+		@Override
+		public void run () {
+			try {
+				for (int start = 0; start < _indices.size(); start += BATCH_SIZE) {
+					yieldToForeground();
+					List<TileIndex> batch = _indices.subList(start, Math.min(start + BATCH_SIZE, _indices.size()));
+					_pyramidIO.prefetchTiles(_pyramidId, _serializer, batch);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Exception e) {
+				LOGGER.warn("Error prefetching tiles for {}", _pyramidId, e);
+			}
+		}
+
+		private void yieldToForeground () throws InterruptedException {
+			long waited = 0;
+			while (_pyramidIO.getForegroundReads() > 0 && waited < MAX_YIELD_MS) {
+				Thread.sleep(YIELD_STEP_MS);
+				waited += YIELD_STEP_MS;
+			}
+		}
+	}
+
+
+
+	private static class PrefetchThreadFactory implements ThreadFactory {
+		private static final AtomicInteger POOL_NUMBER = new AtomicInteger(0);
+
+		private int           _pool = POOL_NUMBER.incrementAndGet();
+		private AtomicInteger _thread = new AtomicInteger(0);
+
+		@Override
+		public Thread newThread (Runnable runnable) {
+			Thread thread = new Thread(runnable, "tile-prefetch-"+_pool+"-"+_thread.incrementAndGet());
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	}
+
+
+
+	/**
+	 * The rectangle of tiles a client is looking at, on one level
+	 */
+	static class Viewport {
+		private int _level;
+		private int _minX;
+		private int _maxX;
+		private int _minY;
+		private int _maxY;
+		private int _xBins;
+		private int _yBins;
+
+		Viewport (int level, int minX, int maxX, int minY, int maxY, int xBins, int yBins) {
+			_level = level;
+			_minX = minX;
+			_maxX = maxX;
+			_minY = minY;
+			_maxY = maxY;
+			_xBins = xBins;
+			_yBins = yBins;
+		}
+
+		/**
+		 * The bounds of the tiles in a tile set on the level of the given tile
+		 */
+		static Viewport fromTileSet (TileIndex tile, Iterable<TileIndex> tileSet) {
+			int level = tile.getLevel();
+			int minX = tile.getX(), maxX = tile.getX();
+			int minY = tile.getY(), maxY = tile.getY();
+			for (TileIndex index: tileSet) {
+				if (index.getLevel() != level) continue;
+				minX = Math.min(minX, index.getX());
+				maxX = Math.max(maxX, index.getX());
+				minY = Math.min(minY, index.getY());
+				maxY = Math.max(maxY, index.getY());
+			}
+			return new Viewport(level, minX, maxX, minY, maxY, tile.getXBins(), tile.getYBins());
+		}
+
+		boolean isSingleTile () {
+			return _minX == _maxX && _minY == _maxY;
+		}
+
+		/**
+		 * Could the given viewport have been reached from this one by a
+		 * single pan or zoom?
+		 */
+		boolean isNear (Viewport that) {
+			Viewport scaled = this;
+			if (that._level == _level + 1) scaled = children();
+			else if (that._level == _level - 1) scaled = parents();
+			else if (that._level != _level) return false;
+
+			// Overlapping, or within one viewport's width and height
+			int width = scaled._maxX - scaled._minX + 1;
+			int height = scaled._maxY - scaled._minY + 1;
+			return that._minX <= scaled._maxX + width && that._maxX >= scaled._minX - width &&
+				that._minY <= scaled._maxY + height && that._maxY >= scaled._minY - height;
+		}
+
+		private Viewport children () {
+			return new Viewport(_level + 1, 2 * _minX, 2 * _maxX + 1, 2 * _minY, 2 * _maxY + 1, _xBins, _yBins);
+		}
+
+		private Viewport parents () {
+			return new Viewport(_level - 1, _minX / 2, _maxX / 2, _minY / 2, _maxY / 2, _xBins, _yBins);
+		}
+
+		/**
+		 * Predict the tiles wanted next, most likely first, given the viewport
+		 * seen before this one.
+		 *
+		 * @param previous The previous viewport from the same client; may be
+		 *            null if unknown
+		 */
+		List<TileIndex> predict (Viewport previous) {
+			List<TileIndex> predicted = new ArrayList<>();
+
+			int dx = 0, dy = 0;
+			if (null != previous && previous._level == _level) {
+				dx = Integer.signum((_minX + _maxX) - (previous._minX + previous._maxX));
+				dy = Integer.signum((_minY + _maxY) - (previous._minY + previous._maxY));
+			}
+
+			// The ring around the viewport, or just its leading edges if moving
+			for (int x = _minX - 1; x <= _maxX + 1; ++x) {
+				for (int y = _minY - 1; y <= _maxY + 1; ++y) {
+					boolean inside = (x >= _minX && x <= _maxX && y >= _minY && y <= _maxY);
+					if (inside) continue;
+					if (0 != dx || 0 != dy) {
+						boolean leading = (dx > 0 && x > _maxX) || (dx < 0 && x < _minX) ||
+							(dy > 0 && y > _maxY) || (dy < 0 && y < _minY);
+						if (!leading) continue;
+					}
+					addIfValid(predicted, _level, x, y);
+				}
+			}
+
+			// Then the neighbouring levels, in the direction of any zoom first
+			boolean zoomingOut = (null != previous && previous._level > _level);
+			if (zoomingOut) {
+				addAll(predicted, parents());
+				addAll(predicted, children());
+			} else {
+				addAll(predicted, children());
+				addAll(predicted, parents());
+			}
+
+			return predicted;
+		}
+
+		private void addAll (List<TileIndex> predicted, Viewport viewport) {
+			for (int x = viewport._minX; x <= viewport._maxX; ++x) {
+				for (int y = viewport._minY; y <= viewport._maxY; ++y) {
+					addIfValid(predicted, viewport._level, x, y);
+				}
+			}
+		}
+
+		private void addIfValid (List<TileIndex> predicted, int level, int x, int y) {
+			if (level < 0 || level > 30) return;
+			int tiles = 1 << level;
+			if (x < 0 || y < 0 || x >= tiles || y >= tiles) return;
+			predicted.add(new TileIndex(level, x, y, _xBins, _yBins));
+		}
+
+		@Override
+		public boolean equals (Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Viewport)) return false;
+			Viewport that = (Viewport) obj;
+			return _level == that._level && _minX == that._minX && _maxX == that._maxX &&
+				_minY == that._minY && _maxY == that._maxY;
+		}
+
+		@Override
+		public int hashCode () {
+			return (((_level * 31 + _minX) * 31 + _maxX) * 31 + _minY) * 31 + _maxY;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2014 Oculus Info Inc.
+ * http://www.oculusinfo.com/
+ *
+ * Released under the MIT License.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is furnished to do
+ * so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oculusinfo.tile.metrics.TileMetrics.Stage;
+
+public class TileMetricsTests {
+	@Test
+	public void testBucketBoundaries () {
+		for (long value: new long[] {0, 1, 15, 16, 17, 31, 32, 1000, 123456789, 1L << 39}) {
+			int index = LatencyRecorder.bucketIndex(value);
+			Assert.assertTrue(LatencyRecorder.bucketLowerBound(index) <= value);
+			Assert.assertTrue(LatencyRecorder.bucketUpperBound(index) >= value);
+			if (index > 0)
+				Assert.assertEquals(LatencyRecorder.bucketLowerBound(index), LatencyRecorder.bucketUpperBound(index-1)+1);
+		}
+	}
+
+	@Test
+	public void testQuantiles () {
+		LatencyRecorder recorder = new LatencyRecorder();
+		// 1 to 1000 microseconds
+		for (int i = 1; i <= 1000; ++i) {
+			recorder.record(i * 1000L);
+		}
+
+		Assert.assertEquals(1000, recorder.getCount());
+		assertWithin(500000, recorder.getQuantile(0.5), 0.07);
+		assertWithin(990000, recorder.getQuantile(0.99), 0.07);
+		Assert.assertEquals(1000000, recorder.getQuantile(1.0));
+
+		LatencySummary summary = recorder.getSummary();
+		Assert.assertEquals(0.5005, summary.getMean(), 1E-9);
+		Assert.assertEquals(1.0, summary.getMax(), 1E-9);
+		Assert.assertTrue(summary.getMedian() <= summary.getP90());
+		Assert.assertTrue(summary.getP90() <= summary.getP99());
+	}
+
+	private static void assertWithin (long expected, long actual, double relativeError) {
+		Assert.assertTrue("Expected "+expected+", got "+actual,
+		                  Math.abs(actual - expected) <= expected * relativeError);
+	}
+
+	@Test
+	public void testConcurrentRecording () throws Exception {
+		final LatencyRecorder recorder = new LatencyRecorder();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; ++t) {
+			final int offset = t;
+			threads.add(new Thread() {
+				@Override
+				public void run () {
+					for (int i = 0; i < 10000; ++i) {
+						recorder.record(i + offset);
+					}
+				}
+			});
+		}
+		for (Thread thread: threads) thread.start();
+		for (Thread thread: threads) thread.join();
+
+		Assert.assertEquals(80000, recorder.getCount());
+		Assert.assertEquals(10006, recorder.getSummary().getMax() * 1000000.0, 1E-6);
+	}
+
+	@Test
+	public void testJMX () throws Exception {
+		TileMetrics metrics = new TileMetrics();
+		try {
+			metrics.getLayerMetrics("test-layer").getRecorder(Stage.RENDER).record(2000000);
+			metrics.getLayerMetrics("test-layer").recordCacheHits(3);
+			metrics.getLayerMetrics("test-layer").recordCacheMisses(1);
+
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("com.oculusinfo.tile:type=LayerMetrics,layer="+ObjectName.quote("test-layer"));
+			Assert.assertEquals(0.75, (Double) server.getAttribute(name, "CacheHitRatio"), 1E-9);
+			CompositeData render = (CompositeData) server.getAttribute(name, "Render");
+			Assert.assertEquals(1L, render.get("count"));
+
+			Assert.assertEquals(1, metrics.toJSON().getJSONArray("layers").length());
+			Assert.assertEquals(1, metrics.toJSON().getJSONArray("layers").getJSONObject(0)
+			                    .getJSONObject("stages").getJSONObject("render").getLong("count"));
+		} finally {
+			metrics.unpublish();
+		}
+	}
+
+	@Test
+	public void testUntrackedMetrics () throws Exception {
+		TileMetrics metrics = new TileMetrics();
+		try {
+			metrics.getUntrackedMetrics("no-such-layer").getRecorder(Stage.RENDER).record(2000000);
+			metrics.getUntrackedMetrics("no-such-layer").recordRequest();
+			metrics.findLayerMetrics("no-such-layer").recordCacheHits(1);
+
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("com.oculusinfo.tile:type=LayerMetrics,layer="+ObjectName.quote("no-such-layer"));
+			Assert.assertFalse(server.isRegistered(name));
+			Assert.assertTrue(metrics.getLayers().isEmpty());
+			Assert.assertEquals(0, metrics.toJSON().getJSONArray("layers").length());
+
+			// Once a layer is tracked, finding it gets the tracked metrics
+			metrics.getLayerMetrics("no-such-layer");
+			metrics.findLayerMetrics("no-such-layer").recordCacheHits(1);
+			Assert.assertEquals(1L, metrics.getLayerMetrics("no-such-layer").getCacheHits());
+		} finally {
+			metrics.unpublish();
+		}
+	}
+}
@@ -24,6 +24,7 @@
 package com.oculusinfo.tile.rest.layer;
 
 import com.oculusinfo.binning.io.DefaultPyramidIOFactoryProvider;
+import com.oculusinfo.binning.metadata.PyramidMetaData;
 import com.oculusinfo.binning.io.PyramidIO;
 import com.oculusinfo.binning.io.serialization.DefaultTileSerializerFactoryProvider;
 import com.oculusinfo.binning.io.serialization.TileSerializer;
@@ -38,6 +39,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class LayerServiceTests {
 
@@ -130,4 +135,57 @@ public class LayerServiceTests {
 		}
 	}
 
+	@Test
+	public void metaDataIsCachedTest() {
+		LayerMetaData metaData0 = _layerService.getLayerMetaData( "test-layer0" );
+		LayerMetaData metaData1 = _layerService.getLayerMetaData( "test-layer1" );
+		Assert.assertNotNull( metaData0 );
+		Assert.assertNotNull( metaData1 );
+		Assert.assertSame( metaData0, _layerService.getLayerMetaData( "test-layer0" ) );
+		Assert.assertSame( metaData0.getPyramidMetaData(), _layerService.getMetaData( "test-layer0" ) );
+		Assert.assertEquals( metaData0.getETag(), _layerService.getLayerMetaData( "test-layer0" ).getETag() );
+		Assert.assertFalse( metaData0.getETag().equals( metaData1.getETag() ) );
+	}
+
+	@Test
+	public void concurrentMetaDataLoadTest() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool( 8 );
+		try {
+			List<Future<LayerMetaData>> results = new ArrayList<>();
+			for ( int i = 0; i < 32; ++i ) {
+				results.add( executor.submit( new Callable<LayerMetaData>() {
+					@Override
+					public LayerMetaData call() {
+						return _layerService.getLayerMetaData( "test-layer1" );
+					}
+				} ) );
+			}
+			LayerMetaData first = results.get( 0 ).get();
+			Assert.assertNotNull( first );
+			for ( Future<LayerMetaData> result : results ) {
+				Assert.assertSame( first, result.get() );
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void levelExtremaTest() throws Exception {
+		PyramidMetaData pyramidMetaData = new PyramidMetaData( "{\"meta\": {"
+		                                                       + "\"0\": {\"minimum\": \"1.5\", \"maximum\": \"12\"},"
+		                                                       + "\"2\": {\"minimum\": \"0\", \"maximum\": \"[1, 2]\"},"
+		                                                       + "\"global\": {\"minimum\": \"0\", \"maximum\": \"20\"}}}" );
+		LayerMetaData metaData = new LayerMetaData( pyramidMetaData, "abc", 3L, 12345L );
+		Assert.assertEquals( "1.5", metaData.getLevelMinimum( 0 ) );
+		Assert.assertEquals( "12", metaData.getLevelMaximum( 0 ) );
+		Assert.assertNull( metaData.getLevelMinimum( 1 ) );
+		Assert.assertEquals( "[1, 2]", metaData.getLevelMaximum( 2 ) );
+		Assert.assertNull( metaData.getLevelMaximum( 3 ) );
+		Assert.assertNull( metaData.getLevelMinimum( -1 ) );
+		Assert.assertEquals( pyramidMetaData.getCustomMetaData( "2", "minimum" ), metaData.getLevelMinimum( 2 ) );
+		Assert.assertEquals( "abc-3", metaData.getETag() );
+		Assert.assertEquals( 12000L, metaData.getLastModified().getTime() );
+	}
+
 }
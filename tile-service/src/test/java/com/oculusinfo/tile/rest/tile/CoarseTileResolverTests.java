@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2013 Oculus Info Inc. http://www.oculusinfo.com/
+ * 
+ * Released under the MIT License.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest.tile;
+
+import com.oculusinfo.binning.TileData;
+import com.oculusinfo.binning.TileIndex;
+import com.oculusinfo.binning.impl.DenseTileData;
+import com.oculusinfo.binning.io.PyramidIO;
+import com.oculusinfo.binning.io.serialization.TileSerializer;
+import com.oculusinfo.binning.io.serialization.impl.DoubleJsonSerializer;
+import com.oculusinfo.binning.metadata.PyramidMetaData;
+import com.oculusinfo.tile.rest.layer.LayerMetaData;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+
+
+public class CoarseTileResolverTests {
+	private static final String PYRAMID = "coarse-test";
+
+	private TileSerializer<Double> _serializer;
+	private LayerMetaData          _metaData;
+	private RecordingPyramidIO     _pyramidIO;
+	private CoarseTileResolver     _resolver;
+
+
+
+	@Before
+	public void setup () throws Exception {
+		_serializer = new DoubleJsonSerializer();
+		// Levels 3 and 4 were never written
+		_metaData = new LayerMetaData(new PyramidMetaData("{\"version\": \"1.0\", \"zoomlevels\": [0, 1, 2, 5, 6]}"), "sha", 1L, 0L);
+		_pyramidIO = new RecordingPyramidIO();
+		_resolver = new CoarseTileResolver();
+	}
+
+
+
+	@Test
+	public void testCandidatesSkipEmptyLevels () {
+		TileIndex tile = new TileIndex(5, 21, 10);
+		Assert.assertEquals(Arrays.asList(new TileIndex(2, 2, 1),
+		                                  new TileIndex(5, 21, 10)),
+		                    CoarseTileResolver.getCandidates(tile, 4, _metaData));
+		Assert.assertEquals(Arrays.asList(new TileIndex(0, 0, 0),
+		                                  new TileIndex(1, 1, 0)),
+		                    CoarseTileResolver.getCandidates(new TileIndex(1, 1, 0), 3, _metaData));
+	}
+
+	@Test
+	public void testCoarsestAvailableAncestorUsed () throws Exception {
+		_pyramidIO.addTiles(new TileIndex(5, 8, 8), new TileIndex(6, 16, 16));
+
+		TileData<Double> data = _resolver.getTileData(PYRAMID, _serializer, _pyramidIO, _metaData,
+		                                              new TileIndex(6, 16, 16), null, 2);
+		Assert.assertNotNull(data);
+		assertSameTile(new TileIndex(6, 16, 16), data);
+		Assert.assertEquals(1, _pyramidIO.getBatchCount());
+		Assert.assertEquals(new HashSet<>(Arrays.asList(new TileIndex(5, 8, 8), new TileIndex(6, 16, 16))),
+		                    _pyramidIO.getReads());
+	}
+
+	@Test
+	public void testFinerLevelUsedWhenAncestorMissing () throws Exception {
+		_pyramidIO.addTiles(new TileIndex(6, 17, 16));
+
+		TileData<Double> data = _resolver.getTileData(PYRAMID, _serializer, _pyramidIO, _metaData,
+		                                              new TileIndex(6, 17, 16), null, 3);
+		Assert.assertNotNull(data);
+		assertSameTile(new TileIndex(6, 17, 16), data);
+		Assert.assertNull(_resolver.getTileData(PYRAMID, _serializer, _pyramidIO, _metaData,
+		                                        new TileIndex(6, 18, 16), null, 3));
+	}
+
+	@Test
+	public void testWaveResolvedOnce () throws Exception {
+		_pyramidIO.addTiles(new TileIndex(5, 8, 8));
+		List<TileIndex> tileSet = Arrays.asList(new TileIndex(6, 16, 16), new TileIndex(6, 17, 16),
+		                                        new TileIndex(6, 16, 17), new TileIndex(6, 17, 17),
+		                                        new TileIndex(6, 18, 16));
+
+		for (TileIndex tile: tileSet) {
+			TileData<Double> data = _resolver.getTileData(PYRAMID, _serializer, _pyramidIO, _metaData,
+			                                              tile, tileSet, 2);
+			if (tile.getX() < 18) {
+				Assert.assertNotNull(data);
+				assertSameTile(tile, data);
+			} else {
+				Assert.assertNull(data);
+			}
+		}
+		// All siblings were resolved by a single read of every candidate
+		Assert.assertEquals(1, _pyramidIO.getBatchCount());
+		Assert.assertEquals(7, _pyramidIO.getReads().size());
+	}
+
+	@Test
+	public void testOnlyOwnTileResolvedWhenTooManyWaves () throws Exception {
+		// Fill up the waves kept for sibling requests
+		for (int x=0; x<32; ++x) {
+			_resolver.getTileData(PYRAMID, _serializer, _pyramidIO, _metaData,
+			                      new TileIndex(6, x, 0), null, 2);
+		}
+
+		RecordingPyramidIO pyramidIO = new RecordingPyramidIO();
+		pyramidIO.addTiles(new TileIndex(5, 8, 8));
+		List<TileIndex> tileSet = Arrays.asList(new TileIndex(6, 16, 16), new TileIndex(6, 17, 16),
+		                                        new TileIndex(6, 18, 16));
+		TileData<Double> data = _resolver.getTileData(PYRAMID, _serializer, pyramidIO, _metaData,
+		                                              new TileIndex(6, 16, 16), tileSet, 2);
+		Assert.assertNotNull(data);
+		assertSameTile(new TileIndex(6, 16, 16), data);
+		// Nothing resolved here can be shared, so the siblings aren't read
+		Assert.assertEquals(new HashSet<>(Arrays.asList(new TileIndex(5, 8, 8), new TileIndex(6, 16, 16))),
+		                    pyramidIO.getReads());
+	}
+
+	@Test
+	public void testEmptyLevelsNeverRead () throws Exception {
+		// Only levels 3 and 4 are candidates, and neither exists
+		Assert.assertNull(_resolver.getTileData(PYRAMID, _serializer, _pyramidIO, _metaData,
+		                                        new TileIndex(4, 3, 3), null, 2));
+		Assert.assertEquals(0, _pyramidIO.getBatchCount());
+	}
+
+
+
+	// Coarse views have their own bin counts, so just compare positions
+	private void assertSameTile (TileIndex expected, TileData<?> data) {
+		TileIndex actual = data.getDefinition();
+		Assert.assertEquals(expected.getLevel(), actual.getLevel());
+		Assert.assertEquals(expected.getX(), actual.getX());
+		Assert.assertEquals(expected.getY(), actual.getY());
+	}
+
+
+
+	// A pyramid holding empty tiles at known indices, that records what was read from it
+	private static class RecordingPyramidIO implements PyramidIO {
+		private Set<TileIndex> _tiles = new HashSet<>();
+		private Set<TileIndex> _reads = new HashSet<>();
+		private int            _batches = 0;
+
+		void addTiles (TileIndex... indices) {
+			_tiles.addAll(Arrays.asList(indices));
+		}
+
+		synchronized Set<TileIndex> getReads () {
+			return _reads;
+		}
+
+		synchronized int getBatchCount () {
+			return _batches;
+		}
+
+		@Override
+		public synchronized <T> List<TileData<T>> readTiles (String pyramidId, TileSerializer<T> serializer,
+		                                                     Iterable<TileIndex> tiles) throws IOException {
+			++_batches;
+			List<TileData<T>> results = new ArrayList<>();
+			for (TileIndex index: tiles) {
+				_reads.add(index);
+				if (_tiles.contains(index))
+					results.add(new DenseTileData<T>(index));
+			}
+			return results;
+		}
+
+		@Override
+		public void initializeForWrite (String pyramidId) throws IOException {
+		}
+
+		@Override
+		public <T> void writeTiles (String pyramidId, TileSerializer<T> serializer,
+		                            Iterable<TileData<T>> data) throws IOException {
+		}
+
+		@Override
+		public void writeMetaData (String pyramidId, String metaData) throws IOException {
+		}
+
+		@Override
+		public void initializeForRead (String pyramidId, int width, int height, Properties dataDescription) {
+		}
+
+		@Override
+		public <T> InputStream getTileStream (String pyramidId, TileSerializer<T> serializer,
+		                                      TileIndex tile) throws IOException {
+			return null;
+		}
+
+		@Override
+		public String readMetaData (String pyramidId) throws IOException {
+			return null;
+		}
+
+		@Override
+		public void removeTiles (String id, Iterable<TileIndex> tiles) throws IOException {
+		}
+	}
+}
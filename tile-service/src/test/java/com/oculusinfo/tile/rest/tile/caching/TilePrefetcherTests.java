@@ -0,0 +1,328 @@
+/**
+ * Copyright (c) 2013 Oculus Info Inc. http://www.oculusinfo.com/
+ * 
+ * Released under the MIT License.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oculusinfo.tile.rest.tile.caching;
+
+
+import com.oculusinfo.binning.TileData;
+import com.oculusinfo.binning.TileIndex;
+import com.oculusinfo.binning.impl.DenseTileData;
+import com.oculusinfo.binning.io.PyramidIO;
+import com.oculusinfo.binning.io.serialization.TileSerializer;
+import com.oculusinfo.binning.io.serialization.impl.DoubleJsonSerializer;
+import com.oculusinfo.factory.ConfigurableFactory;
+import com.oculusinfo.tile.metrics.TileMetrics;
+import com.oculusinfo.tile.rest.tile.caching.TilePrefetcher.Viewport;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+
+
+public class TilePrefetcherTests {
+	private static final String LAYER   = "prefetch-layer";
+	private static final String PYRAMID = "prefetch-test";
+
+	private RecordingPyramidIO             _base;
+	private ConfigurableFactory<PyramidIO> _factory;
+	private CachingPyramidIO               _caching;
+
+
+
+	@Before
+	public void setup () throws Exception {
+		_base = new RecordingPyramidIO();
+		_factory =
+			new ConfigurableFactory<PyramidIO>(null, PyramidIO.class, null, new ArrayList<String>()) {
+				@Override
+				protected PyramidIO create () {
+					return _base;
+				}
+			};
+		_factory.readConfiguration(new JSONObject());
+
+		_caching = new CachingPyramidIO();
+		_caching.setupBasePyramidIO(LAYER, PYRAMID, _factory);
+	}
+
+	@After
+	public void teardown () {
+		_caching.shutdown();
+	}
+
+
+
+	@Test
+	public void testPanPredictsLeadingEdge () {
+		Viewport previous = new Viewport(4, 4, 5, 4, 5, 1, 1);
+		Viewport current = new Viewport(4, 5, 6, 4, 5, 1, 1);
+
+		List<TileIndex> predicted = current.predict(previous);
+		// The column to the right, including its corners, comes first
+		Assert.assertEquals(Arrays.asList(new TileIndex(4, 7, 3, 1, 1),
+		                                  new TileIndex(4, 7, 4, 1, 1),
+		                                  new TileIndex(4, 7, 5, 1, 1),
+		                                  new TileIndex(4, 7, 6, 1, 1)),
+		                    predicted.subList(0, 4));
+		// ... followed by the level below
+		Assert.assertEquals(new TileIndex(5, 10, 8, 1, 1), predicted.get(4));
+	}
+
+	@Test
+	public void testStationaryPredictsWholeRing () {
+		Viewport current = new Viewport(4, 4, 5, 4, 5, 1, 1);
+
+		List<TileIndex> predicted = current.predict(null);
+		// 12 ring tiles, 16 children, 1 parent
+		Assert.assertEquals(29, predicted.size());
+		for (int i = 0; i < 12; ++i) {
+			TileIndex index = predicted.get(i);
+			Assert.assertEquals(4, index.getLevel());
+			Assert.assertFalse(index.getX() >= 4 && index.getX() <= 5 &&
+			                   index.getY() >= 4 && index.getY() <= 5);
+		}
+		Assert.assertEquals(new TileIndex(3, 2, 2, 1, 1), predicted.get(28));
+	}
+
+	@Test
+	public void testZoomOutPredictsParentsFirst () {
+		Viewport previous = new Viewport(5, 8, 11, 8, 11, 1, 1);
+		Viewport current = new Viewport(4, 4, 5, 4, 5, 1, 1);
+		Assert.assertTrue(previous.isNear(current));
+
+		List<TileIndex> predicted = current.predict(previous);
+		Assert.assertEquals(new TileIndex(3, 2, 2, 1, 1), predicted.get(12));
+		Assert.assertEquals(new TileIndex(5, 8, 8, 1, 1), predicted.get(13));
+	}
+
+	@Test
+	public void testPredictionsStayInBounds () {
+		Viewport current = new Viewport(1, 0, 1, 0, 1, 1, 1);
+
+		List<TileIndex> predicted = current.predict(null);
+		// No ring at all, since the viewport covers its level; 16 children
+		// and the root
+		Assert.assertEquals(17, predicted.size());
+		for (TileIndex index: predicted) {
+			int tiles = 1 << index.getLevel();
+			Assert.assertTrue(index.getX() >= 0 && index.getX() < tiles);
+			Assert.assertTrue(index.getY() >= 0 && index.getY() < tiles);
+		}
+	}
+
+	@Test
+	public void testViewportPrefetchedIntoCache () throws Exception {
+		TileSerializer<Double> serializer = new DoubleJsonSerializer();
+		TileIndex tile = new TileIndex(3, 2, 2, 1, 1);
+		List<TileIndex> tileSet = Arrays.asList(tile,
+		                                        new TileIndex(3, 3, 2, 1, 1),
+		                                        new TileIndex(3, 2, 3, 1, 1),
+		                                        new TileIndex(3, 3, 3, 1, 1));
+
+		_caching.requestTiles(LAYER, PYRAMID, serializer, tile, tileSet);
+		// The requested tile itself is read before returning
+		Assert.assertTrue(_base.wasRead(tile));
+
+		// The rest of the viewport, and its surroundings, follow
+		waitForReads(tileSet);
+		waitForReads(Arrays.asList(new TileIndex(3, 1, 1, 1, 1), new TileIndex(3, 4, 4, 1, 1)));
+
+		// ... and are then served from the cache
+		int reads = _base.getReadCount();
+		List<TileData<Double>> tiles = _caching.readTiles(PYRAMID, serializer, tileSet);
+		Assert.assertEquals(4, tiles.size());
+		Assert.assertEquals(reads, _base.getReadCount());
+
+		// Each tile only ever went to the base pyramid once
+		for (TileIndex index: tileSet) {
+			Assert.assertEquals(1, _base.getReadCount(index));
+		}
+	}
+
+	@Test
+	public void testForegroundDoesNotWaitForPrefetch () throws Exception {
+		TileSerializer<Double> serializer = new DoubleJsonSerializer();
+		TileIndex tile = new TileIndex(3, 2, 2, 1, 1);
+		TileIndex sibling = new TileIndex(3, 3, 2, 1, 1);
+
+		// Stall the prefetcher partway through its first batch
+		CountDownLatch gate = new CountDownLatch(1);
+		_base.blockPrefetches(gate);
+		try {
+			_caching.requestTiles(LAYER, PYRAMID, serializer, tile, Arrays.asList(tile, sibling));
+			long deadline = System.currentTimeMillis() + 5000;
+			while (!_caching.isPrefetching(PYRAMID, sibling)) {
+				Assert.assertTrue("Sibling never prefetched", System.currentTimeMillis() < deadline);
+				Thread.sleep(10);
+			}
+
+			// The foreground request reads the tile itself, rather than
+			// waiting for the stalled batch, or giving up on it
+			long start = System.currentTimeMillis();
+			List<TileData<Double>> tiles = _caching.readTiles(PYRAMID, serializer, Collections.singletonList(sibling));
+			Assert.assertEquals(1, tiles.size());
+			Assert.assertEquals(sibling, tiles.get(0).getDefinition());
+			Assert.assertTrue(System.currentTimeMillis() - start < 500);
+		} finally {
+			gate.countDown();
+		}
+	}
+
+	@Test
+	public void testSingleTileNotPrefetched () throws Exception {
+		TileSerializer<Double> serializer = new DoubleJsonSerializer();
+		TileIndex tile = new TileIndex(3, 2, 2, 1, 1);
+
+		_caching.requestTiles(LAYER, PYRAMID, serializer, tile, Collections.singletonList(tile));
+		Thread.sleep(100);
+		Assert.assertEquals(1, _base.getReadCount());
+	}
+
+	@Test
+	public void testMetricsOnlyForTrackedLayers () throws Exception {
+		TileMetrics metrics = new TileMetrics(false);
+		CachingPyramidIO caching = new CachingPyramidIO(metrics);
+		try {
+			caching.setupBasePyramidIO(LAYER, PYRAMID, _factory);
+			TileSerializer<Double> serializer = new DoubleJsonSerializer();
+			List<TileIndex> tiles = Collections.singletonList(new TileIndex(3, 2, 2, 1, 1));
+
+			// Until the tile service has vouched for the layer, nothing is
+			// tracked for it...
+			caching.requestTiles(LAYER, PYRAMID, serializer, tiles);
+			Assert.assertTrue(metrics.getLayers().isEmpty());
+
+			// ... and afterwards, the cache records against the layer, not
+			// the pyramid
+			metrics.getLayerMetrics(LAYER);
+			caching.requestTiles(LAYER, PYRAMID, serializer, tiles);
+			Assert.assertEquals(Collections.singletonList(LAYER), metrics.getLayers());
+			Assert.assertEquals(1L, metrics.getLayerMetrics(LAYER).getCacheHits());
+		} finally {
+			caching.shutdown();
+		}
+	}
+
+	private void waitForReads (List<TileIndex> indices) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		for (TileIndex index: indices) {
+			while (!_base.wasRead(index) || _caching.isPrefetching(PYRAMID, index)) {
+				Assert.assertTrue("Tile "+index+" never prefetched", System.currentTimeMillis() < deadline);
+				Thread.sleep(10);
+			}
+		}
+	}
+
+
+
+	// A pyramid with a tile everywhere, that records what was read from it
+	private static class RecordingPyramidIO implements PyramidIO {
+		private List<TileIndex> _reads = new ArrayList<>();
+		private CountDownLatch  _prefetchGate = null;
+
+		// Make prefetch reads wait until the given latch is released
+		synchronized void blockPrefetches (CountDownLatch gate) {
+			_prefetchGate = gate;
+		}
+
+		synchronized boolean wasRead (TileIndex index) {
+			return _reads.contains(index);
+		}
+
+		synchronized int getReadCount () {
+			return _reads.size();
+		}
+
+		synchronized int getReadCount (TileIndex index) {
+			return Collections.frequency(_reads, index);
+		}
+
+		@Override
+		public <T> List<TileData<T>> readTiles (String pyramidId, TileSerializer<T> serializer,
+		                                        Iterable<TileIndex> tiles) throws IOException {
+			List<TileData<T>> results = new ArrayList<>();
+			for (TileIndex index: tiles) {
+				synchronized (this) {
+					_reads.add(index);
+				}
+				results.add(new DenseTileData<T>(index));
+			}
+			CountDownLatch gate;
+			synchronized (this) {
+				gate = _prefetchGate;
+			}
+			if (null != gate && Thread.currentThread().getName().startsWith("tile-prefetch")) {
+				try {
+					gate.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return results;
+		}
+
+		@Override
+		public void initializeForWrite (String pyramidId) throws IOException {
+		}
+
+		@Override
+		public <T> void writeTiles (String pyramidId, TileSerializer<T> serializer,
+		                            Iterable<TileData<T>> data) throws IOException {
+		}
+
+		@Override
+		public void writeMetaData (String pyramidId, String metaData) throws IOException {
+		}
+
+		@Override
+		public void initializeForRead (String pyramidId, int width, int height, Properties dataDescription) {
+		}
+
+		@Override
+		public <T> InputStream getTileStream (String pyramidId, TileSerializer<T> serializer,
+		                                      TileIndex tile) throws IOException {
+			return null;
+		}
+
+		@Override
+		public String readMetaData (String pyramidId) throws IOException {
+			return null;
+		}
+
+		@Override
+		public void removeTiles (String id, Iterable<TileIndex> tiles) throws IOException {
+		}
+	}
+}